@@ -0,0 +1,50 @@
+package org.vaadin.teemu.clara.benchmark;
+
+import org.vaadin.teemu.clara.binder.annotation.UiDataSource;
+import org.vaadin.teemu.clara.binder.annotation.UiField;
+import org.vaadin.teemu.clara.binder.annotation.UiHandler;
+
+import com.vaadin.data.Property;
+import com.vaadin.data.util.ObjectProperty;
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Button.ClickEvent;
+import com.vaadin.ui.Label;
+
+/**
+ * Controller binding fields, an event handler and data sources to the
+ * components every {@link LayoutSize} contains.
+ */
+public class BenchmarkController {
+
+    @UiField("title")
+    private Label title;
+
+    @UiField("submit")
+    private Button submit;
+
+    int clicks;
+
+    @UiHandler("submit")
+    public void handleSubmit(ClickEvent event) {
+        clicks++;
+    }
+
+    @UiHandler("field-0")
+    public void handleValueChange(Property.ValueChangeEvent event) {
+        // NOP
+    }
+
+    @UiDataSource("field-0")
+    public Property<String> getFieldDataSource() {
+        return new ObjectProperty<String>("", String.class);
+    }
+
+    public Label getTitle() {
+        return title;
+    }
+
+    public Button getSubmit() {
+        return submit;
+    }
+
+}
@@ -0,0 +1,34 @@
+package org.vaadin.teemu.clara.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Main class of the benchmarks jar. Accepts the same command line options as
+ * the standard JMH runner, but always enables the {@link GCProfiler} so that
+ * the allocation rate ({@code gc.alloc.rate.norm}) of each benchmark is
+ * reported along with its score.
+ * <p>
+ * Example: {@code java -jar target/benchmarks.jar Inflate -p size=LARGE}
+ * </p>
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException,
+            CommandLineOptionException {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(
+                commandLineOptions).addProfiler(GCProfiler.class);
+        if (commandLineOptions.getIncludes().isEmpty()) {
+            options.include(BenchmarkRunner.class.getPackage().getName()
+                    + ".*");
+        }
+        new Runner(options.build()).run();
+    }
+
+}
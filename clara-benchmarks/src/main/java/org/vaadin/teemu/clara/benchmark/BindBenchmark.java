@@ -0,0 +1,104 @@
+package org.vaadin.teemu.clara.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vaadin.teemu.clara.binder.Binder;
+import org.vaadin.teemu.clara.inflater.LayoutInflater;
+import org.vaadin.teemu.clara.inflater.LayoutTemplate;
+
+import com.vaadin.ui.Component;
+
+/**
+ * Benchmarks {@link Binder#bind(Component, Object)} and dispatching events to
+ * a bound handler.
+ * <p>
+ * Binding registers listeners on the components, so
+ * {@link #bind(Template, FreshLayout)} binds to a freshly inflated layout on every
+ * invocation. The inflation happens in a {@link Level#Invocation} setup and is
+ * not measured, but the per-invocation setup makes the results of the
+ * {@link LayoutSize#SMALL} layout less accurate.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BindBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Template {
+
+        @Param
+        public LayoutSize size;
+
+        // Proxy listeners or generated listener classes.
+        @Param({ "false", "true" })
+        public boolean generatedListeners;
+
+        LayoutInflater inflater;
+        LayoutTemplate template;
+
+        @Setup
+        public void setUp() {
+            inflater = new LayoutInflater();
+            template = inflater.compile(new ByteArrayInputStream(size
+                    .createXml()));
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class FreshLayout {
+
+        Component layout;
+
+        @Setup(Level.Invocation)
+        public void inflateLayout(Template template) {
+            layout = template.inflater.inflate(template.template);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class BoundLayout {
+
+        BenchmarkController controller;
+
+        @Setup
+        public void bind(Template template) {
+            controller = new BenchmarkController();
+            new Binder(null, template.generatedListeners).bind(
+                    template.inflater.inflate(template.template), controller);
+        }
+    }
+
+    @Benchmark
+    public BenchmarkController bind(Template template, FreshLayout freshLayout) {
+        BenchmarkController controller = new BenchmarkController();
+        new Binder(null, template.generatedListeners).bind(freshLayout.layout,
+                controller);
+        return controller;
+    }
+
+    /**
+     * Fires a click event on a button bound to a {@code UiHandler} method.
+     */
+    @Benchmark
+    public int dispatchEvent(BoundLayout boundLayout) {
+        boundLayout.controller.getSubmit().click();
+        return boundLayout.controller.clicks;
+    }
+
+}
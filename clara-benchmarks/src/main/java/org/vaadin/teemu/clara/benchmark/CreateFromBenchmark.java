@@ -0,0 +1,119 @@
+package org.vaadin.teemu.clara.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vaadin.teemu.clara.Clara;
+import org.vaadin.teemu.clara.ClaraBuilder;
+import org.vaadin.teemu.clara.ClaraEngine;
+import org.vaadin.teemu.clara.inflater.LayoutInflater;
+import org.vaadin.teemu.clara.inflater.LayoutTemplate;
+import org.vaadin.teemu.clara.inflater.filter.AttributeContext;
+import org.vaadin.teemu.clara.inflater.filter.AttributeFilter;
+import org.vaadin.teemu.clara.inflater.filter.AttributeFilterException;
+import org.vaadin.teemu.clara.inflater.filter.SelectiveAttributeFilter;
+
+import com.vaadin.ui.Component;
+
+/**
+ * Benchmarks the whole {@link ClaraBuilder#createFrom(java.io.InputStream)}
+ * cycle (parsing, inflation with attribute filters and an id prefix, and
+ * binding a controller).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CreateFromBenchmark {
+
+    private static final String ID_PREFIX = "benchmark-";
+
+    @Param
+    public LayoutSize size;
+
+    private byte[] xml;
+    private LayoutTemplate template;
+    private ClaraEngine engine;
+
+    @Setup
+    public void setUp() {
+        xml = size.createXml();
+        template = new LayoutInflater().compile(new ByteArrayInputStream(xml));
+        engine = createBuilder().buildEngine();
+    }
+
+    private ClaraBuilder createBuilder() {
+        return Clara.build().withController(new BenchmarkController())
+                .withIdPrefix(ID_PREFIX)
+                .withAttributeFilters(new PassThroughFilter(),
+                        new CaptionFilter());
+    }
+
+    @Benchmark
+    public Component createFrom() {
+        return createBuilder().createFrom(new ByteArrayInputStream(xml));
+    }
+
+    @Benchmark
+    public Component createFromTemplate() {
+        return createBuilder().createFrom(template);
+    }
+
+    /**
+     * Creates the component with a shared, already configured
+     * {@link ClaraEngine}.
+     */
+    @Benchmark
+    public Component createFromTemplateWithEngine() {
+        return engine.createFrom(template, new BenchmarkController());
+    }
+
+    /**
+     * {@link AttributeFilter} that doesn't modify anything.
+     */
+    static class PassThroughFilter implements AttributeFilter {
+
+        @Override
+        public void filter(AttributeContext attributeContext)
+                throws AttributeFilterException {
+            attributeContext.proceed();
+        }
+    }
+
+    /**
+     * {@link AttributeFilter} that rewrites captions, similarly to a
+     * filter translating them.
+     */
+    static class CaptionFilter implements SelectiveAttributeFilter {
+
+        @Override
+        public boolean isApplicableFor(Class<?> targetClass, Method setter) {
+            return setter.getName().equals("setCaption");
+        }
+
+        @Override
+        public void filter(AttributeContext attributeContext)
+                throws AttributeFilterException {
+            if (attributeContext.getValue() instanceof String) {
+                attributeContext.setValue("[" + attributeContext.getValue()
+                        + "]");
+            }
+            attributeContext.proceed();
+        }
+    }
+
+}
@@ -0,0 +1,60 @@
+package org.vaadin.teemu.clara.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vaadin.teemu.clara.Clara;
+import org.vaadin.teemu.clara.inflater.LayoutInflater;
+
+import com.vaadin.ui.Component;
+
+/**
+ * Benchmarks {@link Clara#findComponentById(Component, String)} for the first
+ * and the last component of a layout and for a missing id.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FindComponentByIdBenchmark {
+
+    @Param
+    public LayoutSize size;
+
+    private Component layout;
+
+    @Setup
+    public void setUp() {
+        layout = new LayoutInflater().inflate(new ByteArrayInputStream(size
+                .createXml()));
+    }
+
+    @Benchmark
+    public Component findFirst() {
+        return Clara.findComponentById(layout, "title");
+    }
+
+    @Benchmark
+    public Component findLast() {
+        return Clara.findComponentById(layout, "submit");
+    }
+
+    @Benchmark
+    public Component findMissing() {
+        return Clara.findComponentById(layout, "missing");
+    }
+
+}
@@ -0,0 +1,79 @@
+package org.vaadin.teemu.clara.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vaadin.teemu.clara.inflater.LayoutInflater;
+import org.vaadin.teemu.clara.inflater.LayoutTemplate;
+
+import com.vaadin.ui.Component;
+
+/**
+ * Benchmarks {@link LayoutInflater} with and without parsing the XML.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InflateBenchmark {
+
+    @Param
+    public LayoutSize size;
+
+    private byte[] xml;
+    private LayoutInflater inflater;
+    private LayoutTemplate template;
+
+    @Setup
+    public void setUp() {
+        xml = size.createXml();
+        inflater = new LayoutInflater();
+        template = inflater.compile(new ByteArrayInputStream(xml));
+    }
+
+    /**
+     * Parses and inflates the XML with a new {@link LayoutInflater}.
+     */
+    @Benchmark
+    public Component inflate() {
+        return new LayoutInflater().inflate(new ByteArrayInputStream(xml));
+    }
+
+    /**
+     * Parses and inflates the XML with a shared {@link LayoutInflater}.
+     */
+    @Benchmark
+    public Component inflateWithSharedInflater() {
+        return inflater.inflate(new ByteArrayInputStream(xml));
+    }
+
+    /**
+     * Inflates an already compiled {@link LayoutTemplate}.
+     */
+    @Benchmark
+    public Component inflateTemplate() {
+        return inflater.inflate(template);
+    }
+
+    /**
+     * Only parses the XML into a {@link LayoutTemplate}.
+     */
+    @Benchmark
+    public LayoutTemplate compile() {
+        return inflater.compile(new ByteArrayInputStream(xml));
+    }
+
+}
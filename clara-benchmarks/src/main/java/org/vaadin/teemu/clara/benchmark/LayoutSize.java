@@ -0,0 +1,100 @@
+package org.vaadin.teemu.clara.benchmark;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Sizes of the generated layouts used by the benchmarks. Each size produces a
+ * layout with a fixed number of sections, where a section is a
+ * {@code HorizontalLayout} containing a {@code Label}, a {@code TextField} and
+ * a {@code Button} with layout attributes and ids. Every ten sections are
+ * wrapped into a nested {@code VerticalLayout}.
+ * <p>
+ * All layouts contain the components referenced by
+ * {@link BenchmarkController}: a {@code Label} with id {@code title} as the
+ * first component and a {@code Button} with id {@code submit} as the last
+ * component.
+ * </p>
+ */
+public enum LayoutSize {
+
+    /**
+     * Roughly 15 components.
+     */
+    SMALL(3),
+
+    /**
+     * Roughly 125 components.
+     */
+    MEDIUM(30),
+
+    /**
+     * Roughly 1250 components.
+     */
+    LARGE(300);
+
+    private static final int SECTIONS_PER_GROUP = 10;
+
+    private final int sections;
+
+    private LayoutSize(int sections) {
+        this.sections = sections;
+    }
+
+    /**
+     * @return number of sections in the layout.
+     */
+    public int getSections() {
+        return sections;
+    }
+
+    /**
+     * @return the generated layout as UTF-8 encoded XML.
+     */
+    public byte[] createXml() {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        xml.append("<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\""
+                + " xmlns:l=\"urn:vaadin:parent\" id=\"root\""
+                + " width=\"100%\" margin=\"true\" spacing=\"true\">\n");
+        xml.append("  <Label id=\"title\" value=\"Benchmark\""
+                + " styleName=\"h1\" />\n");
+        for (int i = 0; i < sections; i++) {
+            boolean groupStart = i % SECTIONS_PER_GROUP == 0;
+            if (groupStart) {
+                if (i > 0) {
+                    xml.append("  </VerticalLayout>\n");
+                }
+                xml.append("  <VerticalLayout id=\"group-").append(i)
+                        .append("\" width=\"100%\" l:expandRatio=\"1\">\n");
+            }
+            appendSection(xml, i);
+        }
+        if (sections > 0) {
+            xml.append("  </VerticalLayout>\n");
+        }
+        xml.append("  <Button id=\"submit\" caption=\"Submit\""
+                + " l:componentAlignment=\"BOTTOM_RIGHT\" />\n");
+        xml.append("</VerticalLayout>\n");
+        try {
+            return xml.toString().getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void appendSection(StringBuilder xml, int index) {
+        xml.append("    <HorizontalLayout id=\"section-").append(index)
+                .append("\" width=\"100%\" spacing=\"true\">\n");
+        xml.append("      <Label id=\"label-").append(index)
+                .append("\" value=\"Label ").append(index)
+                .append("\" width=\"150px\" l:componentAlignment=\"MIDDLE_LEFT\" />\n");
+        xml.append("      <TextField id=\"field-").append(index)
+                .append("\" inputPrompt=\"Value ").append(index)
+                .append("\" width=\"100%\" l:expandRatio=\"1.0\" />\n");
+        xml.append("      <Button id=\"button-").append(index)
+                .append("\" caption=\"Button ").append(index)
+                .append("\" enabled=\"true\" l:componentAlignment=\"MIDDLE_RIGHT\" />\n");
+        xml.append("    </HorizontalLayout>\n");
+    }
+
+}
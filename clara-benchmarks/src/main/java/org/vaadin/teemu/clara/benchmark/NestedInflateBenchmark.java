@@ -0,0 +1,65 @@
+package org.vaadin.teemu.clara.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vaadin.teemu.clara.inflater.LayoutInflater;
+import org.vaadin.teemu.clara.inflater.LayoutTemplate;
+
+import com.vaadin.ui.Component;
+
+/**
+ * Benchmarks inflating deeply nested layouts, where every level contains a
+ * {@code Panel}, a nested {@code VerticalLayout} and a {@code Label} added
+ * after the nested layout has been closed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NestedInflateBenchmark {
+
+    @Param({ "4", "12", "24" })
+    public int depth;
+
+    private LayoutInflater inflater;
+    private LayoutTemplate template;
+
+    @Setup
+    public void setUp() throws UnsupportedEncodingException {
+        StringBuilder xml = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            xml.append("<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\">");
+            xml.append("<Panel><Button caption=\"Button\" /></Panel>");
+        }
+        for (int i = 0; i < depth; i++) {
+            xml.append("<Label value=\"Level\" /></VerticalLayout>");
+        }
+        inflater = new LayoutInflater();
+        template = inflater.compile(new ByteArrayInputStream(xml.toString()
+                .getBytes("UTF-8")));
+    }
+
+    /**
+     * Inflates the compiled {@link LayoutTemplate}.
+     */
+    @Benchmark
+    public Component inflateTemplate() {
+        return inflater.inflate(template);
+    }
+
+}
@@ -0,0 +1,85 @@
+package org.vaadin.teemu.clara.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vaadin.teemu.clara.inflater.LayoutInflater;
+import org.vaadin.teemu.clara.inflater.LayoutTemplate;
+
+import com.vaadin.ui.Component;
+
+/**
+ * Compares inflating a compiled {@link LayoutTemplate} sequentially and in
+ * parallel with a {@link ForkJoinPool} (see
+ * {@link LayoutInflater#setForkJoinPool(ForkJoinPool)}). Each group of ten
+ * sections of the generated layouts has 41 elements, so with a threshold up
+ * to 41 every group is inflated in its own task.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelInflateBenchmark {
+
+    @Param({ "MEDIUM", "LARGE" })
+    public LayoutSize size;
+
+    @Param({ "4" })
+    public int parallelism;
+
+    @Param({ "41" })
+    public int threshold;
+
+    private ForkJoinPool pool;
+    private LayoutInflater sequentialInflater;
+    private LayoutInflater parallelInflater;
+    private LayoutTemplate template;
+
+    @Setup
+    public void setUp() {
+        pool = new ForkJoinPool(parallelism);
+        sequentialInflater = new LayoutInflater();
+        parallelInflater = new LayoutInflater();
+        parallelInflater.setForkJoinPool(pool);
+        parallelInflater.setParallelThreshold(threshold);
+        template = sequentialInflater.compile(new ByteArrayInputStream(size
+                .createXml()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Inflates the template on the calling thread only.
+     */
+    @Benchmark
+    public Component inflateSequential() {
+        return sequentialInflater.inflate(template);
+    }
+
+    /**
+     * Inflates the groups of the template in parallel.
+     */
+    @Benchmark
+    public Component inflateParallel() {
+        return parallelInflater.inflate(template);
+    }
+
+}
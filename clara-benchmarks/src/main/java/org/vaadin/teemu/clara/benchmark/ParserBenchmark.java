@@ -0,0 +1,73 @@
+package org.vaadin.teemu.clara.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vaadin.teemu.clara.inflater.LayoutTemplate;
+import org.vaadin.teemu.clara.inflater.SaxTemplateParser;
+import org.vaadin.teemu.clara.inflater.StaxTemplateParser;
+import org.vaadin.teemu.clara.inflater.TemplateParser;
+
+/**
+ * Compares the {@link TemplateParser} implementations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    public enum Backend {
+        SAX {
+            @Override
+            TemplateParser createParser() {
+                return new SaxTemplateParser();
+            }
+        },
+        STAX {
+            @Override
+            TemplateParser createParser() {
+                return new StaxTemplateParser();
+            }
+        };
+
+        abstract TemplateParser createParser();
+    }
+
+    @Param
+    public LayoutSize size;
+
+    @Param
+    public Backend backend;
+
+    private byte[] xml;
+    private TemplateParser parser;
+
+    @Setup
+    public void setUp() {
+        xml = size.createXml();
+        parser = backend.createParser();
+    }
+
+    /**
+     * Parses the XML into a {@link LayoutTemplate}.
+     */
+    @Benchmark
+    public LayoutTemplate parse() {
+        return parser.parse(new ByteArrayInputStream(xml));
+    }
+
+}
@@ -0,0 +1,104 @@
+package org.vaadin.teemu.clara.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vaadin.teemu.clara.Clara;
+import org.vaadin.teemu.clara.ClaraEngine;
+import org.vaadin.teemu.clara.inflater.ComponentResetter;
+import org.vaadin.teemu.clara.inflater.LayoutTemplate;
+import org.vaadin.teemu.clara.inflater.RecyclingComponentProvider;
+
+import com.vaadin.data.Property;
+import com.vaadin.ui.AbstractField;
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Component;
+
+/**
+ * Benchmarks building and tearing down a layout repeatedly, with and without
+ * recycling the component instances.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecyclingBenchmark {
+
+    @Param
+    public LayoutSize size;
+
+    private LayoutTemplate template;
+    private ClaraEngine engine;
+    private ClaraEngine recyclingEngine;
+
+    @Setup
+    public void setUp() {
+        engine = Clara.build().buildEngine();
+        recyclingEngine = Clara
+                .build()
+                .withComponentRecycling(
+                        new RecyclingComponentProvider(
+                                new BenchmarkComponentResetter(), 1024))
+                .buildEngine();
+        template = engine.compile(new ByteArrayInputStream(size.createXml()));
+    }
+
+    /**
+     * Creates the layout and lets it be garbage collected.
+     */
+    @Benchmark
+    public Component createAndDiscard() {
+        return engine.createFrom(template, new BenchmarkController());
+    }
+
+    /**
+     * Creates the layout from recycled components and releases it again.
+     */
+    @Benchmark
+    public Component createAndRelease() {
+        Component component = recyclingEngine.createFrom(template,
+                new BenchmarkController());
+        recyclingEngine.release(component);
+        return component;
+    }
+
+    /**
+     * Resets the components used by the benchmark layouts.
+     */
+    static class BenchmarkComponentResetter implements ComponentResetter {
+
+        @Override
+        public boolean reset(Component component) {
+            if (component instanceof Button) {
+                Button button = (Button) component;
+                for (Object listener : button
+                        .getListeners(Button.ClickEvent.class)) {
+                    button.removeClickListener((Button.ClickListener) listener);
+                }
+            } else if (component instanceof AbstractField) {
+                AbstractField<?> field = (AbstractField<?>) component;
+                for (Object listener : field
+                        .getListeners(Property.ValueChangeEvent.class)) {
+                    field.removeValueChangeListener((Property.ValueChangeListener) listener);
+                }
+                field.setPropertyDataSource(null);
+            }
+            component.setId(null);
+            return true;
+        }
+    }
+
+}
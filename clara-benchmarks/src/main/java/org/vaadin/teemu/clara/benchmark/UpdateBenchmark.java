@@ -0,0 +1,77 @@
+package org.vaadin.teemu.clara.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vaadin.teemu.clara.Clara;
+import org.vaadin.teemu.clara.ClaraEngine;
+import org.vaadin.teemu.clara.inflater.InflatedLayout;
+import org.vaadin.teemu.clara.inflater.LayoutTemplate;
+
+import com.vaadin.ui.Component;
+
+/**
+ * Benchmarks applying a single changed caption to an existing layout, compared
+ * to creating the whole layout again.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UpdateBenchmark {
+
+    @Param
+    public LayoutSize size;
+
+    private ClaraEngine engine;
+    private LayoutTemplate[] templates;
+    private InflatedLayout layout;
+    private int next;
+
+    @Setup
+    public void setUp() throws UnsupportedEncodingException {
+        engine = Clara.build().buildEngine();
+        String xml = new String(size.createXml(), "UTF-8");
+        templates = new LayoutTemplate[2];
+        for (int i = 0; i < templates.length; i++) {
+            String changed = xml.replace("caption=\"Submit\"",
+                    "caption=\"Submit " + i + "\"");
+            templates[i] = engine.compile(new ByteArrayInputStream(changed
+                    .getBytes("UTF-8")));
+        }
+        layout = engine.createLayout(templates[0], new BenchmarkController());
+    }
+
+    /**
+     * Creates the whole layout for the changed template.
+     */
+    @Benchmark
+    public Component createFrom() {
+        return engine.createFrom(templates[next++ & 1],
+                new BenchmarkController());
+    }
+
+    /**
+     * Applies the changed caption to the existing layout.
+     */
+    @Benchmark
+    public Component update() {
+        layout = engine.update(layout, templates[++next & 1], null);
+        return layout.getRoot();
+    }
+
+}
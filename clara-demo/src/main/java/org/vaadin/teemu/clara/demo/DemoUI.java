@@ -6,18 +6,20 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 
 import org.vaadin.teemu.clara.Clara;
+import org.vaadin.teemu.clara.ClaraEngine;
 import org.vaadin.teemu.clara.binder.BinderException;
 import org.vaadin.teemu.clara.binder.annotation.UiDataSource;
 import org.vaadin.teemu.clara.binder.annotation.UiField;
 import org.vaadin.teemu.clara.binder.annotation.UiHandler;
+import org.vaadin.teemu.clara.inflater.InflatedLayout;
 import org.vaadin.teemu.clara.inflater.LayoutInflaterException;
+import org.vaadin.teemu.clara.inflater.LayoutTemplate;
 
 import com.vaadin.annotations.Theme;
 import com.vaadin.data.Property;
 import com.vaadin.data.util.ObjectProperty;
 import com.vaadin.event.FieldEvents.TextChangeEvent;
 import com.vaadin.server.VaadinRequest;
-import com.vaadin.ui.Component;
 import com.vaadin.ui.HorizontalSplitPanel;
 import com.vaadin.ui.Label;
 import com.vaadin.ui.Notification;
@@ -29,7 +31,10 @@ import com.vaadin.ui.UI;
 @Theme("clara")
 public class DemoUI extends UI {
 
+    private static final ClaraEngine engine = Clara.build().buildEngine();
+
     private DemoController controller;
+    private transient InflatedLayout resultLayout;
 
     @UiField("xmlArea")
     private TextArea xmlArea;
@@ -106,12 +111,26 @@ public class DemoUI extends UI {
     }
 
     private void updateResultPanel(String xml) {
+        // Invalid XML is reported before anything is changed.
+        LayoutTemplate template = engine.compile(new ByteArrayInputStream(xml
+                .getBytes()));
         try {
-            Component c = Clara.create(
-                    new ByteArrayInputStream(xml.getBytes()), controller);
-            resultPanel.setContent(c);
+            if (resultLayout == null) {
+                resultLayout = engine.createLayout(template, controller);
+                resultPanel.setContent(resultLayout.getRoot());
+            } else {
+                // Only apply the changes to keep the state of the other
+                // components.
+                resultLayout = engine.update(resultLayout, template,
+                        controller);
+            }
         } catch (BinderException e) {
+            resultLayout = null;
             Notification.show(e.getMessage(), Notification.Type.ERROR_MESSAGE);
+        } catch (LayoutInflaterException e) {
+            // The layout may have been partially updated -> start over.
+            resultLayout = null;
+            throw e;
         }
     }
 }
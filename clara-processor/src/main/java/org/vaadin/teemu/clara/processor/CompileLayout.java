@@ -0,0 +1,69 @@
+package org.vaadin.teemu.clara.processor;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Compiles a layout XML file into a generated
+ * {@link org.vaadin.teemu.clara.LayoutFactory} for the annotated controller
+ * class at build time. The layout and the
+ * {@link org.vaadin.teemu.clara.binder.annotation.UiField},
+ * {@link org.vaadin.teemu.clara.binder.annotation.UiHandler} and
+ * {@link org.vaadin.teemu.clara.binder.annotation.UiDataSource} annotations of
+ * the controller are validated while compiling, so a broken layout fails the
+ * build.
+ * <p>
+ * For example the following controller results in a generated
+ * {@code com.example.MyViewLayout} class:
+ * </p>
+ *
+ * <pre>
+ * package com.example;
+ *
+ * &#064;CompileLayout(&quot;MyView.xml&quot;)
+ * public class MyView {
+ *
+ *     &#064;UiField
+ *     Button okButton;
+ *
+ *     &#064;UiHandler(&quot;okButton&quot;)
+ *     public void onOk(ClickEvent event) {
+ *     }
+ * }
+ *
+ * Component layout = new MyViewLayout().create(new MyView());
+ * </pre>
+ *
+ * <p>
+ * Bound fields and methods must not be {@code private}, as they are accessed
+ * directly by the generated class.
+ * </p>
+ *
+ * @see LayoutProcessor
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface CompileLayout {
+
+    /**
+     * The layout XML file, either as a path relative to the package of the
+     * annotated class or as an absolute path starting with {@code /}. The
+     * file is looked up from the class output (where the build copies the
+     * resources), the source path and the class path.
+     *
+     * @return path of the layout XML file.
+     */
+    String value();
+
+    /**
+     * Simple name of the generated class in the package of the annotated
+     * class. Defaults to the name of the annotated class followed by
+     * {@code Layout}.
+     *
+     * @return simple name of the generated class.
+     */
+    String className() default "";
+
+}
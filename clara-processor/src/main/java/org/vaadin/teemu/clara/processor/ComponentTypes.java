@@ -0,0 +1,520 @@
+package org.vaadin.teemu.clara.processor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+/**
+ * Resolves setters, listener methods and attribute values from the type model
+ * of the compiler the same way the runtime
+ * {@link org.vaadin.teemu.clara.inflater.handler.AttributeHandler} and
+ * {@link org.vaadin.teemu.clara.binder.Binder} resolve them with reflection.
+ */
+class ComponentTypes {
+
+    private static final Set<String> ALIGNMENTS = new HashSet<String>(
+            Arrays.asList("BOTTOM_CENTER", "BOTTOM_LEFT", "BOTTOM_RIGHT",
+                    "MIDDLE_CENTER", "MIDDLE_LEFT", "MIDDLE_RIGHT",
+                    "TOP_CENTER", "TOP_LEFT", "TOP_RIGHT"));
+
+    // Boxed types supported by the PrimitiveAttributeParser.
+    private static final Set<String> BOXED_TYPES = new HashSet<String>(
+            Arrays.asList(Boolean.class.getName(), Integer.class.getName(),
+                    Byte.class.getName(), Short.class.getName(),
+                    Long.class.getName(), Character.class.getName(),
+                    Float.class.getName(), Double.class.getName()));
+
+    static final String COMPONENT = "com.vaadin.ui.Component";
+    static final String COMPONENT_CONTAINER = "com.vaadin.ui.ComponentContainer";
+    static final String SINGLE_COMPONENT_CONTAINER = "com.vaadin.ui.SingleComponentContainer";
+    static final String ABSOLUTE_LAYOUT = "com.vaadin.ui.AbsoluteLayout";
+    static final String COMPONENT_POSITION = "com.vaadin.ui.AbsoluteLayout.ComponentPosition";
+    static final String ALIGNMENT = "com.vaadin.ui.Alignment";
+    static final String MARGIN_INFO = "com.vaadin.shared.ui.MarginInfo";
+    static final String INFLATER_LISTENER = "org.vaadin.teemu.clara.inflater.InflaterListener";
+    static final String CONTAINER = "com.vaadin.data.Container";
+    static final String ITEM = "com.vaadin.data.Item";
+    static final String PROPERTY = "com.vaadin.data.Property";
+
+    private final Elements elements;
+    private final Types types;
+
+    ComponentTypes(Elements elements, Types types) {
+        this.elements = elements;
+        this.types = types;
+    }
+
+    /**
+     * Returns the type of the given qualified class name or {@code null} if
+     * the class doesn't exist.
+     */
+    TypeElement getTypeElement(String qualifiedName) {
+        return elements.getTypeElement(qualifiedName);
+    }
+
+    /**
+     * Returns {@code true} if the given {@code type} is assignable to the
+     * class with the given qualified name, ignoring type arguments.
+     */
+    boolean isSubtype(TypeMirror type, String qualifiedName) {
+        TypeElement other = elements.getTypeElement(qualifiedName);
+        return other != null
+                && types.isAssignable(types.erasure(type),
+                        types.erasure(other.asType()));
+    }
+
+    boolean isAssignable(TypeMirror type, TypeMirror to) {
+        return types.isAssignable(types.erasure(type), types.erasure(to));
+    }
+
+    String getPackageName(Element element) {
+        return elements.getPackageOf(element).getQualifiedName().toString();
+    }
+
+    boolean isDeprecated(Element element) {
+        return elements.isDeprecated(element);
+    }
+
+    /**
+     * Returns the name of the given type usable in generated source, without
+     * type arguments.
+     */
+    String getName(TypeMirror type) {
+        return types.erasure(type).toString();
+    }
+
+    /**
+     * Returns the public instance methods of the given {@code type} including
+     * the inherited ones.
+     */
+    List<ExecutableElement> getPublicMethods(DeclaredType type) {
+        List<ExecutableElement> methods = new ArrayList<ExecutableElement>();
+        for (ExecutableElement method : ElementFilter.methodsIn(elements
+                .getAllMembers((TypeElement) type.asElement()))) {
+            if (method.getModifiers().contains(Modifier.PUBLIC)
+                    && !method.getModifiers().contains(Modifier.STATIC)) {
+                methods.add(method);
+            }
+        }
+        return methods;
+    }
+
+    /**
+     * Returns the parameter types of the given {@code method} as a member of
+     * the given {@code type}, type variables resolved.
+     */
+    List<? extends TypeMirror> getParameterTypes(DeclaredType type,
+            ExecutableElement method) {
+        return ((ExecutableType) types.asMemberOf(type, method))
+                .getParameterTypes();
+    }
+
+    /**
+     * Returns the preferred setter for the given property of the given
+     * component type, or {@code null} if no setter exists.
+     *
+     * @param type
+     *            component or layout type.
+     * @param propertyName
+     *            name of the attribute.
+     * @param layoutSetter
+     *            {@code true} to find a layout setter taking the component as
+     *            its first parameter.
+     */
+    Setter getSetter(DeclaredType type, String propertyName,
+            boolean layoutSetter) {
+        if (propertyName.length() == 0) {
+            return null;
+        }
+        String methodName = "set" + propertyName.substring(0, 1).toUpperCase()
+                + propertyName.substring(1);
+        List<Setter> candidates = new ArrayList<Setter>();
+        for (ExecutableElement method : getPublicMethods(type)) {
+            if (!method.getSimpleName().contentEquals(methodName)) {
+                continue;
+            }
+            List<? extends TypeMirror> parameterTypes = getParameterTypes(
+                    type, method);
+            if (layoutSetter) {
+                if (parameterTypes.size() == 2
+                        && isSubtype(parameterTypes.get(0), COMPONENT)) {
+                    candidates.add(new Setter(method, parameterTypes.get(1)));
+                }
+            } else if (parameterTypes.size() == 0) {
+                candidates.add(new Setter(method, null));
+            } else if (parameterTypes.size() == 1) {
+                candidates.add(new Setter(method, parameterTypes.get(0)));
+            }
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        Collections.sort(candidates, new SetterComparator());
+        return candidates.get(0);
+    }
+
+    /**
+     * Returns {@code true} if a value of the given type can be parsed from an
+     * attribute.
+     */
+    boolean isSupported(TypeMirror valueType) {
+        if (valueType.getKind().isPrimitive()) {
+            return true;
+        }
+        String name = getName(valueType);
+        return name.equals(String.class.getName())
+                || name.equals(Object.class.getName())
+                || BOXED_TYPES.contains(name) || isSpecial(valueType);
+    }
+
+    /**
+     * Returns {@code true} if the given type is parsed by one of the Vaadin
+     * specific parsers, which are preferred over the primitive ones.
+     */
+    private boolean isSpecial(TypeMirror valueType) {
+        if (valueType == null) {
+            return false;
+        }
+        valueType = types.erasure(valueType);
+        if (valueType.getKind() != TypeKind.DECLARED) {
+            return false;
+        }
+        if (((DeclaredType) valueType).asElement().getKind() == ElementKind.ENUM) {
+            return true;
+        }
+        String name = getName(valueType);
+        return name.equals(ALIGNMENT) || name.equals(MARGIN_INFO)
+                || name.equals(COMPONENT_POSITION);
+    }
+
+    /**
+     * Returns the Java expression of the given attribute {@code value} as
+     * the given {@code valueType}.
+     *
+     * @param value
+     *            value of the attribute.
+     * @param valueType
+     *            a type supported by {@link #isSupported(TypeMirror)}.
+     * @param absoluteLayout
+     *            expression of the {@code AbsoluteLayout} the component is
+     *            placed in, or {@code null} if it isn't placed in one.
+     * @throws IllegalArgumentException
+     *             if the value is invalid for the type.
+     */
+    String toExpression(String value, TypeMirror valueType,
+            String absoluteLayout) {
+        valueType = types.erasure(valueType);
+        String name = getName(valueType);
+        if (value.length() == 0) {
+            // The runtime passes empty values as they are.
+            if (name.equals(String.class.getName())) {
+                return toStringLiteral(value);
+            }
+            if (name.equals(Object.class.getName())) {
+                return "(java.lang.Object) " + toStringLiteral(value);
+            }
+            throw new IllegalArgumentException("an empty value can't be "
+                    + "assigned to " + name);
+        }
+        if (valueType.getKind().isPrimitive()) {
+            return toPrimitiveLiteral(value, valueType.getKind());
+        }
+        if (name.equals(String.class.getName())) {
+            return toStringLiteral(value);
+        }
+        if (name.equals(Object.class.getName())) {
+            return "(java.lang.Object) " + toStringLiteral(value);
+        }
+        if (BOXED_TYPES.contains(name)) {
+            TypeKind kind = types.unboxedType(valueType).getKind();
+            return name + ".valueOf(" + toPrimitiveLiteral(value, kind) + ")";
+        }
+        if (((DeclaredType) valueType).asElement().getKind() == ElementKind.ENUM) {
+            return toEnumConstant(value, (DeclaredType) valueType);
+        }
+        if (name.equals(ALIGNMENT)) {
+            if (!ALIGNMENTS.contains(value)) {
+                throw new IllegalArgumentException("unknown alignment "
+                        + value);
+            }
+            return ALIGNMENT + "." + value;
+        }
+        if (name.equals(MARGIN_INFO)) {
+            String[] margins = value.split(" ");
+            if (margins.length == 4) {
+                return "new " + MARGIN_INFO + "("
+                        + Boolean.valueOf(margins[0]) + ", "
+                        + Boolean.valueOf(margins[1]) + ", "
+                        + Boolean.valueOf(margins[2]) + ", "
+                        + Boolean.valueOf(margins[3]) + ")";
+            }
+            return "new " + MARGIN_INFO + "(" + Boolean.valueOf(value) + ")";
+        }
+        if (name.equals(COMPONENT_POSITION)) {
+            if (absoluteLayout == null) {
+                throw new IllegalArgumentException(
+                        "a position can only be assigned to components of an AbsoluteLayout");
+            }
+            return "position(" + absoluteLayout + ", "
+                    + toStringLiteral(value) + ")";
+        }
+        throw new IllegalArgumentException("unsupported type " + name);
+    }
+
+    private String toEnumConstant(String value, DeclaredType enumType) {
+        for (Element constant : enumType.asElement().getEnclosedElements()) {
+            if (constant.getKind() == ElementKind.ENUM_CONSTANT
+                    && constant.getSimpleName().contentEquals(value)) {
+                return getName(enumType) + "." + value;
+            }
+        }
+        throw new IllegalArgumentException("no constant " + value + " in "
+                + getName(enumType));
+    }
+
+    /**
+     * Returns the literal of the given value parsed like the
+     * {@code PrimitiveAttributeParser} does.
+     */
+    private static String toPrimitiveLiteral(String value, TypeKind kind) {
+        switch (kind) {
+        case BOOLEAN:
+            return String.valueOf(Boolean.valueOf(value));
+        case INT:
+            return String.valueOf(Integer.valueOf(value));
+        case BYTE:
+            return "(byte) " + Byte.valueOf(value);
+        case SHORT:
+            return "(short) " + Short.valueOf(value);
+        case LONG:
+            return Long.valueOf(value) + "L";
+        case CHAR:
+            return toCharLiteral(value.charAt(0));
+        case FLOAT:
+            Float floatValue = Float.valueOf(value);
+            if (floatValue.isNaN()) {
+                return "java.lang.Float.NaN";
+            }
+            if (floatValue.isInfinite()) {
+                return floatValue > 0 ? "java.lang.Float.POSITIVE_INFINITY"
+                        : "java.lang.Float.NEGATIVE_INFINITY";
+            }
+            return floatValue + "f";
+        case DOUBLE:
+            Double doubleValue = Double.valueOf(value);
+            if (doubleValue.isNaN()) {
+                return "java.lang.Double.NaN";
+            }
+            if (doubleValue.isInfinite()) {
+                return doubleValue > 0 ? "java.lang.Double.POSITIVE_INFINITY"
+                        : "java.lang.Double.NEGATIVE_INFINITY";
+            }
+            return doubleValue + "d";
+        default:
+            throw new IllegalArgumentException("unsupported type " + kind);
+        }
+    }
+
+    static String toStringLiteral(String value) {
+        StringBuilder literal = new StringBuilder(value.length() + 2);
+        literal.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                literal.append("\\\"");
+            } else {
+                appendEscaped(literal, c);
+            }
+        }
+        return literal.append('"').toString();
+    }
+
+    private static String toCharLiteral(char c) {
+        StringBuilder literal = new StringBuilder("'");
+        if (c == '\'') {
+            literal.append("\\'");
+        } else {
+            appendEscaped(literal, c);
+        }
+        return literal.append('\'').toString();
+    }
+
+    private static void appendEscaped(StringBuilder literal, char c) {
+        switch (c) {
+        case '\\':
+            literal.append("\\\\");
+            break;
+        case '\n':
+            literal.append("\\n");
+            break;
+        case '\r':
+            literal.append("\\r");
+            break;
+        case '\t':
+            literal.append("\\t");
+            break;
+        default:
+            if (c < 0x20) {
+                // Unicode escapes of line terminators would end the literal.
+                literal.append(String.format("\\%03o", (int) c));
+            } else if (c > 0x7e) {
+                literal.append(String.format("\\u%04x", (int) c));
+            } else {
+                literal.append(c);
+            }
+        }
+    }
+
+    /**
+     * Returns the preferred {@code add*Listener} method of the given component
+     * type for the given event type, or {@code null} if the component has no
+     * such method.
+     */
+    ListenerMethod getAddListenerMethod(DeclaredType componentType,
+            TypeMirror eventType) {
+        List<ExecutableElement> candidates = new ArrayList<ExecutableElement>();
+        for (ExecutableElement method : getPublicMethods(componentType)) {
+            String name = method.getSimpleName().toString();
+            if (name.startsWith("add") && name.endsWith("Listener")
+                    && name.length() >= "addListener".length()
+                    && method.getParameters().size() == 1) {
+                candidates.add(method);
+            }
+        }
+        Collections.sort(candidates, new Comparator<ExecutableElement>() {
+
+            @Override
+            public int compare(ExecutableElement method1,
+                    ExecutableElement method2) {
+                return compareDeprecation(method1, method2);
+            }
+        });
+
+        for (ExecutableElement candidate : candidates) {
+            TypeMirror listenerType = getParameterTypes(componentType,
+                    candidate).get(0);
+            if (listenerType.getKind() != TypeKind.DECLARED) {
+                continue;
+            }
+            DeclaredType listener = (DeclaredType) listenerType;
+            ExecutableElement accepted = null;
+            int acceptedCount = 0;
+            for (ExecutableElement method : getPublicMethods(listener)) {
+                List<? extends TypeMirror> parameterTypes = getParameterTypes(
+                        listener, method);
+                if (method.getEnclosingElement().getKind() == ElementKind.INTERFACE
+                        && parameterTypes.size() == 1
+                        && isAssignable(parameterTypes.get(0), eventType)) {
+                    accepted = method;
+                    acceptedCount++;
+                }
+            }
+            if (acceptedCount == 1) {
+                // There exist a single method in the listener interface that
+                // accepts our event type as its sole parameter.
+                return new ListenerMethod(candidate, listener, accepted);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the abstract methods of the given listener type that a
+     * generated listener has to implement.
+     */
+    List<ExecutableElement> getAbstractMethods(DeclaredType listenerType) {
+        List<ExecutableElement> methods = new ArrayList<ExecutableElement>();
+        for (ExecutableElement method : getPublicMethods(listenerType)) {
+            if (method.getModifiers().contains(Modifier.ABSTRACT)) {
+                methods.add(method);
+            }
+        }
+        return methods;
+    }
+
+    private int compareDeprecation(Element element1, Element element2) {
+        boolean deprecated1 = isDeprecated(element1);
+        boolean deprecated2 = isDeprecated(element2);
+        if (!deprecated1 && deprecated2) {
+            return -1;
+        }
+        if (deprecated1 && !deprecated2) {
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * A setter method with the type of the value it assigns.
+     */
+    static class Setter {
+
+        final ExecutableElement method;
+        // null if the setter has no parameters.
+        final TypeMirror valueType;
+
+        Setter(ExecutableElement method, TypeMirror valueType) {
+            this.method = method;
+            this.valueType = valueType;
+        }
+
+        String getName() {
+            return method.getSimpleName().toString();
+        }
+    }
+
+    /**
+     * An {@code add*Listener} method together with the listener method that
+     * accepts the event.
+     */
+    static class ListenerMethod {
+
+        final ExecutableElement addMethod;
+        final DeclaredType listenerType;
+        final ExecutableElement listenerMethod;
+
+        ListenerMethod(ExecutableElement addMethod, DeclaredType listenerType,
+                ExecutableElement listenerMethod) {
+            this.addMethod = addMethod;
+            this.listenerType = listenerType;
+            this.listenerMethod = listenerMethod;
+        }
+    }
+
+    /**
+     * Prefers setters with a Vaadin specific value type, then non-deprecated
+     * setters exactly like the runtime {@code ParserAwareMethodComparator}.
+     * Other setters keep their order, so a setter with an unsupported value
+     * type may be chosen and its attribute ignored like the runtime does.
+     */
+    private class SetterComparator implements Comparator<Setter> {
+
+        @Override
+        public int compare(Setter setter1, Setter setter2) {
+            boolean special1 = isSpecial(setter1.valueType);
+            boolean special2 = isSpecial(setter2.valueType);
+            if (special1 != special2) {
+                return special1 ? -1 : 1;
+            }
+            return compareDeprecation(setter1.method, setter2.method);
+        }
+    }
+
+}
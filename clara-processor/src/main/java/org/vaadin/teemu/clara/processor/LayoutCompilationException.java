@@ -0,0 +1,15 @@
+package org.vaadin.teemu.clara.processor;
+
+/**
+ * Thrown by the {@link LayoutCompiler} if a layout can't be compiled, the
+ * message describes the broken element or binding.
+ */
+class LayoutCompilationException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public LayoutCompilationException(String message) {
+        super(message);
+    }
+
+}
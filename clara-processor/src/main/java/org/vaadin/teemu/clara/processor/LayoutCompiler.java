@@ -0,0 +1,805 @@
+package org.vaadin.teemu.clara.processor;
+
+import static org.vaadin.teemu.clara.processor.ComponentTypes.ABSOLUTE_LAYOUT;
+import static org.vaadin.teemu.clara.processor.ComponentTypes.COMPONENT;
+import static org.vaadin.teemu.clara.processor.ComponentTypes.COMPONENT_CONTAINER;
+import static org.vaadin.teemu.clara.processor.ComponentTypes.COMPONENT_POSITION;
+import static org.vaadin.teemu.clara.processor.ComponentTypes.CONTAINER;
+import static org.vaadin.teemu.clara.processor.ComponentTypes.INFLATER_LISTENER;
+import static org.vaadin.teemu.clara.processor.ComponentTypes.ITEM;
+import static org.vaadin.teemu.clara.processor.ComponentTypes.PROPERTY;
+import static org.vaadin.teemu.clara.processor.ComponentTypes.SINGLE_COMPONENT_CONTAINER;
+import static org.vaadin.teemu.clara.processor.ComponentTypes.toStringLiteral;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+
+import org.vaadin.teemu.clara.binder.annotation.UiDataSource;
+import org.vaadin.teemu.clara.binder.annotation.UiField;
+import org.vaadin.teemu.clara.binder.annotation.UiHandler;
+import org.vaadin.teemu.clara.inflater.LayoutTemplate;
+import org.vaadin.teemu.clara.inflater.LayoutTemplate.Element;
+import org.vaadin.teemu.clara.processor.ComponentTypes.ListenerMethod;
+import org.vaadin.teemu.clara.processor.ComponentTypes.Setter;
+
+/**
+ * Generates the source of a {@link org.vaadin.teemu.clara.LayoutFactory} for
+ * a {@link LayoutTemplate} and a controller class. The generated code does
+ * the same steps in the same order as the runtime
+ * {@link org.vaadin.teemu.clara.inflater.LayoutInflater} and
+ * {@link org.vaadin.teemu.clara.binder.Binder} with their default
+ * configuration.
+ * <p>
+ * Every element with children is built by a method of its own to keep the
+ * generated methods small. Components bound to the controller are collected
+ * to an array during the build and bound after the whole hierarchy is built.
+ * </p>
+ * <p>
+ * Like the runtime, the components already assigned to the bound fields of
+ * the controller are read before the build and used instead of new ones. The
+ * generated code sets the attributes of the class of the element, so if an
+ * assigned component is of any other class, even a subclass, the layout is
+ * inflated with {@link org.vaadin.teemu.clara.Clara#create(String, Object, org.vaadin.teemu.clara.inflater.filter.AttributeFilter...)}
+ * instead. The layout file must then be available on the runtime class path.
+ * </p>
+ */
+class LayoutCompiler {
+
+    static final String IMPORT_URN_PREFIX = "urn:import:";
+    static final String LAYOUT_ATTRIBUTE_NAMESPACE = "urn:vaadin:parent";
+    // Lazy inflation is a runtime feature, generated layouts are created
+    // eagerly.
+    private static final String LAZY_ATTRIBUTE = "lazy";
+
+    private static final String ID_ATTRIBUTE = "id";
+    private static final String INDENT = "    ";
+
+    private final ComponentTypes types;
+    private final TypeElement controller;
+    private final LayoutTemplate template;
+    private final String resourceName;
+    private final String packageName;
+    private final String className;
+    private final String controllerName;
+
+    private final List<String> warnings = new ArrayList<String>();
+    private final List<Node> nodes = new ArrayList<Node>();
+    private final Map<String, Node> nodesById = new HashMap<String, Node>();
+    private final List<Binding> fieldBindings = new ArrayList<Binding>();
+    private final List<Binding> dataSourceBindings = new ArrayList<Binding>();
+    private final List<Binding> handlerBindings = new ArrayList<Binding>();
+    private int slotCount;
+    private boolean overridden;
+    private boolean positionUsed;
+
+    private final StringBuilder methods = new StringBuilder();
+    private final StringBuilder listenerClasses = new StringBuilder();
+    private int listenerCount;
+
+    /**
+     * @param types
+     *            type model of the compiler.
+     * @param controller
+     *            the controller class to bind the layout to.
+     * @param template
+     *            the compiled layout.
+     * @param resourceName
+     *            name of the layout file for messages.
+     * @param className
+     *            simple name of the generated class, which is placed in the
+     *            package of the controller.
+     */
+    LayoutCompiler(ComponentTypes types, TypeElement controller,
+            LayoutTemplate template, String resourceName, String className) {
+        this.types = types;
+        this.controller = controller;
+        this.template = template;
+        this.resourceName = resourceName;
+        this.packageName = types.getPackageName(controller);
+        this.className = className;
+        this.controllerName = types.getName(controller.asType());
+    }
+
+    /**
+     * @return warnings about parts of the layout that are ignored, like the
+     *         runtime ignores them.
+     */
+    List<String> getWarnings() {
+        return warnings;
+    }
+
+    /**
+     * Returns the source of the generated class.
+     *
+     * @throws LayoutCompilationException
+     *             if the layout or the bindings are invalid.
+     */
+    String compile() throws LayoutCompilationException {
+        if (controller.getModifiers().contains(Modifier.PRIVATE)) {
+            throw new LayoutCompilationException(controllerName
+                    + " must not be private.");
+        }
+        if (controller.getNestingKind() == NestingKind.LOCAL
+                || controller.getNestingKind() == NestingKind.ANONYMOUS) {
+            throw new LayoutCompilationException(controllerName
+                    + " must be a top level or a member class.");
+        }
+        collectBindings();
+        addNode(template.getRoot(), null);
+        resolveBindings();
+
+        if (overridden) {
+            writeOverrideMethods();
+        }
+        writeBuildMethod(nodes.get(0));
+        writeBindMethod();
+
+        StringBuilder source = new StringBuilder();
+        if (packageName.length() > 0) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("/**\n * Generated by the Clara annotation processor from {@code ")
+                .append(resourceName.replace("*/", "*&#47;"))
+                .append("}, do not edit.\n */\n");
+        source.append("@SuppressWarnings({ \"serial\", \"deprecation\", \"unchecked\", \"rawtypes\" })\n");
+        source.append("public final class ").append(className)
+                .append(" implements org.vaadin.teemu.clara.LayoutFactory<")
+                .append(controllerName).append("> {\n\n");
+        source.append(INDENT).append("@Override\n");
+        source.append(INDENT).append("public ").append(COMPONENT)
+                .append(" create(").append(controllerName)
+                .append(" controller) {\n");
+        source.append(INDENT).append(INDENT).append(COMPONENT)
+                .append("[] components = new ").append(COMPONENT).append("[")
+                .append(slotCount).append("];\n");
+        if (overridden) {
+            source.append(INDENT).append(INDENT)
+                    .append("if (controller != null")
+                    .append(" && !readOverrides(controller, components)) {\n");
+            source.append(INDENT).append(INDENT).append(INDENT)
+                    .append("return org.vaadin.teemu.clara.Clara.create(")
+                    .append(toStringLiteral(getAbsoluteResourceName()))
+                    .append(", controller);\n");
+            source.append(INDENT).append(INDENT).append("}\n");
+        }
+        source.append(INDENT).append(INDENT).append(COMPONENT)
+                .append(" root = build0(controller, components);\n");
+        source.append(INDENT).append(INDENT)
+                .append("if (controller != null) {\n");
+        source.append(INDENT).append(INDENT).append(INDENT)
+                .append("bind(controller, components);\n");
+        source.append(INDENT).append(INDENT).append("}\n");
+        source.append(INDENT).append(INDENT).append("return root;\n");
+        source.append(INDENT).append("}\n");
+        source.append(methods);
+        if (positionUsed) {
+            writePositionMethod(source);
+        }
+        source.append(listenerClasses);
+        source.append("}\n");
+        return source.toString();
+    }
+
+    /**
+     * Collects the bindings of the controller class and its superclasses in
+     * the order of the runtime {@code BindingPlan}.
+     */
+    private void collectBindings() throws LayoutCompilationException {
+        for (TypeElement type = controller; type != null; type = getSuperclass(type)) {
+            for (VariableElement field : ElementFilter.fieldsIn(type
+                    .getEnclosedElements())) {
+                UiField annotation = field.getAnnotation(UiField.class);
+                if (annotation != null) {
+                    checkAccessible(field);
+                    String id = annotation.value().length() > 0 ? annotation
+                            .value() : field.getSimpleName().toString();
+                    fieldBindings.add(new Binding(id, field));
+                }
+            }
+            for (ExecutableElement method : ElementFilter.methodsIn(type
+                    .getEnclosedElements())) {
+                UiDataSource dataSource = method
+                        .getAnnotation(UiDataSource.class);
+                if (dataSource != null) {
+                    checkAccessible(method);
+                    dataSourceBindings.add(new Binding(dataSource.value(),
+                            method));
+                }
+                UiHandler handler = method.getAnnotation(UiHandler.class);
+                if (handler != null) {
+                    checkAccessible(method);
+                    handlerBindings.add(new Binding(handler.value(), method));
+                }
+            }
+        }
+    }
+
+    private TypeElement getSuperclass(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        if (superclass.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        return (TypeElement) ((DeclaredType) superclass).asElement();
+    }
+
+    private void checkAccessible(javax.lang.model.element.Element member)
+            throws LayoutCompilationException {
+        Set<Modifier> modifiers = member.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE)) {
+            throw new LayoutCompilationException(describe(member)
+                    + " must not be private to be bound by " + className
+                    + ".");
+        }
+        TypeElement declaringType = (TypeElement) member
+                .getEnclosingElement();
+        if (!types.getPackageName(declaringType).equals(packageName)
+                && !(modifiers.contains(Modifier.PUBLIC) && declaringType
+                        .getModifiers().contains(Modifier.PUBLIC))) {
+            throw new LayoutCompilationException(describe(member)
+                    + " must be public to be bound by " + className
+                    + " in another package.");
+        }
+    }
+
+    /**
+     * Resolves the component class of the given element and adds it and its
+     * children to the nodes.
+     */
+    private Node addNode(Element element, Node parent)
+            throws LayoutCompilationException {
+        Node node = new Node(element, nodes.size(), parent);
+        nodes.add(node);
+
+        String id = element.getAttributeValue(ID_ATTRIBUTE);
+        if (id != null && id.length() > 0) {
+            if (nodesById.containsKey(id)) {
+                throw new LayoutCompilationException(describe(node)
+                        + "Given id " + id + " has already been assigned.");
+            }
+            nodesById.put(id, node);
+        }
+
+        TypeElement typeElement = getComponentClass(node);
+        node.type = (DeclaredType) typeElement.asType();
+        node.typeName = types.getName(node.type);
+        node.isSingleComponentContainer = types.isSubtype(node.type,
+                SINGLE_COMPONENT_CONTAINER);
+        node.container = types.isSubtype(node.type, COMPONENT_CONTAINER) ? node
+                : (parent != null ? parent.container : null);
+
+        for (Element child : element.getChildren()) {
+            node.children.add(addNode(child, node));
+        }
+        return node;
+    }
+
+    private TypeElement getComponentClass(Node node)
+            throws LayoutCompilationException {
+        String uri = node.element.getUri();
+        if (!uri.startsWith(IMPORT_URN_PREFIX)) {
+            throw new LayoutCompilationException(describe(node)
+                    + "Only elements in " + IMPORT_URN_PREFIX
+                    + " namespaces can be compiled, not " + uri + ".");
+        }
+        String qualifiedName = uri.substring(IMPORT_URN_PREFIX.length())
+                + "." + node.element.getLocalName();
+        TypeElement typeElement = types.getTypeElement(qualifiedName);
+        if (typeElement == null || typeElement.getKind() != ElementKind.CLASS) {
+            throw new LayoutCompilationException(describe(node) + "Class "
+                    + qualifiedName + " not found.");
+        }
+        if (!types.isSubtype(typeElement.asType(), COMPONENT)) {
+            throw new LayoutCompilationException(describe(node)
+                    + qualifiedName + " is not a Component.");
+        }
+        Set<Modifier> modifiers = typeElement.getModifiers();
+        if (!modifiers.contains(Modifier.PUBLIC)
+                || modifiers.contains(Modifier.ABSTRACT)
+                || (typeElement.getNestingKind() == NestingKind.MEMBER && !modifiers
+                        .contains(Modifier.STATIC))
+                || !hasPublicNoArgConstructor(typeElement)) {
+            throw new LayoutCompilationException(describe(node)
+                    + qualifiedName
+                    + " must be a public concrete class with a public"
+                    + " no-arg constructor.");
+        }
+        return typeElement;
+    }
+
+    private static boolean hasPublicNoArgConstructor(TypeElement type) {
+        for (ExecutableElement constructor : ElementFilter
+                .constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty()
+                    && constructor.getModifiers().contains(Modifier.PUBLIC)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the components of the bindings and verifies their types.
+     */
+    private void resolveBindings() throws LayoutCompilationException {
+        for (Binding binding : fieldBindings) {
+            Node node = getBoundNode(binding);
+            VariableElement field = (VariableElement) binding.member;
+            if (!types.isAssignable(node.type, field.asType())) {
+                throw new LayoutCompilationException(describe(field)
+                        + " of type " + types.getName(field.asType())
+                        + " can't be bound to " + node.typeName + ".");
+            }
+            node.overrideFields.add(field);
+            overridden = true;
+        }
+        for (Binding binding : dataSourceBindings) {
+            getBoundNode(binding);
+            if (!((ExecutableElement) binding.member).getParameters()
+                    .isEmpty()) {
+                throw new LayoutCompilationException(describe(binding.member)
+                        + " must not have parameters.");
+            }
+        }
+        for (Binding binding : handlerBindings) {
+            getBoundNode(binding);
+            if (((ExecutableElement) binding.member).getParameters().size() != 1) {
+                throw new LayoutCompilationException(describe(binding.member)
+                        + " must have the event as its only parameter.");
+            }
+        }
+    }
+
+    private Node getBoundNode(Binding binding)
+            throws LayoutCompilationException {
+        Node node = nodesById.get(binding.id);
+        if (node == null) {
+            throw new LayoutCompilationException(describe(binding.member)
+                    + ": No component found for id: " + binding.id + ".");
+        }
+        if (node.slot < 0) {
+            node.slot = slotCount++;
+        }
+        return node;
+    }
+
+    /**
+     * Writes the method that builds the given node and its children.
+     */
+    private void writeBuildMethod(Node node) throws LayoutCompilationException {
+        List<Node> parameters = getParameters(node);
+        StringBuilder out = new StringBuilder();
+        out.append('\n').append(INDENT).append("private static ")
+                .append(node.parent == null ? node.typeName : "void")
+                .append(" build").append(node.index).append('(');
+        for (Node parameter : parameters) {
+            out.append(parameter.typeName).append(' ')
+                    .append(parameter.getVariable()).append(", ");
+        }
+        out.append(controllerName).append(" controller, ").append(COMPONENT)
+                .append("[] components) {\n");
+
+        List<Node> methodChildren = new ArrayList<Node>();
+        writeCreate(out, node);
+        for (Node child : node.children) {
+            if (child.children.isEmpty()) {
+                writeCreate(out, child);
+                writeInflated(out, child);
+            } else {
+                methodChildren.add(child);
+                line(out, "build" + child.index + "(" + getArguments(child)
+                        + "controller, components);");
+            }
+        }
+        writeInflated(out, node);
+        if (node.parent == null) {
+            line(out, "return " + node.getVariable() + ";");
+        }
+        out.append(INDENT).append("}\n");
+        methods.append(out);
+
+        for (Node child : methodChildren) {
+            writeBuildMethod(child);
+        }
+    }
+
+    /**
+     * Returns the nodes outside of the given node that its build method
+     * refers to: the node it is attached to and the container its children
+     * are attached to.
+     */
+    private List<Node> getParameters(Node node) {
+        List<Node> parameters = new ArrayList<Node>(2);
+        Node attachTarget = node.getAttachTarget();
+        if (attachTarget != null) {
+            parameters.add(attachTarget);
+        }
+        if (node.container != node && node.container != null
+                && node.container != attachTarget) {
+            parameters.add(node.container);
+        }
+        return parameters;
+    }
+
+    private String getArguments(Node node) {
+        StringBuilder arguments = new StringBuilder();
+        for (Node parameter : getParameters(node)) {
+            arguments.append(parameter.getVariable()).append(", ");
+        }
+        return arguments.toString();
+    }
+
+    /**
+     * Writes the statements that create the component of the given node,
+     * assign its attributes and attach it to its parent like the
+     * {@code TemplateInflater}: basic attributes, attach, layout attributes.
+     */
+    private void writeCreate(StringBuilder out, Node node)
+            throws LayoutCompilationException {
+        String variable = node.getVariable();
+        if (!node.overrideFields.isEmpty()) {
+            // readOverrides has verified the class of the component.
+            String override = "components[" + node.slot + "]";
+            line(out, node.typeName + " " + variable + " = " + override
+                    + " != null ? (" + node.typeName + ") " + override
+                    + " : new " + node.typeName + "();");
+        } else {
+            line(out, node.typeName + " " + variable + " = new "
+                    + node.typeName + "();");
+        }
+        if (node.slot >= 0) {
+            line(out, "components[" + node.slot + "] = " + variable + ";");
+        }
+
+        for (Map.Entry<String, String> attribute : node.element.getAttributes(
+                "").entrySet()) {
+            writeSetter(out, node, node.type, variable, "", attribute, null);
+        }
+
+        Node attachTarget = node.getAttachTarget();
+        if (attachTarget != null) {
+            line(out, attachTarget.getVariable()
+                    + (attachTarget.isSingleComponentContainer ? ".setContent("
+                            : ".addComponent(") + variable + ");");
+        }
+
+        Map<String, String> layoutAttributes = new LinkedHashMap<String, String>(
+                node.element.getAttributes(LAYOUT_ATTRIBUTE_NAMESPACE));
+        layoutAttributes.remove(LAZY_ATTRIBUTE);
+        if (!layoutAttributes.isEmpty()) {
+            if (attachTarget == null
+                    || attachTarget.isSingleComponentContainer) {
+                throw new LayoutCompilationException(describe(node)
+                        + "Layout attributes require the component to be"
+                        + " attached to a ComponentContainer.");
+            }
+            String absoluteLayout = types.isSubtype(attachTarget.type,
+                    ABSOLUTE_LAYOUT) ? attachTarget.getVariable() : null;
+            for (Map.Entry<String, String> attribute : layoutAttributes
+                    .entrySet()) {
+                writeSetter(out, node, attachTarget.type,
+                        attachTarget.getVariable(), variable + ", ",
+                        attribute, absoluteLayout);
+            }
+        }
+    }
+
+    private void writeSetter(StringBuilder out, Node node, DeclaredType type,
+            String target, String componentArgument,
+            Map.Entry<String, String> attribute, String absoluteLayout)
+            throws LayoutCompilationException {
+        String name = attribute.getKey();
+        Setter setter = types.getSetter(type, name,
+                componentArgument.length() > 0);
+        if (setter == null) {
+            warnings.add(describe(node) + "No setter for attribute " + name
+                    + " in " + types.getName(type) + ", it is ignored.");
+            return;
+        }
+        if (setter.valueType == null) {
+            line(out, target + "." + setter.getName() + "();");
+            return;
+        }
+        if (!types.isSupported(setter.valueType)) {
+            warnings.add(describe(node) + "The type "
+                    + types.getName(setter.valueType) + " of attribute "
+                    + name + " is not supported, it is ignored.");
+            return;
+        }
+        String value;
+        try {
+            value = types.toExpression(attribute.getValue(), setter.valueType,
+                    absoluteLayout);
+        } catch (IllegalArgumentException e) {
+            throw new LayoutCompilationException(describe(node)
+                    + "Invalid value \"" + attribute.getValue()
+                    + "\" for attribute " + name + ": " + e.getMessage());
+        }
+        if (types.getName(setter.valueType).equals(COMPONENT_POSITION)) {
+            positionUsed = true;
+        }
+        line(out, target + "." + setter.getName() + "(" + componentArgument
+                + value + ");");
+    }
+
+    /**
+     * Writes the methods reading the components assigned to the bound fields
+     * of the controller to their slots like the runtime
+     * {@code Binder.getAlreadyAssignedFields}: the last field of an id with a
+     * component wins, whatever the class of the component.
+     */
+    private void writeOverrideMethods() {
+        StringBuilder out = new StringBuilder();
+        out.append('\n').append(INDENT)
+                .append("private static boolean readOverrides(")
+                .append(controllerName).append(" controller, ")
+                .append(COMPONENT).append("[] components) {\n");
+        for (Node node : nodes) {
+            if (node.overrideFields.isEmpty()) {
+                continue;
+            }
+            StringBuilder fields = new StringBuilder();
+            for (VariableElement field : node.overrideFields) {
+                if (fields.length() > 0) {
+                    fields.append(", ");
+                }
+                fields.append("controller.").append(field.getSimpleName());
+            }
+            String override = "components[" + node.slot + "]";
+            line(out, override + " = lastComponent(" + fields + ");");
+            line(out, "if (" + override + " != null && " + override
+                    + ".getClass() != " + node.typeName + ".class) {");
+            line(out, INDENT + "return false;");
+            line(out, "}");
+        }
+        line(out, "return true;");
+        out.append(INDENT).append("}\n");
+
+        out.append('\n').append(INDENT).append("private static ")
+                .append(COMPONENT)
+                .append(" lastComponent(java.lang.Object... values) {\n");
+        line(out, COMPONENT + " component = null;");
+        line(out, "for (java.lang.Object value : values) {");
+        line(out, INDENT + "if (value instanceof " + COMPONENT + ") {");
+        line(out, INDENT + INDENT + "component = (" + COMPONENT + ") value;");
+        line(out, INDENT + "}");
+        line(out, "}");
+        line(out, "return component;");
+        out.append(INDENT).append("}\n");
+        methods.append(out);
+    }
+
+    /**
+     * Returns the class path resource name of the layout for the runtime
+     * inflation, which resolves relative names against the class of the
+     * controller object instead of the class compiled against.
+     */
+    private String getAbsoluteResourceName() {
+        if (resourceName.startsWith("/")) {
+            return resourceName;
+        }
+        return packageName.length() > 0 ? "/" + packageName.replace('.', '/')
+                + "/" + resourceName : "/" + resourceName;
+    }
+
+    private void writeInflated(StringBuilder out, Node node) {
+        if (types.isSubtype(node.type, INFLATER_LISTENER)) {
+            line(out, node.getVariable() + ".componentInflated();");
+        }
+    }
+
+    /**
+     * Writes the method binding the controller: fields, data sources and
+     * handlers like the runtime {@code Binder}.
+     */
+    private void writeBindMethod() throws LayoutCompilationException {
+        StringBuilder out = new StringBuilder();
+        out.append('\n').append(INDENT).append("private static void bind(")
+                .append(controllerName).append(" controller, ")
+                .append(COMPONENT).append("[] components) {\n");
+
+        for (Binding binding : fieldBindings) {
+            Node node = nodesById.get(binding.id);
+            String field = "controller." + binding.member.getSimpleName();
+            line(out, "if (" + field + " == null) {");
+            line(out, INDENT + field + " = ("
+                    + types.getName(binding.member.asType()) + ") components["
+                    + node.slot + "];");
+            line(out, "}");
+        }
+
+        for (Binding binding : dataSourceBindings) {
+            writeDataSource(out, binding);
+        }
+
+        for (Binding binding : handlerBindings) {
+            writeHandler(out, binding);
+        }
+
+        out.append(INDENT).append("}\n");
+        methods.append(out);
+    }
+
+    private void writeDataSource(StringBuilder out, Binding binding) {
+        Node node = nodesById.get(binding.id);
+        TypeMirror returnType = ((ExecutableElement) binding.member)
+                .getReturnType();
+        String viewer;
+        String setter;
+        if (types.isSubtype(returnType, CONTAINER)
+                && types.isSubtype(node.type, CONTAINER + ".Viewer")) {
+            viewer = CONTAINER + ".Viewer";
+            setter = "setContainerDataSource";
+        } else if (types.isSubtype(returnType, PROPERTY)
+                && types.isSubtype(node.type, PROPERTY + ".Viewer")) {
+            viewer = PROPERTY + ".Viewer";
+            setter = "setPropertyDataSource";
+        } else if (types.isSubtype(returnType, ITEM)
+                && types.isSubtype(node.type, ITEM + ".Viewer")) {
+            viewer = ITEM + ".Viewer";
+            setter = "setItemDataSource";
+        } else {
+            warnings.add(describe(binding.member) + ": "
+                    + types.getName(returnType)
+                    + " is not a data source of " + node.typeName
+                    + ", it is ignored.");
+            return;
+        }
+        line(out, "((" + viewer + ") components[" + node.slot + "])." + setter
+                + "(controller." + binding.member.getSimpleName() + "());");
+    }
+
+    private void writeHandler(StringBuilder out, Binding binding)
+            throws LayoutCompilationException {
+        Node node = nodesById.get(binding.id);
+        ExecutableElement handler = (ExecutableElement) binding.member;
+        TypeMirror eventType = handler.getParameters().get(0).asType();
+        ListenerMethod listener = types.getAddListenerMethod(node.type,
+                eventType);
+        if (listener == null) {
+            warnings.add(describe(handler) + ": " + node.typeName
+                    + " has no listener for " + types.getName(eventType)
+                    + ", it is ignored.");
+            return;
+        }
+        List<ExecutableElement> abstractMethods = types
+                .getAbstractMethods(listener.listenerType);
+        if (abstractMethods.size() != 1
+                || listener.listenerMethod.getReturnType().getKind() != TypeKind.VOID) {
+            throw new LayoutCompilationException(describe(handler)
+                    + ": Listener " + types.getName(listener.listenerType)
+                    + " must have a single void method to be generated.");
+        }
+
+        String listenerClass = "Handler" + listenerCount++;
+        line(out, "((" + node.typeName + ") components[" + node.slot + "])."
+                + listener.addMethod.getSimpleName() + "(new " + listenerClass
+                + "(controller));");
+        writeListenerClass(listenerClass, listener, handler);
+    }
+
+    private void writeListenerClass(String name, ListenerMethod listener,
+            ExecutableElement handler) {
+        StringBuilder out = listenerClasses;
+        String listenerType = types.getName(listener.listenerType);
+        String eventType = types.getName(listener.listenerMethod
+                .getParameters().get(0).asType());
+        out.append('\n').append(INDENT).append("private static final class ")
+                .append(name).append(" implements ").append(listenerType)
+                .append(" {\n\n");
+        out.append(INDENT).append(INDENT).append("private final ")
+                .append(controllerName).append(" controller;\n\n");
+        out.append(INDENT).append(INDENT).append(name).append('(')
+                .append(controllerName).append(" controller) {\n");
+        out.append(INDENT).append(INDENT).append(INDENT)
+                .append("this.controller = controller;\n");
+        out.append(INDENT).append(INDENT).append("}\n\n");
+        out.append(INDENT).append(INDENT).append("@Override\n");
+        out.append(INDENT).append(INDENT).append("public void ")
+                .append(listener.listenerMethod.getSimpleName()).append('(')
+                .append(eventType).append(" event) {\n");
+        out.append(INDENT).append(INDENT).append(INDENT)
+                .append("controller.").append(handler.getSimpleName())
+                .append("(event);\n");
+        out.append(INDENT).append(INDENT).append("}\n");
+        out.append(INDENT).append("}\n");
+    }
+
+    private void writePositionMethod(StringBuilder out) {
+        out.append('\n').append(INDENT).append("private static ")
+                .append(COMPONENT_POSITION).append(" position(")
+                .append(ABSOLUTE_LAYOUT)
+                .append(" layout, java.lang.String css) {\n");
+        out.append(INDENT).append(INDENT).append(COMPONENT_POSITION)
+                .append(" position = layout.new ComponentPosition();\n");
+        out.append(INDENT).append(INDENT)
+                .append("position.setCSSString(css);\n");
+        out.append(INDENT).append(INDENT).append("return position;\n");
+        out.append(INDENT).append("}\n");
+    }
+
+    private static void line(StringBuilder out, String statement) {
+        out.append(INDENT).append(INDENT).append(statement).append('\n');
+    }
+
+    private String describe(Node node) {
+        String id = node.element.getAttributeValue(ID_ATTRIBUTE);
+        return resourceName + ": <" + node.element.getLocalName()
+                + (id != null ? " id=\"" + id + "\"" : "") + ">: ";
+    }
+
+    private String describe(javax.lang.model.element.Element member) {
+        return controllerName + "." + member.getSimpleName();
+    }
+
+    /**
+     * An element of the layout with its resolved component type.
+     */
+    private static class Node {
+
+        final Element element;
+        final int index;
+        final Node parent;
+        final List<Node> children = new ArrayList<Node>();
+        DeclaredType type;
+        String typeName;
+        boolean isSingleComponentContainer;
+        // The container children are added to, this node if it is one.
+        Node container;
+        // Index in the components array, -1 if the node isn't bound.
+        int slot = -1;
+        // The bound fields in the order of the bindings.
+        final List<VariableElement> overrideFields = new ArrayList<VariableElement>();
+
+        Node(Element element, int index, Node parent) {
+            this.element = element;
+            this.index = index;
+            this.parent = parent;
+        }
+
+        String getVariable() {
+            return "c" + index;
+        }
+
+        /**
+         * Returns the node this node is attached to or {@code null} if it
+         * isn't attached.
+         */
+        Node getAttachTarget() {
+            if (parent == null) {
+                return null;
+            }
+            return parent.isSingleComponentContainer ? parent
+                    : parent.container;
+        }
+    }
+
+    /**
+     * A field or method of the controller bound to a component id.
+     */
+    private static class Binding {
+
+        final String id;
+        final javax.lang.model.element.Element member;
+
+        Binding(String id, javax.lang.model.element.Element member) {
+            this.id = id;
+            this.member = member;
+        }
+    }
+
+}
@@ -0,0 +1,166 @@
+package org.vaadin.teemu.clara.processor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+
+import org.vaadin.teemu.clara.inflater.LayoutInflater;
+import org.vaadin.teemu.clara.inflater.LayoutInflaterException;
+import org.vaadin.teemu.clara.inflater.LayoutTemplate;
+
+/**
+ * Annotation processor generating a {@link org.vaadin.teemu.clara.LayoutFactory}
+ * for each class annotated with {@link CompileLayout}. The processor is
+ * registered as a service, so it runs whenever the {@code clara-processor}
+ * artifact is on the compile class path.
+ * <p>
+ * The generated factories create the same component hierarchy and bindings
+ * as Clara does at runtime with its default configuration. Attribute filters,
+ * id prefixes, extra attribute parsers and component providers are runtime
+ * features and thus not applied, elements that would need a custom component
+ * provider fail the build. Attributes without a setter or with an unsupported
+ * type are ignored like at runtime, but a warning is reported for them.
+ * </p>
+ */
+@SupportedAnnotationTypes("org.vaadin.teemu.clara.processor.CompileLayout")
+public class LayoutProcessor extends AbstractProcessor {
+
+    // Locations the layout files are looked up from in this order.
+    private static final StandardLocation[] LAYOUT_LOCATIONS = {
+            StandardLocation.CLASS_OUTPUT, StandardLocation.SOURCE_PATH,
+            StandardLocation.CLASS_PATH };
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations,
+            RoundEnvironment roundEnv) {
+        for (TypeElement controller : ElementFilter.typesIn(roundEnv
+                .getElementsAnnotatedWith(CompileLayout.class))) {
+            process(controller);
+        }
+        return true;
+    }
+
+    private void process(TypeElement controller) {
+        CompileLayout annotation = controller
+                .getAnnotation(CompileLayout.class);
+        ComponentTypes types = new ComponentTypes(
+                processingEnv.getElementUtils(), processingEnv.getTypeUtils());
+
+        LayoutTemplate template;
+        try {
+            template = readTemplate(annotation.value(),
+                    types.getPackageName(controller));
+        } catch (IOException e) {
+            error(controller, "Layout " + annotation.value()
+                    + " not found: " + e.getMessage());
+            return;
+        } catch (LayoutInflaterException e) {
+            error(controller, "Layout " + annotation.value()
+                    + " can't be parsed: " + e.getMessage());
+            return;
+        }
+
+        String className = annotation.className().length() > 0 ? annotation
+                .className() : getDefaultClassName(controller);
+        LayoutCompiler compiler = new LayoutCompiler(types, controller,
+                template, annotation.value(), className);
+        String source;
+        try {
+            source = compiler.compile();
+        } catch (LayoutCompilationException e) {
+            error(controller, e.getMessage());
+            return;
+        }
+        for (String warning : compiler.getWarnings()) {
+            processingEnv.getMessager().printMessage(Kind.WARNING, warning,
+                    controller);
+        }
+
+        String packageName = types.getPackageName(controller);
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(
+                    packageName.length() > 0 ? packageName + "." + className
+                            : className, controller);
+            Writer writer = file.openWriter();
+            try {
+                writer.write(source);
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            error(controller, "Couldn't write " + className + ": "
+                    + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the name of the generated class for the given controller, for
+     * example {@code MyViewLayout} or {@code Outer_InnerLayout} for nested
+     * classes.
+     */
+    private static String getDefaultClassName(TypeElement controller) {
+        StringBuilder name = new StringBuilder("Layout");
+        Element element = controller;
+        while (element instanceof TypeElement) {
+            name.insert(0, element.getSimpleName());
+            element = element.getEnclosingElement();
+            if (element instanceof TypeElement) {
+                name.insert(0, '_');
+            }
+        }
+        return name.toString();
+    }
+
+    private LayoutTemplate readTemplate(String path, String packageName)
+            throws IOException {
+        String relativeName = path;
+        if (path.startsWith("/")) {
+            packageName = "";
+            relativeName = path.substring(1);
+        }
+        IOException notFound = null;
+        for (StandardLocation location : LAYOUT_LOCATIONS) {
+            InputStream xml;
+            try {
+                FileObject file = processingEnv.getFiler().getResource(
+                        location, packageName, relativeName);
+                xml = file.openInputStream();
+            } catch (IOException e) {
+                notFound = e;
+                continue;
+            } catch (IllegalArgumentException e) {
+                // The location isn't supported by the compiler.
+                continue;
+            }
+            try {
+                return new LayoutInflater().compile(xml);
+            } finally {
+                xml.close();
+            }
+        }
+        throw notFound != null ? notFound : new IOException(path);
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Kind.ERROR, message, element);
+    }
+
+}
@@ -0,0 +1,452 @@
+package org.vaadin.teemu.clara.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.vaadin.teemu.clara.Clara;
+import org.vaadin.teemu.clara.LayoutFactory;
+import org.vaadin.teemu.clara.binder.annotation.UiField;
+
+import com.vaadin.data.Property;
+import com.vaadin.ui.AbstractOrderedLayout;
+import com.vaadin.ui.Alignment;
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Component;
+import com.vaadin.ui.HasComponents;
+import com.vaadin.ui.HorizontalLayout;
+import com.vaadin.ui.Label;
+import com.vaadin.ui.Layout;
+import com.vaadin.ui.Panel;
+import com.vaadin.ui.TextField;
+import com.vaadin.ui.VerticalLayout;
+
+/**
+ * Tests for {@link LayoutProcessor}. The test sources are compiled in process
+ * with the layout placed in the class output like the build does.
+ */
+public class LayoutProcessorTest {
+
+    private static final String IMPORTS = "package com.example;\n"
+            + "import org.vaadin.teemu.clara.binder.annotation.*;\n"
+            + "import org.vaadin.teemu.clara.processor.CompileLayout;\n"
+            + "import com.vaadin.ui.*;\n";
+
+    private File outputDirectory;
+    private DiagnosticCollector<JavaFileObject> diagnostics;
+
+    @Before
+    public void setUp() throws IOException {
+        outputDirectory = File.createTempFile("clara-processor", "");
+        outputDirectory.delete();
+        new File(outputDirectory, "com/example").mkdirs();
+        diagnostics = new DiagnosticCollector<JavaFileObject>();
+    }
+
+    @After
+    public void tearDown() {
+        delete(outputDirectory);
+    }
+
+    @Test
+    public void compile_validLayout_factoryCreatesAndBindsHierarchy()
+            throws Exception {
+        writeLayout("<VerticalLayout id=\"root\" margin=\"true\" "
+                + "xmlns=\"urn:import:com.vaadin.ui\" xmlns:l=\"urn:vaadin:parent\">"
+                + "<Button id=\"okButton\" caption=\"O&quot;K\" "
+                + "l:componentAlignment=\"MIDDLE_CENTER\" />"
+                + "<Panel><Label id=\"label\" value=\"Hello\" /></Panel>"
+                + "<HorizontalLayout><TextField id=\"name\" width=\"200px\" "
+                + "l:expandRatio=\"1.0\" /></HorizontalLayout>"
+                + "</VerticalLayout>");
+
+        assertTrue(getMessages(), compile(IMPORTS
+                + "@CompileLayout(\"View.xml\")\n"
+                + "public class View {\n"
+                + "    @UiField Button okButton;\n"
+                + "    @UiField(\"label\") Label label;\n"
+                + "    @UiField public TextField name = new TextField();\n"
+                + "    int clicks;\n"
+                + "    @UiHandler(\"okButton\")\n"
+                + "    void onOk(Button.ClickEvent event) { clicks++; }\n"
+                + "}"));
+
+        ClassLoader loader = new URLClassLoader(
+                new URL[] { outputDirectory.toURI().toURL() }, getClass()
+                        .getClassLoader());
+        Object controller = loader.loadClass("com.example.View").newInstance();
+        TextField name = (TextField) getField(controller, "name");
+        @SuppressWarnings("unchecked")
+        LayoutFactory<Object> factory = (LayoutFactory<Object>) loader
+                .loadClass("com.example.ViewLayout").newInstance();
+
+        VerticalLayout root = (VerticalLayout) factory.create(controller);
+
+        assertEquals("root", root.getId());
+        assertTrue(root.getMargin().hasTop());
+        assertEquals(3, root.getComponentCount());
+        Button button = (Button) root.getComponent(0);
+        assertEquals("O\"K", button.getCaption());
+        assertEquals(Alignment.MIDDLE_CENTER,
+                root.getComponentAlignment(button));
+        assertSame(button, getField(controller, "okButton"));
+        Label label = (Label) ((Panel) root.getComponent(1)).getContent();
+        assertEquals("Hello", label.getValue());
+        assertSame(label, getField(controller, "label"));
+        HorizontalLayout horizontal = (HorizontalLayout) root.getComponent(2);
+        assertSame(name, horizontal.getComponent(0));
+        assertEquals(1.0f, horizontal.getExpandRatio(name), 0.0f);
+        assertEquals(200.0f, name.getWidth(), 0.0f);
+
+        button.click();
+        assertEquals(1, getField(controller, "clicks"));
+    }
+
+    @Test
+    public void compile_withoutController_nothingBound() throws Exception {
+        writeLayout("<Button xmlns=\"urn:import:com.vaadin.ui\" id=\"b\" />");
+
+        assertTrue(getMessages(), compile(IMPORTS
+                + "@CompileLayout(value = \"View.xml\", className = \"Factory\")\n"
+                + "public class View {\n"
+                + "    @UiField Button b;\n"
+                + "}"));
+
+        ClassLoader loader = new URLClassLoader(
+                new URL[] { outputDirectory.toURI().toURL() }, getClass()
+                        .getClassLoader());
+        @SuppressWarnings("unchecked")
+        LayoutFactory<Object> factory = (LayoutFactory<Object>) loader
+                .loadClass("com.example.Factory").newInstance();
+
+        Button button = (Button) factory.create(null);
+
+        assertEquals("b", button.getId());
+        assertNull(button.getParent());
+    }
+
+    @Test
+    public void compile_unknownComponentClass_buildFails() throws Exception {
+        writeLayout("<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\">"
+                + "<NoSuchComponent /></VerticalLayout>");
+
+        assertFalse(compile(IMPORTS + "@CompileLayout(\"View.xml\")\n"
+                + "public class View {}"));
+        assertMessage("Class com.vaadin.ui.NoSuchComponent not found");
+    }
+
+    @Test
+    public void compile_uiFieldWithoutComponent_buildFails() throws Exception {
+        writeLayout("<Button xmlns=\"urn:import:com.vaadin.ui\" id=\"b\" />");
+
+        assertFalse(compile(IMPORTS + "@CompileLayout(\"View.xml\")\n"
+                + "public class View { @UiField Button missing; }"));
+        assertMessage("No component found for id: missing");
+    }
+
+    @Test
+    public void compile_privateField_buildFails() throws Exception {
+        writeLayout("<Button xmlns=\"urn:import:com.vaadin.ui\" id=\"b\" />");
+
+        assertFalse(compile(IMPORTS + "@CompileLayout(\"View.xml\")\n"
+                + "public class View { @UiField private Button b; }"));
+        assertMessage("com.example.View.b must not be private");
+    }
+
+    @Test
+    public void compile_invalidAttributeValue_buildFails() throws Exception {
+        writeLayout("<Button xmlns=\"urn:import:com.vaadin.ui\" tabIndex=\"first\" />");
+
+        assertFalse(compile(IMPORTS + "@CompileLayout(\"View.xml\")\n"
+                + "public class View {}"));
+        assertMessage("Invalid value \"first\" for attribute tabIndex");
+    }
+
+    @Test
+    public void compile_attributeWithoutSetter_warningReported()
+            throws Exception {
+        writeLayout("<Button xmlns=\"urn:import:com.vaadin.ui\" foo=\"bar\" />");
+
+        assertTrue(getMessages(), compile(IMPORTS
+                + "@CompileLayout(\"View.xml\")\n" + "public class View {}"));
+        assertMessage("No setter for attribute foo");
+    }
+
+    @Test
+    public void compile_lazyAttribute_ignoredWithoutWarning() throws Exception {
+        writeLayout("<TabSheet xmlns=\"urn:import:com.vaadin.ui\" "
+                + "xmlns:l=\"urn:vaadin:parent\"><Label />"
+                + "<VerticalLayout l:lazy=\"true\"><Label /></VerticalLayout>"
+                + "</TabSheet>");
+
+        assertTrue(getMessages(), compile(IMPORTS
+                + "@CompileLayout(\"View.xml\")\n" + "public class View {}"));
+        assertFalse(getMessages(), getMessages().contains("lazy"));
+    }
+
+    @Test
+    public void create_sameLayoutAndController_sameHierarchyAsRuntime()
+            throws Exception {
+        writeComparedLayout();
+        assertTrue(getMessages(), compile(IMPORTS
+                + "@CompileLayout(\"View.xml\")\n"
+                + "public class View {\n"
+                + "    @UiField Button okButton;\n"
+                + "    @UiField(\"label\") Label label;\n"
+                + "    @UiField(\"label\") Label sameLabel;\n"
+                + "    @UiField public TextField name = new TextField();\n"
+                + "    public int clicks;\n"
+                + "    @UiHandler(\"okButton\")\n"
+                + "    void onOk(Button.ClickEvent event) { clicks++; }\n"
+                + "}"));
+
+        assertSameAsRuntime("com.example.View", "com.example.ViewLayout");
+    }
+
+    @Test
+    public void create_componentOfOtherClassAssigned_sameHierarchyAsRuntime()
+            throws Exception {
+        writeComparedLayout();
+        assertTrue(getMessages(), compile(IMPORTS
+                + "@CompileLayout(\"View.xml\")\n"
+                + "public class View {\n"
+                + "    @UiField Button okButton;\n"
+                + "    @UiField Component label = new Button(\"Button\");\n"
+                + "    @UiField public AbstractTextField name ="
+                + " new TextField() {};\n"
+                + "    @UiField(\"name\") Object notComponent = \"text\";\n"
+                + "    public int clicks;\n"
+                + "    @UiHandler(\"okButton\")\n"
+                + "    void onOk(Button.ClickEvent event) { clicks++; }\n"
+                + "}"));
+
+        Component root = assertSameAsRuntime("com.example.View",
+                "com.example.ViewLayout");
+        String description = describe(root);
+        assertTrue(description,
+                description.contains("com.vaadin.ui.Button id=label"));
+    }
+
+    /**
+     * Creates the layout with the generated factory and with the runtime for
+     * two new controllers and verifies that the hierarchies, the bound fields
+     * and the {@code clicks} counted by the controller are the same.
+     *
+     * @return the root created by the generated factory.
+     */
+    private Component assertSameAsRuntime(String controllerClass,
+            String factoryClass) throws Exception {
+        ClassLoader loader = new URLClassLoader(
+                new URL[] { outputDirectory.toURI().toURL() }, getClass()
+                        .getClassLoader());
+        Object runtimeController = loader.loadClass(controllerClass)
+                .newInstance();
+        Object compiledController = loader.loadClass(controllerClass)
+                .newInstance();
+        @SuppressWarnings("unchecked")
+        LayoutFactory<Object> factory = (LayoutFactory<Object>) loader
+                .loadClass(factoryClass).newInstance();
+
+        Component runtimeRoot = Clara.create("View.xml", runtimeController);
+        Component compiledRoot = factory.create(compiledController);
+
+        assertEquals(describe(runtimeRoot), describe(compiledRoot));
+        for (Field field : runtimeController.getClass().getDeclaredFields()) {
+            if (field.isAnnotationPresent(UiField.class)) {
+                field.setAccessible(true);
+                assertEquals(field.getName(),
+                        getPath(runtimeRoot, field.get(runtimeController)),
+                        getPath(compiledRoot, field.get(compiledController)));
+            }
+        }
+        Button runtimeButton = (Button) Clara.findComponentById(runtimeRoot,
+                "okButton");
+        Button compiledButton = (Button) Clara.findComponentById(
+                compiledRoot, "okButton");
+        runtimeButton.click();
+        compiledButton.click();
+        assertEquals(getField(runtimeController, "clicks"),
+                getField(compiledController, "clicks"));
+        return compiledRoot;
+    }
+
+    private void writeComparedLayout() throws IOException {
+        writeLayout("<VerticalLayout id=\"root\" margin=\"true\" "
+                + "spacing=\"true\" xmlns=\"urn:import:com.vaadin.ui\" "
+                + "xmlns:l=\"urn:vaadin:parent\">"
+                + "<Button id=\"okButton\" caption=\"OK\" styleName=\"primary\" "
+                + "l:componentAlignment=\"MIDDLE_CENTER\" />"
+                + "<Panel caption=\"Panel\"><Label id=\"label\" value=\"Hello\" "
+                + "width=\"50%\" /></Panel>"
+                + "<HorizontalLayout><TextField id=\"name\" width=\"200px\" "
+                + "inputPrompt=\"Name\" l:expandRatio=\"1.0\" />"
+                + "<CheckBox caption=\"Check\" enabled=\"false\" />"
+                + "</HorizontalLayout></VerticalLayout>");
+    }
+
+    /**
+     * Describes the properties of the components in the hierarchy the layouts
+     * of the tests assign.
+     */
+    private static String describe(Component component) {
+        StringBuilder description = new StringBuilder();
+        describe(component, "", description);
+        return description.toString();
+    }
+
+    private static void describe(Component component, String indent,
+            StringBuilder out) {
+        out.append(indent).append(component.getClass().getName())
+                .append(" id=").append(component.getId())
+                .append(" caption=").append(component.getCaption())
+                .append(" width=").append(component.getWidth())
+                .append(component.getWidthUnits()).append(" style=")
+                .append(component.getStyleName()).append(" enabled=")
+                .append(component.isEnabled());
+        if (component instanceof Property) {
+            out.append(" value=").append(((Property<?>) component).getValue());
+        }
+        if (component instanceof TextField) {
+            out.append(" inputPrompt=").append(
+                    ((TextField) component).getInputPrompt());
+        }
+        if (component instanceof Layout.MarginHandler) {
+            out.append(" margin=").append(
+                    ((Layout.MarginHandler) component).getMargin()
+                            .getBitMask());
+        }
+        if (component instanceof AbstractOrderedLayout) {
+            out.append(" spacing=").append(
+                    ((AbstractOrderedLayout) component).isSpacing());
+        }
+        if (component.getParent() instanceof AbstractOrderedLayout) {
+            AbstractOrderedLayout parent = (AbstractOrderedLayout) component
+                    .getParent();
+            out.append(" alignment=")
+                    .append(parent.getComponentAlignment(component))
+                    .append(" expandRatio=")
+                    .append(parent.getExpandRatio(component));
+        }
+        out.append('\n');
+        if (component instanceof HasComponents) {
+            for (Component child : (HasComponents) component) {
+                describe(child, indent + "  ", out);
+            }
+        }
+    }
+
+    /**
+     * Returns the child indexes from the root to the given component or
+     * {@code null} if it isn't in the hierarchy.
+     */
+    private static String getPath(Component root, Object component) {
+        if (root == component) {
+            return "";
+        }
+        if (root instanceof HasComponents) {
+            int index = 0;
+            for (Component child : (HasComponents) root) {
+                String path = getPath(child, component);
+                if (path != null) {
+                    return "/" + index + path;
+                }
+                index++;
+            }
+        }
+        return null;
+    }
+
+    private void writeLayout(String xml) throws IOException {
+        OutputStream out = new FileOutputStream(new File(outputDirectory,
+                "com/example/View.xml"));
+        try {
+            out.write(xml.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    private boolean compile(String controllerSource) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        String classPath = System.getProperty("surefire.test.class.path",
+                System.getProperty("java.class.path"));
+        List<String> options = Arrays.asList("-d",
+                outputDirectory.getAbsolutePath(), "-classpath", classPath,
+                "-processor", LayoutProcessor.class.getName());
+        JavaFileObject source = new SourceFile("com/example/View.java",
+                controllerSource);
+        return compiler.getTask(null, null, diagnostics, options, null,
+                Collections.singletonList(source)).call();
+    }
+
+    private String getMessages() {
+        StringBuilder messages = new StringBuilder();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics
+                .getDiagnostics()) {
+            messages.append(diagnostic.getMessage(null)).append('\n');
+        }
+        return messages.toString();
+    }
+
+    private void assertMessage(String expected) {
+        String messages = getMessages();
+        assertTrue(messages, messages.contains(expected));
+    }
+
+    private static Object getField(Object object, String name)
+            throws Exception {
+        Field field = object.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(object);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static class SourceFile extends SimpleJavaFileObject {
+
+        private final String content;
+
+        public SourceFile(String path, String content) {
+            super(URI.create("string:///" + path), Kind.SOURCE);
+            this.content = content;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return content;
+        }
+    }
+
+}
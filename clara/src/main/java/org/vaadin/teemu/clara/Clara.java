@@ -8,6 +8,7 @@ import java.util.List;
 import org.vaadin.teemu.clara.binder.BinderException;
 import org.vaadin.teemu.clara.inflater.ComponentProvider;
 import org.vaadin.teemu.clara.inflater.LayoutInflaterException;
+import org.vaadin.teemu.clara.inflater.LayoutTemplateCache;
 import org.vaadin.teemu.clara.inflater.filter.AttributeFilter;
 
 import com.vaadin.ui.Component;
@@ -139,6 +140,10 @@ public class Clara {
      * modifications (or example localized translations) to any attributes
      * present in the XML representation.
      * </p>
+     * <p>
+     * The parsed XML is cached in the shared {@link LayoutTemplateCache}. Use
+     * {@link ClaraBuilder#withTemplateCache(LayoutTemplateCache)} to opt out.
+     * </p>
      *
      * @param xmlClassResourceFileName
      *            filename of the XML representation (within classpath, relative
@@ -178,6 +183,10 @@ public class Clara {
      * modifications (or example localized translations) to any attributes
      * present in the XML representation.
      * </p>
+     * <p>
+     * The parsed XML is cached in the shared {@link LayoutTemplateCache}. Use
+     * {@link ClaraBuilder#withTemplateCache(LayoutTemplateCache)} to opt out.
+     * </p>
      *
      * @param xmlClassResourceFileName
      *            filename of the XML representation (within classpath, relative
@@ -200,9 +209,10 @@ public class Clara {
     public static Component create(String xmlClassResourceFileName,
             Object controller, List<ComponentProvider> componentProviders,
             AttributeFilter... attributeFilters) {
-        InputStream xml = controller.getClass().getResourceAsStream(
-                xmlClassResourceFileName);
-        return create(xml, controller, componentProviders, attributeFilters);
+        return new ClaraBuilder().withController(controller)
+                .withComponentProviders(componentProviders)
+                .withAttributeFilters(attributeFilters)
+                .createFrom(xmlClassResourceFileName);
     }
 
     /**
@@ -1,20 +1,29 @@
 package org.vaadin.teemu.clara;
 
 import java.io.InputStream;
+import java.io.Serializable;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
-import org.vaadin.teemu.clara.binder.Binder;
 import org.vaadin.teemu.clara.binder.BinderException;
 import org.vaadin.teemu.clara.inflater.ComponentProvider;
 import org.vaadin.teemu.clara.inflater.InflaterListener;
 import org.vaadin.teemu.clara.inflater.LayoutInflater;
 import org.vaadin.teemu.clara.inflater.LayoutInflaterException;
+import org.vaadin.teemu.clara.inflater.LayoutTemplate;
+import org.vaadin.teemu.clara.inflater.LayoutTemplateCache;
+import org.vaadin.teemu.clara.inflater.RecyclingComponentProvider;
+import org.vaadin.teemu.clara.inflater.TemplateParser;
 import org.vaadin.teemu.clara.inflater.filter.AttributeContext;
 import org.vaadin.teemu.clara.inflater.filter.AttributeFilter;
 import org.vaadin.teemu.clara.inflater.filter.AttributeFilterException;
+import org.vaadin.teemu.clara.inflater.filter.SelectiveAttributeFilter;
 import org.vaadin.teemu.clara.inflater.parser.AttributeParser;
 
 import com.vaadin.ui.Component;
@@ -33,6 +42,14 @@ public class ClaraBuilder {
     private final List<ComponentProvider> componentProviders = new ArrayList<ComponentProvider>();
 
     private String idPrefix = "";
+    private LayoutTemplateCache templateCache = LayoutTemplateCache.getShared();
+    private TemplateParser templateParser;
+    private RecyclingComponentProvider recyclingComponentProvider;
+    private ForkJoinPool forkJoinPool;
+    private int parallelThreshold = LayoutInflater.DEFAULT_PARALLEL_THRESHOLD;
+    private boolean generatedListeners;
+    // Engine for the current configuration, null after it has changed.
+    private ClaraEngine engine;
 
     ClaraBuilder() {
         // Package-private constructor. Create instances with Clara.build().
@@ -76,6 +93,7 @@ public class ClaraBuilder {
      */
     public ClaraBuilder withIdPrefix(String idPrefix) {
         this.idPrefix = idPrefix != null ? idPrefix.trim() : "";
+        engine = null;
         return this;
     }
 
@@ -83,6 +101,151 @@ public class ClaraBuilder {
         return idPrefix;
     }
 
+    /**
+     * Sets the {@link LayoutTemplateCache} used by
+     * {@link #createFrom(String)} to avoid parsing the same classpath resource
+     * repeatedly. By default the shared cache (see
+     * {@link LayoutTemplateCache#getShared()}) is used.
+     *
+     * @param templateCache
+     *            cache for compiled templates, {@code null} disables caching.
+     * @return this builder
+     */
+    public ClaraBuilder withTemplateCache(LayoutTemplateCache templateCache) {
+        this.templateCache = templateCache;
+        engine = null;
+        return this;
+    }
+
+    public LayoutTemplateCache getTemplateCache() {
+        return templateCache;
+    }
+
+    /**
+     * Sets the {@link TemplateParser} used to parse the XML, for example a
+     * {@link org.vaadin.teemu.clara.inflater.StaxTemplateParser}. By default a
+     * {@link org.vaadin.teemu.clara.inflater.SaxTemplateParser} is used.
+     *
+     * @param templateParser
+     *            parser for the XML, {@code null} restores the default.
+     * @return this builder
+     */
+    public ClaraBuilder withTemplateParser(TemplateParser templateParser) {
+        this.templateParser = templateParser;
+        engine = null;
+        return this;
+    }
+
+    public TemplateParser getTemplateParser() {
+        return templateParser;
+    }
+
+    /**
+     * Sets a {@link RecyclingComponentProvider} that is used instead of
+     * creating a new instance for every component of an {@code urn:import:}
+     * namespace. Components created by the {@link ClaraEngine} built with
+     * this builder are returned to the provider with
+     * {@link ClaraEngine#release(Component)}.
+     *
+     * @param recyclingComponentProvider
+     *            provider of recycled components, {@code null} disables
+     *            recycling.
+     * @return this builder
+     */
+    public ClaraBuilder withComponentRecycling(
+            RecyclingComponentProvider recyclingComponentProvider) {
+        this.recyclingComponentProvider = recyclingComponentProvider;
+        engine = null;
+        return this;
+    }
+
+    public RecyclingComponentProvider getRecyclingComponentProvider() {
+        return recyclingComponentProvider;
+    }
+
+    /**
+     * Inflates large layouts in parallel with the given {@link ForkJoinPool}
+     * (see {@link LayoutInflater#setForkJoinPool(ForkJoinPool)}). Subtrees
+     * with at least {@link LayoutInflater#DEFAULT_PARALLEL_THRESHOLD}
+     * elements are inflated in separate tasks.
+     * <p>
+     * Components, component providers, attribute filters and parsers are
+     * created and called on the threads of the pool, so they must be
+     * thread-safe and must not rely on thread local state such as
+     * {@code UI.getCurrent()}. {@link InflaterListener#componentInflated()}
+     * is still always called on the thread that inflates the layout, for the
+     * components of a subtree inflated in a task once the subtree has been
+     * attached.
+     * </p>
+     *
+     * @param forkJoinPool
+     *            the pool to use, {@code null} to inflate sequentially (the
+     *            default).
+     * @return this builder
+     */
+    public ClaraBuilder withParallelInflation(ForkJoinPool forkJoinPool) {
+        return withParallelInflation(forkJoinPool,
+                LayoutInflater.DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Inflates large layouts in parallel with the given {@link ForkJoinPool}
+     * (see {@link LayoutInflater#setForkJoinPool(ForkJoinPool)}).
+     *
+     * @param forkJoinPool
+     *            the pool to use, {@code null} to inflate sequentially (the
+     *            default).
+     * @param parallelThreshold
+     *            the minimum number of elements in a subtree that is inflated
+     *            in a separate task.
+     * @return this builder
+     * @throws IllegalArgumentException
+     *             if {@code parallelThreshold} is less than 1.
+     */
+    public ClaraBuilder withParallelInflation(ForkJoinPool forkJoinPool,
+            int parallelThreshold) {
+        if (parallelThreshold < 1) {
+            throw new IllegalArgumentException(
+                    "Parallel threshold must be at least 1.");
+        }
+        this.forkJoinPool = forkJoinPool;
+        this.parallelThreshold = parallelThreshold;
+        engine = null;
+        return this;
+    }
+
+    public ForkJoinPool getForkJoinPool() {
+        return forkJoinPool;
+    }
+
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * Creates the listeners of
+     * {@link org.vaadin.teemu.clara.binder.annotation.UiHandler} methods from
+     * listener classes generated once per listener interface instead of
+     * {@link java.lang.reflect.Proxy} instances (see
+     * {@link org.vaadin.teemu.clara.binder.Binder#Binder(String, boolean)}).
+     * The generated listeners call the handler method directly, which makes
+     * frequent events cheaper. Listener interfaces and handler methods that
+     * can't be implemented this way still get a proxy. Disabled by default.
+     *
+     * @param generatedListeners
+     *            {@code true} to use generated listener classes when possible.
+     * @return this builder
+     */
+    public ClaraBuilder withGeneratedListeners(boolean generatedListeners) {
+        this.generatedListeners = generatedListeners;
+        engine = null;
+        return this;
+    }
+
+    public boolean isGeneratedListeners() {
+        return generatedListeners;
+    }
+
     /**
      * Adds an attribute filter.
      *
@@ -92,6 +255,7 @@ public class ClaraBuilder {
      */
     public ClaraBuilder withAttributeFilter(AttributeFilter filter) {
         attributeFilters.add(filter);
+        engine = null;
         return this;
     }
 
@@ -104,6 +268,7 @@ public class ClaraBuilder {
      */
     public ClaraBuilder withAttributeFilters(AttributeFilter... filters) {
         attributeFilters.addAll(Arrays.asList(filters));
+        engine = null;
         return this;
     }
 
@@ -138,9 +303,17 @@ public class ClaraBuilder {
      */
     public ClaraBuilder withComponentProviders(List<ComponentProvider> providers) {
         componentProviders.addAll(providers);
+        engine = null;
         return this;
     }
 
+    /**
+     * @return Unmodifiable list of the current component providers
+     */
+    public List<ComponentProvider> getComponentProviders() {
+        return Collections.unmodifiableList(componentProviders);
+    }
+
     /**
      * @return Unmodifiable list of the current attribute filters
      */
@@ -167,6 +340,7 @@ public class ClaraBuilder {
      */
     public ClaraBuilder withAttributeParser(AttributeParser parser) {
         attributeParsers.add(parser);
+        engine = null;
         return this;
     }
 
@@ -180,6 +354,7 @@ public class ClaraBuilder {
      */
     public ClaraBuilder withAttributeParsers(AttributeParser... parsers) {
         attributeParsers.addAll(Arrays.asList(parsers));
+        engine = null;
         return this;
     }
 
@@ -205,17 +380,31 @@ public class ClaraBuilder {
      *             if an error is encountered during the binding.
      */
     public Component createFrom(InputStream xml) {
-        Binder binder = new Binder(idPrefix);
-
-        // Inflate the XML to a component (tree).
-        LayoutInflater inflater = createInflater();
-        Component result = inflater.inflate(xml, binder
-                .getAlreadyAssignedFields(controller), componentProviders
-                .toArray(new ComponentProvider[componentProviders.size()]));
+        return getEngine().createFrom(xml, controller);
+    }
 
-        // Bind to controller.
-        binder.bind(result, controller);
-        return result;
+    /**
+     * Returns a {@link Component} that is inflated from the given
+     * {@link LayoutTemplate} and binds the resulting {@link Component} to the
+     * {@code controller} object set in this builder.
+     * <p>
+     * Use this method instead of {@link #createFrom(InputStream)} when the
+     * same layout is inflated repeatedly, as the template has already been
+     * parsed.
+     * </p>
+     *
+     * @param template
+     *            {@link LayoutTemplate} compiled with
+     *            {@link LayoutInflater#compile(InputStream)}.
+     * @return a {@link Component} that is inflated from the template and bound
+     *         to the given {@code controller}.
+     * @throws LayoutInflaterException
+     *             if an error is encountered during the layout inflation.
+     * @throws BinderException
+     *             if an error is encountered during the binding.
+     */
+    public Component createFrom(LayoutTemplate template) {
+        return getEngine().createFrom(template, controller);
     }
 
     /**
@@ -227,6 +416,11 @@ public class ClaraBuilder {
      * {@code controller} object (if set, or otherwise relative to this class)
      * or as an absolute path.
      * </p>
+     * <p>
+     * The parsed XML is stored in the {@link LayoutTemplateCache} of this
+     * builder, so subsequent calls for the same resource don't need to parse
+     * the XML again (see {@link #withTemplateCache(LayoutTemplateCache)}).
+     * </p>
      *
      * @param xmlClassResourceFileName
      *            filename of the XML representation (within classpath, relative
@@ -241,14 +435,98 @@ public class ClaraBuilder {
      *             if an error is encountered during the binding.
      */
     public Component createFrom(String xmlClassResourceFileName) {
-        Object resourceRoot = controller != null ? controller : this;
-        InputStream xml = resourceRoot.getClass().getResourceAsStream(
-                xmlClassResourceFileName);
-        return createFrom(xml);
+        return getEngine().createFrom(xmlClassResourceFileName, controller);
+    }
+
+    /**
+     * Creates a component like {@link #createFrom(InputStream)}, but parses
+     * the XML and inflates the component on the given {@code executor}. See
+     * {@link ClaraEngine#createFromAsync(InputStream, Object, Executor)}.
+     *
+     * @param xml
+     *            XML representation.
+     * @param executor
+     *            the executor to inflate the component with.
+     * @return a future completed with the inflated and bound component.
+     */
+    public CompletableFuture<Component> createFromAsync(InputStream xml,
+            Executor executor) {
+        return getEngine().createFromAsync(xml, controller, executor);
+    }
+
+    /**
+     * Creates a component like {@link #createFrom(LayoutTemplate)}, but
+     * inflates it on the given {@code executor}. See
+     * {@link ClaraEngine#createFromAsync(InputStream, Object, Executor)}.
+     *
+     * @param template
+     *            {@link LayoutTemplate} compiled with
+     *            {@link LayoutInflater#compile(InputStream)}.
+     * @param executor
+     *            the executor to inflate the component with.
+     * @return a future completed with the inflated and bound component.
+     */
+    public CompletableFuture<Component> createFromAsync(
+            LayoutTemplate template, Executor executor) {
+        return getEngine().createFromAsync(template, controller, executor);
+    }
+
+    /**
+     * Creates a component like {@link #createFrom(String)}, but reads the XML
+     * file and inflates the component on the given {@code executor}. See
+     * {@link ClaraEngine#createFromAsync(InputStream, Object, Executor)}.
+     *
+     * @param xmlClassResourceFileName
+     *            filename of the XML representation (within classpath, relative
+     *            to {@code controller}'s class (if set, else relative to this
+     *            object) or absolute path).
+     * @param executor
+     *            the executor to inflate the component with.
+     * @return a future completed with the inflated and bound component.
+     */
+    public CompletableFuture<Component> createFromAsync(
+            String xmlClassResourceFileName, Executor executor) {
+        return getEngine().createFromAsync(xmlClassResourceFileName,
+                controller, executor);
+    }
+
+    /**
+     * Returns an immutable {@link ClaraEngine} with the current configuration
+     * of this builder (except the controller, which is given separately for
+     * each component created with the engine). Later changes to this builder
+     * don't affect the returned engine.
+     * <p>
+     * Use a shared engine instead of this builder when components are created
+     * repeatedly with the same configuration, for example in every session of
+     * an application.
+     * </p>
+     *
+     * @return a new {@link ClaraEngine}.
+     */
+    public ClaraEngine buildEngine() {
+        return new ClaraEngine(this);
+    }
+
+    /**
+     * Returns the engine used by the {@code createFrom} methods. It is reused
+     * until the configuration changes, so that the caches of its inflater
+     * (for example the applicable attribute filters of each setter) are kept
+     * between calls.
+     */
+    private ClaraEngine getEngine() {
+        if (engine == null) {
+            engine = buildEngine();
+        }
+        return engine;
     }
 
     LayoutInflater createInflater() {
         LayoutInflater inflater = new LayoutInflater();
+        if (templateParser != null) {
+            inflater.setTemplateParser(templateParser);
+        }
+        inflater.setForkJoinPool(forkJoinPool);
+        inflater.setParallelThreshold(parallelThreshold);
         for (AttributeFilter filter : attributeFilters) {
             inflater.addAttributeFilter(filter);
         }
@@ -266,7 +544,10 @@ public class ClaraBuilder {
     /**
      * AttributeFilter to add a prefix to the id of inflated components.
      */
-    private static class IdPrefixAttributeFilter implements AttributeFilter {
+    private static class IdPrefixAttributeFilter implements
+            SelectiveAttributeFilter, Serializable {
+
+        private static final long serialVersionUID = 1L;
 
         private final String idPrefix;
 
@@ -284,5 +565,10 @@ public class ClaraBuilder {
             }
             attributeContext.proceed();
         }
+
+        @Override
+        public boolean isApplicableFor(Class<?> targetClass, Method setter) {
+            return "setId".equals(setter.getName());
+        }
     }
 }
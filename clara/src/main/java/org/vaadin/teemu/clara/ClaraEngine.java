@@ -0,0 +1,606 @@
+package org.vaadin.teemu.clara;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+import org.vaadin.teemu.clara.binder.Binder;
+import org.vaadin.teemu.clara.binder.BinderException;
+import org.vaadin.teemu.clara.binder.annotation.UiField;
+import org.vaadin.teemu.clara.inflater.ComponentProvider;
+import org.vaadin.teemu.clara.inflater.InflatedLayout;
+import org.vaadin.teemu.clara.inflater.LayoutInflater;
+import org.vaadin.teemu.clara.inflater.LayoutInflaterException;
+import org.vaadin.teemu.clara.inflater.LayoutTemplate;
+import org.vaadin.teemu.clara.inflater.LayoutTemplateCache;
+import org.vaadin.teemu.clara.inflater.LazyFragment;
+import org.vaadin.teemu.clara.inflater.OverrideMapComponentProvider;
+import org.vaadin.teemu.clara.inflater.RecyclingComponentProvider;
+import org.vaadin.teemu.clara.inflater.filter.AttributeFilter;
+import org.vaadin.teemu.clara.inflater.parser.AttributeParser;
+
+import com.vaadin.server.VaadinSession;
+import com.vaadin.ui.Component;
+import com.vaadin.ui.UI;
+
+/**
+ * Immutable Clara configuration that creates and binds components. Create
+ * instances with {@link ClaraBuilder#buildEngine()}.
+ * <p>
+ * The engine sets up its {@link LayoutInflater} (attribute handlers, parsers
+ * and filters) only once, so creating a component doesn't repeat the
+ * configuration work done by each {@code createFrom} call of
+ * {@link ClaraBuilder}. Instances are thread-safe and intended to be shared,
+ * for example one instance per application. Unlike {@link ClaraBuilder}, the
+ * controller is given separately for each created component.
+ * </p>
+ * <p>
+ * Note that the configured {@link AttributeFilter}s, {@link AttributeParser}s
+ * and {@link ComponentProvider}s are shared as well, so they must be
+ * thread-safe too.
+ * </p>
+ */
+public final class ClaraEngine {
+
+    private final String idPrefix;
+    private final boolean generatedListeners;
+    private final LayoutTemplateCache templateCache;
+    private final List<AttributeFilter> attributeFilters;
+    private final List<AttributeParser> attributeParsers;
+    private final List<ComponentProvider> componentProviders;
+    private final RecyclingComponentProvider recyclingComponentProvider;
+    private final ComponentProvider importComponentProvider;
+    private final LayoutInflater inflater;
+
+    ClaraEngine(ClaraBuilder builder) {
+        idPrefix = builder.getIdPrefix();
+        generatedListeners = builder.isGeneratedListeners();
+        templateCache = builder.getTemplateCache();
+        attributeFilters = Collections
+                .unmodifiableList(new ArrayList<AttributeFilter>(builder
+                        .getAttributeFilters()));
+        attributeParsers = Collections
+                .unmodifiableList(new ArrayList<AttributeParser>(builder
+                        .getAttributeParsers()));
+        componentProviders = Collections
+                .unmodifiableList(new ArrayList<ComponentProvider>(builder
+                        .getComponentProviders()));
+        recyclingComponentProvider = builder.getRecyclingComponentProvider();
+        inflater = builder.createInflater();
+        importComponentProvider = recyclingComponentProvider != null ? recyclingComponentProvider
+                : inflater.getDefaultComponentProvider();
+    }
+
+    public String getIdPrefix() {
+        return idPrefix;
+    }
+
+    public LayoutTemplateCache getTemplateCache() {
+        return templateCache;
+    }
+
+    /**
+     * @return Unmodifiable list of the attribute filters
+     */
+    public List<AttributeFilter> getAttributeFilters() {
+        return attributeFilters;
+    }
+
+    /**
+     * @return Unmodifiable list of the additional attribute parsers
+     */
+    public List<AttributeParser> getAttributeParsers() {
+        return attributeParsers;
+    }
+
+    /**
+     * @return Unmodifiable list of the additional component providers
+     */
+    public List<ComponentProvider> getComponentProviders() {
+        return componentProviders;
+    }
+
+    /**
+     * @return the {@link RecyclingComponentProvider} of this engine, or
+     *         {@code null} if components are not recycled.
+     */
+    public RecyclingComponentProvider getRecyclingComponentProvider() {
+        return recyclingComponentProvider;
+    }
+
+    /**
+     * Releases a component (tree) created by this engine for reuse by later
+     * {@code createFrom} calls. Does nothing if the engine was built without
+     * a {@link RecyclingComponentProvider} (see
+     * {@link ClaraBuilder#withComponentRecycling(RecyclingComponentProvider)}
+     * ).
+     * <p>
+     * The released components must not be used by the application anymore.
+     * </p>
+     *
+     * @param component
+     *            root of the component tree to release.
+     */
+    public void release(Component component) {
+        if (recyclingComponentProvider != null) {
+            recyclingComponentProvider.release(component);
+        }
+    }
+
+    /**
+     * Parses the given {@code xml} into a {@link LayoutTemplate} that can be
+     * passed to {@link #createFrom(LayoutTemplate, Object)} any number of
+     * times.
+     *
+     * @param xml
+     *            XML representation.
+     * @return the parsed {@link LayoutTemplate}.
+     * @throws LayoutInflaterException
+     *             in case of an error while parsing the XML.
+     */
+    public LayoutTemplate compile(InputStream xml) {
+        return inflater.compile(xml);
+    }
+
+    /**
+     * Returns a {@link Component} that is read from the XML representation
+     * given as {@link InputStream} and binds the resulting {@link Component} to
+     * the given {@code controller} object.
+     *
+     * @param xml
+     *            XML representation.
+     * @param controller
+     *            controller object for binding ({@code null} allowed).
+     * @return a {@link Component} that is read from the XML representation and
+     *         bound to the given {@code controller}.
+     * @throws LayoutInflaterException
+     *             if an error is encountered during the layout inflation.
+     * @throws BinderException
+     *             if an error is encountered during the binding.
+     */
+    public Component createFrom(InputStream xml, Object controller) {
+        return createFrom(inflater.compile(xml), controller);
+    }
+
+    /**
+     * Returns a {@link Component} that is inflated from the given
+     * {@link LayoutTemplate} and binds the resulting {@link Component} to the
+     * given {@code controller} object.
+     * <p>
+     * The children of elements marked with the {@code lazy="true"} layout
+     * attribute are inflated only when they are needed (see
+     * {@link LazyFragment}). Their components are bound to the
+     * {@code controller} only then, so the {@link UiField} fields bound to
+     * them are {@code null} until the fragment is inflated.
+     * </p>
+     *
+     * @param template
+     *            {@link LayoutTemplate} compiled with
+     *            {@link #compile(InputStream)}.
+     * @param controller
+     *            controller object for binding ({@code null} allowed).
+     * @return a {@link Component} that is inflated from the template and bound
+     *         to the given {@code controller}.
+     * @throws LayoutInflaterException
+     *             if an error is encountered during the layout inflation.
+     * @throws BinderException
+     *             if an error is encountered during the binding.
+     */
+    public Component createFrom(LayoutTemplate template, Object controller) {
+        return inflate(template, controller).bind();
+    }
+
+    /**
+     * Creates a component like {@link #createFrom(InputStream, Object)}, but
+     * parses the XML and inflates the component (tree) on the given
+     * {@code executor}, so that a heavy layout can be prepared while the
+     * current view is still in use.
+     * <p>
+     * The component is bound to the {@code controller} while holding the lock
+     * of the {@link VaadinSession} current when this method is called (if
+     * any). The session and the {@link UI} current when this method is called
+     * are also set as the current instances while binding, so the controller
+     * can use {@link VaadinSession#getCurrent()} and {@link UI#getCurrent()}.
+     * The returned future is completed after the lock has been released, so
+     * dependent actions (for example registered with
+     * {@link CompletableFuture#thenAccept(java.util.function.Consumer)}) must
+     * lock the session themselves before attaching the component to the UI.
+     * </p>
+     *
+     * @param xml
+     *            XML representation.
+     * @param controller
+     *            controller object for binding ({@code null} allowed).
+     * @param executor
+     *            the executor to inflate the component with.
+     * @return a future completed with the inflated and bound component, or
+     *         exceptionally with a {@link LayoutInflaterException} or a
+     *         {@link BinderException}.
+     */
+    public CompletableFuture<Component> createFromAsync(final InputStream xml,
+            Object controller, Executor executor) {
+        return createFromAsync(new Supplier<LayoutTemplate>() {
+
+            @Override
+            public LayoutTemplate get() {
+                return compile(xml);
+            }
+        }, controller, executor);
+    }
+
+    /**
+     * Creates a component like {@link #createFrom(LayoutTemplate, Object)},
+     * but inflates it on the given {@code executor}. See
+     * {@link #createFromAsync(InputStream, Object, Executor)} for how the
+     * component is bound.
+     *
+     * @param template
+     *            {@link LayoutTemplate} compiled with
+     *            {@link #compile(InputStream)}.
+     * @param controller
+     *            controller object for binding ({@code null} allowed).
+     * @param executor
+     *            the executor to inflate the component with.
+     * @return a future completed with the inflated and bound component, or
+     *         exceptionally with a {@link LayoutInflaterException} or a
+     *         {@link BinderException}.
+     */
+    public CompletableFuture<Component> createFromAsync(
+            final LayoutTemplate template, Object controller, Executor executor) {
+        return createFromAsync(new Supplier<LayoutTemplate>() {
+
+            @Override
+            public LayoutTemplate get() {
+                return template;
+            }
+        }, controller, executor);
+    }
+
+    /**
+     * Creates a component like {@link #createFrom(String, Object)}, but reads
+     * the XML file and inflates the component on the given {@code executor}.
+     * See {@link #createFromAsync(InputStream, Object, Executor)} for how the
+     * component is bound.
+     *
+     * @param xmlClassResourceFileName
+     *            filename of the XML representation (within classpath, relative
+     *            to {@code controller}'s class (if not {@code null}, else
+     *            relative to this class) or absolute path).
+     * @param controller
+     *            controller object for binding ({@code null} allowed).
+     * @param executor
+     *            the executor to inflate the component with.
+     * @return a future completed with the inflated and bound component, or
+     *         exceptionally with a {@link LayoutInflaterException} or a
+     *         {@link BinderException}.
+     */
+    public CompletableFuture<Component> createFromAsync(
+            final String xmlClassResourceFileName, final Object controller,
+            Executor executor) {
+        return createFromAsync(new Supplier<LayoutTemplate>() {
+
+            @Override
+            public LayoutTemplate get() {
+                return getTemplate(xmlClassResourceFileName, controller);
+            }
+        }, controller, executor);
+    }
+
+    private CompletableFuture<Component> createFromAsync(
+            final Supplier<LayoutTemplate> template, final Object controller,
+            Executor executor) {
+        // The session and UI of the calling (request) thread.
+        final VaadinSession session = VaadinSession.getCurrent();
+        final UI ui = UI.getCurrent();
+        final CompletableFuture<Component> result = new CompletableFuture<Component>();
+        executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                Inflation inflation;
+                try {
+                    inflation = inflate(template.get(), controller);
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                    return;
+                }
+
+                Component component;
+                try {
+                    component = bind(inflation, session, ui);
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                    return;
+                }
+                // Completed outside the lock, so that dependent actions don't
+                // run while holding it.
+                result.complete(component);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Binds the given {@code inflation} while holding the lock of the given
+     * {@code session} (if any) with the session and the given {@code ui} set
+     * as the current instances. The previous current instances are restored
+     * afterwards.
+     */
+    private static Component bind(Inflation inflation, VaadinSession session,
+            UI ui) {
+        if (session == null) {
+            return inflation.bind();
+        }
+        session.lock();
+        VaadinSession previousSession = VaadinSession.getCurrent();
+        UI previousUI = UI.getCurrent();
+        try {
+            VaadinSession.setCurrent(session);
+            UI.setCurrent(ui);
+            return inflation.bind();
+        } finally {
+            VaadinSession.setCurrent(previousSession);
+            UI.setCurrent(previousUI);
+            session.unlock();
+        }
+    }
+
+    /**
+     * Inflates the given {@code template} without binding it yet.
+     */
+    private Inflation inflate(LayoutTemplate template, Object controller) {
+        Inflation inflation = new Inflation(new Binder(idPrefix,
+                generatedListeners), controller);
+        inflation.root = inflater.inflate(template,
+                getProviders(inflation.binder, controller),
+                inflation.componentsById, inflation.fragments);
+        return inflation;
+    }
+
+    /**
+     * Creates and binds a component like
+     * {@link #createFrom(LayoutTemplate, Object)}, but returns an
+     * {@link InflatedLayout} that can later be updated to a changed template
+     * with {@link #update(InflatedLayout, LayoutTemplate, Object)}.
+     *
+     * @param template
+     *            {@link LayoutTemplate} compiled with
+     *            {@link #compile(InputStream)}.
+     * @param controller
+     *            controller object for binding ({@code null} allowed).
+     * @return the inflated layout, see {@link InflatedLayout#getRoot()}.
+     * @throws LayoutInflaterException
+     *             if an error is encountered during the layout inflation.
+     * @throws BinderException
+     *             if an error is encountered during the binding.
+     */
+    public InflatedLayout createLayout(LayoutTemplate template,
+            Object controller) {
+        Binder binder = new Binder(idPrefix, generatedListeners);
+
+        Map<String, Component> componentsById = new HashMap<String, Component>();
+        InflatedLayout layout = inflater.inflateLayout(template,
+                getProviders(binder, controller), componentsById);
+
+        binder.bind(layout.getRoot(), controller, componentsById);
+        return layout;
+    }
+
+    /**
+     * Updates the components of the given {@code layout} to match the given
+     * {@code template}, changing only the components affected by the
+     * differences to the current template of the layout (see
+     * {@link LayoutInflater#update(InflatedLayout, LayoutTemplate, List, Map)}
+     * ). Only the components created by the update are bound to the
+     * {@code controller}, the existing components keep their bindings.
+     *
+     * @param layout
+     *            layout created with
+     *            {@link #createLayout(LayoutTemplate, Object)} or returned by
+     *            a previous update. It must not be used after this call.
+     * @param template
+     *            the new {@link LayoutTemplate}.
+     * @param controller
+     *            the controller the layout was bound to ({@code null}
+     *            allowed).
+     * @return the updated layout. Its root component is a new one if the root
+     *         element had to be inflated again.
+     * @throws LayoutInflaterException
+     *             if an error is encountered during the layout inflation.
+     * @throws BinderException
+     *             if an error is encountered during the binding.
+     */
+    public InflatedLayout update(InflatedLayout layout,
+            LayoutTemplate template, Object controller) {
+        Binder binder = new Binder(idPrefix, generatedListeners);
+
+        // The fields of the controller are already bound to the existing
+        // components, so they're not given as overrides.
+        List<ComponentProvider> providers = new ArrayList<ComponentProvider>(
+                componentProviders.size() + 1);
+        providers.add(importComponentProvider);
+        providers.addAll(componentProviders);
+
+        Map<String, Component> componentsById = new HashMap<String, Component>();
+        InflatedLayout updated = inflater.update(layout, template, providers,
+                componentsById);
+
+        binder.bind(updated.getRoot(), controller, componentsById,
+                updated.getCreatedComponents());
+        return updated;
+    }
+
+    /**
+     * Updates the components of the given {@code layout} to match the given
+     * {@code xml}, see {@link #update(InflatedLayout, LayoutTemplate, Object)}
+     * .
+     *
+     * @param layout
+     *            layout created with
+     *            {@link #createLayout(LayoutTemplate, Object)} or returned by
+     *            a previous update. It must not be used after this call.
+     * @param xml
+     *            the new XML representation.
+     * @param controller
+     *            the controller the layout was bound to ({@code null}
+     *            allowed).
+     * @return the updated layout.
+     * @throws LayoutInflaterException
+     *             if an error is encountered during the layout inflation.
+     * @throws BinderException
+     *             if an error is encountered during the binding.
+     */
+    public InflatedLayout update(InflatedLayout layout, InputStream xml,
+            Object controller) {
+        return update(layout, inflater.compile(xml), controller);
+    }
+
+    private List<ComponentProvider> getProviders(Binder binder,
+            Object controller) {
+        List<ComponentProvider> providers = new ArrayList<ComponentProvider>(
+                componentProviders.size() + 2);
+        providers.add(new OverrideMapComponentProvider(binder
+                .getAlreadyAssignedFields(controller)));
+        providers.add(importComponentProvider);
+        providers.addAll(componentProviders);
+        return providers;
+    }
+
+    /**
+     * Returns a {@link Component} that is read from an XML file in the
+     * classpath and binds the resulting {@link Component} to the given
+     * {@code controller} object.
+     * <p>
+     * The filename is given either as a path relative to the class of the
+     * {@code controller} object (if not {@code null}, or otherwise relative to
+     * this class) or as an absolute path. The parsed XML is stored in the
+     * {@link LayoutTemplateCache} of this engine, if any.
+     * </p>
+     *
+     * @param xmlClassResourceFileName
+     *            filename of the XML representation (within classpath, relative
+     *            to {@code controller}'s class (if not {@code null}, else
+     *            relative to this class) or absolute path).
+     * @param controller
+     *            controller object for binding ({@code null} allowed).
+     * @return a {@link Component} that is read from the XML representation and
+     *         bound to the given {@code controller}.
+     * @throws LayoutInflaterException
+     *             if an error is encountered during the layout inflation.
+     * @throws BinderException
+     *             if an error is encountered during the binding.
+     */
+    public Component createFrom(String xmlClassResourceFileName,
+            Object controller) {
+        return createFrom(getTemplate(xmlClassResourceFileName, controller),
+                controller);
+    }
+
+    private LayoutTemplate getTemplate(String xmlClassResourceFileName,
+            Object controller) {
+        Class<?> resourceRoot = controller != null ? controller.getClass()
+                : ClaraEngine.class;
+        if (templateCache == null) {
+            InputStream xml = resourceRoot
+                    .getResourceAsStream(xmlClassResourceFileName);
+            if (xml == null) {
+                throw new LayoutInflaterException(String.format(
+                        "Resource %s not found relative to %s.",
+                        xmlClassResourceFileName, resourceRoot.getName()));
+            }
+            try {
+                return compile(xml);
+            } finally {
+                try {
+                    xml.close();
+                } catch (IOException e) {
+                    // Ignore, the template has already been read.
+                }
+            }
+        }
+        return templateCache.getTemplate(resourceRoot,
+                xmlClassResourceFileName, inflater);
+    }
+
+    /**
+     * A component (tree) inflated from a template and the state needed to
+     * bind it to the controller.
+     */
+    private static class Inflation {
+
+        private final Binder binder;
+        private final Object controller;
+        private final Map<String, Component> componentsById = new HashMap<String, Component>();
+        private final List<LazyFragment> fragments = new ArrayList<LazyFragment>();
+        private Component root;
+
+        public Inflation(Binder binder, Object controller) {
+            this.binder = binder;
+            this.controller = controller;
+        }
+
+        /**
+         * Binds the inflated components to the controller, the deferred
+         * components when they are created.
+         */
+        public Component bind() {
+            binder.bind(root, controller, componentsById, null,
+                    LazyFragment.getIds(fragments));
+            if (controller != null && !fragments.isEmpty()) {
+                new DeferredBinding(binder, controller, root, componentsById)
+                        .addAll(fragments);
+            }
+            return root;
+        }
+    }
+
+    /**
+     * Binds the components of {@link LazyFragment}s to the controller when
+     * they are inflated. It is serialized with the pending fragments, so the
+     * controller must be serializable then.
+     */
+    private static class DeferredBinding implements
+            LazyFragment.InflationListener {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Binder binder;
+        private final Object controller;
+        private final Component root;
+        private final Map<String, Component> componentsById;
+        private final List<LazyFragment> pending = new ArrayList<LazyFragment>();
+
+        public DeferredBinding(Binder binder, Object controller,
+                Component root, Map<String, Component> componentsById) {
+            this.binder = binder;
+            this.controller = controller;
+            this.root = root;
+            this.componentsById = componentsById;
+        }
+
+        public void addAll(List<LazyFragment> fragments) {
+            for (LazyFragment fragment : fragments) {
+                pending.add(fragment);
+                fragment.setInflationListener(this);
+            }
+        }
+
+        @Override
+        public void fragmentInflated(LazyFragment fragment) {
+            pending.remove(fragment);
+            addAll(fragment.getFragments());
+            componentsById.putAll(fragment.getComponentsById());
+            binder.bind(root, controller, componentsById,
+                    fragment.getCreatedComponents(),
+                    LazyFragment.getIds(pending));
+        }
+    }
+
+}
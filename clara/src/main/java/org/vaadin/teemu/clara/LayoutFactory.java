@@ -0,0 +1,35 @@
+package org.vaadin.teemu.clara;
+
+import com.vaadin.ui.Component;
+
+/**
+ * Creates the {@link Component} hierarchy of a layout and binds it to a
+ * controller with plain method calls. Implementations are generated at build
+ * time from layout XML files by the {@code clara-processor} annotation
+ * processor, so creating a layout with them doesn't parse any XML or use
+ * reflection.
+ * <p>
+ * The created hierarchy and bindings are equal to the ones created by
+ * {@link Clara#create(String, Object, org.vaadin.teemu.clara.inflater.filter.AttributeFilter...)}
+ * for the same layout and controller without any attribute filters.
+ * Implementations are stateless and thus safe to share between threads.
+ * </p>
+ *
+ * @param <C>
+ *            type of the controller the layout is bound to.
+ */
+public interface LayoutFactory<C> {
+
+    /**
+     * Creates a new {@link Component} hierarchy and binds it to the given
+     * {@code controller}. Like with the runtime inflation, components already
+     * assigned to the {@link org.vaadin.teemu.clara.binder.annotation.UiField}
+     * fields of the controller are used instead of creating new ones.
+     *
+     * @param controller
+     *            controller object for binding ({@code null} allowed).
+     * @return the root of the created {@link Component} hierarchy.
+     */
+    Component create(C controller);
+
+}
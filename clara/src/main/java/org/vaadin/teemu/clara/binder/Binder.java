@@ -6,6 +6,8 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.io.Serializable;
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
@@ -15,32 +17,76 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.vaadin.teemu.clara.Clara;
+import org.vaadin.teemu.clara.binder.BindingPlan.FieldBinding;
+import org.vaadin.teemu.clara.binder.BindingPlan.MethodBinding;
 import org.vaadin.teemu.clara.binder.annotation.UiDataSource;
 import org.vaadin.teemu.clara.binder.annotation.UiField;
 import org.vaadin.teemu.clara.binder.annotation.UiHandler;
 import org.vaadin.teemu.clara.util.MethodsByDeprecationComparator;
-import org.vaadin.teemu.clara.util.ReflectionUtils;
 import org.vaadin.teemu.clara.util.ReflectionUtils.ParamCount;
 
 import com.vaadin.data.Container;
 import com.vaadin.data.Item;
 import com.vaadin.data.Property;
 import com.vaadin.ui.Component;
+import com.vaadin.ui.HasComponents;
 
-public class Binder {
+public class Binder implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Resolved add listener methods by component class and event class,
+     * including the event classes without any suitable method. Stored in a
+     * {@link ClassValue} so that the component classes can be unloaded.
+     */
+    private static final ClassValue<ConcurrentMap<Class<?>, AddListenerMethod>> addListenerMethods = new ClassValue<ConcurrentMap<Class<?>, AddListenerMethod>>() {
+
+        @Override
+        protected ConcurrentMap<Class<?>, AddListenerMethod> computeValue(
+                Class<?> componentClass) {
+            return new ConcurrentHashMap<Class<?>, AddListenerMethod>();
+        }
+    };
 
     private final String idPrefix;
+    private final boolean generatedListeners;
 
     public Binder() {
         this(null);
     }
 
     public Binder(String idPrefix) {
+        this(idPrefix, false);
+    }
+
+    /**
+     * Creates a {@link Binder} that adds the given prefix to the ids of the
+     * components to bind.
+     * <p>
+     * By default the listeners for {@link UiHandler} methods are
+     * {@link Proxy} instances. With {@code generatedListeners} a listener
+     * class is generated once per listener interface instead, which calls the
+     * handler method directly. It is only used for public listener interfaces
+     * visible to Clara with a single abstract method and for handler methods
+     * taking only the event, proxies are still used otherwise.
+     * </p>
+     *
+     * @param idPrefix
+     *            prefix of the component ids ({@code null} allowed).
+     * @param generatedListeners
+     *            {@code true} to use generated listener classes when possible.
+     */
+    public Binder(String idPrefix, boolean generatedListeners) {
         this.idPrefix = idPrefix != null ? idPrefix : "";
+        this.generatedListeners = generatedListeners;
     }
 
     protected Logger getLogger() {
@@ -70,8 +116,120 @@ public class Binder {
             return;
         }
 
-        bindFields(componentRoot, controller, controller.getClass());
-        bindMethods(componentRoot, controller);
+        bind(componentRoot, controller, indexComponentsById(componentRoot));
+    }
+
+    /**
+     * Binds fields and methods of the given {@code controller} instance to
+     * {@link Component}s found in the given {@code componentRoot} component
+     * hierarchy. Components are looked up from the given
+     * {@code componentsById} index (for example collected by the
+     * {@link org.vaadin.teemu.clara.inflater.LayoutInflater} during
+     * inflation) and only searched from the component hierarchy if they are
+     * not found from the index.
+     *
+     * @param componentRoot
+     *            root of a {@link Component} hierarchy.
+     * @param controller
+     *            controller instance with annotations defining some bindings.
+     * @param componentsById
+     *            {@link Component}s of the hierarchy by their {@code id}
+     *            property (including the id prefix).
+     *
+     * @throws BinderException
+     *             if an error is encountered during the binding.
+     */
+    public void bind(Component componentRoot, Object controller,
+            Map<String, Component> componentsById) {
+        bind(componentRoot, controller, componentsById, null,
+                Collections.<String> emptySet());
+    }
+
+    /**
+     * Binds the given {@code controller} like
+     * {@link #bind(Component, Object, Map)}, but only to the given
+     * {@code createdComponents}, for example the components created when
+     * updating an {@link org.vaadin.teemu.clara.inflater.InflatedLayout}.
+     * Bindings to other components are skipped as they already exist, and
+     * fields bound to the created components are assigned even if they
+     * already have a value.
+     *
+     * @param componentRoot
+     *            root of a {@link Component} hierarchy.
+     * @param controller
+     *            controller instance with annotations defining some bindings.
+     * @param componentsById
+     *            {@link Component}s of the hierarchy by their {@code id}
+     *            property (including the id prefix).
+     * @param createdComponents
+     *            the components to bind to.
+     *
+     * @throws BinderException
+     *             if an error is encountered during the binding.
+     */
+    public void bind(Component componentRoot, Object controller,
+            Map<String, Component> componentsById,
+            Set<Component> createdComponents) {
+        bind(componentRoot, controller, componentsById, createdComponents,
+                Collections.<String> emptySet());
+    }
+
+    /**
+     * Binds the given {@code controller} like
+     * {@link #bind(Component, Object, Map, Set)}, but skips the bindings to
+     * the given {@code deferredIds} whose components don't exist yet, for
+     * example the ids of pending
+     * {@link org.vaadin.teemu.clara.inflater.LazyFragment}s. The skipped
+     * bindings can be made later by binding again to the components created
+     * for them.
+     *
+     * @param componentRoot
+     *            root of a {@link Component} hierarchy.
+     * @param controller
+     *            controller instance with annotations defining some bindings.
+     * @param componentsById
+     *            {@link Component}s of the hierarchy by their {@code id}
+     *            property (including the id prefix).
+     * @param createdComponents
+     *            the components to bind to, or {@code null} to bind to all
+     *            components.
+     * @param deferredIds
+     *            ids (without the id prefix) to skip.
+     *
+     * @throws BinderException
+     *             if an error is encountered during the binding.
+     */
+    public void bind(Component componentRoot, Object controller,
+            Map<String, Component> componentsById,
+            Set<Component> createdComponents, Set<String> deferredIds) {
+        if (controller == null) {
+            return;
+        }
+
+        ComponentLookup lookup = new ComponentLookup(componentRoot,
+                componentsById, createdComponents, deferredIds);
+        BindingPlan plan = BindingPlan.of(controller.getClass());
+        bindFields(lookup, controller, plan);
+        bindMethods(lookup, controller, plan);
+    }
+
+    private Map<String, Component> indexComponentsById(Component root) {
+        Map<String, Component> componentsById = new HashMap<String, Component>();
+        indexComponentsById(root, componentsById);
+        return componentsById;
+    }
+
+    private void indexComponentsById(Component component,
+            Map<String, Component> componentsById) {
+        String componentId = component.getId();
+        if (componentId != null && !componentsById.containsKey(componentId)) {
+            componentsById.put(componentId, component);
+        }
+        if (component instanceof HasComponents) {
+            for (Component child : (HasComponents) component) {
+                indexComponentsById(child, componentsById);
+            }
+        }
     }
 
     /**
@@ -94,17 +252,15 @@ public class Binder {
         }
 
         Map<String, Component> assignedFields = new HashMap<String, Component>();
-        for (Field field : ReflectionUtils.getAllDeclaredFieldsAnnotatedWith(
-                controller.getClass(), UiField.class)) {
+        for (FieldBinding binding : BindingPlan.of(controller.getClass())
+                .getFieldBindings()) {
             try {
-                field.setAccessible(true);
-                Object value = field.get(controller);
+                Object value = binding.field.get(controller);
                 if (value instanceof Component) {
                     // We are intentionally not using the idPrefix here
                     // The specific use in the inflater doesn't need the
                     // prefix
-                    assignedFields.put(extractComponentId(field),
-                            (Component) value);
+                    assignedFields.put(binding.componentId, (Component) value);
                 }
             } catch (IllegalAccessException e) {
                 getLogger().log(Level.WARNING,
@@ -115,36 +271,36 @@ public class Binder {
         return assignedFields;
     }
 
-    private void bindFields(Component componentRoot, Object controller,
-            Class<?> clazz) {
-        for (Field field : ReflectionUtils.getAllDeclaredFieldsAnnotatedWith(
-                controller.getClass(), UiField.class)) {
-            bindField(componentRoot, controller, field);
+    private void bindFields(ComponentLookup lookup, Object controller,
+            BindingPlan plan) {
+        for (FieldBinding binding : plan.getFieldBindings()) {
+            bindField(lookup, controller, binding);
         }
     }
 
-    private void bindMethods(Component componentRoot, Object controller) {
-        for (Method method : ReflectionUtils
-                .getAllDeclaredMethodsAnnotatedWith(controller.getClass(),
-                        UiDataSource.class)) {
-            bindDataSource(componentRoot, controller, method);
+    private void bindMethods(ComponentLookup lookup, Object controller,
+            BindingPlan plan) {
+        for (MethodBinding binding : plan.getDataSourceBindings()) {
+            bindDataSource(lookup, controller, binding);
         }
 
-        for (Method method : ReflectionUtils
-                .getAllDeclaredMethodsAnnotatedWith(controller.getClass(),
-                        UiHandler.class)) {
-            bindEventHandler(componentRoot, controller, method);
+        for (MethodBinding binding : plan.getHandlerBindings()) {
+            bindEventHandler(lookup, controller, binding);
         }
     }
 
-    private void bindField(Component componentRoot, Object controller,
-            Field field) {
-        String componentId = extractComponentId(field);
-        Component component = tryToFindComponentById(componentRoot, componentId);
+    private void bindField(ComponentLookup lookup, Object controller,
+            FieldBinding binding) {
+        Component component = lookup
+                .tryToFindComponentById(binding.componentId);
+        if (!lookup.isBindable(component)) {
+            return;
+        }
 
         try {
-            field.setAccessible(true);
-            if (field.get(controller) == null) {
+            Field field = binding.field;
+            if (lookup.createdComponents != null
+                    || field.get(controller) == null) {
                 field.set(controller, component);
             }
         } catch (IllegalArgumentException e) {
@@ -155,51 +311,33 @@ public class Binder {
     }
 
     /**
-     * Returns id of the {@link Component} that the given {@link Field} should
-     * be bound to. Assumes that the given {@code field} has {@link UiField}
-     * annotation. This should be checked before calling this method.
-     *
-     * @return id of the component to bind the field.
-     */
-    private String extractComponentId(Field field) {
-        // Try the id from UiField annotation.
-        UiField annotation = field.getAnnotation(UiField.class);
-        String componentId = annotation.value();
-
-        if (componentId.length() == 0) {
-            // Default to the field name instead of annotated id.
-            componentId = field.getName();
-        }
-        return componentId;
-    }
-
-    /**
-     * Expects that the given {@link Method} is annotated with {@link UiHandler}
-     * annotation.
+     * Binds a method annotated with {@link UiHandler} annotation.
      *
-     * @param componentRoot
+     * @param lookup
      * @param controller
-     * @param method
+     * @param binding
      */
-    private void bindEventHandler(Component componentRoot, Object controller,
-            Method method) {
-        String componentId = method.getAnnotation(UiHandler.class).value();
-        Component component = tryToFindComponentById(componentRoot, componentId);
+    private void bindEventHandler(ComponentLookup lookup, Object controller,
+            MethodBinding binding) {
+        Method method = binding.method;
+        Component component = lookup
+                .tryToFindComponentById(binding.componentId);
+        if (!lookup.isBindable(component)) {
+            return;
+        }
 
-        Class<?> eventType = (method.getParameterTypes().length > 0 ? method
-                .getParameterTypes()[0] : null);
+        Class<?> eventType = binding.type;
         if (eventType == null) {
             throw new BinderException(
                     "Couldn't figure out event type for method " + method + ".");
         }
-
         Method addListenerMethod = getAddListenerMethod(component.getClass(),
                 eventType);
         if (addListenerMethod != null) {
             try {
-                Object listener = createListenerProxy(
+                Object listener = createListener(
                         addListenerMethod.getParameterTypes()[0], eventType,
-                        method, controller);
+                        binding, controller);
                 addListenerMethod.invoke(component, listener);
             } catch (IllegalAccessException e) {
                 throw new BinderException(e);
@@ -209,15 +347,30 @@ public class Binder {
         }
     }
 
+    private Object createListener(Class<?> listenerClass,
+            Class<?> eventClass, MethodBinding binding, Object controller) {
+        if (generatedListeners && binding.handler != null) {
+            ListenerFactory factory = ListenerFactory.of(listenerClass,
+                    eventClass);
+            if (factory != null) {
+                return factory.createListener(binding.method,
+                        binding.handler, controller);
+            }
+        }
+        return createListenerProxy(listenerClass, eventClass, binding,
+                controller);
+    }
+
     private Object createListenerProxy(Class<?> listenerClass,
-            final Class<?> eventClass, final Method listenerMethod,
-            final Object controller) {
+            Class<?> eventClass, MethodBinding binding, Object controller) {
         Object proxy = Proxy.newProxyInstance(listenerClass.getClassLoader(),
                 new Class<?>[] { listenerClass },
-                new ListenerInvocationHandler(listenerMethod, eventClass,
-                        controller));
-        getLogger().fine(
-                String.format("Created a proxy for %s.", listenerClass));
+                new ListenerInvocationHandler(binding.method, binding.handler,
+                        eventClass, controller));
+        if (getLogger().isLoggable(Level.FINE)) {
+            getLogger().fine(
+                    String.format("Created a proxy for %s.", listenerClass));
+        }
         return proxy;
     }
 
@@ -225,12 +378,16 @@ public class Binder {
             InvocationHandler, Externalizable {
 
         private Method listenerMethod;
+        // Handle of the listener method taking only the event, otherwise
+        // null.
+        private transient MethodHandle handler;
         private Class<?> eventClass;
         private Object controller;
 
         public ListenerInvocationHandler(Method listenerMethod,
-                Class<?> eventClass, Object controller) {
+                MethodHandle handler, Class<?> eventClass, Object controller) {
             this.listenerMethod = listenerMethod;
+            this.handler = handler;
             this.eventClass = eventClass;
             this.controller = controller;
         }
@@ -244,15 +401,24 @@ public class Binder {
             try {
                 if (args != null && args.length > 0
                         && eventClass.isAssignableFrom(args[0].getClass())) {
-                    getLogger()
-                            .fine(String.format(
-                                    "Forwarding method call %s -> %s.",
-                                    method.getName(), listenerMethod.getName()));
+                    if (getLogger().isLoggable(Level.FINE)) {
+                        getLogger().fine(
+                                String.format(
+                                        "Forwarding method call %s -> %s.",
+                                        method.getName(),
+                                        listenerMethod.getName()));
+                    }
+                    if (handler != null && args.length == 1) {
+                        handler.invokeExact(controller, args[0]);
+                        return null;
+                    }
                     return listenerMethod.invoke(controller, args);
                 }
-                getLogger().fine(
-                        String.format("Forwarding method call %s to %s.",
-                                method.getName(), controller.getClass()));
+                if (getLogger().isLoggable(Level.FINE)) {
+                    getLogger().fine(
+                            String.format("Forwarding method call %s to %s.",
+                                    method.getName(), controller.getClass()));
+                }
                 return method.invoke(controller, args);
             } catch (InvocationTargetException ex) {
                 throw ex.getCause();
@@ -288,12 +454,28 @@ public class Binder {
                         + declaringClass.getCanonicalName() + ":" + methodName,
                         ex);
             }
+            if (parameterTypes.length == 1) {
+                handler = ListenerFactory.createHandler(listenerMethod);
+            }
         }
 
     }
 
     private Method getAddListenerMethod(
             Class<? extends Component> componentClass, Class<?> eventClass) {
+        ConcurrentMap<Class<?>, AddListenerMethod> methodsByEvent = addListenerMethods
+                .get(componentClass);
+        AddListenerMethod addListenerMethod = methodsByEvent.get(eventClass);
+        if (addListenerMethod == null) {
+            addListenerMethod = new AddListenerMethod(
+                    resolveAddListenerMethod(componentClass, eventClass));
+            methodsByEvent.putIfAbsent(eventClass, addListenerMethod);
+        }
+        return addListenerMethod.method;
+    }
+
+    private Method resolveAddListenerMethod(
+            Class<? extends Component> componentClass, Class<?> eventClass) {
         List<Method> addListenerCandidates = findMethods(componentClass,
                 "add(.*)Listener", ParamCount.constant(1));
         Collections.sort(addListenerCandidates,
@@ -315,18 +497,34 @@ public class Binder {
     }
 
     /**
-     * Expects that the given {@link Method} is annotated with
-     * {@link UiDataSource} annotation.
+     * Resolved add listener method, {@code null} if the component class has no
+     * suitable method for the event class.
+     */
+    private static class AddListenerMethod {
+
+        private final Method method;
+
+        public AddListenerMethod(Method method) {
+            this.method = method;
+        }
+    }
+
+    /**
+     * Binds a method annotated with {@link UiDataSource} annotation.
      *
-     * @param componentRoot
+     * @param lookup
      * @param controller
-     * @param method
+     * @param binding
      */
-    private void bindDataSource(Component componentRoot, Object controller,
-            Method method) {
-        String componentId = method.getAnnotation(UiDataSource.class).value();
-        Component component = tryToFindComponentById(componentRoot, componentId);
-        Class<?> dataSourceClass = method.getReturnType();
+    private void bindDataSource(ComponentLookup lookup, Object controller,
+            MethodBinding binding) {
+        Method method = binding.method;
+        Component component = lookup
+                .tryToFindComponentById(binding.componentId);
+        if (!lookup.isBindable(component)) {
+            return;
+        }
+        Class<?> dataSourceClass = binding.type;
 
         try {
             // Vaadin data model consists of Property/Item/Container
@@ -353,15 +551,56 @@ public class Binder {
         }
     }
 
-    private Component tryToFindComponentById(Component root, String id) {
-        Component component = Clara.findComponentById(root, idPrefix, id);
-        if (component == null) {
-            throw new BinderException(
-                    String.format(
-                            "No component found for id: %1$s (%2$s%1$s).", id,
-                            idPrefix));
+    /**
+     * Finds components of a hierarchy by their id, first from an index and
+     * then by searching the hierarchy.
+     */
+    private class ComponentLookup {
+
+        private final Component root;
+        private final Map<String, Component> componentsById;
+        // Components to bind to, or null to bind to all components.
+        private final Set<Component> createdComponents;
+        // Ids of components not inflated yet.
+        private final Set<String> deferredIds;
+
+        public ComponentLookup(Component root,
+                Map<String, Component> componentsById,
+                Set<Component> createdComponents, Set<String> deferredIds) {
+            this.root = root;
+            this.componentsById = componentsById;
+            this.createdComponents = createdComponents;
+            this.deferredIds = deferredIds;
+        }
+
+        public boolean isBindable(Component component) {
+            return component != null
+                    && (createdComponents == null || createdComponents
+                            .contains(component));
+        }
+
+        /**
+         * Returns the component with the given id, or {@code null} if the
+         * component is deferred.
+         */
+        public Component tryToFindComponentById(String id) {
+            if (deferredIds.contains(id)) {
+                return null;
+            }
+            String prefixedId = idPrefix + id;
+            Component component = componentsById.get(prefixedId);
+            if (component == null || !prefixedId.equals(component.getId())) {
+                // Not indexed or the id has changed since -> search the
+                // hierarchy instead.
+                component = Clara.findComponentById(root, idPrefix, id);
+            }
+            if (component == null) {
+                throw new BinderException(String.format(
+                        "No component found for id: %1$s (%2$s%1$s).", id,
+                        idPrefix));
+            }
+            return component;
         }
-        return component;
     }
 
     private boolean isContainer(Class<?> dataSourceClass) {
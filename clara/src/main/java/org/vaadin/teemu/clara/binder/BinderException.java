@@ -11,4 +11,8 @@ public class BinderException extends RuntimeException {
         super(cause);
     }
 
+    public BinderException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
 }
@@ -0,0 +1,151 @@
+package org.vaadin.teemu.clara.binder;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.vaadin.teemu.clara.binder.annotation.UiDataSource;
+import org.vaadin.teemu.clara.binder.annotation.UiField;
+import org.vaadin.teemu.clara.binder.annotation.UiHandler;
+import org.vaadin.teemu.clara.util.ReflectionUtils;
+
+import com.vaadin.ui.Component;
+
+/**
+ * Immutable description of the bindings declared by a controller class with
+ * the {@link UiField}, {@link UiHandler} and {@link UiDataSource} annotations.
+ * The annotations of a class are read only once and the resulting plan is
+ * shared between all {@link Binder}s and threads. The plans are stored in a
+ * {@link ClassValue}, so they don't keep the controller classes (and their
+ * class loaders) from being unloaded.
+ */
+final class BindingPlan {
+
+    private static final ClassValue<BindingPlan> plans = new ClassValue<BindingPlan>() {
+
+        @Override
+        protected BindingPlan computeValue(Class<?> controllerClass) {
+            return new BindingPlan(controllerClass);
+        }
+    };
+
+    private final List<FieldBinding> fieldBindings;
+    private final List<MethodBinding> dataSourceBindings;
+    private final List<MethodBinding> handlerBindings;
+
+    /**
+     * Returns the {@link BindingPlan} of the given controller class.
+     */
+    static BindingPlan of(Class<?> controllerClass) {
+        return plans.get(controllerClass);
+    }
+
+    private BindingPlan(Class<?> controllerClass) {
+        List<FieldBinding> fields = new ArrayList<FieldBinding>();
+        for (Field field : ReflectionUtils.getAllDeclaredFieldsAnnotatedWith(
+                controllerClass, UiField.class)) {
+            field.setAccessible(true);
+            fields.add(new FieldBinding(field, extractComponentId(field)));
+        }
+
+        List<MethodBinding> dataSources = new ArrayList<MethodBinding>();
+        for (Method method : ReflectionUtils
+                .getAllDeclaredMethodsAnnotatedWith(controllerClass,
+                        UiDataSource.class)) {
+            dataSources.add(new MethodBinding(method, method.getAnnotation(
+                    UiDataSource.class).value(), method.getReturnType(), null));
+        }
+
+        List<MethodBinding> handlers = new ArrayList<MethodBinding>();
+        for (Method method : ReflectionUtils
+                .getAllDeclaredMethodsAnnotatedWith(controllerClass,
+                        UiHandler.class)) {
+            Class<?> eventType = (method.getParameterTypes().length > 0 ? method
+                    .getParameterTypes()[0] : null);
+            MethodHandle handler = method.getParameterTypes().length == 1 ? ListenerFactory
+                    .createHandler(method) : null;
+            handlers.add(new MethodBinding(method, method.getAnnotation(
+                    UiHandler.class).value(), eventType, handler));
+        }
+
+        fieldBindings = Collections.unmodifiableList(fields);
+        dataSourceBindings = Collections.unmodifiableList(dataSources);
+        handlerBindings = Collections.unmodifiableList(handlers);
+    }
+
+    /**
+     * Returns id of the {@link Component} that the given {@link Field} should
+     * be bound to. Assumes that the given {@code field} has {@link UiField}
+     * annotation.
+     *
+     * @return id of the component to bind the field.
+     */
+    private static String extractComponentId(Field field) {
+        // Try the id from UiField annotation.
+        UiField annotation = field.getAnnotation(UiField.class);
+        String componentId = annotation.value();
+
+        if (componentId.length() == 0) {
+            // Default to the field name instead of annotated id.
+            componentId = field.getName();
+        }
+        return componentId;
+    }
+
+    /**
+     * @return fields annotated with {@link UiField}, already made accessible.
+     */
+    List<FieldBinding> getFieldBindings() {
+        return fieldBindings;
+    }
+
+    /**
+     * @return methods annotated with {@link UiDataSource} with their return
+     *         types.
+     */
+    List<MethodBinding> getDataSourceBindings() {
+        return dataSourceBindings;
+    }
+
+    /**
+     * @return methods annotated with {@link UiHandler} with their event types
+     *         ({@code null} if the method has no parameters) and handles
+     *         ({@code null} unless the method has exactly one parameter).
+     */
+    List<MethodBinding> getHandlerBindings() {
+        return handlerBindings;
+    }
+
+    static final class FieldBinding {
+
+        final Field field;
+        final String componentId;
+
+        FieldBinding(Field field, String componentId) {
+            this.field = field;
+            this.componentId = componentId;
+        }
+    }
+
+    static final class MethodBinding {
+
+        final Method method;
+        final String componentId;
+        final Class<?> type;
+        // (controller, event)void handle of a handler method taking only the
+        // event, otherwise null.
+        final MethodHandle handler;
+
+        MethodBinding(Method method, String componentId, Class<?> type,
+                MethodHandle handler) {
+            this.method = method;
+            this.componentId = componentId;
+            this.type = type;
+            this.handler = handler;
+        }
+    }
+
+}
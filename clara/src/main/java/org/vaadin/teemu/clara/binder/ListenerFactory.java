@@ -0,0 +1,277 @@
+package org.vaadin.teemu.clara.binder;
+
+import static org.vaadin.teemu.clara.util.ReflectionUtils.findMethods;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.SerializedLambda;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Creates listener instances of a listener interface that forward events to a
+ * controller method annotated with
+ * {@link org.vaadin.teemu.clara.binder.annotation.UiHandler}. Used by the
+ * {@link Binder} instead of a {@link java.lang.reflect.Proxy} when generated
+ * listeners are enabled.
+ * <p>
+ * A factory is created once per listener interface and event class with the
+ * {@link LambdaMetafactory} and shared between all {@link Binder}s and
+ * threads. The listeners call the controller method directly through a
+ * {@link MethodHandle}, so dispatching an event doesn't go through a proxy or
+ * {@link Method#invoke}. Only public listener interfaces visible to the class
+ * loader of Clara with a single abstract method can be implemented, for other
+ * interfaces {@link #of(Class, Class)} returns {@code null}.
+ * </p>
+ * <p>
+ * The listeners are serializable if the controller is. They are recreated
+ * from their {@link Dispatcher} when deserialized.
+ * </p>
+ */
+final class ListenerFactory {
+
+    /**
+     * Factories by listener interface and event class. Stored in a
+     * {@link ClassValue} so that the listener interfaces can be unloaded.
+     */
+    private static final ClassValue<ConcurrentMap<Class<?>, ListenerFactory>> factories = new ClassValue<ConcurrentMap<Class<?>, ListenerFactory>>() {
+
+        @Override
+        protected ConcurrentMap<Class<?>, ListenerFactory> computeValue(
+                Class<?> listenerClass) {
+            return new ConcurrentHashMap<Class<?>, ListenerFactory>();
+        }
+    };
+
+    private static final MethodType HANDLER_TYPE = MethodType.methodType(
+            void.class, Object.class, Object.class);
+    private static final MethodType LISTENER_FACTORY_TYPE = MethodType
+            .methodType(Object.class, Dispatcher.class);
+    private static final MethodHandle DISPATCH;
+
+    static {
+        try {
+            DISPATCH = MethodHandles.lookup().findVirtual(Dispatcher.class,
+                    "dispatch", MethodType.methodType(void.class, Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Class<?> listenerClass;
+    private final Class<?> eventClass;
+    // Creates a listener of type (Dispatcher)Object, null if the listener
+    // interface can't be implemented.
+    private final MethodHandle listenerConstructor;
+
+    /**
+     * Returns the {@link ListenerFactory} for the given listener interface
+     * whose method accepts events of the given class, or {@code null} if the
+     * interface can't be implemented. The result is cached in both cases.
+     */
+    static ListenerFactory of(Class<?> listenerClass, Class<?> eventClass) {
+        ConcurrentMap<Class<?>, ListenerFactory> factoriesByEvent = factories
+                .get(listenerClass);
+        ListenerFactory factory = factoriesByEvent.get(eventClass);
+        if (factory == null) {
+            factory = new ListenerFactory(listenerClass, eventClass);
+            ListenerFactory existing = factoriesByEvent.putIfAbsent(
+                    eventClass, factory);
+            if (existing != null) {
+                factory = existing;
+            }
+        }
+        return factory.listenerConstructor != null ? factory : null;
+    }
+
+    private ListenerFactory(Class<?> listenerClass, Class<?> eventClass) {
+        this.listenerClass = listenerClass;
+        this.eventClass = eventClass;
+        this.listenerConstructor = createListenerConstructor(listenerClass,
+                eventClass);
+    }
+
+    private static MethodHandle createListenerConstructor(
+            Class<?> listenerClass, Class<?> eventClass) {
+        List<Method> listenerMethods = findMethods(listenerClass, ".*",
+                eventClass);
+        if (listenerMethods.size() != 1 || !isImplementable(listenerClass)) {
+            return null;
+        }
+        Method listenerMethod = listenerMethods.get(0);
+        MethodType listenerMethodType = MethodType.methodType(
+                listenerMethod.getReturnType(),
+                listenerMethod.getParameterTypes());
+        try {
+            CallSite callSite = LambdaMetafactory.altMetafactory(
+                    MethodHandles.lookup(), listenerMethod.getName(),
+                    MethodType.methodType(listenerClass, Dispatcher.class),
+                    listenerMethodType, DISPATCH, listenerMethodType,
+                    LambdaMetafactory.FLAG_SERIALIZABLE);
+            return callSite.getTarget().asType(LISTENER_FACTORY_TYPE);
+        } catch (Exception e) {
+            return null;
+        } catch (LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns whether the given listener interface is public, visible to the
+     * class loader of Clara and has a single abstract method, so that a
+     * listener created by the {@link LambdaMetafactory} implements all of it.
+     */
+    private static boolean isImplementable(Class<?> listenerClass) {
+        if (!listenerClass.isInterface()
+                || !Modifier.isPublic(listenerClass.getModifiers())) {
+            return false;
+        }
+        try {
+            if (Class.forName(listenerClass.getName(), false,
+                    ListenerFactory.class.getClassLoader()) != listenerClass) {
+                return false;
+            }
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+        int abstractMethods = 0;
+        for (Method method : listenerClass.getMethods()) {
+            if (Modifier.isAbstract(method.getModifiers())
+                    && !isObjectMethod(method)) {
+                abstractMethods++;
+            }
+        }
+        return abstractMethods == 1;
+    }
+
+    private static boolean isObjectMethod(Method method) {
+        try {
+            Object.class.getMethod(method.getName(),
+                    method.getParameterTypes());
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns a {@link MethodHandle} of type {@code (Object, Object)void}
+     * taking the controller and the event, or {@code null} if the handle
+     * can't be created.
+     */
+    static MethodHandle createHandler(Method handlerMethod) {
+        try {
+            handlerMethod.setAccessible(true);
+            return MethodHandles.lookup().unreflect(handlerMethod)
+                    .asType(HANDLER_TYPE);
+        } catch (IllegalAccessException e) {
+            return null;
+        } catch (RuntimeException e) {
+            // For example a method of a module that isn't open.
+            return null;
+        }
+    }
+
+    /**
+     * Returns a new listener forwarding events to the given handler method
+     * on the given {@code controller}.
+     *
+     * @param handlerMethod
+     *            controller method taking the event as its only parameter.
+     * @param handler
+     *            handle of the method, see {@link #createHandler(Method)}.
+     */
+    Object createListener(Method handlerMethod, MethodHandle handler,
+            Object controller) {
+        return createListener(new Dispatcher(listenerClass, eventClass,
+                handlerMethod, handler, controller));
+    }
+
+    private Object createListener(Dispatcher dispatcher) {
+        try {
+            return listenerConstructor.invokeExact(dispatcher);
+        } catch (Throwable t) {
+            throw new BinderException(t);
+        }
+    }
+
+    /**
+     * Recreates a listener when it is deserialized, called through the
+     * {@link SerializedLambda} the listener is written as.
+     */
+    @SuppressWarnings("unused")
+    private static Object $deserializeLambda$(SerializedLambda lambda) {
+        Dispatcher dispatcher = (Dispatcher) lambda.getCapturedArg(0);
+        return of(dispatcher.listenerClass, dispatcher.eventClass)
+                .createListener(dispatcher);
+    }
+
+    /**
+     * Calls the handler method of a listener on the controller.
+     */
+    static final class Dispatcher implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Class<?> listenerClass;
+        private final Class<?> eventClass;
+        private final Object controller;
+        private transient Method handlerMethod;
+        private transient MethodHandle handler;
+
+        Dispatcher(Class<?> listenerClass, Class<?> eventClass,
+                Method handlerMethod, MethodHandle handler, Object controller) {
+            this.listenerClass = listenerClass;
+            this.eventClass = eventClass;
+            this.handlerMethod = handlerMethod;
+            this.handler = handler;
+            this.controller = controller;
+        }
+
+        void dispatch(Object event) throws Throwable {
+            handler.invokeExact(controller, event);
+        }
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            out.defaultWriteObject();
+            out.writeObject(handlerMethod.getDeclaringClass());
+            out.writeObject(handlerMethod.getName());
+            out.writeObject(handlerMethod.getParameterTypes());
+        }
+
+        private void readObject(ObjectInputStream in) throws IOException,
+                ClassNotFoundException {
+            in.defaultReadObject();
+            Class<?> declaringClass = (Class<?>) in.readObject();
+            String methodName = (String) in.readObject();
+            Class<?>[] parameterTypes = (Class<?>[]) in.readObject();
+            try {
+                handlerMethod = declaringClass.getDeclaredMethod(methodName,
+                        parameterTypes);
+            } catch (NoSuchMethodException ex) {
+                throw new RuntimeException("Can't deserialize listener method "
+                        + declaringClass.getCanonicalName() + ":" + methodName,
+                        ex);
+            }
+            handler = createHandler(handlerMethod);
+            if (handler == null) {
+                throw new InvalidObjectException(
+                        "Can't access listener method "
+                                + declaringClass.getCanonicalName() + ":"
+                                + methodName);
+            }
+        }
+    }
+
+}
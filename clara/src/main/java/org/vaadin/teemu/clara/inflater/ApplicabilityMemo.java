@@ -0,0 +1,36 @@
+package org.vaadin.teemu.clara.inflater;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Remembers the results of
+ * {@link IdIndependentComponentProvider#isApplicableFor(String, String, String)}
+ * per {@code uri} and {@code localName}. The provider is given on each call,
+ * so the memo itself doesn't keep the provider reachable.
+ */
+final class ApplicabilityMemo {
+
+    private final ConcurrentMap<String, ConcurrentMap<String, Boolean>> resultsByUri = new ConcurrentHashMap<String, ConcurrentMap<String, Boolean>>();
+
+    boolean isApplicableFor(IdIndependentComponentProvider provider,
+            String uri, String localName, String id) {
+        ConcurrentMap<String, Boolean> results = resultsByUri.get(uri);
+        if (results == null) {
+            results = new ConcurrentHashMap<String, Boolean>();
+            ConcurrentMap<String, Boolean> existing = resultsByUri
+                    .putIfAbsent(uri, results);
+            if (existing != null) {
+                results = existing;
+            }
+        }
+        Boolean applicable = results.get(localName);
+        if (applicable == null) {
+            applicable = Boolean.valueOf(provider.isApplicableFor(uri,
+                    localName, id));
+            results.putIfAbsent(localName, applicable);
+        }
+        return applicable.booleanValue();
+    }
+
+}
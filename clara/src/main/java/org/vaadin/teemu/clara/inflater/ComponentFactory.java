@@ -2,10 +2,93 @@ package org.vaadin.teemu.clara.inflater;
 
 import static org.vaadin.teemu.clara.util.ReflectionUtils.isComponent;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import com.vaadin.ui.Component;
 
 public class ComponentFactory {
 
+    /**
+     * Resolved classes by qualified class name for each {@link ClassLoader}.
+     * Class names that couldn't be resolved are cached as well, so
+     * {@link Class#forName(String, boolean, ClassLoader)} is called at most
+     * once per class name and {@link ClassLoader}. The classes are only
+     * referenced weakly, otherwise they would keep their {@link ClassLoader}
+     * key from being collected.
+     */
+    private static final Map<ClassLoader, ConcurrentMap<String, Object>> classCache = Collections
+            .synchronizedMap(new WeakHashMap<ClassLoader, ConcurrentMap<String, Object>>());
+
+    /**
+     * Marks a class name that couldn't be resolved.
+     */
+    private static final Object NOT_FOUND = new Object();
+
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType
+            .methodType(void.class);
+    private static final MethodType COMPONENT_FACTORY_TYPE = MethodType
+            .methodType(Component.class);
+
+    /**
+     * No-arg constructors of the component classes, stored with the classes
+     * themselves.
+     */
+    private static final ClassValue<ComponentConstructor> constructors = new ClassValue<ComponentConstructor>() {
+
+        @Override
+        protected ComponentConstructor computeValue(Class<?> type) {
+            if (!isComponent(type)) {
+                return new ComponentConstructor(null, String.format(
+                        "Resolved class %s is not a %s.", type.getName(),
+                        Component.class.getName()));
+            }
+            try {
+                return new ComponentConstructor(MethodHandles.publicLookup()
+                        .findConstructor(type, CONSTRUCTOR_TYPE)
+                        .asType(COMPONENT_FACTORY_TYPE), null);
+            } catch (NoSuchMethodException e) {
+                return new ComponentConstructor(null, String.format(
+                        "Class %s has no public no-arg constructor.",
+                        type.getName()));
+            } catch (IllegalAccessException e) {
+                return new ComponentConstructor(null, String.format(
+                        "Class %s has no public no-arg constructor.",
+                        type.getName()));
+            }
+        }
+    };
+
+    private final ClassLoader classLoader;
+    private final ConcurrentMap<String, Object> classes;
+
+    /**
+     * Creates a {@link ComponentFactory} that resolves component classes with
+     * the {@link ClassLoader} of Clara.
+     */
+    public ComponentFactory() {
+        this(ComponentFactory.class.getClassLoader());
+    }
+
+    /**
+     * Creates a {@link ComponentFactory} that resolves component classes with
+     * the given {@link ClassLoader}.
+     *
+     * @param classLoader
+     *            {@link ClassLoader} to resolve component classes with.
+     */
+    public ComponentFactory(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+        this.classes = getClasses(classLoader);
+    }
+
     /**
      * Returns a new {@link Component} instance of given {@code namespace} and
      * {@code name}. If the component cannot be instantiated properly a
@@ -21,34 +104,69 @@ public class ComponentFactory {
      */
     public Component createComponent(String namespace, String name)
             throws ComponentInstantiationException {
+        String qualifiedClassName = namespace + "." + name;
+        Class<?> componentClass = getClass(qualifiedClassName);
+        if (componentClass == null) {
+            // A new exception every time, so that the stack trace is
+            // current.
+            throw createException(new ClassNotFoundException(
+                    qualifiedClassName), namespace, name);
+        }
+        ComponentConstructor constructor = constructors.get(componentClass);
+        if (constructor.handle == null) {
+            throw createException(new IllegalArgumentException(
+                    constructor.failure), namespace, name);
+        }
         try {
-            Class<? extends Component> componentClass = resolveComponentClass(
-                    namespace, name);
-            Component newComponent = componentClass.newInstance();
-            return newComponent;
-        } catch (Exception e) {
-            throw createException(e, namespace, name);
+            return (Component) constructor.handle.invokeExact();
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable t) {
+            // Only exceptions of the constructor are wrapped.
+            throw createException(t, namespace, name);
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private Class<? extends Component> resolveComponentClass(String namespace,
-            String name) throws ClassNotFoundException {
-        String qualifiedClassName = namespace + "." + name;
+    /**
+     * Returns the class of the given name, or {@code null} if it can't be
+     * found.
+     */
+    private Class<?> getClass(String qualifiedClassName) {
+        Object resolved = classes.get(qualifiedClassName);
+        if (resolved == NOT_FOUND) {
+            return null;
+        }
         Class<?> componentClass = null;
-        componentClass = Class.forName(qualifiedClassName);
+        if (resolved != null) {
+            componentClass = (Class<?>) ((WeakReference<?>) resolved).get();
+        }
+        if (componentClass == null) {
+            try {
+                componentClass = Class.forName(qualifiedClassName, true,
+                        classLoader);
+                classes.put(qualifiedClassName, new WeakReference<Class<?>>(
+                        componentClass));
+            } catch (ClassNotFoundException e) {
+                classes.put(qualifiedClassName, NOT_FOUND);
+            }
+        }
+        return componentClass;
+    }
 
-        // Check that we're dealing with a Component.
-        if (isComponent(componentClass)) {
-            return (Class<? extends Component>) componentClass;
-        } else {
-            throw new IllegalArgumentException(String.format(
-                    "Resolved class %s is not a %s.", componentClass.getName(),
-                    Component.class.getName()));
+    private static ConcurrentMap<String, Object> getClasses(
+            ClassLoader classLoader) {
+        synchronized (classCache) {
+            ConcurrentMap<String, Object> classes = classCache
+                    .get(classLoader);
+            if (classes == null) {
+                classes = new ConcurrentHashMap<String, Object>();
+                classCache.put(classLoader, classes);
+            }
+            return classes;
         }
     }
 
-    private ComponentInstantiationException createException(Exception e,
+    private ComponentInstantiationException createException(Throwable e,
             String namespace, String name) {
         String message = String
                 .format("Couldn't instantiate a component for namespace %s and name %s.",
@@ -60,4 +178,19 @@ public class ComponentFactory {
         }
     }
 
+    /**
+     * No-arg constructor of a component class as a {@link MethodHandle} or
+     * the reason why the class can't be used.
+     */
+    private static class ComponentConstructor {
+
+        private final MethodHandle handle;
+        private final String failure;
+
+        public ComponentConstructor(MethodHandle handle, String failure) {
+            this.handle = handle;
+            this.failure = failure;
+        }
+    }
+
 }
@@ -0,0 +1,32 @@
+package org.vaadin.teemu.clara.inflater;
+
+import com.vaadin.ui.Component;
+
+/**
+ * Resets released components to a clean state before a
+ * {@link RecyclingComponentProvider} hands them out again.
+ * <p>
+ * A reused component is inflated again from a template, so the resetter must
+ * restore everything the template, the
+ * {@link org.vaadin.teemu.clara.binder.Binder} or the application may have
+ * changed and the next template might not set: listeners (including the ones
+ * added for {@link org.vaadin.teemu.clara.binder.annotation.UiHandler}
+ * methods), data sources, values, the id and any other state.
+ * </p>
+ * <p>
+ * The component has already been detached from its parent and its children
+ * have been removed when this method is called.
+ * </p>
+ */
+public interface ComponentResetter {
+
+    /**
+     * Resets the given released {@code component} for reuse.
+     *
+     * @param component
+     *            the released component.
+     * @return {@code true} if the component was reset and can be reused,
+     *         {@code false} if it should be discarded instead.
+     */
+    boolean reset(Component component);
+}
@@ -0,0 +1,16 @@
+package org.vaadin.teemu.clara.inflater;
+
+/**
+ * {@link ComponentProvider} whose applicability depends only on the namespace
+ * URI and the local name of an element, never on its id.
+ * <p>
+ * {@link LayoutInflater} calls {@link #isApplicableFor(String, String, String)}
+ * of such providers only once per distinct {@code uri} and {@code localName}
+ * and reuses the result for all further elements of the same kind, also in
+ * later inflations. The {@code id} given to that single call is the id of the
+ * first such element and must not affect the result.
+ * </p>
+ */
+public interface IdIndependentComponentProvider extends ComponentProvider {
+
+}
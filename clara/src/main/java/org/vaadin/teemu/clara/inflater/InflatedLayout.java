@@ -0,0 +1,91 @@
+package org.vaadin.teemu.clara.inflater;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.vaadin.teemu.clara.inflater.LayoutTemplate.Element;
+
+import com.vaadin.ui.Component;
+
+/**
+ * A {@link Component} hierarchy together with the {@link LayoutTemplate} it
+ * was inflated from and the element each component was created for. Instances
+ * are created with
+ * {@link LayoutInflater#inflateLayout(LayoutTemplate, java.util.List, java.util.Map)}
+ * and can be brought up to date with a changed template with
+ * {@link LayoutInflater#update(InflatedLayout, LayoutTemplate, java.util.List, java.util.Map)}
+ * , which modifies only the components affected by the change.
+ * <p>
+ * An {@link InflatedLayout} describes the hierarchy only until it's updated,
+ * after which the {@link InflatedLayout} returned by the update must be used.
+ * The components must not be rearranged by the application in the meantime.
+ * </p>
+ */
+public final class InflatedLayout {
+
+    private final LayoutTemplate template;
+    private final Node root;
+    private final Set<Component> createdComponents;
+
+    InflatedLayout(LayoutTemplate template, Node root,
+            Set<Component> createdComponents) {
+        this.template = template;
+        this.root = root;
+        this.createdComponents = Collections
+                .unmodifiableSet(createdComponents);
+    }
+
+    /**
+     * @return the root {@link Component} of the hierarchy.
+     */
+    public Component getRoot() {
+        return root.component;
+    }
+
+    /**
+     * @return the {@link LayoutTemplate} the hierarchy currently corresponds
+     *         to.
+     */
+    public LayoutTemplate getTemplate() {
+        return template;
+    }
+
+    /**
+     * Returns the components that were created when this layout was inflated
+     * or updated. For an update these are only the components that didn't
+     * exist before, so bindings need to be created only for them.
+     *
+     * @return unmodifiable identity based set of the created components.
+     */
+    public Set<Component> getCreatedComponents() {
+        return createdComponents;
+    }
+
+    Node getRootNode() {
+        return root;
+    }
+
+    static Set<Component> newComponentSet() {
+        return Collections
+                .newSetFromMap(new IdentityHashMap<Component, Boolean>());
+    }
+
+    /**
+     * A component and the template element it was created for.
+     */
+    static final class Node {
+
+        final Element element;
+        final Component component;
+        final List<Node> children = new ArrayList<Node>();
+
+        Node(Element element, Component component) {
+            this.element = element;
+            this.component = component;
+        }
+    }
+
+}
@@ -2,40 +2,91 @@ package org.vaadin.teemu.clara.inflater;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.Stack;
+import java.util.WeakHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 import java.util.logging.Logger;
 
+import org.vaadin.teemu.clara.inflater.InflatedLayout.Node;
+import org.vaadin.teemu.clara.inflater.LayoutTemplate.Element;
 import org.vaadin.teemu.clara.inflater.filter.AttributeFilter;
 import org.vaadin.teemu.clara.inflater.handler.AttributeHandler;
+import org.vaadin.teemu.clara.inflater.handler.FilterState;
 import org.vaadin.teemu.clara.inflater.handler.LayoutAttributeHandler;
 import org.vaadin.teemu.clara.inflater.parser.AttributeParser;
-import org.xml.sax.Attributes;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
-import org.xml.sax.XMLReader;
-import org.xml.sax.helpers.DefaultHandler;
-import org.xml.sax.helpers.XMLReaderFactory;
 
+import com.vaadin.ui.AbstractOrderedLayout;
 import com.vaadin.ui.Component;
 import com.vaadin.ui.ComponentContainer;
+import com.vaadin.ui.GridLayout;
+import com.vaadin.ui.HasComponents;
 import com.vaadin.ui.SingleComponentContainer;
 
-public class LayoutInflater {
+/**
+ * Inflates layout XML or compiled {@link LayoutTemplate}s into
+ * {@link Component} hierarchies.
+ * <p>
+ * An inflater is serialized with the pending {@link LazyFragment}s of a
+ * serialized component hierarchy, so its filters, parsers and template parser
+ * must be serializable then. The deserialized inflater inflates sequentially,
+ * as the {@link ForkJoinPool} isn't serialized.
+ * </p>
+ */
+public class LayoutInflater implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     static final String URN_NAMESPACE_ID = "import";
     static final String IMPORT_URN_PREFIX = "urn:" + URN_NAMESPACE_ID + ":";
     static final String DEFAULT_NAMESPACE = IMPORT_URN_PREFIX + "com.vaadin.ui";
 
+    /**
+     * Default minimum number of elements in a subtree that is inflated in a
+     * separate task, see {@link #setParallelThreshold(int)}.
+     */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 250;
+
     private List<AttributeFilter> attributeFilters = new ArrayList<AttributeFilter>();
     private List<AttributeParser> extraAttributeParsers = new ArrayList<AttributeParser>();
+    private volatile TemplateParser templateParser = new SaxTemplateParser();
+    private transient volatile ForkJoinPool forkJoinPool;
+    private volatile int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+    // Handlers are shared between inflations to reuse their resolved setters.
+    // They are recreated on demand after deserialization.
+    private transient AttributeHandler attributeHandler;
+    private transient LayoutAttributeHandler layoutAttributeHandler;
+
+    // Shared by all inflations, so that its applicability is memoized once.
+    private final ComponentProvider defaultComponentProvider = new DefaultComponentProvider();
+
+    // Weak keys, as a new provider instance may be given for each inflation.
+    private transient Map<IdIndependentComponentProvider, ApplicabilityMemo> applicabilityMemos = createApplicabilityMemos();
+
+    private static Map<IdIndependentComponentProvider, ApplicabilityMemo> createApplicabilityMemos() {
+        return Collections
+                .synchronizedMap(new WeakHashMap<IdIndependentComponentProvider, ApplicabilityMemo>());
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException,
+            ClassNotFoundException {
+        in.defaultReadObject();
+        applicabilityMemos = createApplicabilityMemos();
+    }
 
     protected Logger getLogger() {
         return Logger.getLogger(LayoutInflater.class.getName());
@@ -51,8 +102,23 @@ public class LayoutInflater {
      *             in case of an error in the inflation process.
      */
     public Component inflate(InputStream xml) {
+        return inflate(compile(xml));
+    }
+
+    /**
+     * Inflates the given {@code template} into a {@link Component}
+     * (hierarchy).
+     *
+     * @param template
+     *            {@link LayoutTemplate} previously compiled with
+     *            {@link #compile(InputStream)}.
+     * @return the inflated {@link Component} (hierarchy).
+     * @throws LayoutInflaterException
+     *             in case of an error in the inflation process.
+     */
+    public Component inflate(LayoutTemplate template) {
         Map<String, Component> empty = Collections.emptyMap();
-        return inflate(xml, empty);
+        return inflate(template, empty);
     }
 
     /**
@@ -69,7 +135,27 @@ public class LayoutInflater {
      */
     public Component inflate(InputStream xml,
             Map<String, Component> componentOverrideMap) {
-        return inflate(xml, componentOverrideMap, new ComponentProvider[0]);
+        return inflate(compile(xml), componentOverrideMap);
+    }
+
+    /**
+     * Inflates the given {@code template} into a {@link Component}
+     * (hierarchy).
+     *
+     * @param template
+     *            {@link LayoutTemplate} previously compiled with
+     *            {@link #compile(InputStream)}.
+     * @param componentOverrideMap
+     *            {@link Map} of already existing {@link Component} instances
+     *            from their {@code id} properties.
+     * @return the inflated {@link Component} (hierarchy).
+     * @throws LayoutInflaterException
+     *             in case of an error in the inflation process.
+     */
+    public Component inflate(LayoutTemplate template,
+            Map<String, Component> componentOverrideMap) {
+        return inflate(template, componentOverrideMap,
+                new ComponentProvider[0]);
     }
 
     /**
@@ -87,20 +173,90 @@ public class LayoutInflater {
     public Component inflate(InputStream xml,
             Map<String, Component> componentOverrideMap,
             ComponentProvider... additionalComponentProviders) {
+        return inflate(compile(xml), componentOverrideMap,
+                additionalComponentProviders);
+    }
+
+    /**
+     * Inflates the given {@code template} into a {@link Component}
+     * (hierarchy).
+     *
+     * @param template
+     *            {@link LayoutTemplate} previously compiled with
+     *            {@link #compile(InputStream)}.
+     * @param componentOverrideMap
+     *            {@link Map} of already existing {@link Component} instances
+     *            from their {@code id} properties.
+     * @return the inflated {@link Component} (hierarchy).
+     * @throws LayoutInflaterException
+     *             in case of an error in the inflation process.
+     */
+    public Component inflate(LayoutTemplate template,
+            Map<String, Component> componentOverrideMap,
+            ComponentProvider... additionalComponentProviders) {
+        return inflate(template, componentOverrideMap, null,
+                additionalComponentProviders);
+    }
+
+    /**
+     * Inflates the given {@code template} into a {@link Component}
+     * (hierarchy) and collects the inflated components by their {@code id}
+     * property into the given {@code componentsById} {@link Map}.
+     *
+     * @param template
+     *            {@link LayoutTemplate} previously compiled with
+     *            {@link #compile(InputStream)}.
+     * @param componentOverrideMap
+     *            {@link Map} of already existing {@link Component} instances
+     *            from their {@code id} properties.
+     * @param componentsById
+     *            {@link Map} to fill with the inflated components by their
+     *            {@code id} property ({@code null} allowed).
+     * @return the inflated {@link Component} (hierarchy).
+     * @throws LayoutInflaterException
+     *             in case of an error in the inflation process.
+     */
+    public Component inflate(LayoutTemplate template,
+            Map<String, Component> componentOverrideMap,
+            Map<String, Component> componentsById,
+            ComponentProvider... additionalComponentProviders) {
         List<ComponentProvider> providers = createDefaultComponentProviders(componentOverrideMap);
         providers.addAll(Arrays.asList(additionalComponentProviders));
-        return inflate(xml,
-                providers.toArray(new ComponentProvider[providers.size()]));
+        return inflate(template, providers, componentsById);
     }
 
     private List<ComponentProvider> createDefaultComponentProviders(
             Map<String, Component> componentOverrideMap) {
         List<ComponentProvider> providers = new ArrayList<ComponentProvider>();
         providers.add(new OverrideMapComponentProvider(componentOverrideMap));
-        providers.add(new ReflectionComponentProvider());
+        providers.add(defaultComponentProvider);
         return providers;
     }
 
+    /**
+     * Returns the provider this inflater uses by default for elements in
+     * {@code urn:import:} namespaces. It behaves like a
+     * {@link ReflectionComponentProvider}, but is the same instance for all
+     * inflations and an {@link IdIndependentComponentProvider}, so its
+     * applicability is checked only once per kind of element.
+     *
+     * @return the default component provider.
+     */
+    public ComponentProvider getDefaultComponentProvider() {
+        return defaultComponentProvider;
+    }
+
+    /**
+     * {@link ReflectionComponentProvider} that can't be subclassed, so its
+     * applicability is known not to depend on the id.
+     */
+    private static final class DefaultComponentProvider extends
+            ReflectionComponentProvider implements
+            IdIndependentComponentProvider {
+
+        private static final long serialVersionUID = 1L;
+    }
+
     /**
      * Inflates the given {@code xml} into a {@link Component} (hierarchy).
      *
@@ -132,153 +288,826 @@ public class LayoutInflater {
      */
     public Component inflate(InputStream xml,
             List<ComponentProvider> componentProviders) {
+        return inflate(compile(xml), componentProviders);
+    }
+
+    /**
+     * Inflates the given {@code template} into a {@link Component}
+     * (hierarchy).
+     *
+     * @param template
+     *            {@link LayoutTemplate} previously compiled with
+     *            {@link #compile(InputStream)}.
+     * @param componentProviders
+     *            the {@link ComponentProvider}s to apply in given order to
+     *            inflate xml to components.
+     * @return the inflated {@link Component} (hierarchy).
+     * @throws LayoutInflaterException
+     *             in case of an error in the inflation process.
+     */
+    public Component inflate(LayoutTemplate template,
+            List<ComponentProvider> componentProviders) {
+        return inflate(template, componentProviders, null);
+    }
+
+    /**
+     * Inflates the given {@code template} into a {@link Component}
+     * (hierarchy) and collects the inflated components by their {@code id}
+     * property into the given {@code componentsById} {@link Map}. The
+     * {@code id} is read after the attributes of a component have been
+     * assigned, so it includes any modifications done by the
+     * {@link AttributeFilter}s.
+     *
+     * @param template
+     *            {@link LayoutTemplate} previously compiled with
+     *            {@link #compile(InputStream)}.
+     * @param componentProviders
+     *            the {@link ComponentProvider}s to apply in given order to
+     *            inflate xml to components.
+     * @param componentsById
+     *            {@link Map} to fill with the inflated components by their
+     *            {@code id} property ({@code null} allowed).
+     * @return the inflated {@link Component} (hierarchy).
+     * @throws LayoutInflaterException
+     *             in case of an error in the inflation process.
+     */
+    public Component inflate(LayoutTemplate template,
+            List<ComponentProvider> componentProviders,
+            Map<String, Component> componentsById) {
+        return inflate(template, componentProviders, componentsById, null);
+    }
+
+    /**
+     * Inflates the given {@code template} like
+     * {@link #inflate(LayoutTemplate, List, Map)} and collects the
+     * {@link LazyFragment}s whose children were deferred into the given
+     * {@code lazyFragments} list. The children of an element are deferred if
+     * it has the layout attribute {@code lazy="true"} (in the
+     * {@code urn:vaadin:parent} namespace), see {@link LazyFragment} for when
+     * they are inflated. The {@code componentsById} map contains only the
+     * components inflated right away.
+     *
+     * @param template
+     *            {@link LayoutTemplate} previously compiled with
+     *            {@link #compile(InputStream)}.
+     * @param componentProviders
+     *            the {@link ComponentProvider}s to apply in given order to
+     *            inflate xml to components.
+     * @param componentsById
+     *            {@link Map} to fill with the inflated components by their
+     *            {@code id} property ({@code null} allowed).
+     * @param lazyFragments
+     *            {@link List} to fill with the deferred fragments
+     *            ({@code null} allowed).
+     * @return the inflated {@link Component} (hierarchy).
+     * @throws LayoutInflaterException
+     *             in case of an error in the inflation process.
+     */
+    public Component inflate(LayoutTemplate template,
+            List<ComponentProvider> componentProviders,
+            Map<String, Component> componentsById,
+            List<LazyFragment> lazyFragments) {
         try {
-            LayoutInflaterContentHandler contentHandler = new LayoutInflaterContentHandler(
-                    componentProviders);
-
-            // Parse the XML and return root Component.
-            XMLReader parser = XMLReaderFactory.createXMLReader();
-            parser.setContentHandler(contentHandler);
-            parser.parse(new InputSource(xml));
-            return contentHandler.root;
-        } catch (SAXException e) {
-            throw new LayoutInflaterException(e);
-        } catch (IOException e) {
-            throw new LayoutInflaterException(e);
+            TemplateInflater templateInflater = new TemplateInflater(
+                    componentProviders, componentsById);
+            templateInflater.lazyFragments = lazyFragments;
+            return templateInflater.inflate(template);
         } catch (ComponentInstantiationException e) {
             throw new LayoutInflaterException(e.getMessage(), e);
         }
     }
 
-    public void addAttributeFilter(AttributeFilter attributeFilter) {
+    /**
+     * Starts inflating a layout from XML that is fed in chunks with the
+     * default component providers. See
+     * {@link #startInflation(List, Map)}.
+     *
+     * @return the inflation to feed the XML to.
+     */
+    public StreamingInflater startInflation() {
+        return startInflation(
+                createDefaultComponentProviders(Collections
+                        .<String, Component> emptyMap()), null);
+    }
+
+    /**
+     * Starts inflating a layout from XML that is fed in chunks, for example
+     * as it is read from a non-blocking channel (see
+     * {@link StreamingInflater}).
+     *
+     * @param componentProviders
+     *            the {@link ComponentProvider}s to apply in given order to
+     *            inflate xml to components.
+     * @param componentsById
+     *            {@link Map} to fill with the inflated components by their
+     *            {@code id} property ({@code null} allowed).
+     * @return the inflation to feed the XML to.
+     */
+    public StreamingInflater startInflation(
+            List<ComponentProvider> componentProviders,
+            Map<String, Component> componentsById) {
+        final TemplateInflater templateInflater = new TemplateInflater(
+                componentProviders, componentsById);
+        return new StreamingInflater(new StreamingInflater.Target() {
+
+            @Override
+            public void startElement(Element element) {
+                try {
+                    templateInflater.startElement(element);
+                } catch (ComponentInstantiationException e) {
+                    throw new LayoutInflaterException(e.getMessage(), e);
+                }
+            }
+
+            @Override
+            public void endElement() {
+                templateInflater.endElement();
+            }
+
+            @Override
+            public Component getRoot() {
+                return templateInflater.root;
+            }
+        });
+    }
+
+    /**
+     * Inflates the children of the given {@code element} and attaches them to
+     * the existing component {@code root} of the element.
+     */
+    void inflateFragment(Element element, Component root,
+            List<ComponentProvider> componentProviders,
+            Map<String, Component> componentsById,
+            Set<Component> createdComponents, List<LazyFragment> lazyFragments) {
+        try {
+            TemplateInflater templateInflater = new TemplateInflater(
+                    componentProviders, componentsById);
+            templateInflater.lazyFragments = lazyFragments;
+            templateInflater.inflateChildren(element, root, createdComponents);
+        } catch (ComponentInstantiationException e) {
+            throw new LayoutInflaterException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Inflates the given {@code template} like
+     * {@link #inflate(LayoutTemplate, List, Map)}, but returns an
+     * {@link InflatedLayout} that can later be updated to a changed template
+     * with {@link #update(InflatedLayout, LayoutTemplate, List, Map)}.
+     *
+     * @param template
+     *            {@link LayoutTemplate} previously compiled with
+     *            {@link #compile(InputStream)}.
+     * @param componentProviders
+     *            the {@link ComponentProvider}s to apply in given order to
+     *            inflate xml to components.
+     * @param componentsById
+     *            {@link Map} to fill with the inflated components by their
+     *            {@code id} property ({@code null} allowed).
+     * @return the inflated layout.
+     * @throws LayoutInflaterException
+     *             in case of an error in the inflation process.
+     */
+    public InflatedLayout inflateLayout(LayoutTemplate template,
+            List<ComponentProvider> componentProviders,
+            Map<String, Component> componentsById) {
+        try {
+            return new TemplateInflater(componentProviders, componentsById)
+                    .inflateLayout(template);
+        } catch (ComponentInstantiationException e) {
+            throw new LayoutInflaterException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Updates the component hierarchy of the given {@code layout} to match
+     * the given {@code template} by applying only the differences between
+     * the current template of the layout and the new one:
+     * <ul>
+     * <li>Changed and added attributes are assigned to the existing
+     * components.</li>
+     * <li>Child elements are matched to the existing components by their
+     * element name and id, so that unchanged components keep their state and
+     * listeners also when they are moved.</li>
+     * <li>Components for new elements are inflated and components of removed
+     * elements are removed from their parents.</li>
+     * </ul>
+     * Removing an attribute can't be undone with a setter, so an element
+     * whose attributes were removed, or whose name or id changed, is inflated
+     * again together with its children. The root component is replaced in
+     * its parent if it has to be inflated again. {@link InflaterListener}s
+     * are notified only for the new components.
+     *
+     * @param layout
+     *            the current layout, which must not be used anymore after
+     *            this call.
+     * @param template
+     *            the new {@link LayoutTemplate}.
+     * @param componentProviders
+     *            the {@link ComponentProvider}s to apply in given order to
+     *            inflate the new elements.
+     * @param componentsById
+     *            {@link Map} to fill with all components of the updated
+     *            hierarchy by their {@code id} property ({@code null}
+     *            allowed).
+     * @return the updated layout, whose
+     *         {@link InflatedLayout#getCreatedComponents()} contains only the
+     *         new components.
+     * @throws LayoutInflaterException
+     *             in case of an error in the inflation process.
+     */
+    public InflatedLayout update(InflatedLayout layout,
+            LayoutTemplate template,
+            List<ComponentProvider> componentProviders,
+            Map<String, Component> componentsById) {
+        try {
+            return new TemplatePatcher(componentProviders).update(layout,
+                    template, componentsById);
+        } catch (ComponentInstantiationException e) {
+            throw new LayoutInflaterException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Parses the given {@code xml} into an immutable {@link LayoutTemplate}
+     * that can be inflated any number of times without parsing the XML again.
+     *
+     * @param xml
+     *            {@link InputStream} for the XML.
+     * @return the parsed {@link LayoutTemplate}.
+     * @throws LayoutInflaterException
+     *             in case of an error while parsing the XML.
+     */
+    public LayoutTemplate compile(InputStream xml) {
+        return templateParser.parse(xml);
+    }
+
+    /**
+     * Sets the {@link TemplateParser} used to parse the XML. By default a
+     * {@link SaxTemplateParser} is used.
+     *
+     * @param templateParser
+     *            the parser to use.
+     * @throws IllegalArgumentException
+     *             if {@code templateParser} is {@code null}.
+     */
+    public void setTemplateParser(TemplateParser templateParser) {
+        if (templateParser == null) {
+            throw new IllegalArgumentException(
+                    "Template parser must not be null.");
+        }
+        this.templateParser = templateParser;
+    }
+
+    public TemplateParser getTemplateParser() {
+        return templateParser;
+    }
+
+    /**
+     * Sets the {@link ForkJoinPool} used to inflate large templates in
+     * parallel. Sibling subtrees with at least
+     * {@link #getParallelThreshold()} elements are inflated in separate
+     * tasks, each one to a detached component tree. The calling thread
+     * inflates the rest of the template meanwhile and attaches the subtrees
+     * in document order, so the resulting hierarchy is the same as when
+     * inflating sequentially.
+     * <p>
+     * The {@link ComponentProvider}s, {@link AttributeFilter}s and
+     * {@link AttributeParser}s are called from the threads of the pool, so
+     * they must be thread-safe, and components must not rely on thread local
+     * state such as {@code UI.getCurrent()} when they are constructed.
+     * {@link InflaterListener}s are still notified on the calling thread,
+     * those of a subtree inflated in a task once the subtree has been
+     * attached. Templates inflated with
+     * {@link #inflateLayout(LayoutTemplate, List, Map)} are always inflated
+     * sequentially.
+     * </p>
+     *
+     * @param forkJoinPool
+     *            the pool to use, {@code null} to inflate sequentially (the
+     *            default).
+     */
+    public void setForkJoinPool(ForkJoinPool forkJoinPool) {
+        this.forkJoinPool = forkJoinPool;
+    }
+
+    public ForkJoinPool getForkJoinPool() {
+        return forkJoinPool;
+    }
+
+    /**
+     * Sets the minimum number of elements in a subtree that is inflated in a
+     * separate task when a {@link ForkJoinPool} is set. A subtree is large
+     * enough when it has at least {@code parallelThreshold} elements, counting
+     * its own root element. Smaller subtrees aren't worth the overhead of a
+     * task. The default is {@value #DEFAULT_PARALLEL_THRESHOLD}.
+     *
+     * @param parallelThreshold
+     *            the minimum number of elements.
+     * @throws IllegalArgumentException
+     *             if {@code parallelThreshold} is less than 1.
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        if (parallelThreshold < 1) {
+            throw new IllegalArgumentException(
+                    "Parallel threshold must be at least 1.");
+        }
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    public synchronized void addAttributeFilter(AttributeFilter attributeFilter) {
         attributeFilters.add(attributeFilter);
+        resetAttributeHandlers();
     }
 
-    public void removeAttributeFilter(AttributeFilter attributeFilter) {
+    public synchronized void removeAttributeFilter(
+            AttributeFilter attributeFilter) {
         attributeFilters.remove(attributeFilter);
+        resetAttributeHandlers();
     }
 
-    public void addAttributeParser(AttributeParser attributeParser) {
+    public synchronized void addAttributeParser(AttributeParser attributeParser) {
         extraAttributeParsers.add(attributeParser);
+        attributeHandler = null;
     }
 
-    private class LayoutInflaterContentHandler extends DefaultHandler {
+    /**
+     * The handlers compile the filters into a chain when they are created, so
+     * they are recreated after the filters have changed.
+     */
+    private void resetAttributeHandlers() {
+        attributeHandler = null;
+        layoutAttributeHandler = null;
+    }
+
+    private synchronized AttributeHandler getAttributeHandler() {
+        if (attributeHandler == null) {
+            attributeHandler = new AttributeHandler(attributeFilters,
+                    extraAttributeParsers);
+        }
+        return attributeHandler;
+    }
+
+    private ApplicabilityMemo getApplicabilityMemo(
+            IdIndependentComponentProvider provider) {
+        synchronized (applicabilityMemos) {
+            ApplicabilityMemo memo = applicabilityMemos.get(provider);
+            if (memo == null) {
+                memo = new ApplicabilityMemo();
+                applicabilityMemos.put(provider, memo);
+            }
+            return memo;
+        }
+    }
+
+    private synchronized LayoutAttributeHandler getLayoutAttributeHandler() {
+        if (layoutAttributeHandler == null) {
+            layoutAttributeHandler = new LayoutAttributeHandler(
+                    attributeFilters);
+        }
+        return layoutAttributeHandler;
+    }
+
+    /**
+     * Returns the layout attributes of the given element without
+     * {@code lazy}, which is consumed by the inflater itself and must not
+     * reach the {@link LayoutAttributeHandler}.
+     */
+    private static Map<String, String> getLayoutAttributes(Element element,
+            String namespace) {
+        Map<String, String> attributes = element.getAttributes(namespace);
+        if (!attributes.containsKey(TemplateInflater.LAZY_ATTRIBUTE)) {
+            return attributes;
+        }
+        Map<String, String> withoutLazy = new HashMap<String, String>(
+                attributes);
+        withoutLazy.remove(TemplateInflater.LAZY_ATTRIBUTE);
+        return withoutLazy;
+    }
+
+    /**
+     * Instantiates the {@link Component} hierarchy described by a
+     * {@link LayoutTemplate}.
+     */
+    private class TemplateInflater {
 
         private static final String ID_ATTRIBUTE = "id";
+        private static final String LAZY_ATTRIBUTE = "lazy";
+        private static final int INITIAL_DEPTH = 16;
 
-        private Stack<Component> componentStack = new Stack<Component>();
-        private ComponentContainer currentContainer;
+        /**
+         * Frames of the currently open elements indexed by their depth, so
+         * that the parent of an element is always at {@code depth - 1}.
+         */
+        private Frame[] frames = new Frame[INITIAL_DEPTH];
+        private int depth;
         private Component root;
+        private Node rootNode;
+        // Created components, or null if they aren't collected.
+        private Set<Component> createdComponents;
+        // Whether the hierarchy is recorded as nodes, lazy elements are
+        // inflated right away then.
+        private boolean recordNodes;
+        // Deferred fragments, or null if they aren't collected.
+        private List<LazyFragment> lazyFragments;
+        // Whether the root is inflated without a parent for later placement.
+        private boolean detached;
+        // InflaterListeners of a subtree inflated in a task, null otherwise.
+        // They are notified in order on the joining thread once the subtree
+        // has been attached.
+        private List<InflaterListener> pendingListeners;
+        // Pool for inflating large subtrees, null if inflated sequentially.
+        private final ForkJoinPool pool;
+        private final int parallelThreshold;
+        // Element counts of the subtrees when inflated in parallel.
+        private Map<Element, Integer> subtreeSizes;
         private final AttributeHandler attributeHandler;
         private final LayoutAttributeHandler layoutAttributeHandler;
+        // Reused for filtering all attributes of this inflation.
+        private final FilterState filterState = new FilterState();
         private final Set<String> assignedIds = new HashSet<String>();
-        private final List<ComponentProvider> componentProviders;
+        private final ComponentProvider[] componentProviders;
+        private final ApplicabilityMemo[] applicabilityMemos;
+        private final Map<String, Component> componentsById;
 
-        public LayoutInflaterContentHandler(
-                List<ComponentProvider> componentProviders) {
-            this.componentProviders = componentProviders;
+        public TemplateInflater(List<ComponentProvider> componentProviders,
+                Map<String, Component> componentsById) {
+            this.componentProviders = componentProviders
+                    .toArray(new ComponentProvider[componentProviders.size()]);
+            this.componentsById = componentsById;
 
-            attributeHandler = new AttributeHandler(attributeFilters,
-                    extraAttributeParsers);
-            layoutAttributeHandler = new LayoutAttributeHandler(
-                    attributeFilters);
+            // Look up the memos once for the whole inflation.
+            applicabilityMemos = new ApplicabilityMemo[componentProviders
+                    .size()];
+            for (int i = 0; i < applicabilityMemos.length; i++) {
+                ComponentProvider provider = this.componentProviders[i];
+                if (provider instanceof IdIndependentComponentProvider) {
+                    applicabilityMemos[i] = getApplicabilityMemo((IdIndependentComponentProvider) provider);
+                }
+            }
+
+            attributeHandler = getAttributeHandler();
+            layoutAttributeHandler = getLayoutAttributeHandler();
+            pool = forkJoinPool;
+            parallelThreshold = LayoutInflater.this.parallelThreshold;
         }
 
-        @Override
-        public void startDocument() throws SAXException {
-            super.startDocument();
+        public Component inflate(LayoutTemplate template) {
             assignedIds.clear();
+            if (pool != null && !recordNodes) {
+                // The ids are verified up front, as the subtrees are
+                // inflated by separate inflaters.
+                subtreeSizes = new IdentityHashMap<Element, Integer>();
+                countElements(template.getRoot(), assignedIds);
+                assignedIds.clear();
+            }
+            inflateElement(template.getRoot());
+            return root;
         }
 
-        @Override
-        public void startElement(String uri, String localName, String qName,
-                Attributes attributes) throws SAXException {
-            super.startElement(uri, localName, qName, attributes);
+        private int countElements(Element element, Set<String> ids) {
+            String id = element.getAttributeValue(ID_ATTRIBUTE);
+            if (id != null && id.length() > 0 && !ids.add(id)) {
+                throw new LayoutInflaterException(String.format(
+                        "Given id %s has already been assigned.", id));
+            }
+            int size = 1;
+            for (Element child : element.getChildren()) {
+                size += countElements(child, ids);
+            }
+            subtreeSizes.put(element, size);
+            return size;
+        }
 
-            if (uri.length() == 0) {
-                uri = DEFAULT_NAMESPACE;
+        /**
+         * Inflates the template and records the element of each component.
+         */
+        public InflatedLayout inflateLayout(LayoutTemplate template) {
+            createdComponents = InflatedLayout.newComponentSet();
+            recordNodes = true;
+            inflate(template);
+            return new InflatedLayout(template, rootNode, createdComponents);
+        }
+
+        /**
+         * Inflates the given element and its children without attaching the
+         * resulting component anywhere or assigning its layout attributes,
+         * so that the caller can place it in an existing hierarchy.
+         */
+        public Node inflateDetached(Element element, Set<Component> created) {
+            root = null;
+            rootNode = null;
+            detached = true;
+            createdComponents = created;
+            recordNodes = true;
+            inflateElement(element);
+            return rootNode;
+        }
+
+        /**
+         * Inflates the children of the given element and attaches them to
+         * the given existing component of the element.
+         */
+        public void inflateChildren(Element element, Component component,
+                Set<Component> created) {
+            root = component;
+            createdComponents = created;
+            pushFrame(component, null, null);
+            if (!(component instanceof ComponentContainer)) {
+                frames[depth - 1].container = findContainer(component
+                        .getParent());
             }
+            for (Element child : element.getChildren()) {
+                inflateElement(child);
+            }
+            endElement();
+        }
 
-            String id = attributes.getValue(ID_ATTRIBUTE);
+        private ComponentContainer findContainer(HasComponents parent) {
+            while (parent != null && !(parent instanceof ComponentContainer)) {
+                parent = parent.getParent();
+            }
+            return (ComponentContainer) parent;
+        }
 
-            ComponentProvider componentProvider = findApplicableComponentProvider(
-                    uri, localName, id);
+        private void inflateElement(Element element) {
+            if (startElement(element)) {
+                if (subtreeSizes != null && isLargeSubtree(element)) {
+                    inflateChildrenInParallel(element);
+                } else {
+                    for (Element child : element.getChildren()) {
+                        inflateElement(child);
+                    }
+                }
+            }
+            endElement();
+        }
 
-            verifyUniqueId(attributes);
+        /**
+         * Returns whether the subtree of the given element is large enough to
+         * be inflated in a separate task, see
+         * {@link LayoutInflater#setParallelThreshold(int)}.
+         */
+        private boolean isLargeSubtree(Element element) {
+            return subtreeSizes.get(element) >= parallelThreshold;
+        }
 
-            Component component = instantiateComponent(componentProvider, uri,
-                    localName, id);
+        /**
+         * Forks a task for each large child, inflates the other children
+         * meanwhile and attaches the subtrees of the tasks in document order.
+         * If any child fails, the tasks that haven't started yet are
+         * cancelled.
+         */
+        private void inflateChildrenInParallel(Element element) {
+            List<Element> children = element.getChildren();
+            SubtreeTask[] tasks = new SubtreeTask[children.size()];
+            for (int i = 0; i < tasks.length; i++) {
+                Element child = children.get(i);
+                if (isLargeSubtree(child) && !isLazyAttribute(child)) {
+                    tasks[i] = new SubtreeTask(child);
+                    if (ForkJoinTask.getPool() == pool) {
+                        tasks[i].fork();
+                    } else {
+                        pool.execute(tasks[i]);
+                    }
+                }
+            }
+            boolean completed = false;
+            try {
+                for (int i = 0; i < tasks.length; i++) {
+                    if (tasks[i] == null) {
+                        inflateElement(children.get(i));
+                    } else {
+                        attachSubtree(children.get(i), tasks[i].join());
+                    }
+                }
+                completed = true;
+            } finally {
+                if (!completed) {
+                    for (SubtreeTask task : tasks) {
+                        if (task != null) {
+                            task.cancel(false);
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Attaches the root of a subtree inflated by the given inflater like
+         * it would have been attached when inflating sequentially.
+         */
+        private void attachSubtree(Element element, TemplateInflater subtree) {
+            Component component = subtree.root;
+            if (componentsById != null) {
+                for (Map.Entry<String, Component> entry : subtree.componentsById
+                        .entrySet()) {
+                    if (!componentsById.containsKey(entry.getKey())) {
+                        componentsById.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+            if (lazyFragments != null) {
+                lazyFragments.addAll(subtree.lazyFragments);
+            }
+            attachComponent(component, frames[depth - 1]);
+            handleLayoutAttributes(component, element);
+            for (InflaterListener listener : subtree.pendingListeners) {
+                notifyInflated(listener);
+            }
+        }
+
+        /**
+         * Notifies the given listener, or queues it if this inflater runs in
+         * a task, so that listeners are always called on the thread that
+         * started the inflation.
+         */
+        private void notifyInflated(InflaterListener listener) {
+            if (pendingListeners != null) {
+                pendingListeners.add(listener);
+            } else {
+                listener.componentInflated();
+            }
+        }
+
+        /**
+         * Creates the component of the given element and returns
+         * {@code true} if its children should be inflated right away.
+         */
+        private boolean startElement(Element element) {
+            String uri = element.getUri();
+            String localName = element.getLocalName();
+            String id = element.getAttributeValue(ID_ATTRIBUTE);
+
+            verifyUniqueId(id);
+
+            Component component = instantiateComponent(uri, localName, id);
 
             if (root == null) {
                 // This was the first Component created -> root.
                 root = component;
             }
 
+            Frame parent = depth > 0 ? frames[depth - 1] : null;
+
             // Basic attributes -> attach -> layout attributes.
-            handleAttributes(component, attributes, attributeHandler);
-            attachComponent(component);
-            handleAttributes(component, attributes, layoutAttributeHandler);
+            handleAttributes(component, element, attributeHandler);
+            indexComponent(component);
+            attachComponent(component, parent);
+            if (parent != null || !detached) {
+                handleLayoutAttributes(component, element);
+            }
 
-            if (component instanceof ComponentContainer) {
-                currentContainer = (ComponentContainer) component;
+            Node node = null;
+            if (createdComponents != null) {
+                createdComponents.add(component);
+            }
+            if (recordNodes) {
+                node = new Node(element, component);
+                if (parent != null) {
+                    parent.node.children.add(node);
+                } else {
+                    rootNode = node;
+                }
             }
-            componentStack.push(component);
+            Frame frame = pushFrame(component, node, parent);
+            if (isLazy(element) && deferChildren(element, component)) {
+                frame.deferred = true;
+                return false;
+            }
+            return true;
+        }
 
+        private boolean isLazy(Element element) {
+            return !recordNodes && !element.getChildren().isEmpty()
+                    && isLazyAttribute(element);
         }
 
-        private ComponentProvider findApplicableComponentProvider(String uri,
-                String localName, String id) {
-            for (ComponentProvider provider : componentProviders) {
-                if (provider.isApplicableFor(uri, localName, id)) {
-                    return provider;
-                }
-            }
+        private boolean isLazyAttribute(Element element) {
+            return "true".equals(element.getAttributes(
+                    layoutAttributeHandler.getNamespace()).get(LAZY_ATTRIBUTE));
+        }
 
-            throw new LayoutInflaterException(
-                    String.format(
-                            "None of the component providers is "
-                                    + "capable to provide a component for uri=%s, localName=%s, id=%s",
-                            uri, localName, id));
+        /**
+         * Captures the children of the given element as a
+         * {@link LazyFragment}. Returns {@code false} if the children are
+         * needed right away, for example for the selected tab.
+         */
+        private boolean deferChildren(Element element, Component component) {
+            // Ids are verified already now to fail as early as the eager
+            // inflation would.
+            Set<String> ids = new HashSet<String>();
+            for (Element child : element.getChildren()) {
+                collectIds(child, ids);
+            }
+            LazyFragment fragment = new LazyFragment(component, element, ids,
+                    LayoutInflater.this, Arrays.asList(componentProviders));
+            if (!fragment.installTrigger()) {
+                assignedIds.removeAll(ids);
+                return false;
+            }
+            if (lazyFragments != null) {
+                lazyFragments.add(fragment);
+            }
+            return true;
         }
 
-        private void attachComponent(Component component) {
-            Component topComponent = componentStack.isEmpty() ? null
-                    : componentStack.peek();
-            if (topComponent instanceof SingleComponentContainer) {
-                ((SingleComponentContainer) topComponent).setContent(component);
-            } else if (currentContainer != null) {
-                currentContainer.addComponent(component);
+        private void collectIds(Element element, Set<String> ids) {
+            String id = element.getAttributeValue(ID_ATTRIBUTE);
+            verifyUniqueId(id);
+            if (id != null && id.length() > 0) {
+                ids.add(id);
+            }
+            for (Element child : element.getChildren()) {
+                collectIds(child, ids);
             }
         }
 
-        @Override
-        public void endElement(String uri, String localName, String qName)
-                throws SAXException {
-            super.endElement(uri, localName, qName);
-            Component component = componentStack.pop();
+        private Frame pushFrame(Component component, Node node, Frame parent) {
+            if (depth == frames.length) {
+                frames = Arrays.copyOf(frames, depth * 2);
+            }
+            Frame frame = frames[depth];
+            if (frame == null) {
+                frame = new Frame();
+                frames[depth] = frame;
+            }
+            frame.component = component;
+            frame.node = node;
             if (component instanceof ComponentContainer) {
-                Component parent = component.getParent();
-                while (parent != null
-                        && !(parent instanceof ComponentContainer)) {
-                    parent = parent.getParent();
-                }
-                currentContainer = (ComponentContainer) parent;
+                frame.container = (ComponentContainer) component;
+            } else {
+                frame.container = parent != null ? parent.container : null;
             }
-            if (component instanceof InflaterListener) {
-                ((InflaterListener) component).componentInflated();
+            frame.deferred = false;
+            depth++;
+            return frame;
+        }
+
+        private void indexComponent(Component component) {
+            String componentId = component.getId();
+            if (componentsById != null && componentId != null
+                    && !componentsById.containsKey(componentId)) {
+                componentsById.put(componentId, component);
             }
         }
 
-        private Component instantiateComponent(
-                ComponentProvider componentProvider, String uri,
-                String localName, String id) {
-            for (ComponentProvider provider : componentProviders) {
-                Component component = provider.getComponent(uri, localName, id);
-                if (component != null) {
-                    return component;
+        private void attachComponent(Component component, Frame parent) {
+            if (parent == null) {
+                return;
+            }
+            if (parent.component instanceof SingleComponentContainer) {
+                ((SingleComponentContainer) parent.component)
+                        .setContent(component);
+            } else if (parent.container != null) {
+                parent.container.addComponent(component);
+            }
+        }
+
+        private void endElement() {
+            Frame frame = frames[--depth];
+            Component component = frame.component;
+            // Don't keep references to the components after inflation.
+            frame.component = null;
+            frame.node = null;
+            frame.container = null;
+            // A deferred component is notified after its fragment has been
+            // inflated.
+            if (!frame.deferred && component instanceof InflaterListener) {
+                notifyInflated((InflaterListener) component);
+            }
+        }
+
+        /**
+         * Asks the applicable providers in order for the component until one
+         * of them provides it, so that each provider is consulted at most
+         * once per element.
+         */
+        private Component instantiateComponent(String uri, String localName,
+                String id) {
+            boolean applicableFound = false;
+            for (int i = 0; i < componentProviders.length; i++) {
+                if (isApplicable(i, uri, localName, id)) {
+                    applicableFound = true;
+                    Component component = componentProviders[i].getComponent(
+                            uri, localName, id);
+                    if (component != null) {
+                        return component;
+                    }
                 }
             }
 
+            if (!applicableFound) {
+                throw new LayoutInflaterException(
+                        String.format(
+                                "None of the component providers is "
+                                        + "capable to provide a component for uri=%s, localName=%s, id=%s",
+                                uri, localName, id));
+            }
             throw new LayoutInflaterException(
                     String.format(
                             "None of the component providers was "
@@ -286,18 +1115,37 @@ public class LayoutInflater {
                             uri, localName, id));
         }
 
-        private void handleAttributes(Component component,
-                Attributes attributes, AttributeHandler attributeHandler) {
+        private boolean isApplicable(int providerIndex, String uri,
+                String localName, String id) {
+            ApplicabilityMemo memo = applicabilityMemos[providerIndex];
+            if (memo != null) {
+                return memo.isApplicableFor(
+                        (IdIndependentComponentProvider) componentProviders[providerIndex],
+                        uri, localName, id);
+            }
+            return componentProviders[providerIndex].isApplicableFor(uri,
+                    localName, id);
+        }
+
+        private void handleAttributes(Component component, Element element,
+                AttributeHandler attributeHandler) {
             // Get attributes for the namespace this AttributeHandler is
-            // interested in.
-            Map<String, String> attributeMap = getAttributeMap(attributes,
-                    attributeHandler.getNamespace());
-            attributeHandler.assignAttributes(component, attributeMap);
+            // interested in. They were partitioned when compiling the
+            // template.
+            attributeHandler.assignAttributes(component,
+                    element.getAttributes(attributeHandler.getNamespace()),
+                    filterState);
         }
 
-        private void verifyUniqueId(Attributes attributes)
-                throws LayoutInflaterException {
-            String id = attributes.getValue(ID_ATTRIBUTE);
+        private void handleLayoutAttributes(Component component,
+                Element element) {
+            layoutAttributeHandler.assignAttributes(component,
+                    getLayoutAttributes(element,
+                            layoutAttributeHandler.getNamespace()),
+                    filterState);
+        }
+
+        private void verifyUniqueId(String id) throws LayoutInflaterException {
             if (id != null && id.length() > 0) {
                 boolean unique = assignedIds.add(id);
                 if (!unique) {
@@ -307,19 +1155,466 @@ public class LayoutInflater {
             }
         }
 
-        private Map<String, String> getAttributeMap(Attributes attributes,
-                String namespace) {
-            Map<String, String> attributeMap = new HashMap<String, String>(
-                    attributes.getLength());
-            for (int i = 0; i < attributes.getLength(); i++) {
-                if (attributes.getURI(i).equals(namespace)) {
-                    // Namespace matches -> add to map.
-                    String value = attributes.getValue(i);
-                    String name = attributes.getLocalName(i);
-                    attributeMap.put(name, value);
+        /**
+         * Inflates a subtree to a detached component tree with its own
+         * {@link TemplateInflater}.
+         */
+        // Never serialized, it refers to the enclosing inflater.
+        @SuppressWarnings("serial")
+        private class SubtreeTask extends RecursiveTask<TemplateInflater> {
+
+            private final Element element;
+
+            public SubtreeTask(Element element) {
+                this.element = element;
+            }
+
+            @Override
+            protected TemplateInflater compute() {
+                TemplateInflater subtree = new TemplateInflater(
+                        Arrays.asList(componentProviders),
+                        componentsById != null ? new HashMap<String, Component>()
+                                : null);
+                subtree.subtreeSizes = subtreeSizes;
+                subtree.lazyFragments = lazyFragments != null ? new ArrayList<LazyFragment>()
+                        : null;
+                subtree.detached = true;
+                subtree.pendingListeners = new ArrayList<InflaterListener>();
+                try {
+                    subtree.inflateElement(element);
+                } catch (ComponentInstantiationException e) {
+                    throw new LayoutInflaterException(e.getMessage(), e);
+                }
+                return subtree;
+            }
+        }
+    }
+
+    /**
+     * Updates an {@link InflatedLayout} to a new {@link LayoutTemplate}.
+     */
+    private class TemplatePatcher {
+
+        private final List<ComponentProvider> componentProviders;
+        private final AttributeHandler attributeHandler;
+        private final LayoutAttributeHandler layoutAttributeHandler;
+        private final Set<Component> createdComponents = InflatedLayout
+                .newComponentSet();
+        private final FilterState filterState = new FilterState();
+        private TemplateInflater subtreeInflater;
+
+        public TemplatePatcher(List<ComponentProvider> componentProviders) {
+            this.componentProviders = componentProviders;
+            attributeHandler = getAttributeHandler();
+            layoutAttributeHandler = getLayoutAttributeHandler();
+        }
+
+        public InflatedLayout update(InflatedLayout layout,
+                LayoutTemplate template, Map<String, Component> componentsById) {
+            verifyUniqueIds(template.getRoot(), new HashSet<String>());
+
+            Node oldRoot = layout.getRootNode();
+            Node root;
+            try {
+                root = patch(oldRoot, template.getRoot());
+                if (root == null) {
+                    root = inflateDetached(template.getRoot());
+                    replaceInParent(oldRoot.component, root.component);
+                }
+            } catch (PatchNotPossibleException e) {
+                // Start from scratch, the old hierarchy is discarded.
+                InflatedLayout inflated = new TemplateInflater(
+                        componentProviders, componentsById)
+                        .inflateLayout(template);
+                replaceInParent(oldRoot.component, inflated.getRoot());
+                return inflated;
+            }
+
+            if (componentsById != null) {
+                indexComponents(root, componentsById);
+            }
+            return new InflatedLayout(template, root, createdComponents);
+        }
+
+        /**
+         * Patches the component of {@code old} to match {@code element}.
+         * Returns {@code null} without modifying anything if the component
+         * can't be reused for the element.
+         */
+        private Node patch(Node old, Element element) {
+            if (!isSameComponent(old.element, element)) {
+                return null;
+            }
+            String namespace = attributeHandler.getNamespace();
+            Map<String, String> oldAttributes = old.element
+                    .getAttributes(namespace);
+            Map<String, String> attributes = element.getAttributes(namespace);
+            if (!attributes.keySet().containsAll(oldAttributes.keySet())) {
+                return null;
+            }
+            if (!canPatchChildren(old, element)) {
+                return null;
+            }
+
+            Map<String, String> changed = getChangedAttributes(oldAttributes,
+                    attributes);
+            if (!changed.isEmpty()) {
+                attributeHandler.assignAttributes(old.component, changed,
+                        filterState);
+            }
+            Node node = new Node(element, old.component);
+            patchChildren(old, node);
+            return node;
+        }
+
+        private boolean canPatchChildren(Node old, Element element) {
+            Component component = old.component;
+            int oldCount = old.children.size();
+            int count = element.getChildren().size();
+            if (component instanceof ComponentContainer) {
+                // GridLayout places components at its cursor, which can't
+                // be restored for re-added components.
+                return !(component instanceof GridLayout)
+                        || haveSameChildren(old, element);
+            } else if (component instanceof SingleComponentContainer) {
+                return oldCount <= 1 && count <= 1;
+            } else if (oldCount > 0 || count > 0) {
+                // Children of other components are added to the nearest
+                // ancestor container, which can only be redone by inflating
+                // the whole hierarchy again.
+                throw new PatchNotPossibleException();
+            }
+            return true;
+        }
+
+        private void patchChildren(Node old, Node node) {
+            List<Element> elements = node.element.getChildren();
+            if (elements.isEmpty() && old.children.isEmpty()) {
+                return;
+            }
+
+            // Match the existing components to the new elements in order.
+            // The children are often unchanged, which needs no lookup.
+            boolean sameChildren = haveSameChildren(old, node.element);
+            Map<ElementKey, LinkedList<Node>> candidates = sameChildren ? null
+                    : getCandidates(old.children);
+            Set<Component> kept = InflatedLayout.newComponentSet();
+            // Old layout attributes of the kept children, null for new ones.
+            List<Map<String, String>> oldLayoutAttributes = new ArrayList<Map<String, String>>(
+                    elements.size());
+            for (int i = 0; i < elements.size(); i++) {
+                Element element = elements.get(i);
+                Node oldChild;
+                if (sameChildren) {
+                    oldChild = old.children.get(i);
+                } else {
+                    LinkedList<Node> nodes = candidates.get(new ElementKey(
+                            element));
+                    oldChild = nodes != null ? nodes.poll() : null;
+                }
+                Node child = oldChild != null ? patch(oldChild, element)
+                        : null;
+                if (child != null) {
+                    kept.add(child.component);
+                    oldLayoutAttributes.add(getLayoutAttributes(
+                            oldChild.element,
+                            layoutAttributeHandler.getNamespace()));
+                } else {
+                    child = inflateDetached(element);
+                    oldLayoutAttributes.add(null);
+                }
+                node.children.add(child);
+            }
+
+            Component component = node.component;
+            if (component instanceof SingleComponentContainer) {
+                SingleComponentContainer container = (SingleComponentContainer) component;
+                Node content = node.children.isEmpty() ? null : node.children
+                        .get(0);
+                if (content == null) {
+                    container.setContent(null);
+                } else if (container.getContent() != content.component) {
+                    container.setContent(content.component);
+                    assignLayoutAttributes(content, null);
+                } else {
+                    assignLayoutAttributes(content, oldLayoutAttributes.get(0));
+                }
+                return;
+            }
+
+            ComponentContainer container = (ComponentContainer) component;
+            for (Node oldChild : old.children) {
+                if (!kept.contains(oldChild.component)
+                        && oldChild.component.getParent() == container) {
+                    container.removeComponent(oldChild.component);
+                }
+            }
+            if (isInPlace(container, node.children, oldLayoutAttributes)) {
+                for (int i = 0; i < node.children.size(); i++) {
+                    assignLayoutAttributes(node.children.get(i),
+                            oldLayoutAttributes.get(i));
+                }
+            } else if (container instanceof AbstractOrderedLayout) {
+                placeChildren((AbstractOrderedLayout) container,
+                        node.children, oldLayoutAttributes);
+            } else {
+                placeChildren(container, node.children, oldLayoutAttributes);
+            }
+        }
+
+        private Map<ElementKey, LinkedList<Node>> getCandidates(
+                List<Node> children) {
+            Map<ElementKey, LinkedList<Node>> candidates = new HashMap<ElementKey, LinkedList<Node>>();
+            for (Node child : children) {
+                ElementKey key = new ElementKey(child.element);
+                LinkedList<Node> nodes = candidates.get(key);
+                if (nodes == null) {
+                    nodes = new LinkedList<Node>();
+                    candidates.put(key, nodes);
+                }
+                nodes.add(child);
+            }
+            return candidates;
+        }
+
+        /**
+         * Checks whether the container already contains exactly the given
+         * children in the same order, with layout attributes that can be
+         * assigned in place.
+         */
+        private boolean isInPlace(ComponentContainer container,
+                List<Node> children, List<Map<String, String>> oldLayoutAttributes) {
+            if (container.getComponentCount() != children.size()) {
+                return false;
+            }
+            int i = 0;
+            for (Component child : container) {
+                if (child != children.get(i).component
+                        || !canAssignLayoutAttributes(children.get(i),
+                                oldLayoutAttributes.get(i))) {
+                    return false;
+                }
+                i++;
+            }
+            return true;
+        }
+
+        /**
+         * Moves and inserts the children of an ordered layout by their index.
+         */
+        private void placeChildren(AbstractOrderedLayout layout,
+                List<Node> children, List<Map<String, String>> oldLayoutAttributes) {
+            for (int i = 0; i < children.size(); i++) {
+                Node child = children.get(i);
+                Map<String, String> oldAttributes = oldLayoutAttributes.get(i);
+                if (i < layout.getComponentCount()
+                        && layout.getComponent(i) == child.component
+                        && canAssignLayoutAttributes(child, oldAttributes)) {
+                    assignLayoutAttributes(child, oldAttributes);
+                    continue;
+                }
+                if (child.component.getParent() == layout) {
+                    // Removing also resets the layout attributes.
+                    layout.removeComponent(child.component);
+                }
+                layout.addComponent(child.component, i);
+                assignLayoutAttributes(child, null);
+            }
+        }
+
+        /**
+         * Re-adds the children of a container from the first child that is
+         * not in its place anymore.
+         */
+        private void placeChildren(ComponentContainer container,
+                List<Node> children, List<Map<String, String>> oldLayoutAttributes) {
+            List<Component> current = new ArrayList<Component>();
+            for (Component child : container) {
+                current.add(child);
+            }
+            int first = 0;
+            while (first < children.size()
+                    && first < current.size()
+                    && current.get(first) == children.get(first).component
+                    && canAssignLayoutAttributes(children.get(first),
+                            oldLayoutAttributes.get(first))) {
+                assignLayoutAttributes(children.get(first),
+                        oldLayoutAttributes.get(first));
+                first++;
+            }
+            for (int i = first; i < current.size(); i++) {
+                container.removeComponent(current.get(i));
+            }
+            for (int i = first; i < children.size(); i++) {
+                container.addComponent(children.get(i).component);
+                assignLayoutAttributes(children.get(i), null);
+            }
+        }
+
+        private boolean canAssignLayoutAttributes(Node child,
+                Map<String, String> oldAttributes) {
+            return oldAttributes != null
+                    && getLayoutAttributes(child.element,
+                            layoutAttributeHandler.getNamespace()).keySet()
+                            .containsAll(oldAttributes.keySet());
+        }
+
+        /**
+         * Assigns the layout attributes of {@code child} that differ from
+         * {@code oldAttributes}, or all of them if {@code oldAttributes} is
+         * {@code null}.
+         */
+        private void assignLayoutAttributes(Node child,
+                Map<String, String> oldAttributes) {
+            Map<String, String> attributes = getLayoutAttributes(
+                    child.element, layoutAttributeHandler.getNamespace());
+            if (oldAttributes != null) {
+                attributes = getChangedAttributes(oldAttributes, attributes);
+            }
+            if (!attributes.isEmpty()) {
+                layoutAttributeHandler.assignAttributes(child.component,
+                        attributes, filterState);
+            }
+        }
+
+        private Node inflateDetached(Element element) {
+            if (subtreeInflater == null) {
+                subtreeInflater = new TemplateInflater(componentProviders,
+                        null);
+            }
+            return subtreeInflater.inflateDetached(element, createdComponents);
+        }
+
+        private boolean haveSameChildren(Node old, Element element) {
+            List<Element> children = element.getChildren();
+            if (old.children.size() != children.size()) {
+                return false;
+            }
+            for (int i = 0; i < children.size(); i++) {
+                if (!isSameComponent(old.children.get(i).element,
+                        children.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean isSameComponent(Element old, Element element) {
+            String oldId = old.getAttributeValue(TemplateInflater.ID_ATTRIBUTE);
+            String id = element.getAttributeValue(TemplateInflater.ID_ATTRIBUTE);
+            return old.getLocalName().equals(element.getLocalName())
+                    && old.getUri().equals(element.getUri())
+                    && (oldId == null ? id == null : oldId.equals(id));
+        }
+
+        private Map<String, String> getChangedAttributes(
+                Map<String, String> oldAttributes,
+                Map<String, String> attributes) {
+            if (attributes.equals(oldAttributes)) {
+                return Collections.emptyMap();
+            }
+            // Keep the order in which the attributes are assigned when
+            // inflating.
+            Map<String, String> changed = new LinkedHashMap<String, String>();
+            for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+                if (!attribute.getValue().equals(
+                        oldAttributes.get(attribute.getKey()))) {
+                    changed.put(attribute.getKey(), attribute.getValue());
                 }
             }
-            return attributeMap;
+            return changed;
+        }
+
+        private void replaceInParent(Component old, Component component) {
+            HasComponents parent = old.getParent();
+            if (parent instanceof ComponentContainer) {
+                ((ComponentContainer) parent).replaceComponent(old, component);
+            } else if (parent instanceof SingleComponentContainer) {
+                ((SingleComponentContainer) parent).setContent(component);
+            }
+        }
+
+        private void indexComponents(Node node,
+                Map<String, Component> componentsById) {
+            String componentId = node.component.getId();
+            if (componentId != null
+                    && !componentsById.containsKey(componentId)) {
+                componentsById.put(componentId, node.component);
+            }
+            for (Node child : node.children) {
+                indexComponents(child, componentsById);
+            }
+        }
+
+        private void verifyUniqueIds(Element element, Set<String> ids) {
+            String id = element.getAttributeValue(TemplateInflater.ID_ATTRIBUTE);
+            if (id != null && id.length() > 0 && !ids.add(id)) {
+                throw new LayoutInflaterException(String.format(
+                        "Given id %s has already been assigned.", id));
+            }
+            for (Element child : element.getChildren()) {
+                verifyUniqueIds(child, ids);
+            }
         }
     }
+
+    /**
+     * Identifies the component of an element for matching elements of two
+     * templates: the element name and the id.
+     */
+    private static final class ElementKey {
+
+        private final String uri;
+        private final String localName;
+        private final String id;
+
+        public ElementKey(Element element) {
+            uri = element.getUri();
+            localName = element.getLocalName();
+            id = element.getAttributeValue(TemplateInflater.ID_ATTRIBUTE);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ElementKey)) {
+                return false;
+            }
+            ElementKey other = (ElementKey) obj;
+            return uri.equals(other.uri) && localName.equals(other.localName)
+                    && (id == null ? other.id == null : id.equals(other.id));
+        }
+
+        @Override
+        public int hashCode() {
+            return (uri.hashCode() * 31 + localName.hashCode()) * 31
+                    + (id != null ? id.hashCode() : 0);
+        }
+    }
+
+    /**
+     * Thrown when the hierarchy has to be inflated again from scratch.
+     */
+    private static final class PatchNotPossibleException extends
+            RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        public PatchNotPossibleException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Inflation state of an open element: its component and the nearest
+     * {@link ComponentContainer} (the component itself or one of its
+     * ancestors) that children of the element are added to.
+     */
+    private static final class Frame {
+
+        private Component component;
+        private Node node;
+        private ComponentContainer container;
+        // Whether the children of the component are deferred.
+        private boolean deferred;
+    }
 }
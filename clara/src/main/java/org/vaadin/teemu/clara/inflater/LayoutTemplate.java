@@ -0,0 +1,207 @@
+package org.vaadin.teemu.clara.inflater;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.vaadin.ui.Component;
+
+/**
+ * Immutable, parsed representation of a layout XML. A {@link LayoutTemplate}
+ * is created once with {@link LayoutInflater#compile(java.io.InputStream)} and
+ * can then be inflated any number of times without parsing the XML again.
+ * <p>
+ * Instances of this class are immutable and thus safe to share between
+ * threads. They are serializable, as the elements of pending
+ * {@link LazyFragment}s are serialized with the session.
+ * </p>
+ *
+ * @see LayoutInflater#compile(java.io.InputStream)
+ * @see LayoutInflater#inflate(LayoutTemplate)
+ */
+public final class LayoutTemplate implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Element root;
+
+    LayoutTemplate(Element root) {
+        if (root == null) {
+            throw new IllegalArgumentException(
+                    "Root element must not be null.");
+        }
+        this.root = root;
+    }
+
+    /**
+     * Returns the root {@link Element} of this template.
+     *
+     * @return root element (never {@code null}).
+     */
+    public Element getRoot() {
+        return root;
+    }
+
+    /**
+     * A single XML element describing a {@link Component}.
+     */
+    public static final class Element implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String uri;
+        private final String localName;
+        private final List<Attribute> attributes;
+        private final Map<String, Map<String, String>> attributesByNamespace;
+        private final List<Element> children;
+
+        Element(String uri, String localName, List<Attribute> attributes,
+                List<Element> children) {
+            this.uri = uri;
+            this.localName = localName;
+            this.attributes = Collections
+                    .unmodifiableList(new ArrayList<Attribute>(attributes));
+            this.attributesByNamespace = partitionByNamespace(attributes);
+            this.children = Collections
+                    .unmodifiableList(new ArrayList<Element>(children));
+        }
+
+        /**
+         * Groups the given attributes by their namespace in a single pass.
+         * Each group keeps the attributes in document order.
+         */
+        private static Map<String, Map<String, String>> partitionByNamespace(
+                List<Attribute> attributes) {
+            if (attributes.isEmpty()) {
+                return Collections.emptyMap();
+            }
+            Map<String, Map<String, String>> partitions = new HashMap<String, Map<String, String>>(
+                    4);
+            for (Attribute attribute : attributes) {
+                Map<String, String> partition = partitions.get(attribute
+                        .getUri());
+                if (partition == null) {
+                    partition = new LinkedHashMap<String, String>();
+                    partitions.put(attribute.getUri(), partition);
+                }
+                partition.put(attribute.getLocalName(), attribute.getValue());
+            }
+            for (Map.Entry<String, Map<String, String>> entry : partitions
+                    .entrySet()) {
+                entry.setValue(Collections.unmodifiableMap(entry.getValue()));
+            }
+            return partitions;
+        }
+
+        /**
+         * @return namespace URI of this element. Elements without a namespace
+         *         are reported in the default {@code com.vaadin.ui} import
+         *         namespace.
+         */
+        public String getUri() {
+            return uri;
+        }
+
+        /**
+         * @return local name of this element.
+         */
+        public String getLocalName() {
+            return localName;
+        }
+
+        /**
+         * @return unmodifiable list of the attributes of this element in
+         *         document order.
+         */
+        public List<Attribute> getAttributes() {
+            return attributes;
+        }
+
+        /**
+         * @return unmodifiable list of the child elements of this element in
+         *         document order.
+         */
+        public List<Element> getChildren() {
+            return children;
+        }
+
+        /**
+         * Returns the value of the attribute with the given {@code localName}
+         * in the default namespace.
+         *
+         * @param localName
+         *            local name of the attribute.
+         * @return value of the attribute or {@code null} if no such attribute
+         *         exists.
+         */
+        public String getAttributeValue(String localName) {
+            return getAttributes("").get(localName);
+        }
+
+        /**
+         * Returns the attributes of this element in the given
+         * {@code namespace} as a map from local name to value. The map
+         * iterates the attributes in document order, which is also the order
+         * they are applied to the component in. The maps are built once when
+         * the template is compiled.
+         *
+         * @param namespace
+         *            namespace URI of the attributes (empty for the default
+         *            namespace).
+         * @return unmodifiable map of the attributes (never {@code null}).
+         */
+        public Map<String, String> getAttributes(String namespace) {
+            Map<String, String> partition = attributesByNamespace
+                    .get(namespace);
+            return partition != null ? partition : Collections
+                    .<String, String> emptyMap();
+        }
+
+    }
+
+    /**
+     * A single attribute of an {@link Element}.
+     */
+    public static final class Attribute implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String uri;
+        private final String localName;
+        private final String value;
+
+        Attribute(String uri, String localName, String value) {
+            this.uri = uri;
+            this.localName = localName;
+            this.value = value;
+        }
+
+        /**
+         * @return namespace URI of this attribute (never {@code null}, but may
+         *         be empty for the default namespace).
+         */
+        public String getUri() {
+            return uri;
+        }
+
+        /**
+         * @return local name of this attribute.
+         */
+        public String getLocalName() {
+            return localName;
+        }
+
+        /**
+         * @return value of this attribute.
+         */
+        public String getValue() {
+            return value;
+        }
+
+    }
+
+}
@@ -0,0 +1,199 @@
+package org.vaadin.teemu.clara.inflater;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of {@link LayoutTemplate}s compiled from classpath resources.
+ * Templates are keyed by the resolved resource {@link URL} and the
+ * {@link ClassLoader} that resolved it, so that each resource is parsed only
+ * once. When the cache is full, the least recently used template is evicted.
+ * <p>
+ * The cache only holds weak references to the {@link ClassLoader}s, so it
+ * doesn't prevent them from being garbage collected (for example on
+ * application redeployment).
+ * </p>
+ * <p>
+ * Instances of this class are thread-safe.
+ * </p>
+ */
+public class LayoutTemplateCache {
+
+    /**
+     * Default maximum number of templates held by the shared cache.
+     */
+    public static final int DEFAULT_MAXIMUM_SIZE = 256;
+
+    private static final LayoutTemplateCache sharedCache = new LayoutTemplateCache(
+            DEFAULT_MAXIMUM_SIZE);
+
+    private final Map<TemplateKey, LayoutTemplate> templates;
+
+    /**
+     * Returns the process-wide {@link LayoutTemplateCache} used by default by
+     * {@link org.vaadin.teemu.clara.Clara} and
+     * {@link org.vaadin.teemu.clara.ClaraBuilder}.
+     *
+     * @return the shared cache instance.
+     */
+    public static LayoutTemplateCache getShared() {
+        return sharedCache;
+    }
+
+    /**
+     * Creates a new cache holding at most {@code maximumSize} templates.
+     *
+     * @param maximumSize
+     *            maximum number of cached templates ({@code 0} disables
+     *            caching).
+     * @throws IllegalArgumentException
+     *             if {@code maximumSize} is negative.
+     */
+    public LayoutTemplateCache(final int maximumSize) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException(
+                    "Maximum size must not be negative.");
+        }
+        templates = new LinkedHashMap<TemplateKey, LayoutTemplate>(16, 0.75f,
+                true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<TemplateKey, LayoutTemplate> eldest) {
+                return size() > maximumSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the {@link LayoutTemplate} for the given classpath resource. The
+     * resource is resolved like {@link Class#getResource(String)} does, so the
+     * {@code resourceName} is either relative to the package of the given
+     * {@code resourceRoot} class or an absolute path.
+     * <p>
+     * If the template is not cached yet, it's compiled with the given
+     * {@code inflater} and stored in the cache.
+     * </p>
+     *
+     * @param resourceRoot
+     *            {@link Class} used for resolving the resource.
+     * @param resourceName
+     *            name of the XML resource.
+     * @param inflater
+     *            {@link LayoutInflater} used to compile the template on a
+     *            cache miss.
+     * @return the compiled {@link LayoutTemplate}.
+     * @throws LayoutInflaterException
+     *             if the resource doesn't exist or cannot be parsed.
+     */
+    public LayoutTemplate getTemplate(Class<?> resourceRoot,
+            String resourceName, LayoutInflater inflater) {
+        URL resource = resourceRoot.getResource(resourceName);
+        if (resource == null) {
+            throw new LayoutInflaterException(String.format(
+                    "Resource %s not found relative to %s.", resourceName,
+                    resourceRoot.getName()));
+        }
+        TemplateKey key = new TemplateKey(resource.toExternalForm(),
+                resourceRoot.getClassLoader());
+
+        LayoutTemplate template;
+        synchronized (templates) {
+            template = templates.get(key);
+        }
+        if (template == null) {
+            // Compile outside the lock to avoid blocking other threads while
+            // parsing. Concurrent misses may compile the same resource twice,
+            // which is harmless.
+            template = compile(resource, inflater);
+            synchronized (templates) {
+                templates.put(key, template);
+            }
+        }
+        return template;
+    }
+
+    private LayoutTemplate compile(URL resource, LayoutInflater inflater) {
+        InputStream xml = null;
+        try {
+            xml = resource.openStream();
+            return inflater.compile(xml);
+        } catch (IOException e) {
+            throw new LayoutInflaterException(e);
+        } finally {
+            if (xml != null) {
+                try {
+                    xml.close();
+                } catch (IOException e) {
+                    // Ignore, the template has already been read.
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of templates currently in this cache.
+     */
+    public int size() {
+        synchronized (templates) {
+            return templates.size();
+        }
+    }
+
+    /**
+     * Removes all templates from this cache.
+     */
+    public void clear() {
+        synchronized (templates) {
+            templates.clear();
+        }
+    }
+
+    private static class TemplateKey {
+
+        private final String url;
+        private final WeakReference<ClassLoader> classLoader;
+        private final boolean bootstrap;
+        private final int hashCode;
+
+        public TemplateKey(String url, ClassLoader classLoader) {
+            this.url = url;
+            this.classLoader = new WeakReference<ClassLoader>(classLoader);
+            this.bootstrap = classLoader == null;
+            this.hashCode = 31 * url.hashCode()
+                    + System.identityHashCode(classLoader);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof TemplateKey)) {
+                return false;
+            }
+            TemplateKey other = (TemplateKey) obj;
+            if (hashCode != other.hashCode || !url.equals(other.url)) {
+                return false;
+            }
+            if (bootstrap || other.bootstrap) {
+                return bootstrap == other.bootstrap;
+            }
+            // A collected ClassLoader never equals anything.
+            ClassLoader loader = classLoader.get();
+            return loader != null && loader == other.classLoader.get();
+        }
+    }
+
+}
@@ -0,0 +1,280 @@
+package org.vaadin.teemu.clara.inflater;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.vaadin.teemu.clara.inflater.LayoutTemplate.Element;
+
+import com.vaadin.server.ClientConnector.AttachEvent;
+import com.vaadin.server.ClientConnector.AttachListener;
+import com.vaadin.ui.Component;
+import com.vaadin.ui.HasComponents;
+import com.vaadin.ui.TabSheet;
+import com.vaadin.ui.TabSheet.SelectedTabChangeEvent;
+import com.vaadin.ui.TabSheet.SelectedTabChangeListener;
+
+/**
+ * The deferred children of an element marked as lazy with the
+ * {@code lazy="true"} layout attribute (in the {@code urn:vaadin:parent}
+ * namespace). The component of the element itself is created and configured
+ * normally, but its children are inflated only when they are needed:
+ * <ul>
+ * <li>for a tab of a {@link TabSheet} (or an
+ * {@link com.vaadin.ui.Accordion}) when the tab is selected for the first
+ * time. The initially selected tab is inflated right away.</li>
+ * <li>for any other component when it is attached to a session for the first
+ * time.</li>
+ * </ul>
+ * The children can also be inflated explicitly with {@link #inflate()}.
+ * <p>
+ * A fragment keeps references to the {@link LayoutInflater}, the
+ * {@link ComponentProvider}s and the {@link InflationListener} until it is
+ * inflated. The fragment is serialized with the component hierarchy and
+ * inflates its children after deserialization as well, so the inflater's
+ * filters and parsers, the providers and the listener must be serializable
+ * while the fragment is pending.
+ * </p>
+ */
+public final class LazyFragment implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Listener notified after the children of a {@link LazyFragment} have
+     * been inflated, for example to bind them to a controller.
+     */
+    public interface InflationListener extends Serializable {
+
+        /**
+         * Called after the children of the given {@code fragment} have been
+         * inflated and attached to its root.
+         *
+         * @param fragment
+         *            the inflated fragment.
+         */
+        void fragmentInflated(LazyFragment fragment);
+    }
+
+    private final Component root;
+    private final Element element;
+    private final Set<String> ids;
+    private LayoutInflater inflater;
+    private List<ComponentProvider> componentProviders;
+    private Trigger trigger;
+    private InflationListener listener;
+
+    private boolean inflated;
+    private Map<String, Component> componentsById;
+    private Set<Component> createdComponents;
+    private List<LazyFragment> fragments;
+
+    LazyFragment(Component root, Element element, Set<String> ids,
+            LayoutInflater inflater, List<ComponentProvider> componentProviders) {
+        this.root = root;
+        this.element = element;
+        this.ids = Collections.unmodifiableSet(ids);
+        this.inflater = inflater;
+        this.componentProviders = componentProviders;
+    }
+
+    /**
+     * Returns the {@code id}s of all elements below the root of this
+     * fragment, including the ones in nested lazy fragments. The ids are the
+     * values in the template without any prefix.
+     *
+     * @return unmodifiable set of ids.
+     */
+    public Set<String> getIds() {
+        return ids;
+    }
+
+    /**
+     * Returns the {@code id}s of the given fragments, see {@link #getIds()}.
+     *
+     * @param fragments
+     *            fragments to get the ids of.
+     * @return set of ids.
+     */
+    public static Set<String> getIds(Collection<LazyFragment> fragments) {
+        if (fragments.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<String> ids = new HashSet<String>();
+        for (LazyFragment fragment : fragments) {
+            ids.addAll(fragment.ids);
+        }
+        return ids;
+    }
+
+    /**
+     * @return the component whose children are deferred.
+     */
+    public Component getRoot() {
+        return root;
+    }
+
+    /**
+     * @return {@code true} if the children have been inflated.
+     */
+    public boolean isInflated() {
+        return inflated;
+    }
+
+    /**
+     * Sets the listener to notify when the children are inflated.
+     *
+     * @param listener
+     *            the listener ({@code null} to remove).
+     */
+    public void setInflationListener(InflationListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Inflates the children of this fragment, if not done already, and
+     * notifies the {@link InflationListener}.
+     *
+     * @throws LayoutInflaterException
+     *             in case of an error in the inflation process.
+     */
+    public void inflate() {
+        if (inflated) {
+            return;
+        }
+        inflated = true;
+        removeTrigger();
+        componentsById = new HashMap<String, Component>();
+        createdComponents = InflatedLayout.newComponentSet();
+        fragments = new ArrayList<LazyFragment>();
+        inflater.inflateFragment(element, root, componentProviders,
+                componentsById, createdComponents, fragments);
+        // Not needed anymore.
+        inflater = null;
+        componentProviders = null;
+
+        if (listener != null) {
+            listener.fragmentInflated(this);
+        }
+    }
+
+    /**
+     * @return the inflated components by their {@code id} property, or
+     *         {@code null} if the fragment isn't inflated yet.
+     */
+    public Map<String, Component> getComponentsById() {
+        return componentsById;
+    }
+
+    /**
+     * @return the components created when inflating this fragment, or
+     *         {@code null} if the fragment isn't inflated yet.
+     */
+    public Set<Component> getCreatedComponents() {
+        return createdComponents;
+    }
+
+    /**
+     * @return nested lazy fragments found when inflating this fragment, or
+     *         {@code null} if the fragment isn't inflated yet.
+     */
+    public List<LazyFragment> getFragments() {
+        return fragments;
+    }
+
+    /**
+     * Installs the listener that inflates this fragment when it is needed.
+     * Returns {@code false} without installing anything if the fragment is
+     * needed right away.
+     */
+    boolean installTrigger() {
+        HasComponents parent = root.getParent();
+        if (parent instanceof TabSheet) {
+            TabSheet tabSheet = (TabSheet) parent;
+            if (tabSheet.getSelectedTab() == root) {
+                return false;
+            }
+            trigger = new Trigger(this, parent);
+            tabSheet.addSelectedTabChangeListener(trigger);
+        } else {
+            if (root.getUI() != null) {
+                return false;
+            }
+            trigger = new Trigger(this, parent);
+            root.addAttachListener(trigger);
+        }
+        return true;
+    }
+
+    private void removeTrigger() {
+        if (trigger != null) {
+            trigger.remove();
+            trigger = null;
+        }
+    }
+
+    /**
+     * Inflates the fragment on the selection of its tab or on attach. The
+     * trigger is registered on the components, so the fragment is serialized
+     * with them.
+     */
+    private static class Trigger implements SelectedTabChangeListener,
+            AttachListener, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final LazyFragment fragment;
+        private final Component root;
+        private final HasComponents parent;
+
+        Trigger(LazyFragment fragment, HasComponents parent) {
+            this.fragment = fragment;
+            this.root = fragment.root;
+            this.parent = parent;
+        }
+
+        @Override
+        public void selectedTabChange(SelectedTabChangeEvent event) {
+            if (isStale()) {
+                remove();
+            } else if (event.getTabSheet().getSelectedTab() == root) {
+                fragment.inflate();
+            }
+        }
+
+        @Override
+        public void attach(AttachEvent event) {
+            if (isStale()) {
+                remove();
+            } else {
+                fragment.inflate();
+            }
+        }
+
+        /**
+         * The root has been moved elsewhere, for example recycled to another
+         * layout, so the deferred children don't belong to it anymore. A root
+         * without a parent is the root of the whole layout and can be
+         * attached anywhere.
+         */
+        private boolean isStale() {
+            return parent != null && root.getParent() != parent;
+        }
+
+        private void remove() {
+            fragment.trigger = null;
+            if (parent instanceof TabSheet) {
+                ((TabSheet) parent).removeSelectedTabChangeListener(this);
+            } else {
+                root.removeAttachListener(this);
+            }
+        }
+    }
+
+}
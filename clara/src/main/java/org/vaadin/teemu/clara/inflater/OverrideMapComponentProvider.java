@@ -1,10 +1,15 @@
 package org.vaadin.teemu.clara.inflater;
 
+import java.io.Serializable;
 import java.util.Map;
 
 import com.vaadin.ui.Component;
 
-public class OverrideMapComponentProvider implements ComponentProvider {
+public class OverrideMapComponentProvider implements ComponentProvider,
+        Serializable {
+
+    private static final long serialVersionUID = 1L;
+
     private final Map<String, Component> componentOverrideMap;
 
     /**
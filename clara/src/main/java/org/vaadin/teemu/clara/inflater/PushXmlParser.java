@@ -0,0 +1,519 @@
+package org.vaadin.teemu.clara.inflater;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.vaadin.teemu.clara.inflater.LayoutTemplate.Attribute;
+
+/**
+ * Namespace aware XML parser that is fed with chunks of UTF-8 encoded bytes
+ * and reports each element to a {@link Handler} as soon as its tag is
+ * complete. The parser never waits for more input, an incomplete token is
+ * kept until the next chunk arrives.
+ * <p>
+ * Only the subset of XML needed for layouts is supported: elements,
+ * attributes with the predefined and character entity references, comments,
+ * processing instructions and CDATA sections. Text content is skipped like
+ * the other {@link TemplateParser}s do. Document type declarations are
+ * rejected, and so are encodings other than UTF-8. White space is recognized
+ * like in XML, so the templates are the same as those of
+ * {@link SaxTemplateParser}.
+ * </p>
+ */
+final class PushXmlParser {
+
+    /**
+     * Receives the elements of the parsed XML.
+     */
+    interface Handler {
+
+        /**
+         * Called when the start tag of an element is complete.
+         *
+         * @param uri
+         *            namespace URI of the element (empty if none).
+         * @param localName
+         *            local name of the element.
+         * @param attributes
+         *            attributes of the element without the namespace
+         *            declarations.
+         */
+        void startElement(String uri, String localName,
+                List<Attribute> attributes);
+
+        /**
+         * Called when an element is closed.
+         *
+         * @param uri
+         *            namespace URI of the element (empty if none).
+         * @param localName
+         *            local name of the element.
+         */
+        void endElement(String uri, String localName);
+    }
+
+    private static final String XML_NAMESPACE = "http://www.w3.org/XML/1998/namespace";
+    private static final String XMLNS = "xmlns";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int CHAR_BUFFER_SIZE = 1024;
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+    private static final Pattern ENCODING_DECLARATION = Pattern
+            .compile(
+                    "^xml[ \\t\\r\\n].*encoding[ \\t\\r\\n]*=[ \\t\\r\\n]*[\"']([^\"']*)[\"']",
+                    Pattern.DOTALL);
+
+    private final Handler handler;
+    private final CharsetDecoder decoder = UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+    // Bytes of an incomplete character between two chunks.
+    private ByteBuffer remainingBytes = ByteBuffer.allocate(0);
+    private final CharBuffer chars = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+    // Characters of the token not completed yet.
+    private final StringBuilder text = new StringBuilder();
+
+    // Qualified names and namespace scopes of the open elements.
+    private final List<String> openElements = new ArrayList<String>();
+    private final List<Map<String, String>> namespaceScopes = new ArrayList<Map<String, String>>();
+    private boolean started;
+    private boolean rootClosed;
+
+    PushXmlParser(Handler handler) {
+        this.handler = handler;
+        Map<String, String> defaults = new HashMap<String, String>();
+        defaults.put("", "");
+        defaults.put("xml", XML_NAMESPACE);
+        namespaceScopes.add(defaults);
+    }
+
+    /**
+     * Parses the given bytes and reports the completed elements. All
+     * remaining bytes of the buffer are consumed.
+     *
+     * @throws LayoutInflaterException
+     *             if the XML is not well-formed.
+     */
+    void feed(ByteBuffer bytes) {
+        ByteBuffer input = bytes;
+        if (remainingBytes.hasRemaining()) {
+            input = ByteBuffer.allocate(remainingBytes.remaining()
+                    + bytes.remaining());
+            input.put(remainingBytes).put(bytes);
+            input.flip();
+        }
+        decode(input, false);
+        // Keep an incomplete character for the next chunk, the given buffer
+        // may be reused by the caller.
+        remainingBytes = ByteBuffer.allocate(input.remaining());
+        remainingBytes.put(input);
+        remainingBytes.flip();
+    }
+
+    /**
+     * Signals the end of the input.
+     *
+     * @throws LayoutInflaterException
+     *             if the XML is not complete.
+     */
+    void finish() {
+        decode(remainingBytes, true);
+        CoderResult result = decoder.flush(chars);
+        if (result.isError()) {
+            throw new LayoutInflaterException("Malformed UTF-8 at the end.");
+        }
+        parseChars();
+        if (!rootClosed) {
+            throw new LayoutInflaterException(
+                    started ? "Unexpected end of XML, element "
+                            + openElements.get(openElements.size() - 1)
+                            + " is not closed."
+                            : "The XML contains no elements.");
+        }
+        if (!isWhitespace(text, 0, text.length())) {
+            throw new LayoutInflaterException(
+                    "Unexpected end of XML in markup.");
+        }
+    }
+
+    /**
+     * @return {@code true} if the root element has been closed.
+     */
+    boolean isRootClosed() {
+        return rootClosed;
+    }
+
+    private void decode(ByteBuffer input, boolean endOfInput) {
+        while (true) {
+            CoderResult result = decoder.decode(input, chars, endOfInput);
+            if (result.isError()) {
+                try {
+                    result.throwException();
+                } catch (CharacterCodingException e) {
+                    throw new LayoutInflaterException(e);
+                }
+            }
+            parseChars();
+            if (result.isUnderflow()) {
+                return;
+            }
+        }
+    }
+
+    private void parseChars() {
+        chars.flip();
+        text.append(chars);
+        chars.clear();
+        int position = 0;
+        if (!started && text.length() > 0
+                && text.charAt(0) == BYTE_ORDER_MARK) {
+            position = 1;
+        }
+        while (position < text.length()) {
+            int end = parseToken(position);
+            if (end < 0) {
+                // Incomplete, wait for more input.
+                break;
+            }
+            position = end;
+        }
+        text.delete(0, position);
+    }
+
+    /**
+     * Parses the token at the given position and returns the position after
+     * it, or {@code -1} if the token is not complete yet.
+     */
+    private int parseToken(int position) {
+        if (text.charAt(position) != '<') {
+            int end = indexOf("<", position);
+            int textEnd = end < 0 ? text.length() : end;
+            if (openElements.isEmpty()
+                    && !isWhitespace(text, position, textEnd)) {
+                throw new LayoutInflaterException(
+                        "Content is not allowed outside the root element.");
+            }
+            return textEnd;
+        }
+        if (text.length() - position < 2 || isIncomplete("<!--", position)
+                || isIncomplete("<![CDATA[", position)) {
+            // Can't tell the kind of the token yet.
+            return -1;
+        }
+        if (startsWith("<?", position)) {
+            int end = indexOf("?>", position + 2);
+            if (end >= 0) {
+                verifyEncoding(text.substring(position + 2, end));
+            }
+            return end < 0 ? -1 : end + 2;
+        }
+        if (startsWith("<!--", position)) {
+            int end = indexOf("-->", position + 4);
+            return end < 0 ? -1 : end + 3;
+        }
+        if (startsWith("<![CDATA[", position)) {
+            if (openElements.isEmpty()) {
+                throw new LayoutInflaterException(
+                        "CDATA is not allowed outside the root element.");
+            }
+            int end = indexOf("]]>", position + 9);
+            return end < 0 ? -1 : end + 3;
+        }
+        if (startsWith("<!", position)) {
+            throw new LayoutInflaterException(
+                    "Document type declarations are not supported.");
+        }
+        int end = indexOfTagEnd(position + 1);
+        if (end < 0) {
+            return -1;
+        }
+        if (text.charAt(position + 1) == '/') {
+            int nameEnd = skipName(position + 2, end);
+            if (skipWhitespace(nameEnd, end) != end) {
+                throw new LayoutInflaterException("Malformed end tag "
+                        + text.substring(position, end + 1) + ".");
+            }
+            endTag(text.substring(position + 2, nameEnd));
+        } else if (text.charAt(end - 1) == '/') {
+            startTag(position + 1, end - 1);
+            closeElement();
+        } else {
+            startTag(position + 1, end);
+        }
+        return end + 1;
+    }
+
+    /**
+     * Returns the index of the closing {@code >} of a tag, skipping quoted
+     * attribute values, or {@code -1} if it's not available yet.
+     */
+    private int indexOfTagEnd(int from) {
+        char quote = 0;
+        for (int i = from; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '>') {
+                return i;
+            } else if (c == '<') {
+                throw new LayoutInflaterException("Unexpected < in a tag.");
+            }
+        }
+        return -1;
+    }
+
+    private void startTag(int from, int to) {
+        if (rootClosed) {
+            throw new LayoutInflaterException(
+                    "Only one root element is allowed.");
+        }
+        int position = from;
+        int nameEnd = skipName(position, to);
+        String qName = text.substring(position, nameEnd);
+        if (qName.isEmpty()) {
+            throw new LayoutInflaterException("Missing element name.");
+        }
+
+        // Read the raw attributes first, as the namespace declarations apply
+        // to all names of the tag.
+        List<String> names = new ArrayList<String>();
+        List<String> values = new ArrayList<String>();
+        position = nameEnd;
+        while (true) {
+            int nameStart = skipWhitespace(position, to);
+            if (nameStart == to) {
+                break;
+            }
+            if (nameStart == position) {
+                throw new LayoutInflaterException(
+                        "Whitespace is required between attributes in "
+                                + qName + ".");
+            }
+            nameEnd = skipName(nameStart, to);
+            String name = text.substring(nameStart, nameEnd);
+            position = skipWhitespace(nameEnd, to);
+            if (name.isEmpty() || position == to
+                    || text.charAt(position) != '=') {
+                throw new LayoutInflaterException("Malformed attribute in "
+                        + qName + ".");
+            }
+            position = skipWhitespace(position + 1, to);
+            char quote = position < to ? text.charAt(position) : 0;
+            if (quote != '"' && quote != '\'') {
+                throw new LayoutInflaterException("Attribute value of " + name
+                        + " must be quoted.");
+            }
+            int valueEnd = text.indexOf(String.valueOf(quote), position + 1);
+            if (names.contains(name)) {
+                throw new LayoutInflaterException("Duplicate attribute "
+                        + name + " in " + qName + ".");
+            }
+            names.add(name);
+            values.add(decodeValue(position + 1, valueEnd));
+            position = valueEnd + 1;
+        }
+
+        Map<String, String> scope = new HashMap<String, String>(
+                namespaceScopes.get(namespaceScopes.size() - 1));
+        List<Attribute> attributes = new ArrayList<Attribute>(names.size());
+        for (int i = 0; i < names.size(); i++) {
+            String name = names.get(i);
+            if (name.equals(XMLNS)) {
+                scope.put("", values.get(i));
+            } else if (name.startsWith(XMLNS + ":")) {
+                scope.put(name.substring(XMLNS.length() + 1), values.get(i));
+            }
+        }
+        for (int i = 0; i < names.size(); i++) {
+            String name = names.get(i);
+            if (name.equals(XMLNS) || name.startsWith(XMLNS + ":")) {
+                continue;
+            }
+            int colon = name.indexOf(':');
+            // Unprefixed attributes have no namespace.
+            String uri = colon < 0 ? "" : resolve(scope,
+                    name.substring(0, colon));
+            attributes.add(new Attribute(uri, name.substring(colon + 1),
+                    values.get(i)));
+        }
+
+        int colon = qName.indexOf(':');
+        String uri = resolve(scope, colon < 0 ? "" : qName.substring(0, colon));
+        started = true;
+        openElements.add(qName);
+        namespaceScopes.add(scope);
+        handler.startElement(uri, qName.substring(colon + 1), attributes);
+    }
+
+    private void endTag(String qName) {
+        if (openElements.isEmpty()
+                || !openElements.get(openElements.size() - 1).equals(qName)) {
+            throw new LayoutInflaterException("Unexpected end tag " + qName
+                    + ".");
+        }
+        closeElement();
+    }
+
+    private void closeElement() {
+        int depth = openElements.size() - 1;
+        String qName = openElements.remove(depth);
+        Map<String, String> scope = namespaceScopes.remove(depth + 1);
+        int colon = qName.indexOf(':');
+        handler.endElement(
+                resolve(scope, colon < 0 ? "" : qName.substring(0, colon)),
+                qName.substring(colon + 1));
+        if (openElements.isEmpty()) {
+            rootClosed = true;
+        }
+    }
+
+    private String resolve(Map<String, String> scope, String prefix) {
+        String uri = scope.get(prefix);
+        if (uri == null) {
+            throw new LayoutInflaterException("Namespace prefix " + prefix
+                    + " is not declared.");
+        }
+        return uri;
+    }
+
+    /**
+     * Returns the attribute value between the given positions with the
+     * entity references replaced and whitespace normalized. Line breaks are
+     * normalized first like the XML specification requires, so a CRLF becomes
+     * a single space.
+     */
+    private String decodeValue(int from, int to) {
+        StringBuilder value = new StringBuilder(to - from);
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c == '&') {
+                int end = text.indexOf(";", i);
+                if (end < 0 || end > to) {
+                    throw new LayoutInflaterException(
+                            "Unterminated entity reference.");
+                }
+                value.append(decodeEntity(text.substring(i + 1, end)));
+                i = end;
+            } else if (c == '<') {
+                throw new LayoutInflaterException(
+                        "Attribute values must not contain <.");
+            } else if (c == '\r' && i + 1 < to && text.charAt(i + 1) == '\n') {
+                // The line feed of the CRLF is appended as the space.
+                continue;
+            } else if (c == '\t' || c == '\n' || c == '\r') {
+                value.append(' ');
+            } else {
+                value.append(c);
+            }
+        }
+        return value.toString();
+    }
+
+    private String decodeEntity(String name) {
+        if (name.equals("lt")) {
+            return "<";
+        } else if (name.equals("gt")) {
+            return ">";
+        } else if (name.equals("amp")) {
+            return "&";
+        } else if (name.equals("quot")) {
+            return "\"";
+        } else if (name.equals("apos")) {
+            return "'";
+        } else if (name.startsWith("#")) {
+            try {
+                int codePoint = name.startsWith("#x") ? Integer.parseInt(
+                        name.substring(2), 16) : Integer.parseInt(name
+                        .substring(1));
+                return new String(Character.toChars(codePoint));
+            } catch (IllegalArgumentException e) {
+                // Also thrown for an invalid code point.
+                throw new LayoutInflaterException(
+                        "Invalid character reference &" + name + ";.");
+            }
+        }
+        throw new LayoutInflaterException("Undeclared entity &" + name + ";.");
+    }
+
+    private int skipName(int from, int to) {
+        int i = from;
+        while (i < to && !isWhitespace(text.charAt(i))
+                && text.charAt(i) != '=' && text.charAt(i) != '/') {
+            i++;
+        }
+        return i;
+    }
+
+    private int skipWhitespace(int from, int to) {
+        int i = from;
+        while (i < to && isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Verifies that an XML declaration doesn't declare an encoding other
+     * than UTF-8.
+     */
+    private void verifyEncoding(String instruction) {
+        Matcher matcher = ENCODING_DECLARATION.matcher(instruction);
+        if (matcher.find() && !matcher.group(1).equalsIgnoreCase("UTF-8")) {
+            throw new LayoutInflaterException("Unsupported encoding "
+                    + matcher.group(1) + ", only UTF-8 is supported.");
+        }
+    }
+
+    /**
+     * Returns {@code true} if the text from the given position is a proper
+     * beginning of the given prefix.
+     */
+    private boolean isIncomplete(String prefix, int position) {
+        int length = text.length() - position;
+        return length < prefix.length()
+                && prefix.startsWith(text.substring(position));
+    }
+
+    private boolean startsWith(String prefix, int position) {
+        return text.length() - position >= prefix.length()
+                && text.substring(position, position + prefix.length())
+                        .equals(prefix);
+    }
+
+    private int indexOf(String string, int from) {
+        return text.indexOf(string, from);
+    }
+
+    private static boolean isWhitespace(CharSequence chars, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (!isWhitespace(chars.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns {@code true} for the white space characters of XML (the
+     * {@code S} production), unlike {@link Character#isWhitespace(char)}
+     * which also accepts for example form feeds and Unicode spaces.
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+}
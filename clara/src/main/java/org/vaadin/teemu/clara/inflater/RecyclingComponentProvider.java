@@ -0,0 +1,274 @@
+package org.vaadin.teemu.clara.inflater;
+
+import static org.vaadin.teemu.clara.inflater.LayoutInflater.IMPORT_URN_PREFIX;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.vaadin.ui.Component;
+import com.vaadin.ui.ComponentContainer;
+import com.vaadin.ui.HasComponents;
+import com.vaadin.ui.SingleComponentContainer;
+
+/**
+ * {@link ComponentProvider} that hands out recycled component instances and
+ * creates new ones only when there are no released instances of the requested
+ * class left. Like {@link ReflectionComponentProvider} it provides components
+ * for elements in {@code urn:import:} namespaces.
+ * <p>
+ * Components are returned to the provider with {@link #release(Component)}
+ * once they are no longer used, for example when a dialog is closed. Each
+ * released component is reset with the {@link ComponentResetter} given to the
+ * constructor before it's pooled, and at most {@code maxPooledPerClass}
+ * instances are kept for each component class.
+ * </p>
+ * <p>
+ * Only components handed out by this provider are reset and pooled, and each
+ * of them only once until it is handed out again. Other components in a
+ * released tree, for example the ones assigned to
+ * {@link org.vaadin.teemu.clara.binder.annotation.UiField}s of a
+ * controller before the inflation and taken from the override map (see
+ * {@link OverrideMapComponentProvider}), are neither reset nor pooled. They
+ * are only removed from their parent if the parent is released. Releasing a
+ * component again is ignored.
+ * </p>
+ * <p>
+ * Instances are thread-safe and can be shared, for example by a
+ * {@link org.vaadin.teemu.clara.ClaraEngine}, but a component must not be
+ * used anymore after it has been released. As the engine is shared by all
+ * sessions, a released component may be handed out to any session afterwards.
+ * It must therefore not be released while still referenced by its session
+ * (for example from a controller or a listener), and the resetter must remove
+ * all session specific state, such as listeners, data sources and ids.
+ * </p>
+ * <p>
+ * The pools aren't serialized. A provider referenced by a serialized
+ * {@link LazyFragment} is replaced with a {@link ReflectionComponentProvider},
+ * so the fragment creates new instances after deserialization.
+ * </p>
+ */
+public class RecyclingComponentProvider implements
+        IdIndependentComponentProvider, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Default maximum number of pooled instances per component class.
+     */
+    public static final int DEFAULT_MAX_POOLED_PER_CLASS = 64;
+
+    /**
+     * Namespace URI and local name of the element for each component class.
+     */
+    private static final ClassValue<String[]> elementNames = new ClassValue<String[]>() {
+
+        @Override
+        protected String[] computeValue(Class<?> type) {
+            String className = type.getName();
+            int packageEnd = className.lastIndexOf('.');
+            return new String[] {
+                    IMPORT_URN_PREFIX + className.substring(0, packageEnd),
+                    className.substring(packageEnd + 1) };
+        }
+    };
+
+    private final ComponentFactory componentFactory = new ComponentFactory();
+    private final ComponentResetter resetter;
+    private final int maxPooledPerClass;
+    private final ConcurrentMap<String, ConcurrentMap<String, Pool>> poolsByUri = new ConcurrentHashMap<String, ConcurrentMap<String, Pool>>();
+    // Components handed out and not released since, with weak keys as most
+    // of them are never released. Components don't override equals().
+    private final Set<Component> handedOut = Collections.newSetFromMap(Collections
+            .synchronizedMap(new WeakHashMap<Component, Boolean>()));
+
+    /**
+     * Creates a provider that keeps at most
+     * {@value #DEFAULT_MAX_POOLED_PER_CLASS} instances per component class.
+     *
+     * @param resetter
+     *            {@link ComponentResetter} for the released components.
+     */
+    public RecyclingComponentProvider(ComponentResetter resetter) {
+        this(resetter, DEFAULT_MAX_POOLED_PER_CLASS);
+    }
+
+    /**
+     * @param resetter
+     *            {@link ComponentResetter} for the released components.
+     * @param maxPooledPerClass
+     *            maximum number of pooled instances per component class.
+     *            Instances released beyond that are discarded.
+     */
+    public RecyclingComponentProvider(ComponentResetter resetter,
+            int maxPooledPerClass) {
+        if (resetter == null) {
+            throw new IllegalArgumentException("Resetter must not be null.");
+        }
+        if (maxPooledPerClass < 0) {
+            throw new IllegalArgumentException(
+                    "Maximum pool size must not be negative.");
+        }
+        this.resetter = resetter;
+        this.maxPooledPerClass = maxPooledPerClass;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Final, as this provider is an {@link IdIndependentComponentProvider}
+     * and the result must not depend on the {@code id}.
+     * </p>
+     */
+    @Override
+    public final boolean isApplicableFor(String uri, String localName,
+            String id) {
+        return uri.startsWith(IMPORT_URN_PREFIX);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Component getComponent(String uri, String localName, String id)
+            throws LayoutInflaterException {
+        if (!uri.startsWith(IMPORT_URN_PREFIX)) {
+            return null;
+        }
+
+        Pool pool = getPool(uri, localName, false);
+        Component component = pool != null ? pool.poll() : null;
+        if (component == null) {
+            component = componentFactory.createComponent(
+                    uri.substring(IMPORT_URN_PREFIX.length()), localName);
+        }
+        handedOut.add(component);
+        return component;
+    }
+
+    /**
+     * Releases the given component and all of its descendants for reuse. Each
+     * released component that was handed out by this provider is detached
+     * from its parent, reset and pooled. Other components and repeated
+     * releases are ignored, see the class documentation.
+     *
+     * @param component
+     *            root of the released component tree.
+     */
+    public void release(Component component) {
+        releaseTree(component, false);
+    }
+
+    /**
+     * @return the number of pooled instances of the given component class.
+     */
+    public int getPooledCount(Class<? extends Component> componentClass) {
+        String[] names = elementNames.get(componentClass);
+        Pool pool = getPool(names[0], names[1], false);
+        return pool != null ? pool.size() : 0;
+    }
+
+    /**
+     * @param parentReleased
+     *            whether the parent has been handed out by this provider and
+     *            is released, the component is detached from it then even if
+     *            it isn't released itself.
+     */
+    private void releaseTree(Component component, boolean parentReleased) {
+        // Removed first, so that concurrent releases pool it only once.
+        boolean owned = handedOut.remove(component);
+        if (owned || parentReleased) {
+            detachFromParent(component);
+        }
+        if (component instanceof HasComponents) {
+            List<Component> children = new ArrayList<Component>();
+            for (Component child : (HasComponents) component) {
+                children.add(child);
+            }
+            for (Component child : children) {
+                releaseTree(child, owned);
+            }
+        }
+        if (owned && resetter.reset(component)) {
+            String[] names = elementNames.get(component.getClass());
+            getPool(names[0], names[1], true).offer(component,
+                    maxPooledPerClass);
+        }
+    }
+
+    private void detachFromParent(Component component) {
+        HasComponents parent = component.getParent();
+        if (parent instanceof ComponentContainer) {
+            ((ComponentContainer) parent).removeComponent(component);
+        } else if (parent instanceof SingleComponentContainer
+                && ((SingleComponentContainer) parent).getContent() == component) {
+            ((SingleComponentContainer) parent).setContent(null);
+        }
+    }
+
+    private Object writeReplace() {
+        return new ReflectionComponentProvider();
+    }
+
+    private Pool getPool(String uri, String localName, boolean create) {
+        ConcurrentMap<String, Pool> pools = poolsByUri.get(uri);
+        if (pools == null) {
+            if (!create) {
+                return null;
+            }
+            pools = new ConcurrentHashMap<String, Pool>();
+            ConcurrentMap<String, Pool> existing = poolsByUri.putIfAbsent(uri,
+                    pools);
+            if (existing != null) {
+                pools = existing;
+            }
+        }
+        Pool pool = pools.get(localName);
+        if (pool == null && create) {
+            pool = new Pool();
+            Pool existing = pools.putIfAbsent(localName, pool);
+            if (existing != null) {
+                pool = existing;
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * Bounded queue of released instances of a single component class.
+     */
+    private static class Pool {
+
+        private final Queue<Component> components = new ConcurrentLinkedQueue<Component>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        public Component poll() {
+            Component component = components.poll();
+            if (component != null) {
+                size.decrementAndGet();
+            }
+            return component;
+        }
+
+        public void offer(Component component, int maxSize) {
+            if (size.incrementAndGet() <= maxSize) {
+                components.offer(component);
+            } else {
+                size.decrementAndGet();
+            }
+        }
+
+        public int size() {
+            return size.get();
+        }
+    }
+
+}
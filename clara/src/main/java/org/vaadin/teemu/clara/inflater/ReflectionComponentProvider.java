@@ -2,11 +2,35 @@ package org.vaadin.teemu.clara.inflater;
 
 import static org.vaadin.teemu.clara.inflater.LayoutInflater.IMPORT_URN_PREFIX;
 
-import com.vaadin.ui.Component;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
 
-public class ReflectionComponentProvider implements ComponentProvider {
+import com.vaadin.ui.Component;
 
-    private final ComponentFactory componentFactory = new ComponentFactory();
+/**
+ * {@link ComponentProvider} that creates the components of elements in
+ * {@code urn:import:} namespaces by reflection. The namespace gives the
+ * package and the local name the class of the component.
+ * <p>
+ * This class isn't an {@link IdIndependentComponentProvider}, as subclasses
+ * may inspect the id. The instance that {@link LayoutInflater} uses by
+ * default is one, see {@link LayoutInflater#getDefaultComponentProvider()}.
+ * </p>
+ */
+public class ReflectionComponentProvider implements ComponentProvider,
+        Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // The class loader isn't serializable, a new factory is created instead.
+    private transient ComponentFactory componentFactory = new ComponentFactory();
+
+    private void readObject(ObjectInputStream in) throws IOException,
+            ClassNotFoundException {
+        in.defaultReadObject();
+        componentFactory = new ComponentFactory();
+    }
 
     @Override
     public boolean isApplicableFor(String uri, String localName, String id) {
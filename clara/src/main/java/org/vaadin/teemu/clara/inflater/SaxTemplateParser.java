@@ -0,0 +1,92 @@
+package org.vaadin.teemu.clara.inflater;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.vaadin.teemu.clara.inflater.LayoutTemplate.Attribute;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * {@link TemplateParser} using a namespace aware SAX parser. This is the
+ * default parser of {@link LayoutInflater}.
+ * <p>
+ * The {@link SAXParserFactory} is looked up and configured only once, instead
+ * of looking up an implementation for every parsed XML.
+ * </p>
+ */
+public class SaxTemplateParser implements TemplateParser, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final SAXParserFactory parserFactory = createParserFactory();
+
+    private static SAXParserFactory createParserFactory() {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory;
+    }
+
+    @Override
+    public LayoutTemplate parse(InputStream xml) {
+        try {
+            TemplateContentHandler contentHandler = new TemplateContentHandler();
+
+            XMLReader reader = createXMLReader();
+            reader.setContentHandler(contentHandler);
+            reader.parse(new InputSource(xml));
+            return contentHandler.builder.getTemplate();
+        } catch (SAXException e) {
+            throw new LayoutInflaterException(e);
+        } catch (IOException e) {
+            throw new LayoutInflaterException(e);
+        } catch (ParserConfigurationException e) {
+            throw new LayoutInflaterException(e);
+        }
+    }
+
+    private XMLReader createXMLReader() throws SAXException,
+            ParserConfigurationException {
+        // SAXParserFactory is not guaranteed to be thread-safe.
+        synchronized (parserFactory) {
+            return parserFactory.newSAXParser().getXMLReader();
+        }
+    }
+
+    /**
+     * SAX {@link DefaultHandler} that passes the elements to a
+     * {@link TemplateBuilder}.
+     */
+    private static class TemplateContentHandler extends DefaultHandler {
+
+        private final TemplateBuilder builder = new TemplateBuilder();
+
+        @Override
+        public void startElement(String uri, String localName, String qName,
+                Attributes attributes) throws SAXException {
+            List<Attribute> attributeList = new ArrayList<Attribute>(
+                    attributes.getLength());
+            for (int i = 0; i < attributes.getLength(); i++) {
+                attributeList.add(new Attribute(attributes.getURI(i),
+                        attributes.getLocalName(i), attributes.getValue(i)));
+            }
+            builder.startElement(attributeList);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName)
+                throws SAXException {
+            builder.endElement(uri, localName);
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+package org.vaadin.teemu.clara.inflater;
+
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.vaadin.teemu.clara.inflater.LayoutTemplate.Attribute;
+
+/**
+ * {@link TemplateParser} pulling the elements from a StAX
+ * {@link XMLStreamReader}. Text content is not needed for a
+ * {@link LayoutTemplate}, so it's skipped without building strings of it.
+ * <p>
+ * The {@link XMLInputFactory} is looked up and configured only once and then
+ * used only for creating readers.
+ * </p>
+ */
+public class StaxTemplateParser implements TemplateParser, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final XMLInputFactory inputFactory = createInputFactory();
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        return factory;
+    }
+
+    @Override
+    public LayoutTemplate parse(InputStream xml) {
+        try {
+            XMLStreamReader reader = inputFactory.createXMLStreamReader(xml);
+            try {
+                return parse(reader);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new LayoutInflaterException(e);
+        }
+    }
+
+    private LayoutTemplate parse(XMLStreamReader reader)
+            throws XMLStreamException {
+        TemplateBuilder builder = new TemplateBuilder();
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+            case XMLStreamConstants.START_ELEMENT:
+                builder.startElement(getAttributes(reader));
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                builder.endElement(reader.getNamespaceURI(),
+                        reader.getLocalName());
+                break;
+            default:
+                // Ignore text, comments and processing instructions.
+                break;
+            }
+        }
+        return builder.getTemplate();
+    }
+
+    private List<Attribute> getAttributes(XMLStreamReader reader) {
+        int count = reader.getAttributeCount();
+        List<Attribute> attributes = new ArrayList<Attribute>(count);
+        for (int i = 0; i < count; i++) {
+            String uri = reader.getAttributeNamespace(i);
+            attributes.add(new Attribute(uri != null ? uri : "", reader
+                    .getAttributeLocalName(i), reader.getAttributeValue(i)));
+        }
+        return attributes;
+    }
+
+}
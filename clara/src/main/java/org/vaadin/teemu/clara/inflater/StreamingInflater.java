@@ -0,0 +1,166 @@
+package org.vaadin.teemu.clara.inflater;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+import org.vaadin.teemu.clara.inflater.LayoutTemplate.Attribute;
+import org.vaadin.teemu.clara.inflater.LayoutTemplate.Element;
+
+import com.vaadin.ui.Component;
+
+/**
+ * Inflates a layout incrementally from chunks of UTF-8 encoded XML, for
+ * example read from a non-blocking channel. Create instances with
+ * {@link LayoutInflater#startInflation(List, java.util.Map)}.
+ * <p>
+ * Each component is created, configured and attached to its parent as soon as
+ * the start tag of its element has been fed, so the component tree grows
+ * while the XML arrives. {@link #feed(ByteBuffer)} only parses the given
+ * bytes and never waits for more input, an incomplete tag is kept until the
+ * next chunk. {@link InflaterListener}s are notified when the end tag of
+ * their element has been fed.
+ * </p>
+ * <p>
+ * Children of elements marked as lazy are inflated right away, as they are
+ * not known yet when the element starts. Instances are not thread-safe, the
+ * chunks must be fed one at a time and in order.
+ * </p>
+ */
+public final class StreamingInflater {
+
+    /**
+     * Receives the elements to inflate.
+     */
+    interface Target {
+
+        /**
+         * Inflates the component of the given element, which has no children
+         * yet, and attaches it to the component of the innermost open
+         * element.
+         */
+        void startElement(Element element);
+
+        /**
+         * Closes the innermost open element.
+         */
+        void endElement();
+
+        /**
+         * @return the root component, or {@code null} if none has been
+         *         inflated yet.
+         */
+        Component getRoot();
+    }
+
+    private final Target target;
+    private final TemplateBuilder builder = new TemplateBuilder();
+    private final PushXmlParser parser;
+    private LayoutTemplate template;
+    private boolean failed;
+
+    StreamingInflater(Target target) {
+        this.target = target;
+        parser = new PushXmlParser(new PushXmlParser.Handler() {
+
+            @Override
+            public void startElement(String uri, String localName,
+                    List<Attribute> attributes) {
+                StreamingInflater.this.target.startElement(new Element(
+                        uri.length() > 0 ? uri
+                                : LayoutInflater.DEFAULT_NAMESPACE,
+                        localName, attributes, Collections
+                                .<Element> emptyList()));
+                builder.startElement(attributes);
+            }
+
+            @Override
+            public void endElement(String uri, String localName) {
+                StreamingInflater.this.target.endElement();
+                builder.endElement(uri, localName);
+            }
+        });
+    }
+
+    /**
+     * Parses the remaining bytes of the given buffer and inflates the
+     * elements whose start or end tag is complete. The buffer can be reused
+     * after this call.
+     *
+     * @param bytes
+     *            the next chunk of the XML.
+     * @throws LayoutInflaterException
+     *             if the XML is not well-formed or a component can't be
+     *             inflated.
+     * @throws IllegalStateException
+     *             if the inflation has been finished or has failed.
+     */
+    public void feed(ByteBuffer bytes) {
+        verifyActive();
+        try {
+            parser.feed(bytes);
+        } catch (RuntimeException e) {
+            failed = true;
+            throw e;
+        }
+    }
+
+    /**
+     * Signals that all of the XML has been fed and returns the inflated
+     * component (hierarchy).
+     *
+     * @return the inflated root {@link Component}.
+     * @throws LayoutInflaterException
+     *             if the XML is not complete.
+     * @throws IllegalStateException
+     *             if the inflation has been finished or has failed.
+     */
+    public Component finish() {
+        verifyActive();
+        try {
+            parser.finish();
+        } catch (RuntimeException e) {
+            failed = true;
+            throw e;
+        }
+        template = builder.getTemplate();
+        return target.getRoot();
+    }
+
+    /**
+     * Returns the root component inflated so far. Its descendants are still
+     * being added until the inflation is complete.
+     *
+     * @return the root component, or {@code null} if the start tag of the
+     *         root element hasn't been fed yet.
+     */
+    public Component getRoot() {
+        return target.getRoot();
+    }
+
+    /**
+     * @return {@code true} if the end tag of the root element has been fed.
+     */
+    public boolean isComplete() {
+        return parser.isRootClosed();
+    }
+
+    /**
+     * Returns the template of the fed XML, for example to inflate the same
+     * layout again without parsing it.
+     *
+     * @return the template, or {@code null} if the inflation hasn't been
+     *         finished.
+     */
+    public LayoutTemplate getTemplate() {
+        return template;
+    }
+
+    private void verifyActive() {
+        if (failed || template != null) {
+            throw new IllegalStateException("The inflation has "
+                    + (failed ? "failed." : "been finished."));
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+package org.vaadin.teemu.clara.inflater;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.vaadin.teemu.clara.inflater.LayoutTemplate.Attribute;
+import org.vaadin.teemu.clara.inflater.LayoutTemplate.Element;
+
+/**
+ * Builds the element tree of a {@link LayoutTemplate} from start and end
+ * element events of a {@link TemplateParser}. The open elements are kept in
+ * lists indexed by their depth.
+ */
+final class TemplateBuilder {
+
+    private final List<List<Attribute>> attributesByDepth = new ArrayList<List<Attribute>>();
+    private final List<List<Element>> childrenByDepth = new ArrayList<List<Element>>();
+    private Element root;
+
+    /**
+     * Opens a new element with the given attributes.
+     */
+    void startElement(List<Attribute> attributes) {
+        attributesByDepth.add(attributes);
+        childrenByDepth.add(new ArrayList<Element>());
+    }
+
+    /**
+     * Closes the innermost open element.
+     *
+     * @param uri
+     *            namespace URI of the element (empty if none).
+     * @param localName
+     *            local name of the element.
+     */
+    void endElement(String uri, String localName) {
+        if (uri == null || uri.length() == 0) {
+            uri = LayoutInflater.DEFAULT_NAMESPACE;
+        }
+        int depth = childrenByDepth.size() - 1;
+        Element element = new Element(uri, localName,
+                attributesByDepth.remove(depth), childrenByDepth.remove(depth));
+        if (depth == 0) {
+            root = element;
+        } else {
+            childrenByDepth.get(depth - 1).add(element);
+        }
+    }
+
+    /**
+     * @return the template of the completed element tree.
+     * @throws LayoutInflaterException
+     *             if no element has been completed.
+     */
+    LayoutTemplate getTemplate() {
+        if (root == null) {
+            throw new LayoutInflaterException("The XML contains no elements.");
+        }
+        return new LayoutTemplate(root);
+    }
+
+}
@@ -0,0 +1,30 @@
+package org.vaadin.teemu.clara.inflater;
+
+import java.io.InputStream;
+
+/**
+ * Parses layout XML into a {@link LayoutTemplate}. The parser used by a
+ * {@link LayoutInflater} is set with
+ * {@link LayoutInflater#setTemplateParser(TemplateParser)}.
+ * <p>
+ * Implementations must be thread-safe, as a single instance is shared by all
+ * compilations of an inflater.
+ * </p>
+ *
+ * @see SaxTemplateParser
+ * @see StaxTemplateParser
+ */
+public interface TemplateParser {
+
+    /**
+     * Parses the given {@code xml} into a {@link LayoutTemplate}.
+     *
+     * @param xml
+     *            {@link InputStream} for the XML.
+     * @return the parsed {@link LayoutTemplate}.
+     * @throws LayoutInflaterException
+     *             in case of an error while parsing the XML.
+     */
+    LayoutTemplate parse(InputStream xml);
+
+}
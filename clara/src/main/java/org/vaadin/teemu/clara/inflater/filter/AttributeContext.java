@@ -2,6 +2,17 @@ package org.vaadin.teemu.clara.inflater.filter;
 
 import java.lang.reflect.Method;
 
+/**
+ * The value of an attribute on its way through the {@link AttributeFilter}s
+ * to the setter of a component.
+ * <p>
+ * A context is valid only while
+ * {@link AttributeFilter#filter(AttributeContext)} is running. The inflater
+ * reuses the same instance for the following attributes, so a filter must not
+ * keep it. Using a context after its filter chain has finished throws an
+ * {@link IllegalStateException}.
+ * </p>
+ */
 public abstract class AttributeContext {
 
     private Object value;
@@ -20,6 +31,8 @@ public abstract class AttributeContext {
      *
      * @throws AttributeFilterException
      *             on failure.
+     * @throws IllegalStateException
+     *             if the filter chain of this context has already finished.
      */
     public abstract void proceed() throws AttributeFilterException;
 
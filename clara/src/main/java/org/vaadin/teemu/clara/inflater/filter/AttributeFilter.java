@@ -17,6 +17,13 @@ public interface AttributeFilter {
      * {@link AttributeContext#proceed()} method, the value will never be set
      * for the {@link Component}.
      * 
+     * <br>
+     * <br>
+     * The {@code attributeContext} is valid only until this method returns.
+     * It is reused for other attributes and throws an
+     * {@link IllegalStateException} when used after its filter chain has
+     * finished, so it must not be kept for later use.
+     * 
      * @param attributeContext
      *            context for the filtering.
      * @throws AttributeFilterException
@@ -0,0 +1,35 @@
+package org.vaadin.teemu.clara.inflater.filter;
+
+import java.lang.reflect.Method;
+
+/**
+ * An {@link AttributeFilter} that declares which setters it applies to. The
+ * filter is left out of the filter chain for all other setters, and if no
+ * filter applies to a setter, the value is assigned without going through the
+ * chain at all.
+ * <p>
+ * For example a filter that translates captions would only apply to setters
+ * named {@code setCaption}.
+ * </p>
+ */
+public interface SelectiveAttributeFilter extends AttributeFilter {
+
+    /**
+     * Returns {@code true} if this filter should be applied to values
+     * assigned with the given {@code setter} to instances of the given
+     * {@code targetClass}. The name and parameter types of the setter tell
+     * the attribute and the declared value type.
+     * <br>
+     * <br>
+     * The result is cached, so it must only depend on the given arguments.
+     *
+     * @param targetClass
+     *            class of the object the setter is invoked on (the component
+     *            or, for layout attributes, its parent container).
+     * @param setter
+     *            the setter method.
+     * @return {@code true} if this filter applies to the setter.
+     */
+    boolean isApplicableFor(Class<?> targetClass, Method setter);
+
+}
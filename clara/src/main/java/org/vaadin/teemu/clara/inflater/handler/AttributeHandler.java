@@ -5,20 +5,13 @@ import static org.vaadin.teemu.clara.util.ReflectionUtils.findMethods;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
-import org.vaadin.teemu.clara.inflater.filter.AttributeContext;
 import org.vaadin.teemu.clara.inflater.filter.AttributeFilter;
-import org.vaadin.teemu.clara.inflater.filter.AttributeFilterException;
 import org.vaadin.teemu.clara.inflater.parser.AttributeParser;
-import org.vaadin.teemu.clara.inflater.parser.ComponentPositionParser;
-import org.vaadin.teemu.clara.inflater.parser.EnumAttributeParser;
 import org.vaadin.teemu.clara.inflater.parser.PrimitiveAttributeParser;
-import org.vaadin.teemu.clara.inflater.parser.VaadinAttributeParser;
 import org.vaadin.teemu.clara.util.MethodsByDeprecationComparator;
 import org.vaadin.teemu.clara.util.ReflectionUtils.ParamCount;
 
@@ -27,8 +20,33 @@ import com.vaadin.ui.Field;
 
 public class AttributeHandler {
 
-    private final List<AttributeParser> attributeParsers = new ArrayList<AttributeParser>();
-    private final List<AttributeFilter> attributeFilters;
+    /**
+     * Whether a handler class overrides the deprecated
+     * {@link #invokeWithAttributeFilters(Method, Object, Object...)}, checked
+     * once per class.
+     */
+    private static final ClassValue<Boolean> overridesMethodHook = new ClassValue<Boolean>() {
+
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            for (Class<?> c = type; c != AttributeHandler.class; c = c
+                    .getSuperclass()) {
+                try {
+                    c.getDeclaredMethod("invokeWithAttributeFilters",
+                            Method.class, Object.class, Object[].class);
+                    return true;
+                } catch (NoSuchMethodException e) {
+                    // Not overridden in this class, check the superclass.
+                }
+            }
+            return false;
+        }
+    };
+
+    private final ParserLookup parserLookup;
+    private final FilterChain filterChain;
+    private final SetterCache setterCache;
+    private final boolean callMethodHook;
 
     public AttributeHandler(List<AttributeFilter> attributeFilters) {
         this(attributeFilters, Collections.<AttributeParser> emptyList());
@@ -36,15 +54,20 @@ public class AttributeHandler {
 
     public AttributeHandler(List<AttributeFilter> attributeFilters,
             List<AttributeParser> extraAttributeParsers) {
-        this.attributeFilters = attributeFilters;
-
-        // Setup the default AttributeParsers.
-        attributeParsers.add(new PrimitiveAttributeParser());
-        attributeParsers.add(new VaadinAttributeParser());
-        attributeParsers.add(new EnumAttributeParser());
-        attributeParsers.add(new ComponentPositionParser());
-        // Add extra AttributeParsers
-        attributeParsers.addAll(extraAttributeParsers);
+        // The filters are copied, later changes to the list are not seen by
+        // this handler.
+        this.filterChain = new FilterChain(attributeFilters);
+
+        // The default AttributeParsers are consulted before the extra ones.
+        parserLookup = ParserLookup.of(extraAttributeParsers);
+
+        // Resolved setters only depend on the available parsers, so handlers
+        // with the default parsers can share their cache.
+        setterCache = extraAttributeParsers.isEmpty() ? SetterCache
+                .getShared(getClass()) : new SetterCache();
+
+        // Subclasses written against the Method based hook keep working.
+        callMethodHook = overridesMethodHook.get(getClass());
     }
 
     /**
@@ -67,6 +90,23 @@ public class AttributeHandler {
      */
     public void assignAttributes(Component component,
             Map<String, String> attributes) {
+        assignAttributes(component, attributes, null);
+    }
+
+    /**
+     * Assigns the given attributes to the given {@link Component} reusing the
+     * given {@link FilterState}.
+     *
+     * @param component
+     *            {@link Component} instance to assign the attributes.
+     * @param attributes
+     *            {@link Map} of attributes to assign.
+     * @param state
+     *            state of the current thread to reuse when filtering the
+     *            values ({@code null} allowed).
+     */
+    public void assignAttributes(Component component,
+            Map<String, String> attributes, FilterState state) {
 
         if (attributes.isEmpty()) {
             return;
@@ -74,43 +114,43 @@ public class AttributeHandler {
 
         try {
             for (Map.Entry<String, String> attribute : attributes.entrySet()) {
-                Method setter = getWriteMethod(attribute.getKey(),
+                ResolvedSetter resolved = getSetter(attribute.getKey(),
                         component.getClass());
-                if (setter != null) {
-                    if (setter.getParameterTypes().length == 0) {
-                        // Setter method without any parameters.
-                        setter.invoke(component);
-                    } else {
-                        AttributeParser parser = getParserFor(setter
-                                .getParameterTypes()[0]);
-                        if (parser != null) {
-                            // We have a handler that knows how to handle
-                            // conversion
-                            // for this property.
-                            String attributeValue = attribute.getValue();
-                            if (attributeValue == null
-                                    || attributeValue.length() == 0) {
-                                // No need for conversion.
-                                invokeWithAttributeFilters(setter, component,
-                                        attributeValue);
-                            } else {
-                                // Ask the AttributeHandler to convert the
-                                // value.
-                                Class<?> valueType = setter.getParameterTypes()[0];
-                                if (component instanceof Field
-                                        && valueType == Object.class
-                                        && setter.getName().equals("setValue")) {
-                                    // Special handling for Field.setValue with
-                                    // unknown type -> get the actual generic
-                                    // type of the field.
-                                    valueType = (Class<?>) (((ParameterizedType) component
-                                            .getClass().getGenericSuperclass())
-                                            .getActualTypeArguments()[0]);
-                                }
-                                invokeWithAttributeFilters(setter, component,
-                                        parser.getValueAs(attributeValue,
-                                                valueType, component));
+                if (resolved == null) {
+                    continue;
+                }
+                if (resolved.getParameterCount() == 0) {
+                    // Setter method without any parameters.
+                    resolved.invoke(component);
+                } else {
+                    AttributeParser parser = resolved.getParser();
+                    if (parser != null) {
+                        // We have a handler that knows how to handle
+                        // conversion for this property.
+                        String attributeValue = attribute.getValue();
+                        if (attributeValue == null
+                                || attributeValue.length() == 0) {
+                            // No need for conversion.
+                            invokeWithAttributeFilters(resolved, component,
+                                    component, attributeValue, state);
+                        } else {
+                            // Ask the AttributeHandler to convert the value.
+                            Class<?> valueType = resolved.getPropertyType();
+                            if (component instanceof Field
+                                    && valueType == Object.class
+                                    && resolved.getMethod().getName()
+                                            .equals("setValue")) {
+                                // Special handling for Field.setValue with
+                                // unknown type -> get the actual generic
+                                // type of the field.
+                                valueType = (Class<?>) (((ParameterizedType) component
+                                        .getClass().getGenericSuperclass())
+                                        .getActualTypeArguments()[0]);
                             }
+                            invokeWithAttributeFilters(resolved, component,
+                                    component, parser.getValueAs(
+                                            attributeValue, valueType,
+                                            component), state);
                         }
                     }
                 }
@@ -126,53 +166,82 @@ public class AttributeHandler {
         }
     }
 
+    /**
+     * Invokes the given {@code methodToInvoke} on the given {@code obj} with
+     * the given {@code args} after passing the value through the
+     * {@link AttributeFilter}s. The value is the last argument, layout
+     * setters get the {@link Component} as their first argument.
+     * <p>
+     * If a subclass overrides this method, it is still called for every
+     * attribute instead of
+     * {@link #invokeWithAttributeFilters(ResolvedSetter, Object, Component, Object, FilterState)}
+     * .
+     * </p>
+     *
+     * @deprecated override
+     *             {@link #invokeWithAttributeFilters(ResolvedSetter, Object, Component, Object, FilterState)}
+     *             instead, which doesn't need to create a
+     *             {@link ResolvedSetter} for every invocation.
+     */
+    @Deprecated
     protected void invokeWithAttributeFilters(final Method methodToInvoke,
             final Object obj, final Object... args)
             throws IllegalArgumentException, IllegalAccessException,
             InvocationTargetException {
-
-        if (attributeFilters.isEmpty()) {
-            methodToInvoke.invoke(obj, args);
+        ResolvedSetter setter = new ResolvedSetter(methodToInvoke, null, null);
+        if (args.length > 1) {
+            filterChain.invoke(setter, obj, (Component) args[0], args[1],
+                    null);
         } else {
-            final LinkedList<AttributeFilter> filtersCopy = new LinkedList<AttributeFilter>(
-                    attributeFilters);
-            AttributeFilter firstFilter = filtersCopy.pop();
-            firstFilter.filter(new AttributeContext(methodToInvoke,
-                    args.length > 1 ? args[1] : args[0]) {
-
-                @Override
-                public void proceed() throws AttributeFilterException {
-                    if (filtersCopy.size() > 0) {
-                        // More filters -> invoke them.
-                        filtersCopy.pop().filter(this);
-                    } else {
-                        // No more filters -> time to invoke the actual
-                        // method.
-                        try {
-                            if (args.length > 1) {
-                                methodToInvoke.invoke(obj, args[0],
-                                        this.getValue());
-                            } else {
-                                methodToInvoke.invoke(obj, this.getValue());
-                            }
-                        } catch (IllegalAccessException e) {
-                            throw new AttributeFilterException(e);
-                        } catch (InvocationTargetException e) {
-                            throw new AttributeFilterException(e);
-                        }
-                    }
-                }
-            });
+            filterChain.invoke(setter, obj, null, args[0], null);
         }
     }
 
-    protected AttributeParser getParserFor(Class<?> type) {
-        for (AttributeParser parser : attributeParsers) {
-            if (parser.isSupported(type)) {
-                return parser;
+    /**
+     * Invokes the given {@code setter} on the given {@code target} with the
+     * given {@code value} after passing the value through the
+     * {@link AttributeFilter}s.
+     *
+     * @param setter
+     *            setter to invoke.
+     * @param target
+     *            object to invoke the setter on.
+     * @param component
+     *            the {@link Component} the attribute belongs to, passed as the
+     *            first argument to layout setters.
+     * @param value
+     *            value to assign.
+     * @param state
+     *            state to reuse when filtering the value ({@code null}
+     *            allowed).
+     */
+    @SuppressWarnings("deprecation")
+    protected void invokeWithAttributeFilters(final ResolvedSetter setter,
+            final Object target, final Component component, Object value,
+            FilterState state) throws IllegalAccessException,
+            InvocationTargetException {
+        if (callMethodHook) {
+            if (setter.getMethod().getParameterTypes().length > 1) {
+                invokeWithAttributeFilters(setter.getMethod(), target,
+                        component, value);
+            } else {
+                invokeWithAttributeFilters(setter.getMethod(), target, value);
             }
+        } else {
+            filterChain.invoke(setter, target, component, value, state);
         }
-        return null;
+    }
+
+    /**
+     * Returns the first {@link AttributeParser} supporting the given
+     * {@code type}, default parsers first. The result is cached per type.
+     *
+     * @param type
+     *            value type to parse.
+     * @return the parser or {@code null} if no parser supports the type.
+     */
+    protected AttributeParser getParserFor(Class<?> type) {
+        return type != null ? parserLookup.get(type) : null;
     }
 
     protected static String getWriteMethodName(String propertyName) {
@@ -184,6 +253,54 @@ public class AttributeHandler {
         return "";
     }
 
+    /**
+     * Returns the preferred setter for the given {@code propertyName} of the
+     * given {@code componentClass} together with the {@link AttributeParser}
+     * for its property type. The result is cached, so the reflective lookup
+     * with {@link #getWriteMethod(String, Class)} is done only once per
+     * component class and property name.
+     *
+     * @param propertyName
+     *            name of the property (attribute).
+     * @param componentClass
+     *            class to find the setter from.
+     * @return the resolved setter or {@code null} if no setter exists.
+     */
+    protected ResolvedSetter getSetter(String propertyName,
+            Class<? extends Component> componentClass) {
+        ResolvedSetter setter = setterCache.get(componentClass, propertyName);
+        if (setter == null) {
+            Method method = getWriteMethod(propertyName, componentClass);
+            if (method != null) {
+                Class<?> propertyType = getPropertyClass(method);
+                setter = new ResolvedSetter(method, propertyType,
+                        propertyType != null ? getParserFor(propertyType)
+                                : null);
+            } else {
+                setter = ResolvedSetter.NONE;
+            }
+            setterCache.put(componentClass, propertyName, setter);
+        }
+        return setter != ResolvedSetter.NONE ? setter : null;
+    }
+
+    /**
+     * Returns the type of the property the given setter {@code method}
+     * assigns or {@code null} if the method has no parameters.
+     */
+    private static Class<?> getPropertyClass(Method method) {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        if (parameterTypes.length == 0) {
+            return null;
+        }
+        if (parameterTypes.length > 1 && parameterTypes[0] == Component.class) {
+            // First parameter is the Component -> use the second one for
+            // the property.
+            return parameterTypes[1];
+        }
+        return parameterTypes[0];
+    }
+
     protected Method getWriteMethod(String propertyName,
             Class<? extends Component> componentClass) {
         List<Method> writeMethods = findMethods(componentClass,
@@ -208,27 +325,21 @@ public class AttributeHandler {
     private class ParserAwareMethodComparator extends
             MethodsByDeprecationComparator {
 
-        private Class<?> getPropertyClass(Method method) {
-            Class<?>[] parameterTypes = method.getParameterTypes();
-            if (parameterTypes.length > 1
-                    && parameterTypes[0] == Component.class) {
-                // First parameter is the Component -> use the second one for
-                // the property.
-                return parameterTypes[1];
-            }
-            return parameterTypes[0];
-        }
-
         private boolean isSpecialAttributeParser(AttributeParser parser) {
             return parser != null
                     && !(parser instanceof PrimitiveAttributeParser);
         }
 
+        private AttributeParser getParserForProperty(Method method) {
+            Class<?> propertyClass = getPropertyClass(method);
+            return propertyClass != null ? getParserFor(propertyClass) : null;
+        }
+
         @Override
         public int compare(Method method1, Method method2) {
             // Check for parsers.
-            AttributeParser parser1 = getParserFor(getPropertyClass(method1));
-            AttributeParser parser2 = getParserFor(getPropertyClass(method2));
+            AttributeParser parser1 = getParserForProperty(method1);
+            AttributeParser parser2 = getParserForProperty(method2);
             if (isSpecialAttributeParser(parser1)
                     && !isSpecialAttributeParser(parser2)) {
                 return -1;
@@ -0,0 +1,218 @@
+package org.vaadin.teemu.clara.inflater.handler;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.vaadin.teemu.clara.inflater.filter.AttributeContext;
+import org.vaadin.teemu.clara.inflater.filter.AttributeFilter;
+import org.vaadin.teemu.clara.inflater.filter.AttributeFilterException;
+import org.vaadin.teemu.clara.inflater.filter.SelectiveAttributeFilter;
+
+import com.vaadin.ui.Component;
+
+/**
+ * Immutable chain of {@link AttributeFilter}s that passes a value through the
+ * filters and finally to a setter.
+ * <p>
+ * The filters are copied into an array when the chain is created, and the
+ * position in the chain is kept as an index in the {@link AttributeContext}.
+ * The context is reused through the {@link FilterState} of the caller, so
+ * filtering an attribute doesn't allocate anything. Without a state a new
+ * context is created for each filtered invocation.
+ * </p>
+ * <p>
+ * {@link SelectiveAttributeFilter}s are only included in the chains of the
+ * setters they apply to. The filters applicable to a setter are resolved once
+ * per target class and setter, and if none of them applies, the setter is
+ * invoked directly. A new context is also created when a filter assigns
+ * another attribute (with the same state) while its own context is still in
+ * use. Filters must therefore not use the context after their
+ * {@link AttributeFilter#filter(AttributeContext)} method returns. Using it
+ * after the chain has finished throws an {@link IllegalStateException}.
+ * </p>
+ */
+final class FilterChain {
+
+    private static final AttributeFilter[] NO_FILTERS = new AttributeFilter[0];
+
+    private final AttributeFilter[] filters;
+    // Applicable filters by target class and setter, null if there are no
+    // selective filters.
+    private final ClassValue<ConcurrentMap<Method, AttributeFilter[]>> applicableFilters;
+
+    FilterChain(List<AttributeFilter> filters) {
+        this.filters = filters.toArray(new AttributeFilter[filters.size()]);
+        boolean hasSelectiveFilters = false;
+        for (AttributeFilter filter : filters) {
+            if (filter instanceof SelectiveAttributeFilter) {
+                hasSelectiveFilters = true;
+            }
+        }
+        if (hasSelectiveFilters) {
+            applicableFilters = new ClassValue<ConcurrentMap<Method, AttributeFilter[]>>() {
+
+                @Override
+                protected ConcurrentMap<Method, AttributeFilter[]> computeValue(
+                        Class<?> targetClass) {
+                    return new ConcurrentHashMap<Method, AttributeFilter[]>();
+                }
+            };
+        } else {
+            applicableFilters = null;
+        }
+    }
+
+    /**
+     * Returns the filters applicable to the given {@code setter} invoked on
+     * instances of the given {@code targetClass}.
+     */
+    AttributeFilter[] getFilters(Class<?> targetClass, Method setter) {
+        if (applicableFilters == null) {
+            return filters;
+        }
+        ConcurrentMap<Method, AttributeFilter[]> filtersBySetter = applicableFilters
+                .get(targetClass);
+        AttributeFilter[] result = filtersBySetter.get(setter);
+        if (result == null) {
+            result = resolveFilters(targetClass, setter);
+            filtersBySetter.putIfAbsent(setter, result);
+        }
+        return result;
+    }
+
+    private AttributeFilter[] resolveFilters(Class<?> targetClass,
+            Method setter) {
+        List<AttributeFilter> result = new ArrayList<AttributeFilter>(
+                filters.length);
+        for (AttributeFilter filter : filters) {
+            if (!(filter instanceof SelectiveAttributeFilter)
+                    || ((SelectiveAttributeFilter) filter).isApplicableFor(
+                            targetClass, setter)) {
+                result.add(filter);
+            }
+        }
+        return result.isEmpty() ? NO_FILTERS : result
+                .toArray(new AttributeFilter[result.size()]);
+    }
+
+    /**
+     * Passes the given {@code value} through the filters and finally invokes
+     * the given {@code setter} on the given {@code target}.
+     *
+     * @param state
+     *            state to reuse the context with, {@code null} to create a
+     *            new context if needed.
+     */
+    void invoke(ResolvedSetter setter, Object target, Component component,
+            Object value, FilterState state) throws IllegalAccessException,
+            InvocationTargetException {
+        AttributeFilter[] applicable = getFilters(target.getClass(),
+                setter.getMethod());
+        if (applicable.length == 0) {
+            setter.invoke(target, component, value);
+            return;
+        }
+
+        ChainContext context = state != null ? state.context : null;
+        if (context == null || context.inUse) {
+            // No state, first use of the state or a nested invocation.
+            context = new ChainContext();
+            if (state != null && state.context == null) {
+                state.context = context;
+            }
+        }
+        context.start(applicable, setter, target, component, value);
+        try {
+            context.proceed();
+        } finally {
+            context.clear();
+        }
+    }
+
+    static final class ChainContext extends AttributeContext {
+
+        private AttributeFilter[] filters;
+        private ResolvedSetter setter;
+        private Object target;
+        private Component component;
+        private int index;
+        private boolean inUse;
+
+        ChainContext() {
+            super(null, null);
+        }
+
+        void start(AttributeFilter[] filters, ResolvedSetter setter,
+                Object target, Component component, Object value) {
+            this.filters = filters;
+            this.setter = setter;
+            this.target = target;
+            this.component = component;
+            this.index = 0;
+            this.inUse = true;
+            setValue(value);
+        }
+
+        void clear() {
+            super.setValue(null);
+            filters = null;
+            setter = null;
+            target = null;
+            component = null;
+            inUse = false;
+        }
+
+        /**
+         * Fails clearly when a filter uses the context it has kept after the
+         * chain has finished, instead of with a {@link NullPointerException}
+         * or the state of another attribute.
+         */
+        private void checkInUse() {
+            if (!inUse) {
+                throw new IllegalStateException(
+                        "The attribute context is used after its filter chain has finished.");
+            }
+        }
+
+        @Override
+        public Object getValue() {
+            checkInUse();
+            return super.getValue();
+        }
+
+        @Override
+        public void setValue(Object value) {
+            checkInUse();
+            super.setValue(value);
+        }
+
+        @Override
+        public Method getSetter() {
+            checkInUse();
+            return setter.getMethod();
+        }
+
+        @Override
+        public void proceed() throws AttributeFilterException {
+            checkInUse();
+            if (index < filters.length) {
+                // More filters -> invoke the next one.
+                filters[index++].filter(this);
+            } else {
+                // No more filters -> time to invoke the actual method.
+                try {
+                    setter.invoke(target, component, getValue());
+                } catch (IllegalAccessException e) {
+                    throw new AttributeFilterException(e);
+                } catch (InvocationTargetException e) {
+                    throw new AttributeFilterException(e);
+                }
+            }
+        }
+    }
+
+}
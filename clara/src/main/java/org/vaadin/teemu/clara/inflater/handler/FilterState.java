@@ -0,0 +1,25 @@
+package org.vaadin.teemu.clara.inflater.handler;
+
+import java.util.Map;
+
+import org.vaadin.teemu.clara.inflater.filter.AttributeFilter;
+
+import com.vaadin.ui.Component;
+
+/**
+ * State reused when the attributes of many components are passed through the
+ * {@link AttributeFilter}s, for example during one inflation. Passing the
+ * same instance to
+ * {@link AttributeHandler#assignAttributes(Component, Map, FilterState)} for
+ * all components lets the filter chain reuse its context, so filtering an
+ * attribute doesn't allocate anything.
+ * <p>
+ * Instances are not thread-safe, each thread must use its own.
+ * </p>
+ */
+public final class FilterState {
+
+    // Context of the outermost invocation, reused by the next ones.
+    FilterChain.ChainContext context;
+
+}
@@ -35,7 +35,7 @@ public class LayoutAttributeHandler extends AttributeHandler {
 
     @Override
     public void assignAttributes(Component component,
-            Map<String, String> attributes) {
+            Map<String, String> attributes, FilterState state) {
         if (attributes.isEmpty()) {
             return;
         }
@@ -49,17 +49,16 @@ public class LayoutAttributeHandler extends AttributeHandler {
                 .getParent();
         try {
             for (Map.Entry<String, String> attribute : attributes.entrySet()) {
-                Method writeMethod = getWriteMethod(attribute.getKey(),
+                ResolvedSetter setter = getSetter(attribute.getKey(),
                         container.getClass());
-                if (writeMethod != null) {
-                    AttributeParser parser = getParserFor(writeMethod
-                            .getParameterTypes()[1]);
+                if (setter != null) {
+                    AttributeParser parser = setter.getParser();
                     if (parser != null) {
-                        invokeWithAttributeFilters(writeMethod, container,
+                        invokeWithAttributeFilters(setter, container,
                                 component, parser.getValueAs(
                                         attribute.getValue(),
-                                        writeMethod.getParameterTypes()[1],
-                                        component));
+                                        setter.getPropertyType(), component),
+                                state);
                     }
                 }
             }
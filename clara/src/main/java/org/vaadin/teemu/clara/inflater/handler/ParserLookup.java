@@ -0,0 +1,62 @@
+package org.vaadin.teemu.clara.inflater.handler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.vaadin.teemu.clara.inflater.parser.AttributeParser;
+import org.vaadin.teemu.clara.inflater.parser.ComponentPositionParser;
+import org.vaadin.teemu.clara.inflater.parser.EnumAttributeParser;
+import org.vaadin.teemu.clara.inflater.parser.PrimitiveAttributeParser;
+import org.vaadin.teemu.clara.inflater.parser.VaadinAttributeParser;
+
+/**
+ * Resolves the {@link AttributeParser} for a value type. The first parser (in
+ * the order given) that supports a type is resolved only once per type and
+ * cached in a {@link ClassValue}, so a lookup doesn't need to ask every parser
+ * again. A type that no parser supports resolves to {@code null}.
+ */
+final class ParserLookup extends ClassValue<AttributeParser> {
+
+    private static final List<AttributeParser> defaultParsers = Collections
+            .unmodifiableList(Arrays.<AttributeParser> asList(
+                    new PrimitiveAttributeParser(),
+                    new VaadinAttributeParser(), new EnumAttributeParser(),
+                    new ComponentPositionParser()));
+
+    private static final ParserLookup defaultLookup = new ParserLookup(
+            defaultParsers);
+
+    private final AttributeParser[] parsers;
+
+    /**
+     * Returns a lookup over the default parsers followed by the given
+     * {@code extraParsers}. The default parsers are stateless and shared, and
+     * so is the lookup if there are no extra parsers.
+     */
+    static ParserLookup of(List<AttributeParser> extraParsers) {
+        if (extraParsers.isEmpty()) {
+            return defaultLookup;
+        }
+        List<AttributeParser> parsers = new ArrayList<AttributeParser>(
+                defaultParsers);
+        parsers.addAll(extraParsers);
+        return new ParserLookup(parsers);
+    }
+
+    private ParserLookup(List<AttributeParser> parsers) {
+        this.parsers = parsers.toArray(new AttributeParser[parsers.size()]);
+    }
+
+    @Override
+    protected AttributeParser computeValue(Class<?> type) {
+        for (AttributeParser parser : parsers) {
+            if (parser.isSupported(type)) {
+                return parser;
+            }
+        }
+        return null;
+    }
+
+}
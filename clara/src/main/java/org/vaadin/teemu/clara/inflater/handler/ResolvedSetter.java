@@ -0,0 +1,134 @@
+package org.vaadin.teemu.clara.inflater.handler;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import org.vaadin.teemu.clara.inflater.parser.AttributeParser;
+
+import com.vaadin.ui.Component;
+
+/**
+ * A setter {@link Method} resolved for a property together with the
+ * {@link AttributeParser} for its property type. Instances are immutable and
+ * shared between threads.
+ * <p>
+ * The setter is invoked through a {@link MethodHandle} adapted to a generic
+ * signature, which avoids the argument array of {@link Method#invoke} and lets
+ * the JIT inline the call. If no handle can be created for the setter, the
+ * invocation falls back to reflection.
+ * </p>
+ */
+public final class ResolvedSetter {
+
+    static final ResolvedSetter NONE = new ResolvedSetter(null, null, null);
+
+    private final Method method;
+    private final Class<?> propertyType;
+    private final AttributeParser parser;
+    private final int parameterCount;
+    private final MethodHandle invoker;
+
+    ResolvedSetter(Method method, Class<?> propertyType,
+            AttributeParser parser) {
+        this.method = method;
+        this.propertyType = propertyType;
+        this.parser = parser;
+        this.parameterCount = method != null ? method.getParameterTypes().length
+                : 0;
+        this.invoker = method != null ? createInvoker(method) : null;
+    }
+
+    private static MethodHandle createInvoker(Method method) {
+        try {
+            MethodHandle handle = MethodHandles.publicLookup()
+                    .unreflect(method);
+            // (Object, Object...)void for any target, parameter and return
+            // types so that invokeExact can be used.
+            MethodType genericType = MethodType.genericMethodType(
+                    method.getParameterTypes().length + 1).changeReturnType(
+                    void.class);
+            return handle.asType(genericType);
+        } catch (IllegalAccessException e) {
+            // For example a public method of a non-public class.
+            return null;
+        }
+    }
+
+    /**
+     * @return the setter method.
+     */
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * @return type of the assigned property or {@code null} if the setter has
+     *         no parameters.
+     */
+    public Class<?> getPropertyType() {
+        return propertyType;
+    }
+
+    /**
+     * @return parser for the property type or {@code null} if no parser
+     *         supports the property type.
+     */
+    public AttributeParser getParser() {
+        return parser;
+    }
+
+    /**
+     * @return number of parameters of the setter.
+     */
+    public int getParameterCount() {
+        return parameterCount;
+    }
+
+    /**
+     * Invokes a setter without parameters on the given {@code target}.
+     */
+    void invoke(Object target) throws IllegalAccessException,
+            InvocationTargetException {
+        if (invoker == null) {
+            method.invoke(target);
+            return;
+        }
+        try {
+            invoker.invokeExact(target);
+        } catch (Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+
+    /**
+     * Invokes the setter on the given {@code target} with the given
+     * {@code value}. For layout setters taking the child {@link Component} as
+     * their first parameter, the given {@code component} is passed as the
+     * first argument. Otherwise the {@code component} is ignored.
+     */
+    void invoke(Object target, Component component, Object value)
+            throws IllegalAccessException, InvocationTargetException {
+        boolean layoutSetter = parameterCount > 1;
+        if (invoker == null) {
+            if (layoutSetter) {
+                method.invoke(target, component, value);
+            } else {
+                method.invoke(target, value);
+            }
+            return;
+        }
+        try {
+            if (layoutSetter) {
+                invoker.invokeExact(target, (Object) component, value);
+            } else {
+                invoker.invokeExact(target, value);
+            }
+        } catch (Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+
+}
@@ -0,0 +1,48 @@
+package org.vaadin.teemu.clara.inflater.handler;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Thread-safe cache of {@link ResolvedSetter}s by component class and
+ * attribute name. Misses are cached as well (see {@link ResolvedSetter#NONE}).
+ * The setters are stored in {@link ClassValue}s, so that the cache doesn't
+ * keep the component classes or their class loaders from being unloaded.
+ */
+final class SetterCache {
+
+    private static final ClassValue<SetterCache> sharedCaches = new ClassValue<SetterCache>() {
+
+        @Override
+        protected SetterCache computeValue(Class<?> handlerClass) {
+            return new SetterCache();
+        }
+    };
+
+    private final ClassValue<ConcurrentMap<String, ResolvedSetter>> setters = new ClassValue<ConcurrentMap<String, ResolvedSetter>>() {
+
+        @Override
+        protected ConcurrentMap<String, ResolvedSetter> computeValue(
+                Class<?> componentClass) {
+            return new ConcurrentHashMap<String, ResolvedSetter>();
+        }
+    };
+
+    /**
+     * Returns the process-wide cache for handlers of the given class using
+     * only the default attribute parsers.
+     */
+    static SetterCache getShared(Class<?> handlerClass) {
+        return sharedCaches.get(handlerClass);
+    }
+
+    ResolvedSetter get(Class<?> componentClass, String propertyName) {
+        return setters.get(componentClass).get(propertyName);
+    }
+
+    void put(Class<?> componentClass, String propertyName,
+            ResolvedSetter setter) {
+        setters.get(componentClass).put(propertyName, setter);
+    }
+
+}
@@ -8,16 +8,22 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.Test;
 import org.vaadin.teemu.clara.binder.annotation.UiDataSource;
 import org.vaadin.teemu.clara.binder.annotation.UiField;
 import org.vaadin.teemu.clara.binder.annotation.UiHandler;
 import org.vaadin.teemu.clara.inflater.LayoutInflater;
+import org.vaadin.teemu.clara.inflater.LayoutTemplateCache;
 import org.vaadin.teemu.clara.inflater.filter.AttributeContext;
 import org.vaadin.teemu.clara.inflater.filter.AttributeFilter;
 import org.vaadin.teemu.clara.inflater.filter.AttributeFilterException;
+import org.vaadin.teemu.clara.inflater.filter.SelectiveAttributeFilter;
 import org.vaadin.teemu.clara.inflater.parser.AttributeParser;
 
 import com.vaadin.data.Property;
@@ -161,6 +167,53 @@ public class ClaraBuilderTest {
 
     // ClaraBuilder#create(InputStream) is tested through ClaraTest
 
+    @Test
+    public void withTemplateCache_setsTemplateCache() {
+        assertSame("Shared template cache should be used by default",
+                LayoutTemplateCache.getShared(), builder.getTemplateCache());
+        final LayoutTemplateCache cache = new LayoutTemplateCache(1);
+
+        ClaraBuilder returnedBuilder = builder.withTemplateCache(cache);
+
+        assertSame("Unexpected template cache", cache,
+                builder.getTemplateCache());
+        assertSameBuilder(returnedBuilder);
+    }
+
+    @Test
+    public void createFrom_resourceWithTemplateCache_templateCached() {
+        final LayoutTemplateCache cache = new LayoutTemplateCache(1);
+
+        builder.withTemplateCache(cache).createFrom(
+                "/org/vaadin/teemu/clara/xml-file-for-classpath-testing.xml");
+
+        assertEquals("Expected template to be cached", 1, cache.size());
+    }
+
+    @Test
+    public void createFrom_resourceWithoutTemplateCache_componentCreated() {
+        Component component = builder.withTemplateCache(null).createFrom(
+                "/org/vaadin/teemu/clara/xml-file-for-classpath-testing.xml");
+
+        assertEquals(Button.class, component.getClass());
+    }
+
+    @Test
+    public void createFrom_twice_applicabilityOfSelectiveFilterResolvedOnce() {
+        ApplicabilityCountingFilter filter = new ApplicabilityCountingFilter();
+        builder.withAttributeFilter(filter);
+
+        builder.createFrom(getXml("hierarchy-with-ids.xml"));
+        builder.createFrom(getXml("hierarchy-with-ids.xml"));
+
+        assertFalse(filter.applicabilityChecks.isEmpty());
+        for (Map.Entry<String, Integer> checks : filter.applicabilityChecks
+                .entrySet()) {
+            assertEquals(checks.getKey(), Integer.valueOf(1),
+                    checks.getValue());
+        }
+    }
+
     @Test
     public void withIdPrefix_setsIdPrefix() {
         assertEquals("idPrefix should initially be empty", "",
@@ -221,6 +274,21 @@ public class ClaraBuilderTest {
      * Tests if a preassigned field in a controller (annotated without id
      * prefix) is correctly inserted in the component tree.
      */
+    @Test
+    public void withGeneratedListeners_handlerBoundWithoutProxy() {
+        SimpleTestController testController = new SimpleTestController();
+
+        Clara.build().withController(testController)
+                .withGeneratedListeners(true)
+                .createFrom(getXml("hierarchy-with-ids.xml"));
+        testController.button.click();
+
+        assertTrue(testController.buttonPressed);
+        assertFalse(Proxy.isProxyClass(testController.button
+                .getListeners(Button.ClickEvent.class).iterator().next()
+                .getClass()));
+    }
+
     @Test
     public void preassignedField_withIdPrefix() {
         final SimpleTestController testController = new SimpleTestController();
@@ -331,6 +399,26 @@ public class ClaraBuilderTest {
         }
     }
 
+    private static class ApplicabilityCountingFilter implements
+            SelectiveAttributeFilter {
+
+        private final Map<String, Integer> applicabilityChecks = new HashMap<String, Integer>();
+
+        @Override
+        public boolean isApplicableFor(Class<?> targetClass, Method setter) {
+            String key = targetClass.getName() + "." + setter.getName();
+            Integer checks = applicabilityChecks.get(key);
+            applicabilityChecks.put(key, checks == null ? 1 : checks + 1);
+            return true;
+        }
+
+        @Override
+        public void filter(AttributeContext attributeContext)
+                throws AttributeFilterException {
+            attributeContext.proceed();
+        }
+    }
+
     private static class DummyAttributeParser implements AttributeParser {
         @Override
         public boolean isSupported(Class<?> valueType) {
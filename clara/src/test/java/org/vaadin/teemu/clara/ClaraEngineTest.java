@@ -0,0 +1,491 @@
+package org.vaadin.teemu.clara;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import org.junit.Test;
+import org.vaadin.teemu.clara.binder.annotation.UiDataSource;
+import org.vaadin.teemu.clara.binder.annotation.UiField;
+import org.vaadin.teemu.clara.binder.annotation.UiHandler;
+import org.vaadin.teemu.clara.inflater.ComponentResetter;
+import org.vaadin.teemu.clara.inflater.InflatedLayout;
+import org.vaadin.teemu.clara.inflater.LayoutInflaterException;
+import org.vaadin.teemu.clara.inflater.LayoutTemplate;
+import org.vaadin.teemu.clara.inflater.LayoutTemplateCache;
+import org.vaadin.teemu.clara.inflater.RecyclingComponentProvider;
+import org.vaadin.teemu.clara.inflater.StaxTemplateParser;
+import org.vaadin.teemu.clara.inflater.filter.AttributeContext;
+import org.vaadin.teemu.clara.inflater.filter.AttributeFilter;
+import org.vaadin.teemu.clara.inflater.filter.AttributeFilterException;
+
+import com.vaadin.data.Property;
+import com.vaadin.data.util.ObjectProperty;
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.server.VaadinSession;
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Component;
+import com.vaadin.ui.TabSheet;
+import com.vaadin.ui.UI;
+import com.vaadin.ui.VerticalLayout;
+
+/**
+ * Tests for {@link ClaraEngine}.
+ */
+public class ClaraEngineTest {
+
+    @Test
+    public void buildEngine_builderModifiedAfterwards_engineUnaffected() {
+        ClaraBuilder builder = Clara.build().withIdPrefix("prefix_");
+        ClaraEngine engine = builder.buildEngine();
+
+        builder.withIdPrefix("other_").withAttributeFilter(
+                new CountingAttributeFilter());
+
+        assertEquals("prefix_", engine.getIdPrefix());
+        assertTrue(engine.getAttributeFilters().isEmpty());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void getAttributeFilters_modified_exceptionThrown() {
+        ClaraEngine engine = Clara.build().buildEngine();
+
+        engine.getAttributeFilters().add(new CountingAttributeFilter());
+    }
+
+    @Test
+    public void createFrom_sameTemplateTwice_eachControllerBoundToOwnComponents() {
+        ClaraEngine engine = Clara.build().withIdPrefix("prefix_")
+                .buildEngine();
+        LayoutTemplate template = engine.compile(getXml("hierarchy-with-ids.xml"));
+        Controller first = new Controller();
+        Controller second = new Controller();
+
+        VerticalLayout firstLayout = (VerticalLayout) engine.createFrom(
+                template, first);
+        VerticalLayout secondLayout = (VerticalLayout) engine.createFrom(
+                template, second);
+
+        assertNotSame(firstLayout, secondLayout);
+        assertSame(firstLayout.getComponent(0), first.button);
+        assertSame(secondLayout.getComponent(0), second.button);
+        assertEquals("prefix_id1_1", second.button.getId());
+
+        second.button.click();
+        assertEquals(0, first.clicks);
+        assertEquals(1, second.clicks);
+    }
+
+    @Test
+    public void createFrom_filterConfigured_filterAppliedOnEveryInflation() {
+        CountingAttributeFilter filter = new CountingAttributeFilter();
+        ClaraEngine engine = Clara.build().withAttributeFilter(filter)
+                .buildEngine();
+
+        engine.createFrom(getXml("single-button.xml"), null);
+        int countAfterFirst = filter.count;
+        engine.createFrom(getXml("single-button.xml"), null);
+
+        assertTrue(countAfterFirst > 0);
+        assertEquals(2 * countAfterFirst, filter.count);
+    }
+
+    @Test
+    public void createFrom_resource_templateCachedInEngineCache() {
+        LayoutTemplateCache cache = new LayoutTemplateCache(1);
+        ClaraEngine engine = Clara.build().withTemplateCache(cache)
+                .buildEngine();
+
+        Component component = engine.createFrom(
+                "xml-file-for-classpath-testing.xml", null);
+
+        assertEquals(Button.class, component.getClass());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void createFrom_resourceWithoutTemplateCache_componentCreated() {
+        ClaraEngine engine = Clara.build().withTemplateCache(null)
+                .buildEngine();
+
+        Component component = engine.createFrom(
+                "xml-file-for-classpath-testing.xml", null);
+
+        assertEquals(Button.class, component.getClass());
+    }
+
+    @Test
+    public void createFrom_missingResourceWithoutTemplateCache_exceptionNamesResource() {
+        ClaraEngine engine = Clara.build().withTemplateCache(null)
+                .buildEngine();
+
+        try {
+            engine.createFrom("non-existing.xml", null);
+            fail();
+        } catch (LayoutInflaterException e) {
+            assertTrue(e.getMessage().contains("non-existing.xml"));
+        }
+    }
+
+    @Test
+    public void createFrom_staxTemplateParser_componentsBound() {
+        ClaraEngine engine = Clara.build()
+                .withTemplateParser(new StaxTemplateParser()).buildEngine();
+        Controller controller = new Controller();
+
+        engine.createFrom(getXml("hierarchy-with-ids.xml"), controller);
+
+        assertEquals("id1_1", controller.button.getId());
+    }
+
+    @Test
+    public void release_recyclingEnabled_componentsReusedAndBoundToNewController() {
+        RecyclingComponentProvider recycler = new RecyclingComponentProvider(
+                new ComponentResetter() {
+
+                    @Override
+                    public boolean reset(Component component) {
+                        if (component instanceof Button) {
+                            Button button = (Button) component;
+                            for (Object listener : button
+                                    .getListeners(Button.ClickEvent.class)) {
+                                button.removeClickListener((Button.ClickListener) listener);
+                            }
+                        }
+                        component.setId(null);
+                        return true;
+                    }
+                });
+        ClaraEngine engine = Clara.build().withComponentRecycling(recycler)
+                .buildEngine();
+        LayoutTemplate template = engine
+                .compile(getXml("hierarchy-with-ids.xml"));
+        Controller first = new Controller();
+        Controller second = new Controller();
+
+        Component firstLayout = engine.createFrom(template, first);
+        engine.release(firstLayout);
+        Component secondLayout = engine.createFrom(template, second);
+
+        assertSame(firstLayout, secondLayout);
+        assertSame(first.button, second.button);
+        second.button.click();
+        assertEquals(0, first.clicks);
+        assertEquals(1, second.clicks);
+    }
+
+    @Test
+    public void release_recyclingDisabled_nothingHappens() {
+        ClaraEngine engine = Clara.build().buildEngine();
+        VerticalLayout layout = (VerticalLayout) engine.createFrom(
+                getXml("hierarchy-with-ids.xml"), null);
+
+        engine.release(layout);
+
+        assertNull(engine.getRecyclingComponentProvider());
+        assertEquals(3, layout.getComponentCount());
+    }
+
+    @Test
+    public void update_buttonAdded_existingBindingsKeptAndNewOnesCreated() {
+        ClaraEngine engine = Clara.build().buildEngine();
+        Controller controller = new Controller();
+        InflatedLayout layout = engine.createLayout(engine.compile(xml(
+                "<Label id=\"id1_1\" />")), new Object());
+        layout = engine.update(layout, engine.compile(xml(
+                "<Label id=\"label\" /><Button id=\"id1_1\" />")), controller);
+        VerticalLayout root = (VerticalLayout) layout.getRoot();
+        Component label = root.getComponent(0);
+        Button button = controller.button;
+
+        layout = engine.update(layout, engine.compile(xml(
+                "<Label id=\"label\" /><Button id=\"id1_1\" caption=\"c\" />"
+                        + "<Label />")), controller);
+
+        assertSame(root, layout.getRoot());
+        assertSame(label, root.getComponent(0));
+        assertSame(button, root.getComponent(1));
+        assertEquals(3, root.getComponentCount());
+        button.click();
+        assertEquals("Listener must have been added only once", 1,
+                controller.clicks);
+    }
+
+    private InputStream xml(String content) {
+        return new ByteArrayInputStream(
+                ("<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\">"
+                        + content + "</VerticalLayout>").getBytes());
+    }
+
+    @Test
+    public void createFrom_withoutController_nothingBound() {
+        ClaraEngine engine = Clara.build().buildEngine();
+
+        VerticalLayout layout = (VerticalLayout) engine.createFrom(
+                getXml("hierarchy-with-ids.xml"), null);
+
+        assertEquals("id1", layout.getId());
+        assertNull(layout.getParent());
+    }
+
+    @Test
+    public void createFrom_concurrently_allComponentsBound() throws Exception {
+        final ClaraEngine engine = Clara.build().withIdPrefix("prefix_")
+                .withAttributeFilter(new CountingAttributeFilter())
+                .buildEngine();
+        final LayoutTemplate template = engine
+                .compile(getXml("hierarchy-with-ids.xml"));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Controller>> results = new ArrayList<Future<Controller>>();
+            for (int i = 0; i < 50; i++) {
+                results.add(executor.submit(new Callable<Controller>() {
+
+                    @Override
+                    public Controller call() {
+                        Controller controller = new Controller();
+                        engine.createFrom(template, controller);
+                        return controller;
+                    }
+                }));
+            }
+            for (Future<Controller> result : results) {
+                assertEquals("prefix_id1_1", result.get().button.getId());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void createFrom_lazyTab_boundWhenSelected() {
+        ClaraEngine engine = Clara.build().buildEngine();
+        Controller controller = new Controller();
+
+        TabSheet tabs = (TabSheet) engine.createFrom(
+                getXml("lazy-tabsheet.xml"), controller);
+
+        assertNull(controller.button);
+
+        tabs.setSelectedTab(1);
+
+        assertSame(((VerticalLayout) tabs.getTab(1).getComponent())
+                .getComponent(0), controller.button);
+        controller.button.click();
+        assertEquals(1, controller.clicks);
+    }
+
+    @Test
+    public void createFrom_lazyTabSerialized_inflatedAndBoundWhenSelected()
+            throws IOException, ClassNotFoundException {
+        ClaraEngine engine = Clara.build().buildEngine();
+        Controller controller = new Controller();
+        TabSheet tabs = (TabSheet) engine.createFrom(
+                getXml("lazy-tabsheet.xml"), controller);
+
+        // Serialized together like in a session.
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(new Object[] { tabs, controller });
+        out.close();
+        Object[] copy = (Object[]) new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        TabSheet tabsCopy = (TabSheet) copy[0];
+        Controller controllerCopy = (Controller) copy[1];
+
+        tabsCopy.setSelectedTab(1);
+
+        VerticalLayout tab2 = (VerticalLayout) tabsCopy.getTab(1)
+                .getComponent();
+        assertEquals(2, tab2.getComponentCount());
+        assertSame(tab2.getComponent(0), controllerCopy.button);
+        controllerCopy.button.click();
+        assertEquals(1, controllerCopy.clicks);
+        assertNull(controller.button);
+    }
+
+    @Test
+    public void createFromAsync_executor_boundUnderLockAndCompletedAfterUnlock()
+            throws Exception {
+        ClaraEngine engine = Clara.build().buildEngine();
+        Controller controller = new Controller();
+        final VaadinSession session = new VaadinSession(null);
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        VaadinSession.setCurrent(session);
+        CompletableFuture<Component> future;
+        try {
+            future = engine.createFromAsync(getXml("hierarchy-with-ids.xml"),
+                    controller, new Executor() {
+
+                        @Override
+                        public void execute(Runnable command) {
+                            tasks.add(command);
+                        }
+                    });
+        } finally {
+            VaadinSession.setCurrent(null);
+        }
+        CompletableFuture<Boolean> lockedWhenCompleted = future
+                .thenApply(new Function<Component, Boolean>() {
+
+                    @Override
+                    public Boolean apply(Component component) {
+                        return ((ReentrantLock) session.getLockInstance())
+                                .isHeldByCurrentThread();
+                    }
+                });
+
+        assertEquals(1, tasks.size());
+        assertFalse(future.isDone());
+        Thread thread = new Thread(tasks.get(0));
+        thread.start();
+        thread.join();
+
+        VerticalLayout layout = (VerticalLayout) future.get();
+        assertSame(layout.getComponent(0), controller.button);
+        assertFalse(lockedWhenCompleted.get());
+        assertFalse(((ReentrantLock) session.getLockInstance()).isLocked());
+    }
+
+    @Test
+    public void createFromAsync_executor_boundUnderLockWithCallersSessionAndUi()
+            throws Exception {
+        VaadinSession session = new VaadinSession(null);
+        UI ui = new UI() {
+
+            @Override
+            protected void init(VaadinRequest request) {
+            }
+        };
+        CurrentInstanceController controller = new CurrentInstanceController();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        // Start the thread first, it would inherit the current instances.
+        executor.submit(new Runnable() {
+
+            @Override
+            public void run() {
+            }
+        }).get();
+        CompletableFuture<Component> future;
+        VaadinSession.setCurrent(session);
+        UI.setCurrent(ui);
+        try {
+            future = Clara.build().buildEngine().createFromAsync(
+                    new ByteArrayInputStream(
+                            ("<Label xmlns=\"urn:import:com.vaadin.ui\" "
+                                    + "id=\"label\" />").getBytes()),
+                    controller, executor);
+        } finally {
+            VaadinSession.setCurrent(null);
+            UI.setCurrent(null);
+        }
+
+        try {
+            future.get();
+            assertTrue(controller.locked);
+            assertSame(session, controller.session);
+            assertSame(ui, controller.ui);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void createFromAsync_invalidXml_completedExceptionally()
+            throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CompletableFuture<Component> future = Clara
+                    .build()
+                    .createFromAsync(
+                            new ByteArrayInputStream("THIS IS NOT XML!"
+                                    .getBytes()), executor);
+            try {
+                future.get();
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof LayoutInflaterException);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private InputStream getXml(String fileName) {
+        return getClass().getClassLoader().getResourceAsStream(fileName);
+    }
+
+    private static class CountingAttributeFilter implements AttributeFilter {
+
+        private volatile int count;
+
+        @Override
+        public void filter(AttributeContext attributeContext)
+                throws AttributeFilterException {
+            count++;
+            attributeContext.proceed();
+        }
+    }
+
+    /**
+     * Controller for binding to a single {@link com.vaadin.ui.Label} with id
+     * {@code label} recording the current instances and whether the session
+     * is locked while binding.
+     */
+    public static class CurrentInstanceController {
+
+        private volatile boolean locked;
+        private volatile VaadinSession session;
+        private volatile UI ui;
+
+        @UiDataSource("label")
+        public Property<String> getDataSource() {
+            session = VaadinSession.getCurrent();
+            locked = ((ReentrantLock) session.getLockInstance())
+                    .isHeldByCurrentThread();
+            ui = UI.getCurrent();
+            return new ObjectProperty<String>("value");
+        }
+    }
+
+    /**
+     * Controller for binding to {@code hierarchy-with-ids.xml}.
+     */
+    public static class Controller implements Serializable {
+
+        private int clicks;
+
+        @UiField("id1_1")
+        private Button button;
+
+        @UiHandler("id1_1")
+        public void onButtonClicked(Button.ClickEvent event) {
+            clicks++;
+        }
+    }
+
+}
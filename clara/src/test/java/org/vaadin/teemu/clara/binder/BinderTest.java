@@ -4,6 +4,7 @@ import static org.hamcrest.CoreMatchers.allOf;
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.not;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
@@ -16,8 +17,11 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Map;
 
 import org.junit.Before;
@@ -32,6 +36,7 @@ import com.vaadin.ui.Button;
 import com.vaadin.ui.Button.ClickEvent;
 import com.vaadin.ui.Component;
 import com.vaadin.ui.DateField;
+import com.vaadin.ui.Label;
 
 public class BinderTest {
 
@@ -143,6 +148,52 @@ public class BinderTest {
         binder.bind(button, new ControllerWithMissingIdBinding());
     }
 
+    @Test
+    public void bind_sameControllerClassTwice_bothListenersInvoked() {
+        ButtonAndControllerWrapper first = buildAndBindButtonWithController();
+        ButtonAndControllerWrapper second = buildAndBindButtonWithController();
+
+        simulateButtonClickAndAssert(first);
+        simulateButtonClickAndAssert(second);
+    }
+
+    @Test
+    public void bind_handlerWithoutMatchingListenerTwice_handlerIgnored() {
+        for (int i = 0; i < 2; i++) {
+            Button button = (Button) inflater
+                    .inflate(getXml("single-button.xml"));
+
+            new Binder().bind(button, new ControllerWithUnsupportedHandler());
+        }
+    }
+
+    @Test
+    public void bind_componentIndex_componentFromIndexUsed() {
+        Button button = (Button) inflater.inflate(getXml("single-button.xml"));
+        Button indexedButton = new Button();
+        indexedButton.setId("myButton");
+
+        ControllerWithFieldBinding controller = new ControllerWithFieldBinding();
+        Binder binder = new Binder();
+        binder.bind(button, controller, Collections
+                .<String, Component> singletonMap("myButton", indexedButton));
+
+        assertSame(indexedButton, controller.getMyButton());
+    }
+
+    @Test
+    public void bind_staleComponentIndex_componentSearchedFromHierarchy() {
+        Button button = (Button) inflater.inflate(getXml("single-button.xml"));
+        Map<String, Component> componentsById = new HashMap<String, Component>();
+        componentsById.put("myButton", new Button());
+
+        ControllerWithFieldBinding controller = new ControllerWithFieldBinding();
+        Binder binder = new Binder();
+        binder.bind(button, controller, componentsById);
+
+        assertSame(button, controller.getMyButton());
+    }
+
     @Test
     public void bind_withoutId_fieldSetCorrectly() {
         Button button = (Button) inflater.inflate(getXml("single-button.xml"));
@@ -177,6 +228,63 @@ public class BinderTest {
         }
     }
 
+    @Test
+    public void bind_defaultListeners_proxyListenerAdded() {
+        Button button = (Button) inflater.inflate(getXml("single-button.xml"));
+
+        new Binder().bind(button, new ControllerWithClickHandler());
+
+        assertTrue(Proxy.isProxyClass(button.getListeners(ClickEvent.class)
+                .iterator().next().getClass()));
+    }
+
+    @Test
+    public void bind_generatedListeners_generatedListenerAdded() {
+        Button button = (Button) inflater.inflate(getXml("single-button.xml"));
+        ControllerWithClickHandler controller = new ControllerWithClickHandler();
+
+        new Binder(null, true).bind(button, controller);
+        button.click();
+
+        assertFalse(Proxy.isProxyClass(button.getListeners(ClickEvent.class)
+                .iterator().next().getClass()));
+        assertTrue(controller.clickCalled);
+    }
+
+    @Test
+    public void bind_generatedListenersForPackagePrivateListener_proxyUsed() {
+        EventSource source = new EventSource();
+        ControllerWithCustomHandlers controller = new ControllerWithCustomHandlers();
+
+        new Binder(null, true).bind(source, controller);
+        source.fireFirst();
+
+        assertTrue(Proxy.isProxyClass(source.packagePrivateListener.getClass()));
+        assertEquals(1, controller.firstEvents);
+    }
+
+    @Test
+    public void bind_generatedListenersForMultiMethodListener_proxyUsed() {
+        EventSource source = new EventSource();
+        ControllerWithCustomHandlers controller = new ControllerWithCustomHandlers();
+
+        new Binder(null, true).bind(source, controller);
+        source.fireSecond();
+
+        assertTrue(Proxy.isProxyClass(source.multiListener.getClass()));
+        assertEquals(1, controller.secondEvents);
+    }
+
+    @Test
+    public void bind_generatedListenersForHandlerWithTwoParameters_bound() {
+        Button button = (Button) inflater.inflate(getXml("single-button.xml"));
+
+        new Binder(null, true).bind(button,
+                new ControllerWithTwoParameterHandler());
+
+        assertEquals(1, button.getListeners(ClickEvent.class).size());
+    }
+
     private ButtonAndControllerWrapper buildAndBindButtonWithController() {
         Button button = (Button) inflater.inflate(getXml("single-button.xml"));
 
@@ -207,6 +315,15 @@ public class BinderTest {
 
     }
 
+    public static class ControllerWithUnsupportedHandler {
+
+        @UiHandler("myButton")
+        public void handleValueChange(Property.ValueChangeEvent event) {
+            // NOP
+        }
+
+    }
+
     public static class ControllerWithDataSource {
 
         @UiDataSource("my-datefield")
@@ -286,6 +403,85 @@ public class BinderTest {
 
     }
 
+    public static class ControllerWithTwoParameterHandler {
+
+        @UiHandler("myButton")
+        public void handleButtonClick(ClickEvent event, String extra) {
+            // NOP
+        }
+
+    }
+
+    public static class ControllerWithCustomHandlers {
+
+        int firstEvents;
+        int secondEvents;
+
+        @UiHandler("source")
+        public void handleFirst(FirstEvent event) {
+            firstEvents++;
+        }
+
+        @UiHandler("source")
+        public void handleSecond(SecondEvent event) {
+            secondEvents++;
+        }
+
+    }
+
+    public static class FirstEvent {
+    }
+
+    public static class SecondEvent {
+    }
+
+    public static class ThirdEvent {
+    }
+
+    interface PackagePrivateListener {
+
+        void first(FirstEvent event);
+
+    }
+
+    public interface MultiListener {
+
+        void second(SecondEvent event);
+
+        void third(ThirdEvent event);
+
+    }
+
+    /**
+     * Component with listeners that can't be generated.
+     */
+    public static class EventSource extends Label {
+
+        PackagePrivateListener packagePrivateListener;
+        MultiListener multiListener;
+
+        public EventSource() {
+            setId("source");
+        }
+
+        public void addPackagePrivateListener(PackagePrivateListener listener) {
+            packagePrivateListener = listener;
+        }
+
+        public void addMultiListener(MultiListener listener) {
+            multiListener = listener;
+        }
+
+        void fireFirst() {
+            packagePrivateListener.first(new FirstEvent());
+        }
+
+        void fireSecond() {
+            multiListener.second(new SecondEvent());
+        }
+
+    }
+
     public static class ControllerWithExceptionInClickHandler implements
             Serializable {
 
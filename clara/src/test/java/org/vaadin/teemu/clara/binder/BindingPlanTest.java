@@ -0,0 +1,96 @@
+package org.vaadin.teemu.clara.binder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.vaadin.teemu.clara.binder.BindingPlan.FieldBinding;
+import org.vaadin.teemu.clara.binder.BindingPlan.MethodBinding;
+import org.vaadin.teemu.clara.binder.annotation.UiDataSource;
+import org.vaadin.teemu.clara.binder.annotation.UiField;
+import org.vaadin.teemu.clara.binder.annotation.UiHandler;
+
+import com.vaadin.data.Property;
+import com.vaadin.data.util.ObjectProperty;
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Button.ClickEvent;
+import com.vaadin.ui.Label;
+
+public class BindingPlanTest {
+
+    @Test
+    public void of_sameClassTwice_samePlanReturned() {
+        assertSame(BindingPlan.of(SubController.class),
+                BindingPlan.of(SubController.class));
+    }
+
+    @Test
+    public void of_subController_fieldsOfSuperclassIncluded() {
+        BindingPlan plan = BindingPlan.of(SubController.class);
+
+        assertEquals(2, plan.getFieldBindings().size());
+        for (FieldBinding binding : plan.getFieldBindings()) {
+            assertTrue(binding.field.isAccessible());
+        }
+    }
+
+    @Test
+    public void of_fieldWithoutId_fieldNameUsedAsId() {
+        BindingPlan plan = BindingPlan.of(BaseController.class);
+
+        assertEquals("label", plan.getFieldBindings().get(0).componentId);
+    }
+
+    @Test
+    public void of_handlersAndDataSources_idsAndTypesExtracted() {
+        BindingPlan plan = BindingPlan.of(SubController.class);
+
+        MethodBinding handler = plan.getHandlerBindings().get(0);
+        assertEquals("myButton", handler.componentId);
+        assertEquals(ClickEvent.class, handler.type);
+
+        MethodBinding dataSource = plan.getDataSourceBindings().get(0);
+        assertEquals("label", dataSource.componentId);
+        assertEquals(Property.class, dataSource.type);
+    }
+
+    @Test
+    public void of_handlerWithoutParameters_eventTypeNull() {
+        BindingPlan plan = BindingPlan.of(ControllerWithInvalidHandler.class);
+
+        assertNull(plan.getHandlerBindings().get(0).type);
+    }
+
+    public static class BaseController {
+
+        @UiField
+        private Label label;
+
+        @UiDataSource("label")
+        public Property<String> getDataSource() {
+            return new ObjectProperty<String>("value");
+        }
+    }
+
+    public static class SubController extends BaseController {
+
+        @UiField("myButton")
+        private Button button;
+
+        @UiHandler("myButton")
+        public void handleClick(ClickEvent event) {
+            // NOP
+        }
+    }
+
+    public static class ControllerWithInvalidHandler {
+
+        @UiHandler("myButton")
+        public void handleClick() {
+            // NOP
+        }
+    }
+
+}
@@ -0,0 +1,152 @@
+package org.vaadin.teemu.clara.binder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Button.ClickEvent;
+import com.vaadin.ui.Button.ClickListener;
+
+public class ListenerFactoryTest {
+
+    private Method handlerMethod;
+    private MethodHandle handler;
+
+    @Before
+    public void setUp() throws NoSuchMethodException {
+        handlerMethod = Controller.class.getMethod("handleClick",
+                ClickEvent.class);
+        handler = ListenerFactory.createHandler(handlerMethod);
+    }
+
+    @Test
+    public void of_sameListenerAndEventTwice_sameFactoryReturned() {
+        assertSame(ListenerFactory.of(ClickListener.class, ClickEvent.class),
+                ListenerFactory.of(ClickListener.class, ClickEvent.class));
+    }
+
+    @Test
+    public void of_packagePrivateListener_nullReturned() {
+        assertNull(ListenerFactory.of(PackagePrivateListener.class,
+                ClickEvent.class));
+    }
+
+    @Test
+    public void of_listenerWithTwoMethods_nullReturned() {
+        assertNull(ListenerFactory.of(TwoMethodListener.class,
+                ClickEvent.class));
+    }
+
+    @Test
+    public void createListener_twice_distinctListenersOfSameClass() {
+        ListenerFactory factory = ListenerFactory.of(ClickListener.class,
+                ClickEvent.class);
+
+        Object first = factory.createListener(handlerMethod, handler,
+                new Controller());
+        Object second = factory.createListener(handlerMethod, handler,
+                new Controller());
+
+        assertNotSame(first, second);
+        assertSame(first.getClass(), second.getClass());
+        assertFalse(Proxy.isProxyClass(first.getClass()));
+    }
+
+    @Test
+    public void createListener_eventFired_controllerMethodInvoked() {
+        Controller controller = new Controller();
+        ClickListener listener = createClickListener(controller);
+        Button button = new Button();
+        button.addClickListener(listener);
+
+        button.click();
+        button.click();
+
+        assertEquals(2, controller.clicks);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void createListener_handlerThrows_exceptionPropagated()
+            throws NoSuchMethodException {
+        Method throwingMethod = Controller.class.getMethod("throwOnClick",
+                ClickEvent.class);
+        ClickListener listener = (ClickListener) ListenerFactory.of(
+                ClickListener.class, ClickEvent.class).createListener(
+                throwingMethod, ListenerFactory.createHandler(throwingMethod),
+                new Controller());
+
+        listener.buttonClick(new ClickEvent(new Button()));
+    }
+
+    @Test
+    public void createListener_serialized_deserializedListenerDispatches()
+            throws IOException, ClassNotFoundException {
+        Controller controller = new Controller();
+        Button button = new Button();
+        button.addClickListener(createClickListener(controller));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(button);
+        out.close();
+        Button copy = (Button) new ObjectInputStream(new ByteArrayInputStream(
+                bytes.toByteArray())).readObject();
+        copy.click();
+
+        // The controller was serialized with the listener.
+        assertNotSame(controller, Controller.last);
+        assertEquals(1, Controller.last.clicks);
+    }
+
+    private ClickListener createClickListener(Controller controller) {
+        return (ClickListener) ListenerFactory.of(ClickListener.class,
+                ClickEvent.class).createListener(handlerMethod, handler,
+                controller);
+    }
+
+    interface PackagePrivateListener {
+
+        void click(ClickEvent event);
+    }
+
+    public interface TwoMethodListener {
+
+        void click(ClickEvent event);
+
+        void other(Object event);
+    }
+
+    public static class Controller implements Serializable {
+
+        // The controller that handled the last click.
+        static Controller last;
+
+        int clicks;
+
+        public void handleClick(ClickEvent event) {
+            clicks++;
+            last = this;
+        }
+
+        public void throwOnClick(ClickEvent event) {
+            throw new IllegalStateException();
+        }
+    }
+
+}
@@ -0,0 +1,107 @@
+package org.vaadin.teemu.clara.inflater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Component;
+import com.vaadin.ui.Label;
+
+public class ComponentFactoryTest {
+
+    private static final RuntimeException CONSTRUCTOR_EXCEPTION = new IllegalStateException();
+    private static final Error CONSTRUCTOR_ERROR = new AssertionError();
+
+    public static class ThrowingException extends Label {
+
+        public ThrowingException() {
+            throw CONSTRUCTOR_EXCEPTION;
+        }
+    }
+
+    public static class ThrowingError extends Label {
+
+        public ThrowingError() {
+            throw CONSTRUCTOR_ERROR;
+        }
+    }
+
+    private final ComponentFactory factory = new ComponentFactory();
+
+    @Test
+    public void createComponent_button_newInstancesCreated() {
+        Component first = factory.createComponent("com.vaadin.ui", "Button");
+        Component second = factory.createComponent("com.vaadin.ui", "Button");
+
+        assertEquals(Button.class, first.getClass());
+        assertNotSame(first, second);
+    }
+
+    @Test
+    public void createComponent_nonExistingClassTwice_exceptionThrownBothTimes() {
+        for (int i = 0; i < 2; i++) {
+            try {
+                factory.createComponent("com.vaadin.ui", "NonExisting");
+                fail("Expected ComponentInstantiationException");
+            } catch (ComponentInstantiationException e) {
+                assertEquals(ClassNotFoundException.class, e.getCause()
+                        .getClass());
+            }
+        }
+    }
+
+    @Test
+    public void createComponent_nonExistingClassTwice_newExceptionEachTime() {
+        ComponentInstantiationException first = createNonExisting();
+        ComponentInstantiationException second = createNonExisting();
+
+        assertNotSame(first, second);
+        assertNotSame(first.getCause(), second.getCause());
+    }
+
+    @Test(expected = ComponentInstantiationException.class)
+    public void createComponent_nonComponent_exceptionThrown() {
+        factory.createComponent("java.lang", "Object");
+    }
+
+    @Test(expected = ComponentInstantiationException.class)
+    public void createComponent_noDefaultConstructor_exceptionThrown() {
+        factory.createComponent("com.vaadin.ui", "LoginForm$LoginEvent");
+    }
+
+    @Test
+    public void createComponent_constructorThrowsException_exceptionWrapped() {
+        try {
+            factory.createComponent(getClass().getPackage().getName(),
+                    "ComponentFactoryTest$ThrowingException");
+            fail("Expected ComponentInstantiationException");
+        } catch (ComponentInstantiationException e) {
+            assertSame(CONSTRUCTOR_EXCEPTION, e.getCause());
+        }
+    }
+
+    @Test
+    public void createComponent_constructorThrowsError_errorRethrown() {
+        try {
+            factory.createComponent(getClass().getPackage().getName(),
+                    "ComponentFactoryTest$ThrowingError");
+            fail("Expected AssertionError");
+        } catch (AssertionError e) {
+            assertSame(CONSTRUCTOR_ERROR, e);
+        }
+    }
+
+    private ComponentInstantiationException createNonExisting() {
+        try {
+            factory.createComponent("com.vaadin.ui", "NonExisting");
+            throw new AssertionError("Expected ComponentInstantiationException");
+        } catch (ComponentInstantiationException e) {
+            return e;
+        }
+    }
+
+}
@@ -1,12 +1,29 @@
 package org.vaadin.teemu.clara.inflater;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -23,9 +40,11 @@ import com.vaadin.ui.Alignment;
 import com.vaadin.ui.Button;
 import com.vaadin.ui.CheckBox;
 import com.vaadin.ui.Component;
+import com.vaadin.ui.HorizontalLayout;
 import com.vaadin.ui.Label;
 import com.vaadin.ui.Panel;
 import com.vaadin.ui.TabSheet;
+import com.vaadin.ui.TabSheet.SelectedTabChangeEvent;
 import com.vaadin.ui.VerticalLayout;
 
 public class LayoutInflaterTest {
@@ -216,6 +235,34 @@ public class LayoutInflaterTest {
         assertEquals("{i18n:test}", button200px.getCaption());
     }
 
+    @Test
+    public void inflate_filterAddedAndRemovedBetweenInflations_filtersOfEachInflationApplied() {
+        LayoutInflater filteringInflater = new LayoutInflater();
+        AttributeFilter filter = new AttributeFilter() {
+
+            @Override
+            public void filter(AttributeContext attributeContext) {
+                if ("setCaption".equals(attributeContext.getSetter().getName())) {
+                    attributeContext.setValue("filteredValue");
+                }
+                attributeContext.proceed();
+            }
+        };
+
+        Button unfiltered = (Button) filteringInflater
+                .inflate(getXml("single-button.xml"));
+        filteringInflater.addAttributeFilter(filter);
+        Button filtered = (Button) filteringInflater
+                .inflate(getXml("single-button.xml"));
+        filteringInflater.removeAttributeFilter(filter);
+        Button unfilteredAgain = (Button) filteringInflater
+                .inflate(getXml("single-button.xml"));
+
+        assertEquals("My Button", unfiltered.getCaption());
+        assertEquals("filteredValue", filtered.getCaption());
+        assertEquals("My Button", unfilteredAgain.getCaption());
+    }
+
     @Test
     public void inflate_singleButton_findByIdWorks() {
         Component view = inflater.inflate(getXml("single-button.xml"));
@@ -244,6 +291,237 @@ public class LayoutInflaterTest {
         inflater.inflate(getXml("duplicate-id.xml"));
     }
 
+    @Test
+    public void inflate_lazyTabs_unselectedTabInflatedWhenSelected() {
+        List<LazyFragment> fragments = new ArrayList<LazyFragment>();
+        Map<String, Component> componentsById = new HashMap<String, Component>();
+        TabSheet tabs = (TabSheet) inflater.inflate(
+                inflater.compile(getXml("lazy-tabsheet.xml")),
+                Collections.<ComponentProvider> singletonList(
+                        new ReflectionComponentProvider()), componentsById,
+                fragments);
+        VerticalLayout tab1 = (VerticalLayout) tabs.getTab(0).getComponent();
+        VerticalLayout tab2 = (VerticalLayout) tabs.getTab(1).getComponent();
+
+        // The selected tab is inflated right away.
+        assertEquals(1, tab1.getComponentCount());
+        assertTrue(componentsById.containsKey("label1"));
+        assertEquals("caption-tab2", tabs.getTab(1).getCaption());
+        assertEquals(0, tab2.getComponentCount());
+        assertEquals(1, fragments.size());
+        LazyFragment fragment = fragments.get(0);
+        assertSame(tab2, fragment.getRoot());
+        assertEquals(new HashSet<String>(Arrays.asList("id1_1", "label2")),
+                fragment.getIds());
+
+        tabs.setSelectedTab(tab2);
+
+        assertTrue(fragment.isInflated());
+        assertEquals(2, tab2.getComponentCount());
+        assertSame(tab2.getComponent(0),
+                fragment.getComponentsById().get("id1_1"));
+    }
+
+    @Test
+    public void inflate_lazyRoot_childrenDeferred() {
+        List<LazyFragment> fragments = new ArrayList<LazyFragment>();
+        VerticalLayout root = (VerticalLayout) inflater.inflate(
+                inflater.compile(new ByteArrayInputStream(
+                        ("<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\" "
+                                + "xmlns:l=\"urn:vaadin:parent\" l:lazy=\"true\">"
+                                + "<Label id=\"a\" /></VerticalLayout>")
+                                .getBytes())),
+                Collections.<ComponentProvider> singletonList(
+                        new ReflectionComponentProvider()),
+                new HashMap<String, Component>(), fragments);
+
+        assertEquals(0, root.getComponentCount());
+        assertEquals(1, fragments.size());
+        assertSame(root, fragments.get(0).getRoot());
+
+        fragments.get(0).inflate();
+
+        assertEquals("a", root.getComponent(0).getId());
+    }
+
+    @Test
+    public void inflate_lazyTabsSerialized_inflatedWhenSelected()
+            throws IOException, ClassNotFoundException {
+        List<LazyFragment> fragments = new ArrayList<LazyFragment>();
+        TabSheet tabs = (TabSheet) inflater.inflate(
+                inflater.compile(getXml("lazy-tabsheet.xml")),
+                Collections.<ComponentProvider> singletonList(
+                        new ReflectionComponentProvider()),
+                new HashMap<String, Component>(), fragments);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(tabs);
+        out.close();
+        TabSheet copy = (TabSheet) new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+        // The fragment is serialized with its trigger and inflates the
+        // children of the copy.
+        VerticalLayout tab2 = (VerticalLayout) copy.getTab(1).getComponent();
+        copy.setSelectedTab(tab2);
+        assertEquals(2, tab2.getComponentCount());
+        assertEquals("Bar", ((Label) tab2.getComponent(1)).getValue());
+        assertTrue(copy.getListeners(SelectedTabChangeEvent.class).isEmpty());
+        assertFalse(fragments.get(0).isInflated());
+    }
+
+    @Test
+    public void inflate_lazyPanelContent_childrenDeferred() {
+        List<LazyFragment> fragments = new ArrayList<LazyFragment>();
+        Panel panel = (Panel) inflater.inflate(
+                inflater.compile(new ByteArrayInputStream(
+                        ("<Panel xmlns=\"urn:import:com.vaadin.ui\" "
+                                + "xmlns:l=\"urn:vaadin:parent\">"
+                                + "<VerticalLayout l:lazy=\"true\">"
+                                + "<Label id=\"a\" /></VerticalLayout></Panel>")
+                                .getBytes())),
+                Collections.<ComponentProvider> singletonList(
+                        new ReflectionComponentProvider()),
+                new HashMap<String, Component>(), fragments);
+
+        VerticalLayout content = (VerticalLayout) panel.getContent();
+        assertEquals(0, content.getComponentCount());
+        assertEquals(1, fragments.size());
+
+        fragments.get(0).inflate();
+
+        assertEquals("a", content.getComponent(0).getId());
+    }
+
+    @Test(expected = LayoutInflaterException.class)
+    public void inflate_lazyDuplicateId_exceptionThrown() {
+        inflater.inflate(new ByteArrayInputStream(
+                ("<TabSheet xmlns=\"urn:import:com.vaadin.ui\" "
+                        + "xmlns:l=\"urn:vaadin:parent\"><Label id=\"a\" />"
+                        + "<VerticalLayout l:lazy=\"true\"><Label id=\"a\" />"
+                        + "</VerticalLayout></TabSheet>").getBytes()));
+    }
+
+    @Test
+    public void inflate_parallel_sameHierarchyAsSequential() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        inflater.setForkJoinPool(pool);
+        inflater.setParallelThreshold(1);
+        Map<String, Component> componentsById = new HashMap<String, Component>();
+        try {
+            VerticalLayout root = (VerticalLayout) inflater.inflate(
+                    inflater.compile(getXml("parallel-hierarchy.xml")),
+                    Collections.<ComponentProvider> singletonList(
+                            new ReflectionComponentProvider()), componentsById);
+
+            assertEquals(3, root.getComponentCount());
+            assertEquals("a", root.getComponent(0).getId());
+            VerticalLayoutWithInflaterListener b = (VerticalLayoutWithInflaterListener) root
+                    .getComponent(1);
+            assertEquals(1.0f, root.getExpandRatio(b), 0.0f);
+            assertTrue(b.isComponentInflatedCalled());
+            assertEquals(2, b.getComponentCountAfterInflate());
+            assertEquals("b1", b.getComponent(0).getId());
+            HorizontalLayout c = (HorizontalLayout) ((Panel) root
+                    .getComponent(2)).getContent();
+            assertEquals(2.0f, c.getExpandRatio(c.getComponent(0)), 0.0f);
+            assertEquals(new HashSet<String>(Arrays.asList("root", "a", "b",
+                    "b1", "c", "c1")), componentsById.keySet());
+            assertSame(c.getComponent(0), componentsById.get("c1"));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void inflate_parallelListenerInSubtree_notifiedOnCallingThread() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        inflater.setForkJoinPool(pool);
+        inflater.setParallelThreshold(2);
+        try {
+            VerticalLayout root = (VerticalLayout) inflater.inflate(new ByteArrayInputStream(
+                    ("<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\" "
+                            + "xmlns:test=\"urn:import:org.vaadin.teemu.clara.inflater\">"
+                            + "<Panel><test:VerticalLayoutWithInflaterListener>"
+                            + "<Label /></test:VerticalLayoutWithInflaterListener>"
+                            + "</Panel><Label /></VerticalLayout>").getBytes()));
+
+            VerticalLayoutWithInflaterListener inner = (VerticalLayoutWithInflaterListener) ((Panel) root
+                    .getComponent(0)).getContent();
+            assertSame(Thread.currentThread(), inner.getInflatedThread());
+            assertEquals(1, inner.getComponentCountAfterInflate());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(expected = LayoutInflaterException.class)
+    public void inflate_parallelDuplicateIdInOtherSubtree_exceptionThrown() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        inflater.setForkJoinPool(pool);
+        inflater.setParallelThreshold(1);
+        try {
+            inflater.inflate(new ByteArrayInputStream(
+                    ("<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\">"
+                            + "<Panel><Label id=\"a\" /></Panel>"
+                            + "<Panel><Label id=\"a\" /></Panel>"
+                            + "</VerticalLayout>").getBytes()));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void inflate_parallelChildFails_queuedSiblingsCancelled()
+            throws InterruptedException {
+        ForkJoinPool pool = new ForkJoinPool(1);
+        inflater.setForkJoinPool(pool);
+        inflater.setParallelThreshold(2);
+        final AtomicInteger labels = new AtomicInteger();
+        ComponentProvider countingProvider = new ReflectionComponentProvider() {
+
+            @Override
+            public Component getComponent(String uri, String localName,
+                    String id) throws LayoutInflaterException {
+                if (localName.equals("Label")) {
+                    labels.incrementAndGet();
+                }
+                return super.getComponent(uri, localName, id);
+            }
+        };
+        // Keeps the only worker busy until the inflation has failed.
+        final CountDownLatch failed = new CountDownLatch(1);
+        pool.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    failed.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        try {
+            inflater.inflate(inflater.compile(new ByteArrayInputStream(
+                    ("<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\">"
+                            + "<NonExisting /><Panel><Label /></Panel>"
+                            + "</VerticalLayout>").getBytes())), Collections
+                    .<ComponentProvider> singletonList(countingProvider),
+                    null);
+            fail();
+        } catch (LayoutInflaterException e) {
+            // Expected.
+        } finally {
+            failed.countDown();
+            pool.shutdown();
+        }
+
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(0, labels.get());
+    }
+
     @Test(expected = LayoutInflaterException.class)
     public void inflate_IOException_exceptionThrown() {
         inflater.inflate(new InputStream() {
@@ -276,4 +554,267 @@ public class LayoutInflaterTest {
                 1, layout.getComponentCountAfterInflate());
     }
 
+    @Test
+    public void compile_hierarchy_elementsAndAttributesCaptured() {
+        LayoutTemplate template = inflater
+                .compile(getXml("layout-attributes.xml"));
+
+        LayoutTemplate.Element root = template.getRoot();
+        assertEquals("urn:import:com.vaadin.ui", root.getUri());
+        assertEquals("VerticalLayout", root.getLocalName());
+        assertEquals(1, root.getChildren().size());
+
+        LayoutTemplate.Element button = root.getChildren().get(0);
+        assertEquals("Button", button.getLocalName());
+        assertEquals(1, button.getAttributes().size());
+        assertEquals("urn:vaadin:parent", button.getAttributes().get(0)
+                .getUri());
+        assertEquals("expandRatio", button.getAttributes().get(0)
+                .getLocalName());
+        assertEquals("1.0", button.getAttributes().get(0).getValue());
+    }
+
+    @Test
+    public void compile_attributesInTwoNamespaces_attributesPartitionedByNamespace() {
+        LayoutTemplate template = inflater.compile(new ByteArrayInputStream(
+                ("<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\" "
+                        + "xmlns:l=\"urn:vaadin:parent\">"
+                        + "<Button id=\"b\" caption=\"c\" l:expandRatio=\"1.0\" />"
+                        + "</VerticalLayout>").getBytes()));
+
+        LayoutTemplate.Element button = template.getRoot().getChildren()
+                .get(0);
+        assertEquals(2, button.getAttributes("").size());
+        assertEquals("c", button.getAttributes("").get("caption"));
+        assertEquals("b", button.getAttributeValue("id"));
+        assertEquals(1, button.getAttributes("urn:vaadin:parent").size());
+        assertEquals("1.0",
+                button.getAttributes("urn:vaadin:parent").get("expandRatio"));
+        assertTrue(template.getRoot().getAttributes("").isEmpty());
+        assertTrue(button.getAttributes("urn:unknown").isEmpty());
+    }
+
+    @Test
+    public void compile_noNamespace_defaultNamespaceUsed() {
+        LayoutTemplate template = inflater
+                .compile(getXml("single-button-no-namespace.xml"));
+
+        assertEquals("urn:import:com.vaadin.ui", template.getRoot().getUri());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void compile_template_childrenUnmodifiable() {
+        LayoutTemplate template = inflater
+                .compile(getXml("layout-attributes.xml"));
+
+        template.getRoot().getChildren().clear();
+    }
+
+    @Test(expected = LayoutInflaterException.class)
+    public void compile_invalidXml_exceptionThrown() {
+        inflater.compile(new ByteArrayInputStream("THIS IS NOT XML!"
+                .getBytes()));
+    }
+
+    @Test
+    public void inflate_sameTemplateTwice_newInstancesCreated() {
+        LayoutTemplate template = inflater
+                .compile(getXml("layout-attributes.xml"));
+
+        VerticalLayout first = (VerticalLayout) inflater.inflate(template);
+        VerticalLayout second = (VerticalLayout) inflater.inflate(template);
+
+        assertNotSame(first, second);
+        assertNotSame(first.getComponent(0), second.getComponent(0));
+        assertEquals(1.0f, first.getExpandRatio(first.getComponent(0)), 0.0f);
+        assertEquals(1.0f, second.getExpandRatio(second.getComponent(0)),
+                0.0f);
+    }
+
+    @Test
+    public void compile_manyAttributes_attributesInDocumentOrder() {
+        List<String> names = Arrays.asList("width", "caption", "styleName",
+                "id", "enabled", "description", "height", "immediate",
+                "readOnly", "visible", "locale", "icon");
+        StringBuilder xml = new StringBuilder(
+                "<Button xmlns=\"urn:import:com.vaadin.ui\"");
+        for (String name : names) {
+            xml.append(' ').append(name).append("=\"\"");
+        }
+        LayoutTemplate template = inflater.compile(new ByteArrayInputStream(
+                xml.append(" />").toString().getBytes()));
+
+        assertEquals(names, new ArrayList<String>(template.getRoot()
+                .getAttributes("").keySet()));
+    }
+
+    @Test(expected = LayoutInflaterException.class)
+    public void inflate_templateWithDuplicateId_exceptionThrown() {
+        LayoutTemplate template = inflater.compile(getXml("duplicate-id.xml"));
+
+        inflater.inflate(template);
+    }
+
+    @Test
+    public void inflate_componentsById_componentsWithIdCollected() {
+        LayoutTemplate template = inflater
+                .compile(getXml("hierarchy-with-ids.xml"));
+        Map<String, Component> componentsById = new HashMap<String, Component>();
+
+        VerticalLayout layout = (VerticalLayout) inflater.inflate(template,
+                Collections.<ComponentProvider> singletonList(
+                        new ReflectionComponentProvider()), componentsById);
+
+        assertEquals(4, componentsById.size());
+        assertSame(layout, componentsById.get("id1"));
+        assertSame(layout.getComponent(0), componentsById.get("id1_1"));
+        assertSame(((Panel) layout.getComponent(1)).getContent(),
+                componentsById.get("id1_2_1"));
+    }
+
+    @Test
+    public void inflate_deeplyNestedLayouts_siblingsAddedToOwnParents() {
+        int levels = 20;
+        StringBuilder xml = new StringBuilder();
+        for (int i = 0; i < levels; i++) {
+            xml.append("<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\">");
+            xml.append("<Panel><Label /></Panel>");
+        }
+        for (int i = 0; i < levels; i++) {
+            xml.append("<Button /></VerticalLayout>");
+        }
+
+        Component component = inflater.inflate(new ByteArrayInputStream(xml
+                .toString().getBytes()));
+
+        for (int i = 0; i < levels; i++) {
+            VerticalLayout layout = (VerticalLayout) component;
+            assertEquals(Panel.class, layout.getComponent(0).getClass());
+            assertEquals(Label.class, ((Panel) layout.getComponent(0))
+                    .getContent().getClass());
+            assertEquals(Button.class, layout.getComponent(
+                    layout.getComponentCount() - 1).getClass());
+            if (i < levels - 1) {
+                assertEquals(3, layout.getComponentCount());
+                component = layout.getComponent(1);
+            } else {
+                assertEquals(2, layout.getComponentCount());
+            }
+        }
+    }
+
+    @Test
+    public void inflate_idIndependentProvider_applicabilityResolvedOncePerElementKind() {
+        LayoutTemplate template = inflater
+                .compile(getXml("hierarchy-with-ids.xml"));
+        CountingProvider provider = new CountingIdIndependentProvider();
+        List<ComponentProvider> providers = Collections
+                .<ComponentProvider> singletonList(provider);
+
+        inflater.inflate(template, providers);
+        inflater.inflate(template, providers);
+
+        // VerticalLayout, Button, Panel, Label and HorizontalLayout.
+        assertEquals(5, provider.applicabilityChecks);
+        assertEquals(10, provider.componentRequests);
+    }
+
+    @Test
+    public void inflate_idDependentProvider_applicabilityResolvedOncePerElement() {
+        LayoutTemplate template = inflater
+                .compile(getXml("hierarchy-with-ids.xml"));
+        CountingProvider provider = new CountingProvider();
+
+        inflater.inflate(template,
+                Collections.<ComponentProvider> singletonList(provider));
+
+        assertEquals(5, provider.applicabilityChecks);
+        assertEquals(5, provider.componentRequests);
+    }
+
+    @Test
+    public void inflate_reflectionProviderSubclassInspectingId_askedForEachElement() {
+        ComponentProvider buttonForId = new ReflectionComponentProvider() {
+
+            @Override
+            public boolean isApplicableFor(String uri, String localName,
+                    String id) {
+                return "button".equals(id);
+            }
+
+            @Override
+            public Component getComponent(String uri, String localName,
+                    String id) {
+                return new Button();
+            }
+        };
+
+        VerticalLayout layout = (VerticalLayout) inflater.inflate(
+                inflater.compile(new ByteArrayInputStream(
+                        ("<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\">"
+                                + "<Label id=\"label\" />"
+                                + "<Label id=\"button\" /></VerticalLayout>")
+                                .getBytes())),
+                Arrays.asList(buttonForId, new ReflectionComponentProvider()));
+
+        assertEquals(Label.class, layout.getComponent(0).getClass());
+        assertEquals(Button.class, layout.getComponent(1).getClass());
+    }
+
+    @Test
+    public void getDefaultComponentProvider_sameInstanceForAllInflations() {
+        ComponentProvider provider = inflater.getDefaultComponentProvider();
+
+        assertTrue(provider instanceof IdIndependentComponentProvider);
+        assertSame(provider, inflater.getDefaultComponentProvider());
+        assertFalse(new ReflectionComponentProvider() instanceof IdIndependentComponentProvider);
+    }
+
+    @Test
+    public void inflate_providerNotApplicable_providerNotAskedForComponent() {
+        ComponentProvider notApplicable = new ComponentProvider() {
+
+            @Override
+            public boolean isApplicableFor(String uri, String localName,
+                    String id) {
+                return false;
+            }
+
+            @Override
+            public Component getComponent(String uri, String localName,
+                    String id) {
+                fail("Component requested from a provider that is not applicable.");
+                return null;
+            }
+        };
+
+        Component component = inflater.inflate(getXml("single-button.xml"),
+                Collections.<String, Component> emptyMap(), notApplicable);
+
+        assertEquals(Button.class, component.getClass());
+    }
+
+    private static class CountingProvider implements ComponentProvider {
+
+        private final ReflectionComponentProvider delegate = new ReflectionComponentProvider();
+        private int applicabilityChecks;
+        private int componentRequests;
+
+        @Override
+        public boolean isApplicableFor(String uri, String localName, String id) {
+            applicabilityChecks++;
+            return delegate.isApplicableFor(uri, localName, id);
+        }
+
+        @Override
+        public Component getComponent(String uri, String localName, String id) {
+            componentRequests++;
+            return delegate.getComponent(uri, localName, id);
+        }
+    }
+
+    private static class CountingIdIndependentProvider extends
+            CountingProvider implements IdIndependentComponentProvider {
+    }
+
 }
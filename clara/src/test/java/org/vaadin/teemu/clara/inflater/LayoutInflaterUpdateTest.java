@@ -0,0 +1,219 @@
+package org.vaadin.teemu.clara.inflater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Component;
+import com.vaadin.ui.CssLayout;
+import com.vaadin.ui.Label;
+import com.vaadin.ui.Panel;
+import com.vaadin.ui.VerticalLayout;
+
+/**
+ * Tests for {@link LayoutInflater#update(InflatedLayout, LayoutTemplate, List, Map)}.
+ */
+public class LayoutInflaterUpdateTest {
+
+    private static final String HEADER = "<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\" xmlns:l=\"urn:vaadin:parent\">";
+    private static final String FOOTER = "</VerticalLayout>";
+
+    private LayoutInflater inflater;
+    private List<ComponentProvider> providers;
+
+    @Before
+    public void setUp() {
+        inflater = new LayoutInflater();
+        providers = Collections
+                .<ComponentProvider> singletonList(new ReflectionComponentProvider());
+    }
+
+    private LayoutTemplate compile(String content) {
+        return inflater.compile(new ByteArrayInputStream((HEADER + content + FOOTER)
+                .getBytes()));
+    }
+
+    private InflatedLayout inflate(String content) {
+        return inflater.inflateLayout(compile(content), providers, null);
+    }
+
+    private InflatedLayout update(InflatedLayout layout, String content) {
+        return inflater.update(layout, compile(content), providers, null);
+    }
+
+    @Test
+    public void inflateLayout_allComponentsCreated() {
+        InflatedLayout layout = inflate("<Button /><Label />");
+
+        assertEquals(3, layout.getCreatedComponents().size());
+        assertEquals(VerticalLayout.class, layout.getRoot().getClass());
+    }
+
+    @Test
+    public void update_changedAttribute_componentKeptAndAttributeAssigned() {
+        InflatedLayout layout = inflate("<Button id=\"b\" caption=\"Old\" />");
+        VerticalLayout root = (VerticalLayout) layout.getRoot();
+        Button button = (Button) root.getComponent(0);
+
+        InflatedLayout updated = update(layout,
+                "<Button id=\"b\" caption=\"New\" width=\"100px\" />");
+
+        assertSame(root, updated.getRoot());
+        assertSame(button, root.getComponent(0));
+        assertEquals("New", button.getCaption());
+        assertEquals(100.0f, button.getWidth(), 0.0f);
+        assertTrue(updated.getCreatedComponents().isEmpty());
+    }
+
+    @Test
+    public void update_childAddedAndRemoved_otherChildrenKept() {
+        InflatedLayout layout = inflate("<Button id=\"b\" /><Label id=\"l\" />");
+        VerticalLayout root = (VerticalLayout) layout.getRoot();
+        Button button = (Button) root.getComponent(0);
+
+        InflatedLayout updated = update(layout,
+                "<Label id=\"first\" /><Button id=\"b\" />");
+
+        assertEquals(2, root.getComponentCount());
+        assertEquals("first", root.getComponent(0).getId());
+        assertSame(button, root.getComponent(1));
+        assertEquals(1, updated.getCreatedComponents().size());
+        assertTrue(updated.getCreatedComponents().contains(
+                root.getComponent(0)));
+    }
+
+    @Test
+    public void update_childrenMoved_componentsKept() {
+        InflatedLayout layout = inflate("<Button id=\"a\" /><Button id=\"b\" /><Button id=\"c\" />");
+        VerticalLayout root = (VerticalLayout) layout.getRoot();
+        Component a = root.getComponent(0);
+        Component b = root.getComponent(1);
+        Component c = root.getComponent(2);
+
+        InflatedLayout updated = update(layout,
+                "<Button id=\"c\" /><Button id=\"a\" /><Button id=\"b\" />");
+
+        assertSame(c, root.getComponent(0));
+        assertSame(a, root.getComponent(1));
+        assertSame(b, root.getComponent(2));
+        assertTrue(updated.getCreatedComponents().isEmpty());
+    }
+
+    @Test
+    public void update_childrenWithoutIdsMovedInCssLayout_componentsKept() {
+        InflatedLayout layout = inflate("<CssLayout><Label value=\"1\" /><Button /></CssLayout>");
+        CssLayout css = (CssLayout) ((VerticalLayout) layout.getRoot())
+                .getComponent(0);
+        Component label = css.getComponent(0);
+        Component button = css.getComponent(1);
+
+        InflatedLayout updated = update(layout,
+                "<CssLayout><Button /><Label value=\"2\" /></CssLayout>");
+
+        assertSame(button, css.getComponent(0));
+        assertSame(label, css.getComponent(1));
+        assertEquals("2", ((Label) label).getValue());
+        assertTrue(updated.getCreatedComponents().isEmpty());
+    }
+
+    @Test
+    public void update_attributeRemoved_componentReplaced() {
+        InflatedLayout layout = inflate("<Label /><Button caption=\"Caption\" /><Label />");
+        VerticalLayout root = (VerticalLayout) layout.getRoot();
+        Component button = root.getComponent(1);
+
+        InflatedLayout updated = update(layout, "<Label /><Button /><Label />");
+
+        assertNotSame(button, root.getComponent(1));
+        assertEquals(Button.class, root.getComponent(1).getClass());
+        assertEquals(1, updated.getCreatedComponents().size());
+    }
+
+    @Test
+    public void update_layoutAttributes_changedAssignedAndRemovedReset() {
+        InflatedLayout layout = inflate("<Button l:expandRatio=\"1\" /><Label l:expandRatio=\"1\" />");
+        VerticalLayout root = (VerticalLayout) layout.getRoot();
+        Component button = root.getComponent(0);
+        Component label = root.getComponent(1);
+
+        update(layout, "<Button l:expandRatio=\"2\" /><Label />");
+
+        assertSame(button, root.getComponent(0));
+        assertSame(label, root.getComponent(1));
+        assertEquals(2.0f, root.getExpandRatio(button), 0.0f);
+        assertEquals(0.0f, root.getExpandRatio(label), 0.0f);
+    }
+
+    @Test
+    public void update_panelContentChanged_contentReplaced() {
+        InflatedLayout layout = inflate("<Panel id=\"p\"><Label /></Panel>");
+        Panel panel = (Panel) ((VerticalLayout) layout.getRoot())
+                .getComponent(0);
+
+        update(layout, "<Panel id=\"p\"><Button /></Panel>");
+
+        assertSame(panel,
+                ((VerticalLayout) layout.getRoot()).getComponent(0));
+        assertEquals(Button.class, panel.getContent().getClass());
+    }
+
+    @Test
+    public void update_rootChanged_rootReplacedInParent() {
+        InflatedLayout layout = inflate("<Button />");
+        Panel parent = new Panel(layout.getRoot());
+
+        InflatedLayout updated = inflater.update(layout, inflater
+                .compile(new ByteArrayInputStream(
+                        "<CssLayout xmlns=\"urn:import:com.vaadin.ui\" />"
+                                .getBytes())), providers, null);
+
+        assertEquals(CssLayout.class, updated.getRoot().getClass());
+        assertSame(updated.getRoot(), parent.getContent());
+    }
+
+    @Test
+    public void update_childrenOfNonContainer_layoutInflatedAgain() {
+        InflatedLayout layout = inflate("<Button id=\"b\" />");
+        Component root = layout.getRoot();
+
+        InflatedLayout updated = update(layout,
+                "<Button id=\"b\"><Label /></Button>");
+
+        assertNotSame(root, updated.getRoot());
+        assertEquals(3, updated.getCreatedComponents().size());
+        assertEquals(Label.class, ((VerticalLayout) updated.getRoot())
+                .getComponent(1).getClass());
+    }
+
+    @Test
+    public void update_componentsById_allComponentsIndexed() {
+        InflatedLayout layout = inflate("<Button id=\"a\" />");
+        Map<String, Component> componentsById = new HashMap<String, Component>();
+
+        inflater.update(layout, compile("<Button id=\"a\" /><Label id=\"b\" />"),
+                providers, componentsById);
+
+        assertEquals(2, componentsById.size());
+        assertEquals(Button.class, componentsById.get("a").getClass());
+        assertEquals(Label.class, componentsById.get("b").getClass());
+    }
+
+    @Test(expected = LayoutInflaterException.class)
+    public void update_duplicateId_exceptionThrown() {
+        InflatedLayout layout = inflate("<Button id=\"a\" />");
+
+        update(layout, "<Button id=\"a\" /><Label id=\"a\" />");
+    }
+
+}
@@ -0,0 +1,89 @@
+package org.vaadin.teemu.clara.inflater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class LayoutTemplateCacheTest {
+
+    private static final String RESOURCE = "/org/vaadin/teemu/clara/xml-file-for-classpath-testing.xml";
+    private static final String OTHER_RESOURCE = "/org/vaadin/teemu/clara/component-reuse.xml";
+
+    private LayoutInflater inflater;
+    private LayoutTemplateCache cache;
+
+    @Before
+    public void setUp() {
+        inflater = new LayoutInflater();
+        cache = new LayoutTemplateCache(1);
+    }
+
+    @Test
+    public void getTemplate_sameResourceTwice_sameTemplateReturned() {
+        LayoutTemplate first = cache.getTemplate(getClass(), RESOURCE,
+                inflater);
+        LayoutTemplate second = cache.getTemplate(getClass(), RESOURCE,
+                inflater);
+
+        assertSame(first, second);
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void getTemplate_relativeAndAbsoluteName_sameTemplateReturned() {
+        LayoutTemplate absolute = cache.getTemplate(getClass(), RESOURCE,
+                inflater);
+        LayoutTemplate relative = cache.getTemplate(
+                org.vaadin.teemu.clara.Clara.class,
+                "xml-file-for-classpath-testing.xml", inflater);
+
+        assertSame(absolute, relative);
+    }
+
+    @Test
+    public void getTemplate_maximumSizeExceeded_leastRecentlyUsedEvicted() {
+        LayoutTemplate first = cache.getTemplate(getClass(), RESOURCE,
+                inflater);
+        cache.getTemplate(getClass(), OTHER_RESOURCE, inflater);
+
+        assertEquals(1, cache.size());
+        assertNotSame(first,
+                cache.getTemplate(getClass(), RESOURCE, inflater));
+    }
+
+    @Test
+    public void getTemplate_zeroMaximumSize_nothingCached() {
+        LayoutTemplateCache disabled = new LayoutTemplateCache(0);
+
+        LayoutTemplate first = disabled.getTemplate(getClass(), RESOURCE,
+                inflater);
+        LayoutTemplate second = disabled.getTemplate(getClass(), RESOURCE,
+                inflater);
+
+        assertNotSame(first, second);
+        assertEquals(0, disabled.size());
+    }
+
+    @Test
+    public void clear_cachedTemplates_cacheEmpty() {
+        cache.getTemplate(getClass(), RESOURCE, inflater);
+
+        cache.clear();
+
+        assertEquals(0, cache.size());
+    }
+
+    @Test(expected = LayoutInflaterException.class)
+    public void getTemplate_nonExistingResource_exceptionThrown() {
+        cache.getTemplate(getClass(), "non-existing.xml", inflater);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_negativeMaximumSize_exceptionThrown() {
+        new LayoutTemplateCache(-1);
+    }
+
+}
@@ -0,0 +1,179 @@
+package org.vaadin.teemu.clara.inflater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Component;
+import com.vaadin.ui.Label;
+import com.vaadin.ui.Panel;
+import com.vaadin.ui.VerticalLayout;
+
+public class RecyclingComponentProviderTest {
+
+    private static final String VAADIN_URI = "urn:import:com.vaadin.ui";
+
+    @Test
+    public void getComponent_nothingReleased_newInstanceCreated() {
+        RecyclingComponentProvider provider = new RecyclingComponentProvider(
+                new RecordingResetter(true));
+
+        Component first = provider.getComponent(VAADIN_URI, "Button", null);
+        Component second = provider.getComponent(VAADIN_URI, "Button", null);
+
+        assertEquals(Button.class, first.getClass());
+        assertNotSame(first, second);
+    }
+
+    @Test
+    public void getComponent_otherNamespace_nullReturned() {
+        RecyclingComponentProvider provider = new RecyclingComponentProvider(
+                new RecordingResetter(true));
+
+        assertNull(provider.getComponent("urn:other", "Button", null));
+    }
+
+    @Test
+    public void release_tree_allComponentsDetachedResetAndReused() {
+        RecordingResetter resetter = new RecordingResetter(true);
+        RecyclingComponentProvider provider = new RecyclingComponentProvider(
+                resetter);
+        VerticalLayout layout = (VerticalLayout) provider.getComponent(
+                VAADIN_URI, "VerticalLayout", null);
+        Button button = (Button) provider.getComponent(VAADIN_URI, "Button",
+                null);
+        Panel panel = (Panel) provider.getComponent(VAADIN_URI, "Panel", null);
+        Label label = (Label) provider.getComponent(VAADIN_URI, "Label", null);
+        layout.addComponent(button);
+        layout.addComponent(panel);
+        panel.setContent(label);
+
+        provider.release(layout);
+
+        assertEquals(4, resetter.reset.size());
+        assertEquals(0, layout.getComponentCount());
+        assertNull(button.getParent());
+        assertNull(label.getParent());
+        assertSame(button, provider.getComponent(VAADIN_URI, "Button", null));
+        assertSame(label, provider.getComponent(VAADIN_URI, "Label", null));
+        assertSame(layout,
+                provider.getComponent(VAADIN_URI, "VerticalLayout", null));
+        assertEquals(1, provider.getPooledCount(Panel.class));
+    }
+
+    @Test
+    public void release_childOfForeignLayout_detachedFromParent() {
+        RecyclingComponentProvider provider = new RecyclingComponentProvider(
+                new RecordingResetter(true));
+        VerticalLayout parent = new VerticalLayout();
+        Button button = (Button) provider.getComponent(VAADIN_URI, "Button",
+                null);
+        parent.addComponent(button);
+
+        provider.release(button);
+
+        assertEquals(0, parent.getComponentCount());
+        assertEquals(1, provider.getPooledCount(Button.class));
+    }
+
+    @Test
+    public void release_foreignComponents_notResetOrPooled() {
+        RecordingResetter resetter = new RecordingResetter(true);
+        RecyclingComponentProvider provider = new RecyclingComponentProvider(
+                resetter);
+        // Like a layout with a component assigned to a field beforehand.
+        VerticalLayout layout = (VerticalLayout) provider.getComponent(
+                VAADIN_URI, "VerticalLayout", null);
+        Panel foreign = new Panel();
+        Button button = (Button) provider.getComponent(VAADIN_URI, "Button",
+                null);
+        Label foreignChild = new Label();
+        layout.addComponent(foreign);
+        foreign.setContent(new VerticalLayout(button, foreignChild));
+        VerticalLayout foreignContent = (VerticalLayout) foreign.getContent();
+
+        provider.release(layout);
+
+        assertEquals(Arrays.<Component> asList(button, layout),
+                resetter.reset);
+        assertNull(foreign.getParent());
+        assertSame(foreignContent, foreign.getContent());
+        assertSame(foreignContent, foreignChild.getParent());
+        assertNull(button.getParent());
+        assertEquals(0, provider.getPooledCount(Panel.class));
+        assertEquals(1, provider.getPooledCount(VerticalLayout.class));
+    }
+
+    @Test
+    public void release_twice_pooledOnce() {
+        RecordingResetter resetter = new RecordingResetter(true);
+        RecyclingComponentProvider provider = new RecyclingComponentProvider(
+                resetter);
+        Button button = (Button) provider.getComponent(VAADIN_URI, "Button",
+                null);
+
+        provider.release(button);
+        provider.release(button);
+
+        assertEquals(1, resetter.reset.size());
+        assertEquals(1, provider.getPooledCount(Button.class));
+        assertSame(button, provider.getComponent(VAADIN_URI, "Button", null));
+        assertNotSame(button,
+                provider.getComponent(VAADIN_URI, "Button", null));
+    }
+
+    @Test
+    public void release_resetterRejects_componentNotPooled() {
+        RecyclingComponentProvider provider = new RecyclingComponentProvider(
+                new RecordingResetter(false));
+        Button button = (Button) provider.getComponent(VAADIN_URI, "Button",
+                null);
+
+        provider.release(button);
+
+        assertEquals(0, provider.getPooledCount(Button.class));
+        assertNotSame(button,
+                provider.getComponent(VAADIN_URI, "Button", null));
+    }
+
+    @Test
+    public void release_moreThanMaximum_extraInstancesDiscarded() {
+        RecyclingComponentProvider provider = new RecyclingComponentProvider(
+                new RecordingResetter(true), 2);
+
+        List<Component> buttons = new ArrayList<Component>();
+        for (int i = 0; i < 3; i++) {
+            buttons.add(provider.getComponent(VAADIN_URI, "Button", null));
+        }
+        for (Component button : buttons) {
+            provider.release(button);
+        }
+
+        assertEquals(2, provider.getPooledCount(Button.class));
+    }
+
+    private static class RecordingResetter implements ComponentResetter {
+
+        private final boolean reusable;
+        private final List<Component> reset = new ArrayList<Component>();
+
+        public RecordingResetter(boolean reusable) {
+            this.reusable = reusable;
+        }
+
+        @Override
+        public boolean reset(Component component) {
+            reset.add(component);
+            return reusable;
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+package org.vaadin.teemu.clara.inflater;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.List;
+
+import org.junit.Test;
+import org.vaadin.teemu.clara.inflater.LayoutTemplate.Attribute;
+import org.vaadin.teemu.clara.inflater.LayoutTemplate.Element;
+
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Component;
+import com.vaadin.ui.VerticalLayout;
+
+public class StaxTemplateParserTest {
+
+    private final TemplateParser staxParser = new StaxTemplateParser();
+    private final TemplateParser saxParser = new SaxTemplateParser();
+
+    private InputStream getXml(String fileName) {
+        return getClass().getClassLoader().getResourceAsStream(fileName);
+    }
+
+    @Test
+    public void parse_testLayouts_sameTemplateAsSaxParser() {
+        String[] fileNames = { "layout-attributes.xml",
+                "hierarchy-with-ids.xml", "single-button-no-namespace.xml",
+                "absolutelayout.xml", "alignment-test.xml", "tabsheet.xml",
+                "integration-test.xml" };
+        for (String fileName : fileNames) {
+            assertElementsEqual(saxParser.parse(getXml(fileName)).getRoot(),
+                    staxParser.parse(getXml(fileName)).getRoot());
+        }
+    }
+
+    @Test
+    public void parse_attributesInTwoNamespaces_attributesPartitionedByNamespace() {
+        LayoutTemplate template = staxParser.parse(new ByteArrayInputStream(
+                ("<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\" "
+                        + "xmlns:l=\"urn:vaadin:parent\">"
+                        + "<!-- comment --><Button id=\"b\" l:expandRatio=\"1.0\" />"
+                        + "</VerticalLayout>").getBytes()));
+
+        Element button = template.getRoot().getChildren().get(0);
+        assertEquals("b", button.getAttributeValue("id"));
+        assertEquals("1.0",
+                button.getAttributes("urn:vaadin:parent").get("expandRatio"));
+    }
+
+    @Test(expected = LayoutInflaterException.class)
+    public void parse_invalidXml_exceptionThrown() {
+        staxParser.parse(new ByteArrayInputStream("THIS IS NOT XML!"
+                .getBytes()));
+    }
+
+    @Test
+    public void inflate_staxParserSet_layoutInflated() {
+        LayoutInflater inflater = new LayoutInflater();
+        inflater.setTemplateParser(staxParser);
+
+        Component component = inflater.inflate(getXml("hierarchy-with-ids.xml"));
+
+        assertEquals(VerticalLayout.class, component.getClass());
+        assertEquals(Button.class, ((VerticalLayout) component)
+                .getComponent(0).getClass());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setTemplateParser_null_exceptionThrown() {
+        new LayoutInflater().setTemplateParser(null);
+    }
+
+    private void assertElementsEqual(Element expected, Element actual) {
+        assertEquals(expected.getUri(), actual.getUri());
+        assertEquals(expected.getLocalName(), actual.getLocalName());
+
+        List<Attribute> expectedAttributes = expected.getAttributes();
+        List<Attribute> actualAttributes = actual.getAttributes();
+        assertEquals(expectedAttributes.size(), actualAttributes.size());
+        for (int i = 0; i < expectedAttributes.size(); i++) {
+            assertEquals(expectedAttributes.get(i).getUri(), actualAttributes
+                    .get(i).getUri());
+            assertEquals(expectedAttributes.get(i).getLocalName(),
+                    actualAttributes.get(i).getLocalName());
+            assertEquals(expectedAttributes.get(i).getValue(),
+                    actualAttributes.get(i).getValue());
+        }
+
+        assertEquals(expected.getChildren().size(), actual.getChildren()
+                .size());
+        for (int i = 0; i < expected.getChildren().size(); i++) {
+            assertElementsEqual(expected.getChildren().get(i), actual
+                    .getChildren().get(i));
+        }
+    }
+
+}
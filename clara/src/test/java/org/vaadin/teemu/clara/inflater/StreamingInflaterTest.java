@@ -0,0 +1,290 @@
+package org.vaadin.teemu.clara.inflater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.vaadin.teemu.clara.inflater.LayoutTemplate.Attribute;
+import org.vaadin.teemu.clara.inflater.LayoutTemplate.Element;
+
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Component;
+import com.vaadin.ui.Label;
+import com.vaadin.ui.Panel;
+import com.vaadin.ui.VerticalLayout;
+
+public class StreamingInflaterTest {
+
+    private final LayoutInflater inflater = new LayoutInflater();
+
+    @Test
+    public void feed_allTestLayoutsInSmallChunks_sameTemplateAsSaxParser()
+            throws IOException, URISyntaxException {
+        List<File> files = new ArrayList<File>();
+        collectXmlFiles(new File(getClass().getClassLoader()
+                .getResource("single-button.xml").toURI()).getParentFile(),
+                files);
+        assertTrue(files.size() > 20);
+        for (File file : files) {
+            byte[] xml = Files.readAllBytes(file.toPath());
+
+            // Parsed without inflating, as some of the layouts can't be
+            // inflated.
+            assertElementsEqual(new SaxTemplateParser().parse(
+                    new ByteArrayInputStream(xml)).getRoot(),
+                    parseInChunks(xml, 3).getRoot());
+        }
+    }
+
+    @Test
+    public void feed_otherUnicodeWhitespace_rejectedLikeSaxParser()
+            throws UnsupportedEncodingException {
+        String[] xmls = {
+                "<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\" />\u2003",
+                "<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\">"
+                        + "</VerticalLayout\f>" };
+        for (String xml : xmls) {
+            try {
+                new SaxTemplateParser().parse(new ByteArrayInputStream(xml
+                        .getBytes("UTF-8")));
+                fail("SAX parser accepted " + xml);
+            } catch (LayoutInflaterException expected) {
+            }
+            StreamingInflater inflation = inflater.startInflation();
+            try {
+                inflation.feed(utf8(xml));
+                inflation.finish();
+                fail("Streaming inflater accepted " + xml);
+            } catch (LayoutInflaterException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void feed_crlfLineEndings_sameTemplateAsSaxParser()
+            throws UnsupportedEncodingException {
+        byte[] xml = ("<?xml version=\"1.0\"?>\r\n<VerticalLayout\r\n"
+                + "    xmlns=\"urn:import:com.vaadin.ui\" id=\"root\">\r\n"
+                + "  <Button caption=\"a\r\nb\rc\nd&#13;&#10;e\" />\r\n"
+                + "</VerticalLayout>\r\n").getBytes("UTF-8");
+        StreamingInflater inflation = inflater.startInflation();
+        feed(inflation, xml, 1);
+        inflation.finish();
+
+        assertElementsEqual(
+                new SaxTemplateParser().parse(new ByteArrayInputStream(xml))
+                        .getRoot(), inflation.getTemplate().getRoot());
+    }
+
+    @Test
+    public void feed_startTagsComplete_componentsInflatedProgressively()
+            throws UnsupportedEncodingException {
+        Map<String, Component> componentsById = new HashMap<String, Component>();
+        StreamingInflater inflation = inflater.startInflation(
+                Collections.<ComponentProvider> singletonList(
+                        new ReflectionComponentProvider()), componentsById);
+
+        inflation.feed(utf8("<?xml version=\"1.0\"?><VerticalLayout "
+                + "xmlns=\"urn:import:com.vaadin.ui\" id=\"root\"><Button "
+                + "id=\"b\" caption=\"a &amp; b\"/><Pa"));
+
+        VerticalLayout root = (VerticalLayout) inflation.getRoot();
+        assertEquals(1, root.getComponentCount());
+        Button button = (Button) root.getComponent(0);
+        assertEquals("a & b", button.getCaption());
+        assertSame(button, componentsById.get("b"));
+        assertFalse(inflation.isComplete());
+
+        inflation.feed(utf8("nel><Label id=\"l\" /></Panel><!-- x --></Vert"));
+        inflation.feed(utf8("icalLayout>\n"));
+
+        assertTrue(inflation.isComplete());
+        assertSame(root, inflation.finish());
+        assertEquals("l", ((Panel) root.getComponent(1)).getContent().getId());
+    }
+
+    @Test
+    public void feed_multiByteCharacterSplitBetweenChunks_characterDecoded()
+            throws UnsupportedEncodingException {
+        StreamingInflater inflation = inflater.startInflation();
+
+        feed(inflation, "<Label xmlns=\"urn:import:com.vaadin.ui\" value=\"ä€&#x41;\" />"
+                .getBytes("UTF-8"), 1);
+
+        assertEquals("ä€A", ((Label) inflation.finish()).getValue());
+    }
+
+    @Test
+    public void feed_layoutAttributes_assignedWhenAttached() throws IOException {
+        StreamingInflater inflation = inflater.startInflation();
+
+        feed(inflation, getXml("layout-attributes.xml"), 7);
+
+        VerticalLayout root = (VerticalLayout) inflation.finish();
+        assertEquals(1.0f, root.getExpandRatio(root.getComponent(0)), 0.0f);
+    }
+
+    @Test
+    public void finish_elementNotClosed_exceptionThrown()
+            throws UnsupportedEncodingException {
+        StreamingInflater inflation = inflater.startInflation();
+        inflation.feed(utf8("<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\">"));
+
+        try {
+            inflation.finish();
+            fail();
+        } catch (LayoutInflaterException e) {
+            assertNull(inflation.getTemplate());
+        }
+    }
+
+    @Test
+    public void feed_afterMismatchedEndTag_exceptionThrown()
+            throws UnsupportedEncodingException {
+        StreamingInflater inflation = inflater.startInflation();
+        try {
+            inflation.feed(utf8("<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\">"
+                    + "<Button></Label>"));
+            fail();
+        } catch (LayoutInflaterException e) {
+            // Expected.
+        }
+
+        try {
+            inflation.feed(utf8("</VerticalLayout>"));
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected.
+        }
+    }
+
+    @Test(expected = LayoutInflaterException.class)
+    public void feed_doctype_exceptionThrown()
+            throws UnsupportedEncodingException {
+        inflater.startInflation().feed(
+                utf8("<!DOCTYPE VerticalLayout><VerticalLayout />"));
+    }
+
+    @Test(expected = LayoutInflaterException.class)
+    public void feed_undeclaredPrefix_exceptionThrown()
+            throws UnsupportedEncodingException {
+        inflater.startInflation().feed(
+                utf8("<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\">"
+                        + "<Button l:expandRatio=\"1\" />"));
+    }
+
+    private static void feed(StreamingInflater inflation, byte[] xml,
+            int chunkSize) {
+        // The same buffer is reused for every chunk.
+        ByteBuffer buffer = ByteBuffer.allocate(chunkSize);
+        for (int i = 0; i < xml.length; i += chunkSize) {
+            buffer.clear();
+            buffer.put(xml, i, Math.min(chunkSize, xml.length - i));
+            buffer.flip();
+            inflation.feed(buffer);
+            assertFalse(buffer.hasRemaining());
+        }
+    }
+
+    private static ByteBuffer utf8(String xml)
+            throws UnsupportedEncodingException {
+        return ByteBuffer.wrap(xml.getBytes("UTF-8"));
+    }
+
+    /**
+     * Parses the given XML with a {@link PushXmlParser} like a
+     * {@link StreamingInflater} does, but without inflating it.
+     */
+    private static LayoutTemplate parseInChunks(byte[] xml, int chunkSize) {
+        final TemplateBuilder builder = new TemplateBuilder();
+        PushXmlParser parser = new PushXmlParser(new PushXmlParser.Handler() {
+
+            @Override
+            public void startElement(String uri, String localName,
+                    List<Attribute> attributes) {
+                builder.startElement(attributes);
+            }
+
+            @Override
+            public void endElement(String uri, String localName) {
+                builder.endElement(uri, localName);
+            }
+        });
+        for (int i = 0; i < xml.length; i += chunkSize) {
+            parser.feed(ByteBuffer.wrap(xml, i,
+                    Math.min(chunkSize, xml.length - i)));
+        }
+        parser.finish();
+        return builder.getTemplate();
+    }
+
+    private static void collectXmlFiles(File directory, List<File> files) {
+        for (File file : directory.listFiles()) {
+            if (file.isDirectory()) {
+                collectXmlFiles(file, files);
+            } else if (file.getName().endsWith(".xml")) {
+                files.add(file);
+            }
+        }
+    }
+
+    private byte[] getXml(String fileName) throws IOException {
+        InputStream in = getClass().getClassLoader().getResourceAsStream(
+                fileName);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private void assertElementsEqual(Element expected, Element actual) {
+        assertEquals(expected.getUri(), actual.getUri());
+        assertEquals(expected.getLocalName(), actual.getLocalName());
+
+        List<Attribute> expectedAttributes = expected.getAttributes();
+        List<Attribute> actualAttributes = actual.getAttributes();
+        assertEquals(expectedAttributes.size(), actualAttributes.size());
+        for (int i = 0; i < expectedAttributes.size(); i++) {
+            assertEquals(expectedAttributes.get(i).getUri(), actualAttributes
+                    .get(i).getUri());
+            assertEquals(expectedAttributes.get(i).getLocalName(),
+                    actualAttributes.get(i).getLocalName());
+            assertEquals(expectedAttributes.get(i).getValue(),
+                    actualAttributes.get(i).getValue());
+        }
+
+        assertEquals(expected.getChildren().size(), actual.getChildren()
+                .size());
+        for (int i = 0; i < expected.getChildren().size(); i++) {
+            assertElementsEqual(expected.getChildren().get(i), actual
+                    .getChildren().get(i));
+        }
+    }
+
+}
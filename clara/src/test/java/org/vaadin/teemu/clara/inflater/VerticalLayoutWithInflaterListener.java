@@ -11,10 +11,12 @@ public class VerticalLayoutWithInflaterListener extends VerticalLayout
     private boolean componentInflatedCalled;
     private String idAfterInflate;
     private int componentCountAfterInflate;
+    private Thread inflatedThread;
 
     @Override
     public void componentInflated() {
         componentInflatedCalled = true;
+        inflatedThread = Thread.currentThread();
         idAfterInflate = getId();
         componentCountAfterInflate = getComponentCount();
     }
@@ -30,4 +32,8 @@ public class VerticalLayoutWithInflaterListener extends VerticalLayout
     public int getComponentCountAfterInflate() {
         return componentCountAfterInflate;
     }
+
+    public Thread getInflatedThread() {
+        return inflatedThread;
+    }
 }
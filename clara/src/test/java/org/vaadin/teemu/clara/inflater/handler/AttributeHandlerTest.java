@@ -0,0 +1,191 @@
+package org.vaadin.teemu.clara.inflater.handler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+import org.vaadin.teemu.clara.inflater.filter.AttributeFilter;
+import org.vaadin.teemu.clara.inflater.parser.AttributeParser;
+import org.vaadin.teemu.clara.inflater.parser.PrimitiveAttributeParser;
+
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Component;
+import com.vaadin.ui.VerticalLayout;
+
+public class AttributeHandlerTest {
+
+    private AttributeHandler createHandler() {
+        return new AttributeHandler(Collections.<AttributeFilter> emptyList());
+    }
+
+    @Test
+    public void getSetter_caption_setterAndParserResolved() {
+        ResolvedSetter setter = createHandler().getSetter("caption",
+                Button.class);
+
+        assertEquals("setCaption", setter.getMethod().getName());
+        assertEquals(String.class, setter.getPropertyType());
+        assertTrue(setter.getParser() instanceof PrimitiveAttributeParser);
+    }
+
+    @Test
+    public void getSetter_nonExistingProperty_nullReturned() {
+        assertNull(createHandler().getSetter("nonExisting", Button.class));
+    }
+
+    @Test
+    public void getSetter_defaultParsers_setterSharedBetweenHandlers() {
+        ResolvedSetter first = createHandler().getSetter("caption",
+                Button.class);
+        ResolvedSetter second = createHandler().getSetter("caption",
+                Button.class);
+
+        assertSame(first, second);
+    }
+
+    @Test
+    public void getSetter_extraParsers_setterNotSharedWithDefaultHandler() {
+        AttributeParser stringParser = new AttributeParser() {
+
+            @Override
+            public boolean isSupported(Class<?> valueType) {
+                return valueType == String.class;
+            }
+
+            @Override
+            public Object getValueAs(String value, Class<?> valueType,
+                    Component component) {
+                return value;
+            }
+        };
+        AttributeHandler customHandler = new AttributeHandler(
+                Collections.<AttributeFilter> emptyList(),
+                Collections.singletonList(stringParser));
+
+        ResolvedSetter defaultSetter = createHandler().getSetter("caption",
+                Button.class);
+        ResolvedSetter customSetter = customHandler.getSetter("caption",
+                Button.class);
+
+        assertNotSame(defaultSetter, customSetter);
+        assertSame(customSetter,
+                customHandler.getSetter("caption", Button.class));
+    }
+
+    @Test
+    public void getParserFor_typeSupportedByDefaultAndExtraParser_defaultParserPreferred() {
+        CountingParser extraParser = new CountingParser(String.class);
+        AttributeHandler handler = new AttributeHandler(
+                Collections.<AttributeFilter> emptyList(),
+                Collections.<AttributeParser> singletonList(extraParser));
+
+        assertTrue(handler.getParserFor(String.class) instanceof PrimitiveAttributeParser);
+    }
+
+    @Test
+    public void getParserFor_typeSupportedOnlyByExtraParser_extraParserResolvedOnce() {
+        CountingParser extraParser = new CountingParser(Date.class);
+        AttributeHandler handler = new AttributeHandler(
+                Collections.<AttributeFilter> emptyList(),
+                Collections.<AttributeParser> singletonList(extraParser));
+
+        assertSame(extraParser, handler.getParserFor(Date.class));
+        assertSame(extraParser, handler.getParserFor(Date.class));
+        assertEquals(1, extraParser.supportChecks);
+    }
+
+    @Test
+    public void getParserFor_unsupportedType_nullReturned() {
+        assertNull(createHandler().getParserFor(Date.class));
+        assertNull(createHandler().getParserFor(null));
+    }
+
+    @Test
+    public void assignAttributes_methodHookOverridden_hookCalled() {
+        final List<Object> calls = new ArrayList<Object>();
+        AttributeHandler handler = new AttributeHandler(
+                Collections.<AttributeFilter> emptyList()) {
+
+            @SuppressWarnings("deprecation")
+            @Override
+            protected void invokeWithAttributeFilters(Method methodToInvoke,
+                    Object obj, Object... args)
+                    throws IllegalArgumentException, IllegalAccessException,
+                    InvocationTargetException {
+                calls.add(methodToInvoke.getName());
+                calls.addAll(Arrays.asList(args));
+                super.invokeWithAttributeFilters(methodToInvoke, obj, args);
+            }
+        };
+        Button button = new Button();
+
+        handler.assignAttributes(button,
+                Collections.singletonMap("caption", "foo"));
+
+        assertEquals(Arrays.<Object> asList("setCaption", "foo"), calls);
+        assertEquals("foo", button.getCaption());
+    }
+
+    @Test
+    public void assignAttributes_methodHookOverriddenInLayoutHandler_hookCalledWithComponent() {
+        final List<Object> calls = new ArrayList<Object>();
+        AttributeHandler handler = new LayoutAttributeHandler(
+                Collections.<AttributeFilter> emptyList()) {
+
+            @SuppressWarnings("deprecation")
+            @Override
+            protected void invokeWithAttributeFilters(Method methodToInvoke,
+                    Object obj, Object... args)
+                    throws IllegalArgumentException, IllegalAccessException,
+                    InvocationTargetException {
+                calls.add(methodToInvoke.getName());
+                calls.addAll(Arrays.asList(args));
+                super.invokeWithAttributeFilters(methodToInvoke, obj, args);
+            }
+        };
+        VerticalLayout layout = new VerticalLayout();
+        Button button = new Button();
+        layout.addComponent(button);
+
+        handler.assignAttributes(button,
+                Collections.singletonMap("expandRatio", "1"));
+
+        assertEquals(Arrays.<Object> asList("setExpandRatio", button, 1.0f),
+                calls);
+        assertEquals(1.0f, layout.getExpandRatio(button), 0.0f);
+    }
+
+    private static class CountingParser implements AttributeParser {
+
+        private final Class<?> supportedType;
+        private int supportChecks;
+
+        public CountingParser(Class<?> supportedType) {
+            this.supportedType = supportedType;
+        }
+
+        @Override
+        public boolean isSupported(Class<?> valueType) {
+            supportChecks++;
+            return valueType == supportedType;
+        }
+
+        @Override
+        public Object getValueAs(String value, Class<?> valueType,
+                Component component) {
+            return value;
+        }
+    }
+
+}
@@ -0,0 +1,261 @@
+package org.vaadin.teemu.clara.inflater.handler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.vaadin.teemu.clara.inflater.filter.AttributeContext;
+import org.vaadin.teemu.clara.inflater.filter.AttributeFilter;
+import org.vaadin.teemu.clara.inflater.filter.AttributeFilterException;
+import org.vaadin.teemu.clara.inflater.filter.SelectiveAttributeFilter;
+
+import com.vaadin.ui.Button;
+
+public class FilterChainTest {
+
+    private ResolvedSetter setCaption;
+    private Button button;
+
+    @Before
+    public void setUp() throws NoSuchMethodException {
+        setCaption = new ResolvedSetter(Button.class.getMethod("setCaption",
+                String.class), String.class, null);
+        button = new Button();
+    }
+
+    @Test
+    public void invoke_noFilters_valueSet() throws Exception {
+        new FilterChain(Collections.<AttributeFilter> emptyList()).invoke(
+                setCaption, button, button, "caption", null);
+
+        assertEquals("caption", button.getCaption());
+    }
+
+    @Test
+    public void invoke_twoFilters_filtersAppliedInOrder() throws Exception {
+        FilterChain chain = new FilterChain(Arrays.<AttributeFilter> asList(
+                new AppendingFilter("1"), new AppendingFilter("2")));
+
+        chain.invoke(setCaption, button, button, "caption", null);
+
+        assertEquals("caption12", button.getCaption());
+    }
+
+    @Test
+    public void invoke_filterDoesNotProceed_valueNotSet() throws Exception {
+        FilterChain chain = new FilterChain(
+                Collections.<AttributeFilter> singletonList(new AttributeFilter() {
+
+                    @Override
+                    public void filter(AttributeContext attributeContext)
+                            throws AttributeFilterException {
+                        // Don't proceed.
+                    }
+                }));
+
+        chain.invoke(setCaption, button, button, "caption", null);
+
+        assertNull(button.getCaption());
+    }
+
+    @Test
+    public void invoke_twiceWithSameState_contextReused() throws Exception {
+        ContextCollectingFilter filter = new ContextCollectingFilter();
+        FilterChain chain = new FilterChain(
+                Collections.<AttributeFilter> singletonList(filter));
+        FilterState state = new FilterState();
+
+        chain.invoke(setCaption, button, button, "first", state);
+        chain.invoke(setCaption, button, button, "second", state);
+
+        assertEquals(2, filter.contexts.size());
+        assertSame(filter.contexts.get(0), filter.contexts.get(1));
+        assertEquals("second", button.getCaption());
+    }
+
+    @Test
+    public void invoke_contextKeptByFilter_useAfterChainFails()
+            throws Exception {
+        ContextCollectingFilter filter = new ContextCollectingFilter();
+        FilterChain chain = new FilterChain(
+                Collections.<AttributeFilter> singletonList(filter));
+
+        chain.invoke(setCaption, button, button, "caption", new FilterState());
+        AttributeContext kept = filter.contexts.get(0);
+
+        try {
+            kept.getValue();
+            fail("IllegalStateException expected.");
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            kept.proceed();
+            fail("IllegalStateException expected.");
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals("caption", button.getCaption());
+    }
+
+    @Test
+    public void invoke_nestedInvocation_separateContextUsed() throws Exception {
+        final Button otherButton = new Button();
+        final ContextCollectingFilter collectingFilter = new ContextCollectingFilter();
+        final List<FilterChain> chainHolder = new ArrayList<FilterChain>();
+        final FilterState state = new FilterState();
+        AttributeFilter nestingFilter = new AttributeFilter() {
+
+            @Override
+            public void filter(AttributeContext attributeContext)
+                    throws AttributeFilterException {
+                if ("outer".equals(attributeContext.getValue())) {
+                    try {
+                        chainHolder.get(0).invoke(setCaption, otherButton,
+                                otherButton, "inner", state);
+                    } catch (Exception e) {
+                        throw new AttributeFilterException(e);
+                    }
+                }
+                attributeContext.proceed();
+            }
+        };
+        FilterChain chain = new FilterChain(Arrays.<AttributeFilter> asList(
+                nestingFilter, collectingFilter));
+        chainHolder.add(chain);
+
+        chain.invoke(setCaption, button, button, "outer", state);
+
+        assertEquals("outer", button.getCaption());
+        assertEquals("inner", otherButton.getCaption());
+        assertNotSame(collectingFilter.contexts.get(0),
+                collectingFilter.contexts.get(1));
+    }
+
+    @Test
+    public void invoke_filterThrows_chainUsableAfterwards() throws Exception {
+        final List<Boolean> failNext = new ArrayList<Boolean>(
+                Collections.singletonList(Boolean.TRUE));
+        FilterChain chain = new FilterChain(
+                Collections.<AttributeFilter> singletonList(new AttributeFilter() {
+
+                    @Override
+                    public void filter(AttributeContext attributeContext)
+                            throws AttributeFilterException {
+                        if (failNext.remove(Boolean.TRUE)) {
+                            throw new AttributeFilterException("failure");
+                        }
+                        attributeContext.proceed();
+                    }
+                }));
+
+        try {
+            chain.invoke(setCaption, button, button, "first", null);
+            fail("Expected AttributeFilterException");
+        } catch (AttributeFilterException e) {
+            // expected
+        }
+        chain.invoke(setCaption, button, button, "second", null);
+
+        assertEquals("second", button.getCaption());
+    }
+
+    private static class AppendingFilter implements AttributeFilter {
+
+        private final String suffix;
+
+        public AppendingFilter(String suffix) {
+            this.suffix = suffix;
+        }
+
+        @Override
+        public void filter(AttributeContext attributeContext)
+                throws AttributeFilterException {
+            assertEquals("setCaption", attributeContext.getSetter().getName());
+            attributeContext.setValue(attributeContext.getValue() + suffix);
+            attributeContext.proceed();
+        }
+    }
+
+    private static class ContextCollectingFilter implements AttributeFilter {
+
+        private final List<AttributeContext> contexts = new ArrayList<AttributeContext>();
+
+        @Override
+        public void filter(AttributeContext attributeContext)
+                throws AttributeFilterException {
+            contexts.add(attributeContext);
+            attributeContext.proceed();
+        }
+    }
+
+    @Test
+    public void invoke_selectiveFilterForOtherSetter_filterSkipped()
+            throws Exception {
+        CaptionOnlyFilter captionFilter = new CaptionOnlyFilter();
+        FilterChain chain = new FilterChain(
+                Collections.<AttributeFilter> singletonList(captionFilter));
+        ResolvedSetter setId = new ResolvedSetter(Button.class.getMethod(
+                "setId", String.class), String.class, null);
+
+        chain.invoke(setId, button, button, "id", null);
+        chain.invoke(setCaption, button, button, "caption", null);
+
+        assertEquals("id", button.getId());
+        assertEquals("caption!", button.getCaption());
+        assertEquals(1, captionFilter.filtered);
+    }
+
+    @Test
+    public void invoke_sameSetterTwice_applicabilityResolvedOnce()
+            throws Exception {
+        CaptionOnlyFilter captionFilter = new CaptionOnlyFilter();
+        FilterChain chain = new FilterChain(Arrays.<AttributeFilter> asList(
+                captionFilter, new AppendingFilter("1")));
+
+        chain.invoke(setCaption, button, button, "first", null);
+        chain.invoke(setCaption, button, button, "second", null);
+
+        assertEquals("second!1", button.getCaption());
+        assertEquals(1, captionFilter.applicabilityChecks);
+    }
+
+    @Test
+    public void getFilters_noSelectiveFilters_allFiltersReturned() {
+        AttributeFilter filter = new AppendingFilter("1");
+        FilterChain chain = new FilterChain(
+                Collections.<AttributeFilter> singletonList(filter));
+
+        assertEquals(1,
+                chain.getFilters(Button.class, setCaption.getMethod()).length);
+    }
+
+    private static class CaptionOnlyFilter implements SelectiveAttributeFilter {
+
+        private int applicabilityChecks;
+        private int filtered;
+
+        @Override
+        public boolean isApplicableFor(Class<?> targetClass, Method setter) {
+            applicabilityChecks++;
+            return setter.getName().equals("setCaption");
+        }
+
+        @Override
+        public void filter(AttributeContext attributeContext)
+                throws AttributeFilterException {
+            filtered++;
+            attributeContext.setValue(attributeContext.getValue() + "!");
+            attributeContext.proceed();
+        }
+    }
+
+}